@@ -1,7 +1,5 @@
 package network.loki.messenger
 
-import androidx.core.content.edit
-import androidx.preference.PreferenceManager
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.filters.SmallTest
 import androidx.test.platform.app.InstrumentationRegistry
@@ -82,11 +80,9 @@ class LibSessionTests {
 
     @Before
     fun setupUser() {
-        PreferenceManager.getDefaultSharedPreferences(InstrumentationRegistry.getInstrumentation().targetContext.applicationContext).edit {
-            putBoolean(TextSecurePreferences.HAS_FORCED_NEW_CONFIG, true).apply()
-        }
-        val newBytes = randomSeedBytes().toByteArray()
         val context = InstrumentationRegistry.getInstrumentation().targetContext.applicationContext
+        TextSecurePreferences.setBooleanPreference(context, TextSecurePreferences.HAS_FORCED_NEW_CONFIG, true)
+        val newBytes = randomSeedBytes().toByteArray()
         val kp = KeyPairUtilities.generate(newBytes)
         KeyPairUtilities.store(context, kp.seed, kp.ed25519KeyPair, kp.x25519KeyPair)
         val registrationID = KeyHelper.generateRegistrationId(false)
@@ -0,0 +1,138 @@
+package network.loki.messenger
+
+import android.os.Bundle
+import android.os.Debug
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.goterl.lazysodium.interfaces.Box
+import com.goterl.lazysodium.interfaces.Sign
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsession.messaging.sending_receiving.MessageDecrypter
+import org.session.libsession.messaging.utilities.SessionId
+import org.session.libsession.messaging.utilities.SodiumUtilities.sodium
+import org.session.libsignal.crypto.ecc.DjbECPrivateKey
+import org.session.libsignal.crypto.ecc.DjbECPublicKey
+import org.session.libsignal.crypto.ecc.ECKeyPair
+import org.session.libsignal.utilities.Hex
+import org.session.libsignal.utilities.IdPrefix
+import org.session.libsignal.utilities.Log
+import org.session.libsignal.utilities.hexEncodedPublicKey
+import org.session.libsignal.utilities.removingIdPrefixIfNeeded
+import kotlin.random.Random
+
+/**
+ * Compares the allocations and time per message of [MessageDecrypter.decrypt] with the
+ * implementation it replaced, which sliced the decrypted message into new arrays and concatenated
+ * them again to verify the signature. The results are logged and reported as instrumentation
+ * status, e.g. `./gradlew connectedPlayDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=network.loki.messenger.MessageDecrypterBenchmark`.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class MessageDecrypterBenchmark {
+
+    companion object {
+        private const val TAG = "MessageDecrypterBenchmark"
+        private const val MESSAGES = 2_000
+        private const val PLAINTEXT_SIZE = 320 // A padded text message
+    }
+
+    private val recipientKeyPair: ECKeyPair
+    private val senderSessionId: String
+    private val plaintexts: List<ByteArray>
+    private val ciphertexts: List<ByteArray>
+
+    init {
+        val recipientPublicKey = ByteArray(Box.PUBLICKEYBYTES)
+        val recipientSecretKey = ByteArray(Box.SECRETKEYBYTES)
+        sodium.cryptoBoxKeypair(recipientPublicKey, recipientSecretKey)
+        recipientKeyPair = ECKeyPair(DjbECPublicKey(recipientPublicKey), DjbECPrivateKey(recipientSecretKey))
+
+        val senderEdPublicKey = ByteArray(Sign.PUBLICKEYBYTES)
+        val senderEdSecretKey = ByteArray(Sign.SECRETKEYBYTES)
+        sodium.cryptoSignKeypair(senderEdPublicKey, senderEdSecretKey)
+        val senderX25519PublicKey = ByteArray(Sign.CURVE25519_PUBLICKEYBYTES)
+        sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderEdPublicKey)
+        senderSessionId = SessionId(IdPrefix.STANDARD, senderX25519PublicKey).hexString
+
+        val random = Random(MESSAGES)
+        plaintexts = List(MESSAGES) { random.nextBytes(PLAINTEXT_SIZE) }
+        ciphertexts = plaintexts.map { plaintext ->
+            // The layout MessageEncrypter.encrypt produces
+            val verificationData = plaintext + senderEdPublicKey + recipientPublicKey
+            val signature = ByteArray(Sign.BYTES)
+            sodium.cryptoSignDetached(signature, verificationData, verificationData.size.toLong(), senderEdSecretKey)
+            val plaintextWithMetadata = plaintext + senderEdPublicKey + signature
+            val ciphertext = ByteArray(plaintextWithMetadata.size + Box.SEALBYTES)
+            sodium.cryptoBoxSeal(ciphertext, plaintextWithMetadata, plaintextWithMetadata.size.toLong(), recipientPublicKey)
+            ciphertext
+        }
+    }
+
+    @Test
+    fun decrypt_allocatesLessPerMessageThanTheSlicingImplementation() {
+        ciphertexts.forEachIndexed { index, ciphertext ->
+            val (plaintext, sender) = MessageDecrypter.decrypt(ciphertext, recipientKeyPair)
+            assertArrayEquals(plaintexts[index], plaintext)
+            assertEquals(senderSessionId, sender)
+            assertArrayEquals(plaintexts[index], legacyDecrypt(ciphertext, recipientKeyPair).first)
+        }
+
+        val legacy = measure("legacy") { legacyDecrypt(it, recipientKeyPair) }
+        val current = measure("current") { MessageDecrypter.decrypt(it, recipientKeyPair) }
+
+        assertTrue("${current.bytesPerMessage} B/message, was ${legacy.bytesPerMessage}", current.bytesPerMessage < legacy.bytesPerMessage)
+    }
+
+    private class Result(val allocationsPerMessage: Double, val bytesPerMessage: Double, val microsPerMessage: Double)
+
+    @Suppress("DEPRECATION") // Allocation counting is deprecated, but still the only per-thread count on device
+    private fun measure(name: String, decrypt: (ByteArray) -> Unit): Result {
+        // Warm up, so that neither run pays for class loading or the buffers it keeps
+        ciphertexts.take(100).forEach(decrypt)
+
+        Debug.resetThreadAllocCount()
+        Debug.resetThreadAllocSize()
+        Debug.startAllocCounting()
+        val start = System.nanoTime()
+        ciphertexts.forEach(decrypt)
+        val nanos = System.nanoTime() - start
+        Debug.stopAllocCounting()
+
+        val result = Result(
+            allocationsPerMessage = Debug.getThreadAllocCount().toDouble() / MESSAGES,
+            bytesPerMessage = Debug.getThreadAllocSize().toDouble() / MESSAGES,
+            microsPerMessage = nanos / 1_000.0 / MESSAGES
+        )
+
+        val summary = String.format("%s: %.1f allocations, %.0f B, %.1f us per message",
+            name, result.allocationsPerMessage, result.bytesPerMessage, result.microsPerMessage)
+        Log.i(TAG, summary)
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, Bundle().apply { putString(name, summary) })
+        return result
+    }
+
+    /** [MessageDecrypter.decrypt] as it was before it reused buffers. */
+    private fun legacyDecrypt(ciphertext: ByteArray, x25519KeyPair: ECKeyPair): Pair<ByteArray, String> {
+        val recipientX25519PrivateKey = x25519KeyPair.privateKey.serialize()
+        val recipientX25519PublicKey = Hex.fromStringCondensed(x25519KeyPair.hexEncodedPublicKey.removingIdPrefixIfNeeded())
+        val signatureSize = Sign.BYTES
+        val ed25519PublicKeySize = Sign.PUBLICKEYBYTES
+
+        val plaintextWithMetadata = ByteArray(ciphertext.size - Box.SEALBYTES)
+        sodium.cryptoBoxSealOpen(plaintextWithMetadata, ciphertext, ciphertext.size.toLong(), recipientX25519PublicKey, recipientX25519PrivateKey)
+        val signature = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - signatureSize until plaintextWithMetadata.size)
+        val senderED25519PublicKey = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize) until plaintextWithMetadata.size - signatureSize)
+        val plaintext = plaintextWithMetadata.sliceArray(0 until plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize))
+        val verificationData = (plaintext + senderED25519PublicKey + recipientX25519PublicKey)
+        check(sodium.cryptoSignVerifyDetached(signature, verificationData, verificationData.size, senderED25519PublicKey))
+        val senderX25519PublicKey = ByteArray(Sign.CURVE25519_PUBLICKEYBYTES)
+        sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderED25519PublicKey)
+
+        return Pair(plaintext, SessionId(IdPrefix.STANDARD, senderX25519PublicKey).hexString)
+    }
+}
@@ -0,0 +1,250 @@
+package network.loki.messenger
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.goterl.lazysodium.interfaces.Box
+import com.goterl.lazysodium.interfaces.Sign
+import com.goterl.lazysodium.utils.Key
+import com.goterl.lazysodium.utils.KeyPair
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsession.messaging.sending_receiving.MessageDecrypter
+import org.session.libsession.messaging.utilities.SessionId
+import org.session.libsession.messaging.utilities.SodiumUtilities
+import org.session.libsession.messaging.utilities.SodiumUtilities.sodium
+import org.session.libsignal.crypto.ecc.DjbECPrivateKey
+import org.session.libsignal.crypto.ecc.DjbECPublicKey
+import org.session.libsignal.crypto.ecc.ECKeyPair
+import org.session.libsignal.utilities.Hex
+import org.session.libsignal.utilities.IdPrefix
+import org.session.libsignal.utilities.hexEncodedPublicKey
+import org.session.libsignal.utilities.removingIdPrefixIfNeeded
+import org.session.libsignal.utilities.toHexString
+import kotlin.random.Random
+
+/**
+ * Checks that [MessageDecrypter] decrypts messages, and rejects them, exactly like the
+ * implementation it replaced, which is kept below.
+ */
+@RunWith(AndroidJUnit4::class)
+class MessageDecrypterTest {
+
+    companion object {
+        private const val DECRYPTION_FAILED = "Couldn't decrypt message."
+        private const val INVALID_SIGNATURE = "Invalid message signature."
+        private const val SERVER_PUBLIC_KEY = "c3b3c6f32f0ab5a57f853cc4f30f5da7fda5624b0c77b3fb0829de562ada081d"
+
+        // Small and large messages, in an order that has each buffer reused for a smaller message after a bigger one
+        private val PLAINTEXT_SIZES = listOf(320, 0, 1, 2_000, 31, 100_000, 64, 70_000, 320, 1)
+    }
+
+    private val random = Random(PLAINTEXT_SIZES.size)
+
+    private val sender = edKeyPair()
+    private val recipient = edKeyPair()
+    private val recipientX25519KeyPair = x25519KeyPair()
+
+    @Test
+    fun decrypt_returnsWhatTheOldImplementationReturned() {
+        for (size in PLAINTEXT_SIZES) {
+            val plaintext = random.nextBytes(size)
+            val ciphertext = encrypt(plaintext, sender, recipientX25519KeyPair)
+
+            val expected = outcome { legacyDecrypt(ciphertext, recipientX25519KeyPair) }
+            val actual = outcome { MessageDecrypter.decrypt(ciphertext, recipientX25519KeyPair) }
+
+            assertEquals(expected, actual)
+            // An empty message can't be told apart from a truncated one, and is rejected by both
+            if (size > 0) assertArrayEquals(plaintext, (actual as Outcome.Decrypted).plaintext)
+        }
+    }
+
+    @Test
+    fun decrypt_rejectsMessagesLikeTheOldImplementation() {
+        val plaintext = random.nextBytes(320)
+        val ciphertext = encrypt(plaintext, sender, recipientX25519KeyPair)
+        val forSomeoneElse = encrypt(plaintext, sender, x25519KeyPair())
+        val tampered = ciphertext.copyOf().also { it[it.size - 1] = (it[it.size - 1] + 1).toByte() }
+        val truncated = ciphertext.copyOf(Box.SEALBYTES + Sign.BYTES + Sign.PUBLICKEYBYTES)
+
+        for (message in listOf(forSomeoneElse, tampered, truncated)) {
+            val expected = outcome { legacyDecrypt(message, recipientX25519KeyPair) }
+
+            assertEquals(expected, outcome { MessageDecrypter.decrypt(message, recipientX25519KeyPair) })
+        }
+        assertEquals(Outcome.Failed(INVALID_SIGNATURE), outcome { MessageDecrypter.decrypt(forSomeoneElse, recipientX25519KeyPair) })
+
+        // Nothing of the rejected messages is left behind for the next one
+        assertEquals(outcome { legacyDecrypt(ciphertext, recipientX25519KeyPair) }, outcome { MessageDecrypter.decrypt(ciphertext, recipientX25519KeyPair) })
+    }
+
+    @Test
+    fun decryptBlinded_returnsWhatTheOldImplementationReturned() {
+        val senderBlindedId = blindedId(sender)
+        val recipientBlindedId = blindedId(recipient)
+
+        for (size in PLAINTEXT_SIZES) {
+            val plaintext = random.nextBytes(size)
+            val message = encryptBlinded(plaintext, sender, recipientBlindedId)
+
+            // Received by the recipient, and read back by the sender from the server
+            for ((user, isOutgoing, otherBlindedId) in listOf(Triple(recipient, false, senderBlindedId), Triple(sender, true, recipientBlindedId))) {
+                val expected = outcome { legacyDecryptBlinded(message, isOutgoing, otherBlindedId, SERVER_PUBLIC_KEY, user) }
+                val actual = outcome { MessageDecrypter.decryptBlinded(message, isOutgoing, otherBlindedId, SERVER_PUBLIC_KEY, user) }
+
+                assertEquals(expected, actual)
+                assertArrayEquals(plaintext, (actual as Outcome.Decrypted).plaintext)
+            }
+        }
+    }
+
+    @Test
+    fun decryptBlinded_rejectsMessagesLikeTheOldImplementation() {
+        val plaintext = random.nextBytes(320)
+        val message = encryptBlinded(plaintext, sender, blindedId(recipient))
+        val tampered = message.copyOf().also { it[1] = (it[1] + 1).toByte() }
+        val wrongVersion = message.copyOf().also { it[0] = 1 }
+        val tooShort = message.copyOf(Box.NONCEBYTES + 1)
+        val impersonated = encryptBlinded(plaintext, sender, blindedId(recipient), claimedSender = edKeyPair())
+
+        for (rejected in listOf(tampered, wrongVersion, tooShort, impersonated)) {
+            val expected = outcome { legacyDecryptBlinded(rejected, false, blindedId(sender), SERVER_PUBLIC_KEY, recipient) }
+
+            assertEquals(expected, outcome { MessageDecrypter.decryptBlinded(rejected, false, blindedId(sender), SERVER_PUBLIC_KEY, recipient) })
+        }
+        assertEquals(Outcome.Failed(INVALID_SIGNATURE), outcome { MessageDecrypter.decryptBlinded(impersonated, false, blindedId(sender), SERVER_PUBLIC_KEY, recipient) })
+    }
+
+    private sealed class Outcome {
+        class Decrypted(val plaintext: ByteArray, val sender: String) : Outcome() {
+            override fun equals(other: Any?) = other is Decrypted && plaintext.contentEquals(other.plaintext) && sender == other.sender
+            override fun hashCode() = plaintext.contentHashCode() * 31 + sender.hashCode()
+            override fun toString() = "Decrypted(${plaintext.size} bytes from $sender)"
+        }
+
+        data class Failed(val message: String?) : Outcome()
+    }
+
+    private fun outcome(decrypt: () -> Pair<ByteArray, String>): Outcome = try {
+        decrypt().let { (plaintext, sender) -> Outcome.Decrypted(plaintext, sender) }
+    } catch (exception: Exception) {
+        Outcome.Failed(exception.message)
+    }
+
+    private fun edKeyPair(): KeyPair {
+        val publicKey = ByteArray(Sign.PUBLICKEYBYTES)
+        val secretKey = ByteArray(Sign.SECRETKEYBYTES)
+        sodium.cryptoSignKeypair(publicKey, secretKey)
+        return KeyPair(Key.fromBytes(publicKey), Key.fromBytes(secretKey))
+    }
+
+    private fun x25519KeyPair(): ECKeyPair {
+        val publicKey = ByteArray(Box.PUBLICKEYBYTES)
+        val secretKey = ByteArray(Box.SECRETKEYBYTES)
+        sodium.cryptoBoxKeypair(publicKey, secretKey)
+        return ECKeyPair(DjbECPublicKey(publicKey), DjbECPrivateKey(secretKey))
+    }
+
+    private fun blindedId(edKeyPair: KeyPair): String {
+        val blindedKeyPair = requireNotNull(SodiumUtilities.blindedKeyPair(SERVER_PUBLIC_KEY, edKeyPair))
+        return IdPrefix.BLINDED.value + blindedKeyPair.publicKey.asBytes.toHexString()
+    }
+
+    /** The layout MessageEncrypter.encrypt produces. */
+    private fun encrypt(plaintext: ByteArray, sender: KeyPair, recipient: ECKeyPair): ByteArray {
+        val recipientPublicKey = (recipient.publicKey as DjbECPublicKey).publicKey
+        val verificationData = plaintext + sender.publicKey.asBytes + recipientPublicKey
+        val signature = ByteArray(Sign.BYTES)
+        sodium.cryptoSignDetached(signature, verificationData, verificationData.size.toLong(), sender.secretKey.asBytes)
+        val plaintextWithMetadata = plaintext + sender.publicKey.asBytes + signature
+        val ciphertext = ByteArray(plaintextWithMetadata.size + Box.SEALBYTES)
+        sodium.cryptoBoxSeal(ciphertext, plaintextWithMetadata, plaintextWithMetadata.size.toLong(), recipientPublicKey)
+        return ciphertext
+    }
+
+    /** What MessageEncrypter.encryptBlinded produces, with the inner key of `claimedSender` if it's given. */
+    private fun encryptBlinded(plaintext: ByteArray, sender: KeyPair, recipientBlindedId: String, claimedSender: KeyPair = sender): ByteArray {
+        val blindedKeyPair = requireNotNull(SodiumUtilities.blindedKeyPair(SERVER_PUBLIC_KEY, sender))
+        val recipientBlindedPublicKey = Hex.fromStringCondensed(recipientBlindedId.removingIdPrefixIfNeeded())
+        val encryptionKey = requireNotNull(SodiumUtilities.sharedBlindedEncryptionKey(
+            sender.secretKey.asBytes,
+            recipientBlindedPublicKey,
+            blindedKeyPair.publicKey.asBytes,
+            recipientBlindedPublicKey
+        ))
+        val nonce = sodium.nonce(24)
+        val ciphertext = requireNotNull(SodiumUtilities.encrypt(plaintext + claimedSender.publicKey.asBytes, encryptionKey, nonce))
+        return byteArrayOf(0.toByte()) + ciphertext + nonce
+    }
+
+    /** [MessageDecrypter.decrypt] as it was before it reused buffers. */
+    private fun legacyDecrypt(ciphertext: ByteArray, x25519KeyPair: ECKeyPair): Pair<ByteArray, String> {
+        val recipientX25519PrivateKey = x25519KeyPair.privateKey.serialize()
+        val recipientX25519PublicKey = Hex.fromStringCondensed(x25519KeyPair.hexEncodedPublicKey.removingIdPrefixIfNeeded())
+        val signatureSize = Sign.BYTES
+        val ed25519PublicKeySize = Sign.PUBLICKEYBYTES
+
+        val plaintextWithMetadata = ByteArray(ciphertext.size - Box.SEALBYTES)
+        try {
+            sodium.cryptoBoxSealOpen(plaintextWithMetadata, ciphertext, ciphertext.size.toLong(), recipientX25519PublicKey, recipientX25519PrivateKey)
+        } catch (exception: Exception) {
+            throw Exception(DECRYPTION_FAILED)
+        }
+        if (plaintextWithMetadata.size <= (signatureSize + ed25519PublicKeySize)) { throw Exception(DECRYPTION_FAILED) }
+        val signature = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - signatureSize until plaintextWithMetadata.size)
+        val senderED25519PublicKey = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize) until plaintextWithMetadata.size - signatureSize)
+        val plaintext = plaintextWithMetadata.sliceArray(0 until plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize))
+        val verificationData = (plaintext + senderED25519PublicKey + recipientX25519PublicKey)
+        try {
+            val isValid = sodium.cryptoSignVerifyDetached(signature, verificationData, verificationData.size, senderED25519PublicKey)
+            if (!isValid) { throw Exception(INVALID_SIGNATURE) }
+        } catch (exception: Exception) {
+            throw Exception(INVALID_SIGNATURE)
+        }
+        val senderX25519PublicKey = ByteArray(Sign.CURVE25519_PUBLICKEYBYTES)
+        sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderED25519PublicKey)
+
+        return Pair(plaintext, SessionId(IdPrefix.STANDARD, senderX25519PublicKey).hexString)
+    }
+
+    /** [MessageDecrypter.decryptBlinded] as it was before it reused buffers. */
+    private fun legacyDecryptBlinded(
+        message: ByteArray,
+        isOutgoing: Boolean,
+        otherBlindedPublicKey: String,
+        serverPublicKey: String,
+        userEdKeyPair: KeyPair
+    ): Pair<ByteArray, String> {
+        if (message.size < Box.NONCEBYTES + 2) throw Exception(DECRYPTION_FAILED)
+        val blindedKeyPair = SodiumUtilities.blindedKeyPair(serverPublicKey, userEdKeyPair) ?: throw Exception(DECRYPTION_FAILED)
+        val otherKeyBytes = Hex.fromStringCondensed(otherBlindedPublicKey.removingIdPrefixIfNeeded())
+        val kA = if (isOutgoing) blindedKeyPair.publicKey.asBytes else otherKeyBytes
+        val decryptionKey = SodiumUtilities.sharedBlindedEncryptionKey(
+            userEdKeyPair.secretKey.asBytes,
+            otherKeyBytes,
+            kA,
+            if (isOutgoing) otherKeyBytes else blindedKeyPair.publicKey.asBytes
+        ) ?: throw Exception(DECRYPTION_FAILED)
+
+        val version = message.first().toInt()
+        if (version != 0) throw Exception(DECRYPTION_FAILED)
+        val ciphertext = message.drop(1).dropLast(Box.NONCEBYTES).toByteArray()
+        val nonce = message.takeLast(Box.NONCEBYTES).toByteArray()
+
+        val innerBytes = SodiumUtilities.decrypt(ciphertext, decryptionKey, nonce) ?: throw Exception(DECRYPTION_FAILED)
+        if (innerBytes.size < Sign.PUBLICKEYBYTES) throw Exception(DECRYPTION_FAILED)
+
+        val plaintextEndIndex = innerBytes.size - Sign.PUBLICKEYBYTES
+        val plaintext = innerBytes.slice(0 until plaintextEndIndex).toByteArray()
+        val senderEdPublicKey = innerBytes.slice((plaintextEndIndex until innerBytes.size)).toByteArray()
+
+        val blindingFactor = SodiumUtilities.generateBlindingFactor(serverPublicKey) ?: throw Exception(DECRYPTION_FAILED)
+        val sharedSecret = SodiumUtilities.combineKeys(blindingFactor, senderEdPublicKey) ?: throw Exception(DECRYPTION_FAILED)
+        if (!kA.contentEquals(sharedSecret)) throw Exception(INVALID_SIGNATURE)
+
+        val senderX25519PublicKey = SodiumUtilities.toX25519(senderEdPublicKey) ?: throw Exception(INVALID_SIGNATURE)
+
+        return Pair(plaintext, SessionId(IdPrefix.STANDARD, senderX25519PublicKey).hexString)
+    }
+}
@@ -49,6 +49,7 @@ import org.session.libsession.utilities.Util;
 import org.session.libsession.utilities.WindowDebouncer;
 import org.session.libsession.utilities.dynamiclanguage.DynamicLanguageContextWrapper;
 import org.session.libsession.utilities.dynamiclanguage.LocaleParser;
+import org.session.libsession.utilities.recipients.Recipient;
 import org.session.libsignal.utilities.HTTP;
 import org.session.libsignal.utilities.JsonUtil;
 import org.session.libsignal.utilities.Log;
@@ -286,6 +287,14 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
             poller.stopIfNeeded();
         }
         ClosedGroupPollerV2.getShared().stopAll();
+        ThreadUtils.queue(() -> configFactory.flushPendingChanges());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The process may be killed without further notice from here on
+        ThreadUtils.queue(() -> configFactory.flushPendingChanges());
     }
 
     @Override
@@ -421,6 +430,7 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
     }
 
     private void initializeBlobProvider() {
+        BlobProvider.getInstance().initialize(this);
         AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
             BlobProvider.getInstance().onSessionStart(this);
         });
@@ -516,6 +526,7 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
         if (!deleteDatabase(SQLCipherOpenHelper.DATABASE_NAME)) {
             Log.d("Loki", "Failed to delete database.");
         }
+        Recipient.clearCache();
         configFactory.keyPairChanged();
         Util.runOnMain(() -> new Handler().postDelayed(ApplicationContext.this::restartApplication, 200));
     }
@@ -26,6 +26,8 @@ import android.widget.TextView;
 import com.codewaves.stickyheadergrid.StickyHeaderGridAdapter;
 
 
+import org.session.libsession.utilities.Util;
+import org.session.libsession.utilities.concurrent.SignalExecutors;
 import org.thoughtcrime.securesms.conversation.v2.utilities.ThumbnailView;
 import org.thoughtcrime.securesms.database.MediaDatabase.MediaRecord;
 import org.thoughtcrime.securesms.database.loaders.BucketedThreadMediaLoader.BucketedThreadMedia;
@@ -35,6 +37,7 @@ import org.thoughtcrime.securesms.util.MediaUtil;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
@@ -85,10 +88,14 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
     this.media             = media;
     this.itemClickListener = clickListener;
     this.selected          = new HashSet<>();
+
+    media.setPageListener(this::notifySectionItemRangeChanged);
   }
 
   public void setMedia(BucketedThreadMedia media) {
+    this.media.setPageListener(null);
     this.media = media;
+    this.media.setPageListener(this::notifySectionItemRangeChanged);
   }
 
   @Override
@@ -111,7 +118,17 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
     MediaRecord   mediaRecord       = media.get(section, offset);
     ThumbnailView thumbnailView     = ((ViewHolder)viewHolder).imageView;
     View          selectedIndicator = ((ViewHolder)viewHolder).selectedIndicator;
-    Slide         slide             = MediaUtil.getSlideForAttachment(context, mediaRecord.getAttachment());
+
+    if (mediaRecord == null) {
+      // Bound again once its page is loaded
+      thumbnailView.clear(glideRequests);
+      thumbnailView.setOnClickListener(null);
+      thumbnailView.setOnLongClickListener(null);
+      selectedIndicator.setVisibility(View.GONE);
+      return;
+    }
+
+    Slide slide = MediaUtil.getSlideForAttachment(context, mediaRecord.getAttachment());
 
     if (slide != null) {
       thumbnailView.setImageResource(glideRequests, slide, false, null);
@@ -157,13 +174,18 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
     notifyDataSetChanged();
   }
 
-  void selectAllMedia() {
-    for (int section = 0; section < media.getSectionCount(); section++) {
-      for (int item = 0; item < media.getSectionItemCount(section); item++) {
-        selected.add(media.get(section, item));
-      }
-    }
-    this.notifyDataSetChanged();
+  void selectAllMedia(@NonNull Runnable onSelected) {
+    BucketedThreadMedia media = this.media;
+
+    SignalExecutors.BOUNDED.execute(() -> {
+      List<MediaRecord> all = media.getAll();
+
+      Util.runOnMain(() -> {
+        selected.addAll(all);
+        notifyDataSetChanged();
+        onSelected.run();
+      });
+    });
   }
 
   interface ItemClickListener {
@@ -399,8 +399,11 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity {
     }
 
     private void handleSelectAllMedia() {
-      getListAdapter().selectAllMedia();
-      actionMode.setTitle(String.valueOf(getListAdapter().getSelectedMediaCount()));
+      getListAdapter().selectAllMedia(() -> {
+        if (actionMode != null) {
+          actionMode.setTitle(String.valueOf(getListAdapter().getSelectedMediaCount()));
+        }
+      });
     }
 
     private MediaGalleryAdapter getListAdapter() {
@@ -118,15 +118,16 @@ class DatabaseAttachmentProvider(context: Context, helper: SQLCipherOpenHelper)
         attachmentDatabase.insertAttachmentsForPlaceholder(messageId, attachmentId, stream)
     }
 
-    override fun updateAudioAttachmentDuration(
+    override fun updateAudioAttachmentExtras(
         attachmentId: AttachmentId,
+        visualSamples: ByteArray,
         durationMs: Long,
         threadId: Long
     ) {
         val attachmentDb = DatabaseComponent.get(context).attachmentDatabase()
         attachmentDb.setAttachmentAudioExtras(DatabaseAttachmentAudioExtras(
             attachmentId = attachmentId,
-            visualSamples = byteArrayOf(),
+            visualSamples = visualSamples,
             durationMs = durationMs
         ), threadId)
     }
@@ -21,10 +21,7 @@ import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.TextSecurePreferences;
-import org.thoughtcrime.securesms.database.GroupDatabase;
-import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -63,25 +60,6 @@ public class ContactAccessor {
     return new ContactData(id, displayName);
   }
 
-  public List<String> getNumbersForThreadSearchFilter(Context context, String constraint) {
-    LinkedList<String> numberList = new LinkedList<>();
-
-    GroupRecord record;
-    try (GroupDatabase.Reader reader = DatabaseComponent.get(context).groupDatabase().getGroupsFilteredByTitle(constraint)) {
-      while ((record = reader.getNext()) != null) {
-        numberList.add(record.getEncodedId());
-      }
-    }
-
-//    if (context.getString(R.string.note_to_self).toLowerCase().contains(constraint.toLowerCase()) &&
-//        !numberList.contains(TextSecurePreferences.getLocalNumber(context)))
-//    {
-//      numberList.add(TextSecurePreferences.getLocalNumber(context));
-//    }
-
-    return numberList;
-  }
-
   public CharSequence phoneTypeToString(Context mContext, int type, CharSequence label) {
     return label;
   }
@@ -22,21 +22,26 @@ import kotlinx.coroutines.launch
 import network.loki.messenger.R
 import network.loki.messenger.databinding.ViewVisibleMessageBinding
 import org.session.libsession.messaging.contacts.Contact
+import org.session.libsignal.utilities.Log
 import org.thoughtcrime.securesms.conversation.v2.messages.ControlMessageView
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageView
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageViewDelegate
 import org.thoughtcrime.securesms.database.CursorRecyclerViewAdapter
+import org.thoughtcrime.securesms.database.MmsSmsColumns
+import org.thoughtcrime.securesms.database.MmsSmsDatabase
 import org.thoughtcrime.securesms.database.model.MessageRecord
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent
 import org.thoughtcrime.securesms.mms.GlideRequests
 import org.thoughtcrime.securesms.preferences.PrivacySettingsActivity
 import org.thoughtcrime.securesms.showSessionDialog
 import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.max
 import kotlin.math.min
 
 class ConversationAdapter(
     context: Context,
     cursor: Cursor,
+    private val threadId: Long,
     originalLastSeen: Long,
     private val isReversed: Boolean,
     private val onItemPress: (MessageRecord, Int, VisibleMessageView, MotionEvent) -> Unit,
@@ -58,6 +63,18 @@ class ConversationAdapter(
     private val contactLoadedCache = SparseBooleanArray(100)
     private val lastSeen = AtomicLong(originalLastSeen)
 
+    private val records = MessageRecordWindow<MessageRecord>(WINDOW_SIZE)
+    private val prefetchQueue = Channel<PrefetchRequest>(Channel.CONFLATED)
+    private var lastBoundPosition = -1
+
+    companion object {
+        private const val TAG = "ConversationAdapter"
+        private const val WINDOW_SIZE = 100
+        private const val PREFETCH_SIZE = 30
+    }
+
+    private class PrefetchRequest(val generation: Int, val positions: IntRange)
+
     init {
         lifecycleCoroutineScope.launch(IO) {
             while (isActive) {
@@ -67,6 +84,36 @@ class ConversationAdapter(
                 contactLoadedCache[item.hashCode()] = true
             }
         }
+        lifecycleCoroutineScope.launch(IO) {
+            // The adapter's cursor belongs to the main thread, so records are prefetched through a
+            // cursor of our own over the same query
+            var prefetchCursor: Cursor? = null
+            var prefetchGeneration = -1
+            try {
+                while (isActive) {
+                    val request = prefetchQueue.receive()
+                    if (request.generation != records.generation) continue
+                    try {
+                        if (prefetchCursor == null || prefetchGeneration != request.generation) {
+                            prefetchCursor?.close()
+                            prefetchCursor = messageDB.getConversation(threadId, isReversed)
+                            prefetchGeneration = request.generation
+                        }
+                        val cursor = prefetchCursor!!
+                        val reader = messageDB.readerFor(cursor)
+                        for (position in request.positions) {
+                            if (records[position] != null) continue
+                            if (!cursor.moveToPosition(position)) break
+                            if (!records.put(position, reader.current, request.generation)) break
+                        }
+                    } catch (e: Exception) {
+                        Log.w(TAG, "Failed to prefetch messages", e)
+                    }
+                }
+            } finally {
+                prefetchCursor?.close()
+            }
+        }
     }
 
     @WorkerThread
@@ -109,6 +156,7 @@ class ConversationAdapter(
     override fun onBindItemViewHolder(viewHolder: ViewHolder, cursor: Cursor) {
         val message = getMessage(cursor)!!
         val position = viewHolder.adapterPosition
+        prefetchAround(position)
         val messageBefore = getMessageBefore(position, cursor)
         when (viewHolder) {
             is VisibleMessageViewHolder -> {
@@ -184,7 +232,27 @@ class ConversationAdapter(
     }
 
     private fun getMessage(cursor: Cursor): MessageRecord? {
-        return messageDB.readerFor(cursor).current
+        return records.getOrRead(cursor.position, isCurrent = { cached ->
+            // Prefetched records come from another cursor, which may have been read after the
+            // conversation changed, so they're only used if they're the message at this position
+            val id = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID))
+            val isMms = MmsSmsDatabase.MMS_TRANSPORT == cursor.getString(cursor.getColumnIndexOrThrow(MmsSmsDatabase.TRANSPORT))
+            cached.id == id && cached.isMms == isMms
+        }) { messageDB.readerFor(cursor).current }
+    }
+
+    private fun prefetchAround(position: Int) {
+        val towardsEnd = position >= lastBoundPosition
+        lastBoundPosition = position
+        records.moveTo(position)
+
+        val positions = if (towardsEnd) {
+            (position + 1)..min(position + PREFETCH_SIZE, itemCount - 1)
+        } else {
+            max(position - PREFETCH_SIZE, 0) until position
+        }
+        val missing = records.missing(positions) ?: return
+        prefetchQueue.trySend(PrefetchRequest(records.generation, missing))
     }
 
     private fun getMessageBefore(position: Int, cursor: Cursor): MessageRecord? {
@@ -193,7 +261,7 @@ class ConversationAdapter(
         if (isReversed && !cursor.moveToPosition(position + 1)) { return null }
         if (!isReversed && !cursor.moveToPosition(position - 1)) { return null }
 
-        return messageDB.readerFor(cursor).current
+        return getMessage(cursor)
     }
 
     private fun getMessageAfter(position: Int, cursor: Cursor): MessageRecord? {
@@ -202,10 +270,12 @@ class ConversationAdapter(
         if (isReversed && !cursor.moveToPosition(position - 1)) { return null }
         if (!isReversed && !cursor.moveToPosition(position + 1)) { return null }
 
-        return messageDB.readerFor(cursor).current
+        return getMessage(cursor)
     }
 
     override fun changeCursor(cursor: Cursor?) {
+        records.invalidate()
+        lastBoundPosition = -1
         super.changeCursor(cursor)
 
         val toRemove = mutableSetOf<MessageRecord>()
@@ -276,7 +346,7 @@ class ConversationAdapter(
     fun getTimestampForItemAt(firstVisiblePosition: Int): Long? {
         val cursor = this.cursor ?: return null
         if (!cursor.moveToPosition(firstVisiblePosition)) return null
-        val message = messageDB.readerFor(cursor).current ?: return null
+        val message = getMessage(cursor) ?: return null
         return message.timestamp
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package org.thoughtcrime.securesms.conversation.v2
+
+import kotlin.math.abs
+
+/**
+ * Keeps the records that were read for the positions around the one being bound, so that binding
+ * a message and looking at the messages before and after it doesn't read them from the cursor
+ * over and over. Once it holds more than [capacity] records, the ones furthest away from the last
+ * bound position are dropped first.
+ *
+ * Records can be added from a background thread. [invalidate] bumps the generation, so records
+ * that were read for a previous cursor are dropped instead of being added.
+ */
+class MessageRecordWindow<T : Any>(private val capacity: Int) {
+
+    private val records = HashMap<Int, T>()
+    private var center = 0
+
+    @get:Synchronized
+    var generation = 0
+        private set
+
+    @Synchronized
+    operator fun get(position: Int): T? = records[position]
+
+    /**
+     * @return false if the window was invalidated after [generation], in which case the record
+     * wasn't added.
+     */
+    @Synchronized
+    fun put(position: Int, record: T, generation: Int = this.generation): Boolean {
+        if (generation != this.generation) return false
+        records[position] = record
+        trim()
+        return true
+    }
+
+    /**
+     * @return the record at [position] if it's in the window and [isCurrent] accepts it, otherwise
+     * the one [read] returns, which then replaces it.
+     */
+    fun getOrRead(position: Int, isCurrent: (T) -> Boolean, read: () -> T?): T? {
+        val cached = this[position]
+        if (cached != null) {
+            if (isCurrent(cached)) return cached
+            remove(position)
+        }
+        return read()?.also { put(position, it) }
+    }
+
+    @Synchronized
+    fun remove(position: Int) {
+        records.remove(position)
+    }
+
+    @Synchronized
+    fun moveTo(position: Int) {
+        center = position
+        trim()
+    }
+
+    /**
+     * @return the smallest range holding all the positions in [positions] that aren't in the
+     * window, or null if they all are.
+     */
+    @Synchronized
+    fun missing(positions: IntRange): IntRange? {
+        val first = positions.firstOrNull { it !in records } ?: return null
+        val last = positions.reversed().first { it !in records }
+        return first..last
+    }
+
+    @Synchronized
+    fun invalidate() {
+        records.clear()
+        generation++
+    }
+
+    @get:Synchronized
+    val size: Int get() = records.size
+
+    private fun trim() {
+        while (records.size > capacity) {
+            records.remove(records.keys.maxBy { abs(it - center) })
+        }
+    }
+}
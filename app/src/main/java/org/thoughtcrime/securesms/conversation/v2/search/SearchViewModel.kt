@@ -30,6 +30,7 @@ class SearchViewModel @Inject constructor(
     private var searchOpen = false
     private var activeQuery: String? = null
     private var activeThreadId: Long = 0
+    private var loadingPage = false
     val searchResults: LiveData<SearchResult>
         get() = result
 
@@ -48,16 +49,20 @@ class SearchViewModel @Inject constructor(
 
     fun onMoveUp() {
         debouncer.clear()
-        val messages = result.value!!.getResults() as CursorList<MessageResult?>
-        val position = Math.min(result.value!!.position + 1, messages.size - 1)
-        result.setValue(SearchResult(messages, position), false)
+        val current = result.value!!
+        val position = Math.min(current.position + 1, current.getResults().size - 1)
+        result.setValue(current.movedTo(position), false)
+        // Older results are loaded once the user reaches the last one that has been loaded so far
+        if (position == current.getResults().size - 1) {
+            loadNextPage()
+        }
     }
 
     fun onMoveDown() {
         debouncer.clear()
-        val messages = result.value!!.getResults() as CursorList<MessageResult?>
-        val position = Math.max(result.value!!.position - 1, 0)
-        result.setValue(SearchResult(messages, position), false)
+        val current = result.value!!
+        val position = Math.max(current.position - 1, 0)
+        result.setValue(current.movedTo(position), false)
     }
 
     fun onSearchOpened() {
@@ -85,7 +90,7 @@ class SearchViewModel @Inject constructor(
             searchRepository.query(query, threadId) { messages: CursorList<MessageResult?> ->
                 runOnMain {
                     if (searchOpen && query == activeQuery) {
-                        result.setValue(SearchResult(messages, 0))
+                        result.setValue(SearchResult(listOf(messages), 0, messages.size == SearchRepository.MESSAGE_PAGE_SIZE))
                     } else {
                         messages.close()
                     }
@@ -94,14 +99,58 @@ class SearchViewModel @Inject constructor(
         }
     }
 
-    class SearchResult(private val results: CursorList<MessageResult?>, val position: Int) : Closeable {
+    private fun loadNextPage() {
+        val current = result.value ?: return
+        val query = activeQuery ?: return
+        val after = current.getResults().lastOrNull()?.pageKey ?: return
+        if (!current.hasMore || loadingPage) return
+
+        loadingPage = true
+        searchRepository.queryMessages(query, activeThreadId, after) { page: CursorList<MessageResult?> ->
+            runOnMain {
+                loadingPage = false
+                val latest = result.value
+                if (searchOpen && query == activeQuery && latest != null && latest.continues(current)) {
+                    result.setValue(latest.withPage(page), false)
+                } else {
+                    page.close()
+                }
+            }
+        }
+    }
+
+    /**
+     * The pages of results loaded so far, read through as a single list. Moving through them or
+     * adding a page shares the already loaded pages, which the live data doesn't close when that
+     * happens.
+     */
+    class SearchResult(private val pages: List<CursorList<MessageResult?>>, val position: Int, val hasMore: Boolean) : Closeable {
+
+        private val results: List<MessageResult?> = object : AbstractList<MessageResult?>() {
+            override val size: Int get() = pages.sumOf { it.size }
+
+            override fun get(index: Int): MessageResult? {
+                var offset = index
+                for (page in pages) {
+                    if (offset < page.size) return page[offset]
+                    offset -= page.size
+                }
+                throw IndexOutOfBoundsException("$index")
+            }
+        }
 
         fun getResults(): List<MessageResult?> {
             return results
         }
 
+        fun movedTo(position: Int) = SearchResult(pages, position, hasMore)
+
+        fun withPage(page: CursorList<MessageResult?>) = SearchResult(pages + page, position, page.size == SearchRepository.MESSAGE_PAGE_SIZE)
+
+        fun continues(other: SearchResult) = pages.firstOrNull() === other.pages.firstOrNull()
+
         override fun close() {
-            results.close()
+            pages.forEach { it.close() }
         }
     }
 
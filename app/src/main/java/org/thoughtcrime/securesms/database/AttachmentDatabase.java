@@ -87,38 +87,38 @@ public class AttachmentDatabase extends Database {
   
   private static final String TAG = AttachmentDatabase.class.getSimpleName();
 
-  public  static final String TABLE_NAME             = "part";
-  public  static final String ROW_ID                 = "_id";
+  public  static final String TABLE_NAME             = DatabaseSchema.Attachments.TABLE_NAME;
+  public  static final String ROW_ID                 = DatabaseSchema.Attachments.ROW_ID;
           static final String ATTACHMENT_JSON_ALIAS  = "attachment_json";
-  public  static final String MMS_ID                 = "mid";
-          static final String CONTENT_TYPE           = "ct";
-          static final String NAME                   = "name";
-          static final String CONTENT_DISPOSITION    = "cd";
-          static final String CONTENT_LOCATION       = "cl";
-  public  static final String DATA                   = "_data";
-          static final String TRANSFER_STATE         = "pending_push";
-  public  static final String SIZE                   = "data_size";
-          static final String FILE_NAME              = "file_name";
-  public  static final String THUMBNAIL              = "thumbnail";
-          static final String THUMBNAIL_ASPECT_RATIO = "aspect_ratio";
-  public  static final String UNIQUE_ID              = "unique_id";
-          static final String DIGEST                 = "digest";
-          static final String VOICE_NOTE             = "voice_note";
-          static final String QUOTE                  = "quote";
-  public  static final String STICKER_PACK_ID        = "sticker_pack_id";
-  public  static final String STICKER_PACK_KEY       = "sticker_pack_key";
-          static final String STICKER_ID             = "sticker_id";
-          static final String FAST_PREFLIGHT_ID      = "fast_preflight_id";
-  public  static final String DATA_RANDOM            = "data_random";
-  private static final String THUMBNAIL_RANDOM       = "thumbnail_random";
-          static final String WIDTH                  = "width";
-          static final String HEIGHT                 = "height";
-          static final String CAPTION                = "caption";
-  public  static final String URL                    = "url";
+  public  static final String MMS_ID                 = DatabaseSchema.Attachments.MMS_ID;
+          static final String CONTENT_TYPE           = DatabaseSchema.Attachments.CONTENT_TYPE;
+          static final String NAME                   = DatabaseSchema.Attachments.NAME;
+          static final String CONTENT_DISPOSITION    = DatabaseSchema.Attachments.CONTENT_DISPOSITION;
+          static final String CONTENT_LOCATION       = DatabaseSchema.Attachments.CONTENT_LOCATION;
+  public  static final String DATA                   = DatabaseSchema.Attachments.DATA;
+          static final String TRANSFER_STATE         = DatabaseSchema.Attachments.TRANSFER_STATE;
+  public  static final String SIZE                   = DatabaseSchema.Attachments.SIZE;
+          static final String FILE_NAME              = DatabaseSchema.Attachments.FILE_NAME;
+  public  static final String THUMBNAIL              = DatabaseSchema.Attachments.THUMBNAIL;
+          static final String THUMBNAIL_ASPECT_RATIO = DatabaseSchema.Attachments.THUMBNAIL_ASPECT_RATIO;
+  public  static final String UNIQUE_ID              = DatabaseSchema.Attachments.UNIQUE_ID;
+          static final String DIGEST                 = DatabaseSchema.Attachments.DIGEST;
+          static final String VOICE_NOTE             = DatabaseSchema.Attachments.VOICE_NOTE;
+          static final String QUOTE                  = DatabaseSchema.Attachments.QUOTE;
+  public  static final String STICKER_PACK_ID        = DatabaseSchema.Attachments.STICKER_PACK_ID;
+  public  static final String STICKER_PACK_KEY       = DatabaseSchema.Attachments.STICKER_PACK_KEY;
+          static final String STICKER_ID             = DatabaseSchema.Attachments.STICKER_ID;
+          static final String FAST_PREFLIGHT_ID      = DatabaseSchema.Attachments.FAST_PREFLIGHT_ID;
+  public  static final String DATA_RANDOM            = DatabaseSchema.Attachments.DATA_RANDOM;
+  private static final String THUMBNAIL_RANDOM       = DatabaseSchema.Attachments.THUMBNAIL_RANDOM;
+          static final String WIDTH                  = DatabaseSchema.Attachments.WIDTH;
+          static final String HEIGHT                 = DatabaseSchema.Attachments.HEIGHT;
+          static final String CAPTION                = DatabaseSchema.Attachments.CAPTION;
+  public  static final String URL                    = DatabaseSchema.Attachments.URL;
   public  static final String DIRECTORY              = "parts";
   // "audio/*" mime type only related columns.
-          static final String AUDIO_VISUAL_SAMPLES   = "audio_visual_samples";  // Small amount of audio byte samples to visualise the content (e.g. draw waveform).
-          static final String AUDIO_DURATION         = "audio_duration";        // Duration of the audio track in milliseconds.
+          static final String AUDIO_VISUAL_SAMPLES   = DatabaseSchema.Attachments.AUDIO_VISUAL_SAMPLES;  // Small amount of audio byte samples to visualise the content (e.g. draw waveform).
+          static final String AUDIO_DURATION         = DatabaseSchema.Attachments.AUDIO_DURATION;        // Duration of the audio track in milliseconds.
 
   private static final String PART_ID_WHERE = ROW_ID + " = ? AND " + UNIQUE_ID + " = ?";
   private static final String ROW_ID_WHERE = ROW_ID + " = ?";
@@ -134,26 +134,9 @@ public class AttachmentDatabase extends Database {
 
   private static final String[] PROJECTION_AUDIO_EXTRAS = new String[] {AUDIO_VISUAL_SAMPLES, AUDIO_DURATION};
 
-  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ROW_ID + " INTEGER PRIMARY KEY, " +
-    MMS_ID + " INTEGER, " + "seq" + " INTEGER DEFAULT 0, "                        +
-    CONTENT_TYPE + " TEXT, " + NAME + " TEXT, " + "chset" + " INTEGER, "             +
-    CONTENT_DISPOSITION + " TEXT, " + "fn" + " TEXT, " + "cid" + " TEXT, "  +
-    CONTENT_LOCATION + " TEXT, " + "ctt_s" + " INTEGER, "                 +
-    "ctt_t" + " TEXT, " + "encrypted" + " INTEGER, "                         +
-    TRANSFER_STATE + " INTEGER, "+ DATA + " TEXT, " + SIZE + " INTEGER, "   +
-    FILE_NAME + " TEXT, " + THUMBNAIL + " TEXT, " + THUMBNAIL_ASPECT_RATIO + " REAL, " +
-    UNIQUE_ID + " INTEGER NOT NULL, " + DIGEST + " BLOB, " + FAST_PREFLIGHT_ID + " TEXT, " +
-    VOICE_NOTE + " INTEGER DEFAULT 0, " + DATA_RANDOM + " BLOB, " + THUMBNAIL_RANDOM + " BLOB, " +
-    QUOTE + " INTEGER DEFAULT 0, " + WIDTH + " INTEGER DEFAULT 0, " + HEIGHT + " INTEGER DEFAULT 0, " +
-    CAPTION + " TEXT DEFAULT NULL, " + URL + " TEXT, " + STICKER_PACK_ID + " TEXT DEFAULT NULL, " +
-    STICKER_PACK_KEY + " DEFAULT NULL, " + STICKER_ID + " INTEGER DEFAULT -1," +
-    AUDIO_VISUAL_SAMPLES + " BLOB, " + AUDIO_DURATION + " INTEGER);";
-
-  public static final String[] CREATE_INDEXS = {
-    "CREATE INDEX IF NOT EXISTS part_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
-    "CREATE INDEX IF NOT EXISTS pending_push_index ON " + TABLE_NAME + " (" + TRANSFER_STATE + ");",
-    "CREATE INDEX IF NOT EXISTS part_sticker_pack_id_index ON " + TABLE_NAME + " (" + STICKER_PACK_ID + ");",
-  };
+  public static final String CREATE_TABLE = DatabaseSchema.Attachments.CREATE_TABLE;
+
+  public static final String[] CREATE_INDEXS = DatabaseSchema.Attachments.CREATE_INDEXS;
 
   private final ExecutorService thumbnailExecutor = Util.newSingleThreadedLifoExecutor();
 
@@ -341,6 +324,36 @@ public class AttachmentDatabase extends Database {
     notifyAttachmentListeners();
   }
 
+  /**
+   * Deletes the attachment rows of every message selected by {@code mmsIdQuery}, a query returning
+   * message ids, so that it can run inside a larger transaction. The returned files should be passed
+   * to {@link #deleteAttachmentFiles(List)} once that transaction has been committed.
+   */
+  @NonNull List<MmsAttachmentInfo> deleteAttachmentRowsForMessages(@NonNull String mmsIdQuery, @Nullable String[] args) {
+    SQLiteDatabase          database        = databaseHelper.getWritableDatabase();
+    String                  where           = MMS_ID + " IN (" + mmsIdQuery + ")";
+    List<MmsAttachmentInfo> attachmentInfos = new ArrayList<>();
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {DATA, THUMBNAIL, CONTENT_TYPE}, where, args, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        attachmentInfos.add(new MmsAttachmentInfo(cursor.getString(0), cursor.getString(1), cursor.getString(2)));
+      }
+    }
+
+    if (!attachmentInfos.isEmpty()) {
+      database.delete(TABLE_NAME, where, args);
+    }
+
+    return attachmentInfos;
+  }
+
+  void deleteAttachmentFiles(@NonNull List<MmsAttachmentInfo> attachmentInfos) {
+    if (attachmentInfos.isEmpty()) return;
+
+    deleteAttachmentsOnDisk(attachmentInfos);
+    notifyAttachmentListeners();
+  }
+
   public void deleteAttachment(@NonNull AttachmentId id) {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
 
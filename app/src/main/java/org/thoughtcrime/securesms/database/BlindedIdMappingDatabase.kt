@@ -10,23 +10,15 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 class BlindedIdMappingDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper) {
 
     companion object {
-        const val TABLE_NAME = "blinded_id_mapping"
-        const val ROW_ID = "_id"
-        const val BLINDED_PK = "blinded_pk"
-        const val SESSION_PK = "session_pk"
-        const val SERVER_URL = "server_url"
-        const val SERVER_PK = "server_pk"
+        const val TABLE_NAME = DatabaseSchema.BlindedIdMappings.TABLE_NAME
+        const val ROW_ID = DatabaseSchema.BlindedIdMappings.ROW_ID
+        const val BLINDED_PK = DatabaseSchema.BlindedIdMappings.BLINDED_PK
+        const val SESSION_PK = DatabaseSchema.BlindedIdMappings.SESSION_PK
+        const val SERVER_URL = DatabaseSchema.BlindedIdMappings.SERVER_URL
+        const val SERVER_PK = DatabaseSchema.BlindedIdMappings.SERVER_PK
 
         @JvmField
-        val CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND = """
-      CREATE TABLE $TABLE_NAME (
-        $ROW_ID INTEGER PRIMARY KEY,
-        $BLINDED_PK TEXT NOT NULL,
-        $SESSION_PK TEXT DEFAULT NULL,
-        $SERVER_URL TEXT NOT NULL,
-        $SERVER_PK TEXT NOT NULL
-      )
-    """.trimIndent()
+        val CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND = DatabaseSchema.BlindedIdMappings.CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND
 
         private fun readBlindedIdMapping(cursor: Cursor): BlindedIdMapping {
             return BlindedIdMapping(
@@ -53,17 +45,48 @@ class BlindedIdMappingDatabase(context: Context, helper: SQLCipherOpenHelper) :
         return mappings
     }
 
+    /**
+     * @return the mapping of each of the given blinded ids that has one, preferring the ones that were
+     * resolved to a session id.
+     */
+    fun getBlindedIdMappings(blindedIds: Collection<String>): Map<String, BlindedIdMapping> {
+        val mappings = mutableMapOf<String, BlindedIdMapping>()
+
+        blindedIds.distinct().chunked(900).forEach { chunk ->
+            val query = "$BLINDED_PK IN (${chunk.joinToString(",") { "?" }})"
+
+            readableDatabase.query(TABLE_NAME, null, query, chunk.toTypedArray(), null, null, null).use { cursor ->
+                while (cursor.moveToNext()) {
+                    val mapping = readBlindedIdMapping(cursor)
+                    if (mappings[mapping.blindedId]?.sessionId == null) {
+                        mappings[mapping.blindedId] = mapping
+                    }
+                }
+            }
+        }
+
+        return mappings
+    }
+
     fun addBlindedIdMapping(blindedIdMapping: BlindedIdMapping) {
+        addBlindedIdMappings(listOf(blindedIdMapping))
+    }
+
+    fun addBlindedIdMappings(blindedIdMappings: Collection<BlindedIdMapping>) {
+        if (blindedIdMappings.isEmpty()) return
+
         writableDatabase.beginTransaction()
         try {
-            val values = ContentValues().apply {
-                put(BLINDED_PK, blindedIdMapping.blindedId)
-                put(SERVER_PK, blindedIdMapping.sessionId)
-                put(SERVER_URL, blindedIdMapping.serverUrl)
-                put(SERVER_PK, blindedIdMapping.serverId)
+            blindedIdMappings.forEach { blindedIdMapping ->
+                val values = ContentValues().apply {
+                    put(BLINDED_PK, blindedIdMapping.blindedId)
+                    put(SESSION_PK, blindedIdMapping.sessionId)
+                    put(SERVER_URL, blindedIdMapping.serverUrl)
+                    put(SERVER_PK, blindedIdMapping.serverId)
+                }
+
+                writableDatabase.insert(TABLE_NAME, null, values)
             }
-
-            writableDatabase.insert(TABLE_NAME, null, values)
             writableDatabase.setTransactionSuccessful()
         } finally {
             writableDatabase.endTransaction()
@@ -9,15 +9,14 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 class ConfigDatabase(context: Context, helper: SQLCipherOpenHelper): Database(context, helper) {
 
     companion object {
-        private const val VARIANT = "variant"
-        private const val PUBKEY = "publicKey"
-        private const val DATA = "data"
-        private const val TIMESTAMP = "timestamp"   // Milliseconds
+        private const val VARIANT = DatabaseSchema.Configs.VARIANT
+        private const val PUBKEY = DatabaseSchema.Configs.PUBKEY
+        private const val DATA = DatabaseSchema.Configs.DATA
+        private const val TIMESTAMP = DatabaseSchema.Configs.TIMESTAMP   // Milliseconds
 
-        private const val TABLE_NAME = "configs_table"
+        private const val TABLE_NAME = DatabaseSchema.Configs.TABLE_NAME
 
-        const val CREATE_CONFIG_TABLE_COMMAND =
-            "CREATE TABLE $TABLE_NAME ($VARIANT TEXT NOT NULL, $PUBKEY TEXT NOT NULL, $DATA BLOB, $TIMESTAMP INTEGER NOT NULL DEFAULT 0, PRIMARY KEY($VARIANT, $PUBKEY));"
+        const val CREATE_CONFIG_TABLE_COMMAND = DatabaseSchema.Configs.CREATE_CONFIG_TABLE_COMMAND
 
         private const val VARIANT_AND_PUBKEY_WHERE = "$VARIANT = ? AND $PUBKEY = ?"
     }
@@ -46,8 +45,9 @@ class ConfigDatabase(context: Context, helper: SQLCipherOpenHelper): Database(co
     fun retrieveConfigLastUpdateTimestamp(variant: String, publicKey: String): Long {
         val db = readableDatabase
         val cursor = db.query(TABLE_NAME, arrayOf(TIMESTAMP), VARIANT_AND_PUBKEY_WHERE, arrayOf(variant, publicKey),null, null, null)
-        if (cursor == null) return 0
-        if (!cursor.moveToFirst()) return 0
-        return (cursor.getLongOrNull(cursor.getColumnIndex(TIMESTAMP)) ?: 0)
+        return cursor?.use {
+            if (!it.moveToFirst()) return@use 0L
+            it.getLongOrNull(it.getColumnIndex(TIMESTAMP)) ?: 0L
+        } ?: 0L
     }
 }
\ No newline at end of file
@@ -0,0 +1,399 @@
+package org.thoughtcrime.securesms.database;
+
+import org.thoughtcrime.securesms.database.DatabaseSchema.Attachments;
+import org.thoughtcrime.securesms.database.DatabaseSchema.LokiMessages;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Mms;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Reactions;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Search;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Sms;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Threads;
+
+import java.util.Calendar;
+
+/**
+ * The statements the database classes write out as SQL, rather than build through
+ * {@code SQLiteDatabase.query} and {@code ContentValues}. They only depend on plain Java so that the
+ * benchmark module runs the very same statements as the app.
+ */
+public final class DatabaseQueries {
+
+  // SearchDatabase
+  public static final String SNIPPET              = "snippet";
+  public static final String CONVERSATION_ADDRESS = "conversation_address";
+  public static final String MESSAGE_ADDRESS      = "message_address";
+  public static final String MESSAGE_ID           = "message_id";
+  public static final String IS_MMS               = "is_mms";
+  public static final String SORT_KEY             = "sort_key";
+
+  private static final int MAX_RECIPIENT_RESULTS = 500;
+
+  /**
+   * The contacts and groups matching the query built by {@link #toFtsQuery}, best matches first.
+   * Matches in a nickname count more than ones in a name, which count more than a Session ID prefix.
+   */
+  public static final String RECIPIENTS_QUERY =
+      "SELECT " + Search.RECIPIENT_TABLE_NAME + "." + Search.RECIPIENT_ADDRESS + ", " + Search.RECIPIENT_TABLE_NAME + "." + Search.RECIPIENT_KIND + " " +
+      "FROM " + Search.RECIPIENT_FTS_TABLE_NAME + " " +
+      "INNER JOIN " + Search.RECIPIENT_TABLE_NAME + " ON " + Search.RECIPIENT_TABLE_NAME + "." + Search.RECIPIENT_ID + " = " + Search.RECIPIENT_FTS_TABLE_NAME + "." + Search.ID + " " +
+      "WHERE " + Search.RECIPIENT_FTS_TABLE_NAME + " MATCH ? " +
+      "ORDER BY bm25(" + Search.RECIPIENT_FTS_TABLE_NAME + ", 10.0, 5.0, 1.0) " +
+      "LIMIT " + MAX_RECIPIENT_RESULTS;
+
+  // MmsSmsDatabase
+  public static final String TRANSPORT        = "transport_type";
+  public static final String MMS_TRANSPORT    = "mms";
+  public static final String SMS_TRANSPORT    = "sms";
+  public static final String REACTION_COUNT   = "reaction_count";
+  public static final String LAST_REACTION_ID = "last_reaction_id";
+
+  // LokiMessageDatabase
+  public static final String INSERT_SERVER_ID      = "INSERT OR REPLACE INTO " + LokiMessages.MESSAGE_ID_TABLE + " " +
+                                                     "(" + LokiMessages.MESSAGE_ID + ", " + LokiMessages.SERVER_ID + ", " + LokiMessages.MESSAGE_TYPE + ") VALUES (?, ?, ?)";
+  public static final String INSERT_THREAD_MAPPING = "INSERT OR REPLACE INTO " + LokiMessages.MESSAGE_THREAD_MAPPING_TABLE + " " +
+                                                     "(" + LokiMessages.MESSAGE_ID + ", " + LokiMessages.SERVER_ID + ", " + LokiMessages.THREAD_ID + ") VALUES (?, ?, ?)";
+
+  // ReactionDatabase
+  public static final String DELETE_MESSAGE_REACTIONS = "DELETE FROM " + Reactions.TABLE_NAME + " WHERE " + Reactions.MESSAGE_ID + " = ? AND " + Reactions.IS_MMS + " = ?";
+  public static final String INSERT_REACTION          = "INSERT INTO " + Reactions.TABLE_NAME + " " +
+                                                        "(" + Reactions.MESSAGE_ID + ", " + Reactions.IS_MMS + ", " + Reactions.EMOJI + ", " + Reactions.AUTHOR_ID + ", " + Reactions.SERVER_ID + ", " +
+                                                        Reactions.COUNT + ", " + Reactions.SORT_ID + ", " + Reactions.DATE_SENT + ", " + Reactions.DATE_RECEIVED + ") " +
+                                                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  // MediaDatabase
+  private static final String MEDIA_COLUMNS =
+      Attachments.TABLE_NAME + "." + Attachments.ROW_ID + " AS " + Attachments.ROW_ID + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.CONTENT_TYPE + ", " + Attachments.TABLE_NAME + "." + Attachments.THUMBNAIL_ASPECT_RATIO + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.UNIQUE_ID + ", " + Attachments.TABLE_NAME + "." + Attachments.MMS_ID + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.TRANSFER_STATE + ", " + Attachments.TABLE_NAME + "." + Attachments.SIZE + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.FILE_NAME + ", " + Attachments.TABLE_NAME + "." + Attachments.DATA + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.THUMBNAIL + ", " + Attachments.TABLE_NAME + "." + Attachments.CONTENT_LOCATION + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.CONTENT_DISPOSITION + ", " + Attachments.TABLE_NAME + "." + Attachments.DIGEST + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.FAST_PREFLIGHT_ID + ", " + Attachments.TABLE_NAME + "." + Attachments.VOICE_NOTE + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.WIDTH + ", " + Attachments.TABLE_NAME + "." + Attachments.HEIGHT + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.QUOTE + ", " + Attachments.TABLE_NAME + "." + Attachments.STICKER_PACK_ID + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.STICKER_PACK_KEY + ", " + Attachments.TABLE_NAME + "." + Attachments.STICKER_ID + ", " +
+      Attachments.TABLE_NAME + "." + Attachments.CAPTION + ", " + Attachments.TABLE_NAME + "." + Attachments.NAME + ", " +
+      Mms.TABLE_NAME + "." + Mms.MESSAGE_BOX + ", " + Mms.TABLE_NAME + "." + Mms.DATE_SENT + ", " + Mms.TABLE_NAME + "." + Mms.DATE_RECEIVED + ", " + Mms.TABLE_NAME + "." + Mms.ADDRESS;
+
+  private static final String MEDIA_JOIN = "FROM " + Attachments.TABLE_NAME + " LEFT JOIN " + Mms.TABLE_NAME + " " +
+                                           "ON " + Attachments.TABLE_NAME + "." + Attachments.MMS_ID + " = " + Mms.TABLE_NAME + "." + Mms.ID + " ";
+
+  private static final String MEDIA_SELECTION = Attachments.MMS_ID + " IN (SELECT " + Mms.ID + " FROM " + Mms.TABLE_NAME + " WHERE " + Mms.THREAD_ID + " = ?) AND (%s) AND " +
+                                                Attachments.DATA + " IS NOT NULL AND " + Attachments.QUOTE + " = 0 AND " + Attachments.STICKER_PACK_ID + " IS NULL";
+
+  private static final String BASE_MEDIA_QUERY = "SELECT " + MEDIA_COLUMNS + " " + MEDIA_JOIN + "WHERE " + MEDIA_SELECTION + " ORDER BY " + Attachments.TABLE_NAME + "." + Attachments.ROW_ID + " DESC";
+
+  private static final String GALLERY_MEDIA_CONDITION = "ct LIKE 'image/%' OR ct LIKE 'video/%'";
+
+  /** {@code MediaDatabase.getGalleryMediaForThread}: the images and videos of a thread. Bind the thread. */
+  public static final String GALLERY_MEDIA_QUERY  = String.format(BASE_MEDIA_QUERY, GALLERY_MEDIA_CONDITION);
+  /** {@code MediaDatabase.getDocumentMediaForThread}: the other files of a thread. Bind the thread. */
+  public static final String DOCUMENT_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "ct NOT LIKE 'image/%' AND ct NOT LIKE 'video/%' AND " +
+                                                                                    "ct NOT LIKE 'audio/%' AND ct NOT LIKE 'text/x-signal-plain'");
+
+  public static final String GALLERY_BUCKET   = "gallery_bucket";
+  public static final String GALLERY_DATE     = "gallery_date";
+  public static final String GALLERY_COUNT    = "gallery_count";
+  public static final String GALLERY_CHECKSUM = "gallery_checksum";
+
+  public static final int BUCKET_TODAY      = 0;
+  public static final int BUCKET_YESTERDAY  = 1;
+  public static final int BUCKET_THIS_WEEK  = 2;
+  public static final int BUCKET_THIS_MONTH = 3;
+
+  /**
+   * Older media is bucketed by month, as this minus the year and month written as yyyymm, so that
+   * the buckets sort from the most recent to the oldest.
+   */
+  public static final int MONTH_BUCKET_BASE = 1000000;
+
+  private static final String GALLERY_INDEX = "gallery_index";
+  private static final String GALLERY_ID    = Attachments.ROW_ID;
+
+  private static final String GALLERY_MEDIA_TABLE = "gallery_media";
+  private static final String GALLERY_PAGE_TABLE  = "gallery_page";
+
+  private static final String GALLERY_DATE_QUERY = "SELECT " + Attachments.TABLE_NAME + "." + Attachments.ROW_ID + " AS " + GALLERY_ID + ", " +
+                                                   "CASE WHEN (" + Mms.TABLE_NAME + "." + Mms.MESSAGE_BOX + " & " + MmsSmsColumns.Types.PUSH_MESSAGE_BIT + ") != 0 " +
+                                                   "THEN " + Mms.TABLE_NAME + "." + Mms.DATE_SENT + " ELSE " + Mms.TABLE_NAME + "." + Mms.DATE_RECEIVED + " END AS " + GALLERY_DATE + " " +
+                                                   MEDIA_JOIN + "WHERE " + String.format(MEDIA_SELECTION, GALLERY_MEDIA_CONDITION);
+
+  private static final String GALLERY_MONTH_BUCKET = MONTH_BUCKET_BASE + " - CAST(strftime('%Y%m', " + GALLERY_DATE + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+
+  private static final String GALLERY_ORDER = GALLERY_DATE + " DESC, " + GALLERY_ID + " DESC";
+
+  private DatabaseQueries() {}
+
+  /**
+   * {@code ThreadDatabase.getTrimCutoffDate}: the received date of the message at position
+   * {@code length} when ordering the thread by sent date, newest first, and that of the message after
+   * it if there is one. Bind the thread twice.
+   */
+  public static String getTrimCutoffDate(int length) {
+    String smsQuery = "SELECT " + Sms.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+                      Sms.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED +
+                      " FROM " + Sms.TABLE_NAME + " WHERE " + MmsSmsColumns.THREAD_ID + " = ?" +
+                      " ORDER BY " + Sms.DATE_SENT + " DESC LIMIT " + (length + 1);
+    String mmsQuery = "SELECT " + Mms.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+                      Mms.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED +
+                      " FROM " + Mms.TABLE_NAME + " WHERE " + MmsSmsColumns.THREAD_ID + " = ?" +
+                      " ORDER BY " + Mms.DATE_SENT + " DESC LIMIT " + (length + 1);
+
+    // Each side only needs its newest messages, which the thread and sent date indexes give directly
+    return "SELECT " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " FROM (" +
+           "SELECT * FROM (" + smsQuery + ") UNION ALL SELECT * FROM (" + mmsQuery + ")" +
+           ") ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC LIMIT 2 OFFSET " + (length - 1);
+  }
+
+  /**
+   * {@code SmsDatabase.deleteMessagesInThreadBeforeDate}: the messages of a thread older than
+   * {@code date}, by sent date for outgoing messages and received date for incoming ones. Bind the
+   * thread.
+   */
+  public static String getSmsTrimSelection(long date) {
+    return MmsSmsColumns.THREAD_ID + " = ? AND " + getTrimCondition(Sms.TYPE, Sms.DATE_SENT, Sms.DATE_RECEIVED, date);
+  }
+
+  /**
+   * {@code MmsDatabase.deleteMessagesInThreadBeforeDate}, as {@link #getSmsTrimSelection}.
+   */
+  public static String getMmsTrimSelection(long date) {
+    return MmsSmsColumns.THREAD_ID + " = ? AND " + getTrimCondition("(" + Mms.MESSAGE_BOX + " & " + MmsSmsColumns.Types.BASE_TYPE_MASK + ") ",
+                                                                    Mms.DATE_SENT, Mms.DATE_RECEIVED, date);
+  }
+
+  private static String getTrimCondition(String type, String dateSent, String dateReceived, long date) {
+    StringBuilder condition = new StringBuilder("(CASE ").append(type);
+
+    for (long outgoingType : MmsSmsColumns.Types.OUTGOING_MESSAGE_TYPES) {
+      condition.append(" WHEN ").append(outgoingType).append(" THEN ").append(dateSent).append(" < ").append(date);
+    }
+
+    return condition.append(" ELSE ").append(dateReceived).append(" < ").append(date).append(" END)").toString();
+  }
+
+  /**
+   * {@code MmsSmsDatabase.getUnreadKeys}: the id, transport and thread of every unread message that
+   * hasn't been notified yet, oldest first, with the number of its reactions and the id of the
+   * newest one, so that callers can tell which messages changed without loading their records.
+   *
+   * @param threadSelection narrows the messages down further, or null for those of every thread.
+   */
+  public static String getUnreadKeys(String threadSelection) {
+    String selection = "(" + MmsSmsColumns.READ + " = 0 OR " + MmsSmsColumns.REACTIONS_UNREAD + " = 1) AND " + MmsSmsColumns.NOTIFIED + " = 0" +
+                       (threadSelection != null ? " AND " + threadSelection : "");
+
+    return "SELECT " + MmsSmsColumns.ID + ", '" + SMS_TRANSPORT + "' AS " + TRANSPORT + ", " + MmsSmsColumns.THREAD_ID + ", " +
+           Sms.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+           getReactionSummaryColumns(Sms.TABLE_NAME, 0) +
+           " FROM " + Sms.TABLE_NAME + " WHERE " + selection +
+           " UNION ALL " +
+           "SELECT " + MmsSmsColumns.ID + ", '" + MMS_TRANSPORT + "' AS " + TRANSPORT + ", " + MmsSmsColumns.THREAD_ID + ", " +
+           Mms.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+           getReactionSummaryColumns(Mms.TABLE_NAME, 1) +
+           " FROM " + Mms.TABLE_NAME + " WHERE " + selection +
+           " ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + " ASC";
+  }
+
+  private static String getReactionSummaryColumns(String table, int isMms) {
+    String where = " FROM " + Reactions.TABLE_NAME +
+                   " WHERE " + Reactions.TABLE_NAME + "." + Reactions.MESSAGE_ID + " = " + table + "." + MmsSmsColumns.ID +
+                   " AND " + Reactions.TABLE_NAME + "." + Reactions.IS_MMS + " = " + isMms;
+
+    return "(SELECT COUNT(*)" + where + ") AS " + REACTION_COUNT + ", " +
+           "(SELECT IFNULL(MAX(" + Reactions.TABLE_NAME + "." + Reactions.ROW_ID + "), 0)" + where + ") AS " + LAST_REACTION_ID;
+  }
+
+  /**
+   * {@code LokiMessageDatabase.getMessageIDs}: the message id and type of the messages of a thread
+   * with any of {@code count} server ids. Bind the thread, then each server id.
+   */
+  public static String getMessageIdsForServerIds(int count) {
+    StringBuilder placeholders = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      placeholders.append(i == 0 ? "?" : ",?");
+    }
+
+    String mappingTable = LokiMessages.MESSAGE_THREAD_MAPPING_TABLE;
+    String idTable      = LokiMessages.MESSAGE_ID_TABLE;
+
+    return "SELECT " + mappingTable + "." + LokiMessages.MESSAGE_ID + ", " + idTable + "." + LokiMessages.MESSAGE_TYPE + " " +
+           "FROM " + mappingTable + " " +
+           "JOIN " + idTable + " ON " + idTable + "." + LokiMessages.MESSAGE_ID + " = " + mappingTable + "." + LokiMessages.MESSAGE_ID + " " +
+           "WHERE " + mappingTable + "." + LokiMessages.THREAD_ID + " = ? " +
+           "AND " + mappingTable + "." + LokiMessages.SERVER_ID + " IN (" + placeholders + ")";
+  }
+
+  /**
+   * {@code SearchDatabase.queryMessages}: one page of the messages matching a query.
+   *
+   * The matches are first ordered and cut down to the page using nothing but the FTS indexes, and
+   * only then joined back to the message and thread tables to build snippets, so the cost of a
+   * snippet is only paid for the messages of the page.
+   *
+   * Bind, for the SMS and then the MMS matches, the query built by {@link #toFtsQuery} and, if
+   * {@code inThread}, the thread. Then, if {@code afterKey}, the sort key twice, whether the last
+   * message of the previous page is an MMS twice and its id. Then the limit, and the query twice.
+   *
+   * @param byRelevance orders the matches by bm25 rather than newest first.
+   */
+  public static String searchMessages(boolean byRelevance, boolean inThread, boolean afterKey) {
+    StringBuilder sql = new StringBuilder("WITH matches AS (");
+    appendMatches(sql, Sms.TABLE_NAME, Search.SMS_FTS_TABLE_NAME, Sms.DATE_SENT, 0, byRelevance, inThread);
+    sql.append(" UNION ALL ");
+    appendMatches(sql, Mms.TABLE_NAME, Search.MMS_FTS_TABLE_NAME, Mms.DATE_SENT, 1, byRelevance, inThread);
+    sql.append("), page AS (SELECT * FROM matches ");
+
+    if (afterKey) {
+      sql.append("WHERE ").append(SORT_KEY).append(" > CAST(? AS REAL) OR (").append(SORT_KEY).append(" = CAST(? AS REAL) AND (")
+         .append(IS_MMS).append(" > CAST(? AS INTEGER) OR (").append(IS_MMS).append(" = CAST(? AS INTEGER) AND ").append(MESSAGE_ID).append(" > CAST(? AS INTEGER))))");
+    }
+
+    sql.append(" ORDER BY ").append(SORT_KEY).append(", ").append(IS_MMS).append(", ").append(MESSAGE_ID).append(" LIMIT ?) ");
+
+    appendPage(sql, Sms.TABLE_NAME, Search.SMS_FTS_TABLE_NAME, Sms.DATE_SENT, 0);
+    sql.append(" UNION ALL ");
+    appendPage(sql, Mms.TABLE_NAME, Search.MMS_FTS_TABLE_NAME, Mms.DATE_SENT, 1);
+    sql.append(" ORDER BY ").append(SORT_KEY).append(", ").append(IS_MMS).append(", ").append(MESSAGE_ID);
+
+    return sql.toString();
+  }
+
+  private static void appendMatches(StringBuilder sql, String table, String ftsTable, String dateSent, int isMms, boolean byRelevance, boolean inThread) {
+    // Both orders are ascending so that the same keyset condition works for either of them. The
+    // bound keys are cast because neither the FTS columns nor the literals have an affinity.
+    String sortKey = byRelevance ? "bm25(" + ftsTable + ")" : "-" + table + "." + dateSent;
+
+    sql.append("SELECT ").append(ftsTable).append(".").append(Search.ID).append(" AS ").append(MESSAGE_ID).append(", ")
+       .append(isMms).append(" AS ").append(IS_MMS).append(", ")
+       .append(sortKey).append(" AS ").append(SORT_KEY).append(" ")
+       .append("FROM ").append(ftsTable).append(" ");
+
+    if (!byRelevance || inThread) {
+      sql.append("INNER JOIN ").append(table).append(" ON ").append(table).append(".").append(MmsSmsColumns.ID).append(" = ").append(ftsTable).append(".").append(Search.ID).append(" ");
+    }
+
+    sql.append("WHERE ").append(ftsTable).append(" MATCH ?");
+
+    if (inThread) {
+      sql.append(" AND ").append(table).append(".").append(MmsSmsColumns.THREAD_ID).append(" = ?");
+    }
+  }
+
+  private static void appendPage(StringBuilder sql, String table, String ftsTable, String dateSent, int isMms) {
+    sql.append("SELECT ")
+       .append(Threads.TABLE_NAME).append(".").append(Threads.ADDRESS).append(" AS ").append(CONVERSATION_ADDRESS).append(", ")
+       .append(table).append(".").append(MmsSmsColumns.ADDRESS).append(" AS ").append(MESSAGE_ADDRESS).append(", ")
+       .append("snippet(").append(ftsTable).append(", -1, '', '', '...', 7) AS ").append(SNIPPET).append(", ")
+       .append(table).append(".").append(dateSent).append(" AS ").append(MmsSmsColumns.NORMALIZED_DATE_SENT).append(", ")
+       .append(ftsTable).append(".").append(MmsSmsColumns.THREAD_ID).append(", ")
+       .append("page.").append(MESSAGE_ID).append(", page.").append(IS_MMS).append(", page.").append(SORT_KEY).append(" ")
+       .append("FROM page ")
+       .append("INNER JOIN ").append(table).append(" ON ").append(table).append(".").append(MmsSmsColumns.ID).append(" = page.").append(MESSAGE_ID).append(" ")
+       .append("INNER JOIN ").append(ftsTable).append(" ON ").append(ftsTable).append(".").append(Search.ID).append(" = page.").append(MESSAGE_ID).append(" ")
+       .append("INNER JOIN ").append(Threads.TABLE_NAME).append(" ON ").append(ftsTable).append(".").append(MmsSmsColumns.THREAD_ID).append(" = ").append(Threads.TABLE_NAME).append(".").append(Threads.ID).append(" ")
+       .append("WHERE page.").append(IS_MMS).append(" = ").append(isMms).append(" AND ").append(ftsTable).append(" MATCH ?");
+  }
+
+  /**
+   * Turns what the user typed into an FTS query matching messages with words starting with each of
+   * its words.
+   */
+  public static String toFtsQuery(String query) {
+    StringBuilder prefixQuery = new StringBuilder();
+
+    for (String token : query.split(" ")) {
+      if (token.trim().length() == 0) continue;
+      if (prefixQuery.length() > 0) prefixQuery.append("* ");
+      prefixQuery.append(token);
+    }
+
+    return prefixQuery.append('*').toString();
+  }
+
+  /**
+   * {@code MediaDatabase.getGalleryMediaPagesForThread}: one row for the first item of each page of
+   * each non-empty gallery bucket, in display order, with the {@link #GALLERY_DATE} and id of that
+   * item, the {@link #GALLERY_COUNT} of its bucket and a {@link #GALLERY_CHECKSUM} of the attachment
+   * ids of its bucket. Bind the thread.
+   */
+  public static String getGalleryMediaPages(long now, int pageSize) {
+    String bucketWindow = "OVER (PARTITION BY " + GALLERY_BUCKET + ")";
+
+    return withBucketedGalleryMedia(now) +
+           "SELECT * FROM (" +
+           "SELECT " + GALLERY_BUCKET + ", " + GALLERY_DATE + ", " + GALLERY_ID + ", " +
+           "ROW_NUMBER() OVER (PARTITION BY " + GALLERY_BUCKET + " ORDER BY " + GALLERY_ORDER + ") AS " + GALLERY_INDEX + ", " +
+           "COUNT(*) " + bucketWindow + " AS " + GALLERY_COUNT + ", " +
+           "SUM(" + GALLERY_ID + ") " + bucketWindow + " AS " + GALLERY_CHECKSUM + " " +
+           "FROM " + GALLERY_MEDIA_TABLE + ") " +
+           "WHERE (" + GALLERY_INDEX + " - 1) % " + pageSize + " = 0 " +
+           "ORDER BY " + GALLERY_BUCKET + " ASC, " + GALLERY_INDEX + " ASC";
+  }
+
+  /**
+   * {@code MediaDatabase.getGalleryMediaForBucket}: up to {@code limit} items of a bucket, starting
+   * from the one with the given date and id, as returned by {@link #getGalleryMediaPages}. Bind the
+   * thread.
+   */
+  public static String getGalleryMediaForBucket(long now, int bucket, long startDate, long startId, int limit) {
+    return getGalleryMediaPage(now,
+                               GALLERY_BUCKET + " = " + bucket + " " +
+                               "AND (" + GALLERY_DATE + " < " + startDate + " OR (" + GALLERY_DATE + " = " + startDate + " AND " + GALLERY_ID + " <= " + startId + "))",
+                               limit);
+  }
+
+  /**
+   * {@code MediaDatabase.getGalleryMediaFromBucket}: the first {@code limit} items in display order,
+   * from the start of a bucket on through the buckets after it. Bind the thread.
+   */
+  public static String getGalleryMediaFromBucket(long now, int bucket, int limit) {
+    return getGalleryMediaPage(now, GALLERY_BUCKET + " >= " + bucket, limit);
+  }
+
+  /**
+   * The items are picked from the dates and buckets alone, and only the ones picked are joined back
+   * to their attachment and message.
+   */
+  private static String getGalleryMediaPage(long now, String selection, int limit) {
+    String order = GALLERY_BUCKET + " ASC, " + GALLERY_ORDER;
+
+    return withBucketedGalleryMedia(now) +
+           "SELECT " + MEDIA_COLUMNS + ", " + GALLERY_PAGE_TABLE + "." + GALLERY_DATE + ", " + GALLERY_PAGE_TABLE + "." + GALLERY_BUCKET + " " +
+           "FROM (SELECT * FROM " + GALLERY_MEDIA_TABLE + " WHERE " + selection + " ORDER BY " + order + " LIMIT " + limit + ") AS " + GALLERY_PAGE_TABLE + " " +
+           "INNER JOIN " + Attachments.TABLE_NAME + " ON " + Attachments.TABLE_NAME + "." + Attachments.ROW_ID + " = " + GALLERY_PAGE_TABLE + "." + GALLERY_ID + " " +
+           "LEFT JOIN " + Mms.TABLE_NAME + " ON " + Attachments.TABLE_NAME + "." + Attachments.MMS_ID + " = " + Mms.TABLE_NAME + "." + Mms.ID + " " +
+           "ORDER BY " + GALLERY_PAGE_TABLE + "." + GALLERY_BUCKET + " ASC, " + GALLERY_PAGE_TABLE + "." + GALLERY_DATE + " DESC, " + GALLERY_PAGE_TABLE + "." + GALLERY_ID + " DESC";
+  }
+
+  /**
+   * The id, {@link #GALLERY_DATE} and {@link #GALLERY_BUCKET} of every image and video of the thread,
+   * as a table that's worked out once. Otherwise SQLite works the bucket, which converts the date to
+   * local time, out again everywhere it's used.
+   */
+  private static String withBucketedGalleryMedia(long now) {
+    return "WITH " + GALLERY_MEDIA_TABLE + " AS MATERIALIZED (" +
+           "SELECT " + GALLERY_ID + ", " + GALLERY_DATE + ", " + getGalleryBucket(now) + " AS " + GALLERY_BUCKET + " FROM (" + GALLERY_DATE_QUERY + ")) ";
+  }
+
+  /**
+   * The bucket of the media dated {@link #GALLERY_DATE}, as an SQL expression.
+   */
+  public static String getGalleryBucket(long now) {
+    // The boundaries are written into the query, as bound arguments would be compared as text
+    return "CASE " +
+           "WHEN " + GALLERY_DATE + " > " + addToCalendar(now, Calendar.DAY_OF_YEAR, 1000) + " THEN " + GALLERY_MONTH_BUCKET + " " +
+           "WHEN " + GALLERY_DATE + " > " + addToCalendar(now, Calendar.DAY_OF_YEAR, -1) + " THEN " + BUCKET_TODAY + " " +
+           "WHEN " + GALLERY_DATE + " > " + addToCalendar(now, Calendar.DAY_OF_YEAR, -2) + " THEN " + BUCKET_YESTERDAY + " " +
+           "WHEN " + GALLERY_DATE + " > " + addToCalendar(now, Calendar.DAY_OF_YEAR, -7) + " THEN " + BUCKET_THIS_WEEK + " " +
+           "WHEN " + GALLERY_DATE + " > " + addToCalendar(now, Calendar.DAY_OF_YEAR, -30) + " THEN " + BUCKET_THIS_MONTH + " " +
+           "ELSE " + GALLERY_MONTH_BUCKET + " END";
+  }
+
+  private static long addToCalendar(long time, int field, int amount) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    calendar.add(field, amount);
+    return calendar.getTimeInMillis();
+  }
+}
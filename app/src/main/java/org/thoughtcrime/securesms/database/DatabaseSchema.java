@@ -0,0 +1,619 @@
+package org.thoughtcrime.securesms.database;
+
+/**
+ * The table and column names of the database and the statements that create its tables, indexes
+ * and triggers. The database classes take their constants from here, and as these only depend on
+ * plain Java the benchmark module builds the very same schema as the app.
+ */
+public final class DatabaseSchema {
+
+  private DatabaseSchema() {}
+
+  /** {@code SmsDatabase} */
+  public static final class Sms implements MmsSmsColumns {
+
+    public static final String TABLE_NAME         = "sms";
+           static final String PERSON             = "person";
+           static final String DATE_RECEIVED      = "date";
+           static final String DATE_SENT          = "date_sent";
+           static final String PROTOCOL           = "protocol";
+           static final String STATUS             = "status";
+           static final String TYPE               = "type";
+           static final String REPLY_PATH_PRESENT = "reply_path_present";
+           static final String SUBJECT            = "subject";
+           static final String SERVICE_CENTER     = "service_center";
+
+    public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID + " integer PRIMARY KEY, "                +
+      THREAD_ID + " INTEGER, " + ADDRESS + " TEXT, " + ADDRESS_DEVICE_ID + " INTEGER DEFAULT 1, " + PERSON + " INTEGER, " +
+      DATE_RECEIVED  + " INTEGER, " + DATE_SENT + " INTEGER, " + PROTOCOL + " INTEGER, " + READ + " INTEGER DEFAULT 0, " +
+      STATUS + " INTEGER DEFAULT -1," + TYPE + " INTEGER, " + REPLY_PATH_PRESENT + " INTEGER, " +
+      DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0," + SUBJECT + " TEXT, " + BODY + " TEXT, " +
+      MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, " + SERVICE_CENTER + " TEXT, " + SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " +
+      EXPIRES_IN + " INTEGER DEFAULT 0, " + EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " DEFAULT 0, " +
+      READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + UNIDENTIFIED + " INTEGER DEFAULT 0);";
+
+    public static final String CREATE_THREAD_DATE_SENT_INDEX = "CREATE INDEX IF NOT EXISTS sms_thread_date_sent_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_SENT + ");";
+
+    public static final String[] CREATE_INDEXS = {
+      "CREATE INDEX IF NOT EXISTS sms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
+      "CREATE INDEX IF NOT EXISTS sms_read_index ON " + TABLE_NAME + " (" + READ + ");",
+      "CREATE INDEX IF NOT EXISTS sms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + ","  + THREAD_ID + ");",
+      "CREATE INDEX IF NOT EXISTS sms_type_index ON " + TABLE_NAME + " (" + TYPE + ");",
+      "CREATE INDEX IF NOT EXISTS sms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
+      "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+      CREATE_THREAD_DATE_SENT_INDEX
+    };
+
+    public static final String CREATE_REACTIONS_UNREAD_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + REACTIONS_UNREAD + " INTEGER DEFAULT 0;";
+
+    public static final String CREATE_HAS_MENTION_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + HAS_MENTION + " INTEGER DEFAULT 0;";
+
+    private Sms() {}
+  }
+
+  /** {@code MmsDatabase} */
+  public static final class Mms implements MmsSmsColumns {
+
+    public static final String TABLE_NAME       = "mms";
+           static final String DATE_SENT        = "date";
+           static final String DATE_RECEIVED    = "date_received";
+           static final String MESSAGE_BOX      = "msg_box";
+           static final String CONTENT_LOCATION = "ct_l";
+           static final String EXPIRY           = "exp";
+           static final String MESSAGE_TYPE     = "m_type";
+           static final String MESSAGE_SIZE     = "m_size";
+           static final String STATUS           = "st";
+           static final String TRANSACTION_ID   = "tr_id";
+           static final String PART_COUNT       = "part_count";
+           static final String NETWORK_FAILURE  = "network_failures";
+           static final String QUOTE_ID         = "quote_id";
+           static final String QUOTE_AUTHOR     = "quote_author";
+           static final String QUOTE_BODY       = "quote_body";
+           static final String QUOTE_ATTACHMENT = "quote_attachment";
+           static final String QUOTE_MISSING    = "quote_missing";
+           static final String SHARED_CONTACTS  = "shared_contacts";
+           static final String LINK_PREVIEWS    = "previews";
+
+    public static final String CREATE_TABLE =
+        "CREATE TABLE " + TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+        THREAD_ID + " INTEGER, " + DATE_SENT + " INTEGER, " + DATE_RECEIVED + " INTEGER, " + MESSAGE_BOX + " INTEGER, " +
+        READ + " INTEGER DEFAULT 0, " + "m_id" + " TEXT, " + "sub" + " TEXT, " +
+        "sub_cs" + " INTEGER, " + BODY + " TEXT, " + PART_COUNT + " INTEGER, " +
+        "ct_t" + " TEXT, " + CONTENT_LOCATION + " TEXT, " + ADDRESS + " TEXT, " +
+        ADDRESS_DEVICE_ID + " INTEGER, " +
+        EXPIRY + " INTEGER, " + "m_cls" + " TEXT, " + MESSAGE_TYPE + " INTEGER, " +
+        "v" + " INTEGER, " + MESSAGE_SIZE + " INTEGER, " + "pri" + " INTEGER, " +
+        "rr" + " INTEGER, " + "rpt_a" + " INTEGER, " + "resp_st" + " INTEGER, " +
+        STATUS + " INTEGER, " + TRANSACTION_ID + " TEXT, " + "retr_st" + " INTEGER, " +
+        "retr_txt" + " TEXT, " + "retr_txt_cs" + " INTEGER, " + "read_status" + " INTEGER, " +
+        "ct_cls" + " INTEGER, " + "resp_txt" + " TEXT, " + "d_tm" + " INTEGER, " +
+        DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, " +
+        NETWORK_FAILURE + " TEXT DEFAULT NULL," + "d_rpt" + " INTEGER, " +
+        SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " + EXPIRES_IN + " INTEGER DEFAULT 0, " +
+        EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " INTEGER DEFAULT 0, " +
+        READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + QUOTE_ID + " INTEGER DEFAULT 0, " +
+        QUOTE_AUTHOR + " TEXT, " + QUOTE_BODY + " TEXT, " + QUOTE_ATTACHMENT + " INTEGER DEFAULT -1, " +
+        QUOTE_MISSING + " INTEGER DEFAULT 0, " + SHARED_CONTACTS + " TEXT, " + UNIDENTIFIED + " INTEGER DEFAULT 0, " +
+        LINK_PREVIEWS + " TEXT);";
+
+    public static final String CREATE_THREAD_DATE_SENT_INDEX = "CREATE INDEX IF NOT EXISTS mms_thread_date_sent_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_SENT + ");";
+
+    public static final String[] CREATE_INDEXS = {
+      "CREATE INDEX IF NOT EXISTS mms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
+      "CREATE INDEX IF NOT EXISTS mms_read_index ON " + TABLE_NAME + " (" + READ + ");",
+      "CREATE INDEX IF NOT EXISTS mms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + "," + THREAD_ID + ");",
+      "CREATE INDEX IF NOT EXISTS mms_message_box_index ON " + TABLE_NAME + " (" + MESSAGE_BOX + ");",
+      "CREATE INDEX IF NOT EXISTS mms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
+      "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+      CREATE_THREAD_DATE_SENT_INDEX
+    };
+
+    public static final String CREATE_MESSAGE_REQUEST_RESPONSE_COMMAND = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + MESSAGE_REQUEST_RESPONSE + " INTEGER DEFAULT 0;";
+    public static final String CREATE_REACTIONS_UNREAD_COMMAND         = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + REACTIONS_UNREAD + " INTEGER DEFAULT 0;";
+    public static final String CREATE_REACTIONS_LAST_SEEN_COMMAND      = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + REACTIONS_LAST_SEEN + " INTEGER DEFAULT 0;";
+    public static final String CREATE_HAS_MENTION_COMMAND              = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + HAS_MENTION + " INTEGER DEFAULT 0;";
+
+    private Mms() {}
+  }
+
+  /** {@code AttachmentDatabase} */
+  public static final class Attachments {
+
+    public static final String TABLE_NAME             = "part";
+           static final String ROW_ID                 = "_id";
+           static final String MMS_ID                 = "mid";
+           static final String CONTENT_TYPE           = "ct";
+           static final String NAME                   = "name";
+           static final String CONTENT_DISPOSITION    = "cd";
+           static final String CONTENT_LOCATION       = "cl";
+           static final String DATA                   = "_data";
+           static final String TRANSFER_STATE         = "pending_push";
+           static final String SIZE                   = "data_size";
+           static final String FILE_NAME              = "file_name";
+           static final String THUMBNAIL              = "thumbnail";
+           static final String THUMBNAIL_ASPECT_RATIO = "aspect_ratio";
+           static final String UNIQUE_ID              = "unique_id";
+           static final String DIGEST                 = "digest";
+           static final String VOICE_NOTE             = "voice_note";
+           static final String QUOTE                  = "quote";
+           static final String STICKER_PACK_ID        = "sticker_pack_id";
+           static final String STICKER_PACK_KEY       = "sticker_pack_key";
+           static final String STICKER_ID             = "sticker_id";
+           static final String FAST_PREFLIGHT_ID      = "fast_preflight_id";
+           static final String DATA_RANDOM            = "data_random";
+           static final String THUMBNAIL_RANDOM       = "thumbnail_random";
+           static final String WIDTH                  = "width";
+           static final String HEIGHT                 = "height";
+           static final String CAPTION                = "caption";
+           static final String URL                    = "url";
+    // "audio/*" mime type only related columns.
+           static final String AUDIO_VISUAL_SAMPLES   = "audio_visual_samples";  // Small amount of audio byte samples to visualise the content (e.g. draw waveform).
+           static final String AUDIO_DURATION         = "audio_duration";        // Duration of the audio track in milliseconds.
+
+    public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ROW_ID + " INTEGER PRIMARY KEY, " +
+      MMS_ID + " INTEGER, " + "seq" + " INTEGER DEFAULT 0, "                        +
+      CONTENT_TYPE + " TEXT, " + NAME + " TEXT, " + "chset" + " INTEGER, "             +
+      CONTENT_DISPOSITION + " TEXT, " + "fn" + " TEXT, " + "cid" + " TEXT, "  +
+      CONTENT_LOCATION + " TEXT, " + "ctt_s" + " INTEGER, "                 +
+      "ctt_t" + " TEXT, " + "encrypted" + " INTEGER, "                         +
+      TRANSFER_STATE + " INTEGER, "+ DATA + " TEXT, " + SIZE + " INTEGER, "   +
+      FILE_NAME + " TEXT, " + THUMBNAIL + " TEXT, " + THUMBNAIL_ASPECT_RATIO + " REAL, " +
+      UNIQUE_ID + " INTEGER NOT NULL, " + DIGEST + " BLOB, " + FAST_PREFLIGHT_ID + " TEXT, " +
+      VOICE_NOTE + " INTEGER DEFAULT 0, " + DATA_RANDOM + " BLOB, " + THUMBNAIL_RANDOM + " BLOB, " +
+      QUOTE + " INTEGER DEFAULT 0, " + WIDTH + " INTEGER DEFAULT 0, " + HEIGHT + " INTEGER DEFAULT 0, " +
+      CAPTION + " TEXT DEFAULT NULL, " + URL + " TEXT, " + STICKER_PACK_ID + " TEXT DEFAULT NULL, " +
+      STICKER_PACK_KEY + " DEFAULT NULL, " + STICKER_ID + " INTEGER DEFAULT -1," +
+      AUDIO_VISUAL_SAMPLES + " BLOB, " + AUDIO_DURATION + " INTEGER);";
+
+    public static final String[] CREATE_INDEXS = {
+      "CREATE INDEX IF NOT EXISTS part_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
+      "CREATE INDEX IF NOT EXISTS pending_push_index ON " + TABLE_NAME + " (" + TRANSFER_STATE + ");",
+      "CREATE INDEX IF NOT EXISTS part_sticker_pack_id_index ON " + TABLE_NAME + " (" + STICKER_PACK_ID + ");",
+    };
+
+    private Attachments() {}
+  }
+
+  /** {@code ThreadDatabase} */
+  public static final class Threads {
+
+    public static final String TABLE_NAME             = "thread";
+           static final String ID                     = "_id";
+           static final String THREAD_CREATION_DATE   = "date";
+           static final String MESSAGE_COUNT          = "message_count";
+           static final String ADDRESS                = "recipient_ids";
+           static final String SNIPPET                = "snippet";
+           static final String SNIPPET_CHARSET        = "snippet_cs";
+           static final String READ                   = "read";
+           static final String UNREAD_COUNT           = "unread_count";
+           static final String UNREAD_MENTION_COUNT   = "unread_mention_count";
+           static final String DISTRIBUTION_TYPE      = "type"; // See: DistributionTypes.kt
+           static final String ERROR                  = "error";
+           static final String SNIPPET_TYPE           = "snippet_type";
+           static final String SNIPPET_URI            = "snippet_uri";
+           static final String ARCHIVED               = "archived";
+           static final String STATUS                 = "status";
+           static final String DELIVERY_RECEIPT_COUNT = "delivery_receipt_count";
+           static final String READ_RECEIPT_COUNT     = "read_receipt_count";
+           static final String EXPIRES_IN             = "expires_in";
+           static final String LAST_SEEN              = "last_seen";
+           static final String HAS_SENT               = "has_sent";
+           static final String IS_PINNED              = "is_pinned";
+
+    public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("                    +
+      ID + " INTEGER PRIMARY KEY, " + THREAD_CREATION_DATE + " INTEGER DEFAULT 0, "                  +
+      MESSAGE_COUNT + " INTEGER DEFAULT 0, " + ADDRESS + " TEXT, " + SNIPPET + " TEXT, "             +
+      SNIPPET_CHARSET + " INTEGER DEFAULT 0, " + READ + " INTEGER DEFAULT 1, "                       +
+      DISTRIBUTION_TYPE + " INTEGER DEFAULT 0, " + ERROR + " INTEGER DEFAULT 0, "                    +
+      SNIPPET_TYPE + " INTEGER DEFAULT 0, " + SNIPPET_URI + " TEXT DEFAULT NULL, "                   +
+      ARCHIVED + " INTEGER DEFAULT 0, " + STATUS + " INTEGER DEFAULT 0, "                            +
+      DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + EXPIRES_IN + " INTEGER DEFAULT 0, "          +
+      LAST_SEEN + " INTEGER DEFAULT 0, " + HAS_SENT + " INTEGER DEFAULT 0, "                         +
+      READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + UNREAD_COUNT + " INTEGER DEFAULT 0);";
+
+    public static final String[] CREATE_INDEXES = {
+      "CREATE INDEX IF NOT EXISTS thread_recipient_ids_index ON " + TABLE_NAME + " (" + ADDRESS + ");",
+      "CREATE INDEX IF NOT EXISTS archived_count_index ON " + TABLE_NAME + " (" + ARCHIVED + ", " + MESSAGE_COUNT + ");",
+    };
+
+    public static final String CREATE_PINNED_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + IS_PINNED + " INTEGER DEFAULT 0;";
+
+    public static final String CREATE_UNREAD_MENTION_COUNT_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + UNREAD_MENTION_COUNT + " INTEGER DEFAULT 0;";
+
+    private Threads() {}
+  }
+
+  /** {@code RecipientDatabase} */
+  public static final class Recipients {
+
+    public static final String TABLE_NAME               = "recipient_preferences";
+           static final String ID                       = "_id";
+           static final String ADDRESS                  = "recipient_ids";
+           static final String BLOCK                    = "block";
+           static final String APPROVED                 = "approved";
+           static final String APPROVED_ME              = "approved_me";
+           static final String NOTIFICATION             = "notification";
+           static final String VIBRATE                  = "vibrate";
+           static final String MUTE_UNTIL               = "mute_until";
+           static final String COLOR                    = "color";
+           static final String SEEN_INVITE_REMINDER     = "seen_invite_reminder";
+           static final String DEFAULT_SUBSCRIPTION_ID  = "default_subscription_id";
+           static final String EXPIRE_MESSAGES          = "expire_messages";
+           static final String DISAPPEARING_STATE       = "disappearing_state";
+           static final String REGISTERED               = "registered";
+           static final String PROFILE_KEY              = "profile_key";
+           static final String SYSTEM_DISPLAY_NAME      = "system_display_name";
+           static final String SYSTEM_PHOTO_URI         = "system_contact_photo";
+           static final String SYSTEM_PHONE_LABEL       = "system_phone_label";
+           static final String SYSTEM_CONTACT_URI       = "system_contact_uri";
+           static final String SIGNAL_PROFILE_NAME      = "signal_profile_name";
+           static final String SIGNAL_PROFILE_AVATAR    = "signal_profile_avatar";
+           static final String PROFILE_SHARING          = "profile_sharing_approval";
+           static final String CALL_RINGTONE            = "call_ringtone";
+           static final String CALL_VIBRATE             = "call_vibrate";
+           static final String NOTIFICATION_CHANNEL     = "notification_channel";
+           static final String UNIDENTIFIED_ACCESS_MODE = "unidentified_access_mode";
+           static final String FORCE_SMS_SELECTION      = "force_sms_selection";
+           static final String NOTIFY_TYPE              = "notify_type"; // all, mentions only, none
+           static final String WRAPPER_HASH             = "wrapper_hash";
+           static final String BLOCKS_COMMUNITY_MESSAGE_REQUESTS = "blocks_community_message_requests";
+
+    /** The id of {@code Recipient.VibrateState.DEFAULT}. */
+    private static final int VIBRATE_STATE_DEFAULT = 0;
+
+    public static final String CREATE_TABLE =
+        "CREATE TABLE " + TABLE_NAME +
+            " (" + ID + " INTEGER PRIMARY KEY, " +
+            ADDRESS + " TEXT UNIQUE, " +
+            BLOCK + " INTEGER DEFAULT 0," +
+            NOTIFICATION + " TEXT DEFAULT NULL, " +
+            VIBRATE + " INTEGER DEFAULT " + VIBRATE_STATE_DEFAULT + ", " +
+            MUTE_UNTIL + " INTEGER DEFAULT 0, " +
+            COLOR + " TEXT DEFAULT NULL, " +
+            SEEN_INVITE_REMINDER + " INTEGER DEFAULT 0, " +
+            DEFAULT_SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " +
+            EXPIRE_MESSAGES + " INTEGER DEFAULT 0, " +
+            REGISTERED + " INTEGER DEFAULT 0, " +
+            SYSTEM_DISPLAY_NAME + " TEXT DEFAULT NULL, " +
+            SYSTEM_PHOTO_URI + " TEXT DEFAULT NULL, " +
+            SYSTEM_PHONE_LABEL + " TEXT DEFAULT NULL, " +
+            SYSTEM_CONTACT_URI + " TEXT DEFAULT NULL, " +
+            PROFILE_KEY + " TEXT DEFAULT NULL, " +
+            SIGNAL_PROFILE_NAME + " TEXT DEFAULT NULL, " +
+            SIGNAL_PROFILE_AVATAR + " TEXT DEFAULT NULL, " +
+            PROFILE_SHARING + " INTEGER DEFAULT 0, " +
+            CALL_RINGTONE + " TEXT DEFAULT NULL, " +
+            CALL_VIBRATE + " INTEGER DEFAULT " + VIBRATE_STATE_DEFAULT + ", " +
+            NOTIFICATION_CHANNEL + " TEXT DEFAULT NULL, " +
+            UNIDENTIFIED_ACCESS_MODE + " INTEGER DEFAULT 0, " +
+            FORCE_SMS_SELECTION + " INTEGER DEFAULT 0);";
+
+    public static final String CREATE_NOTIFICATION_TYPE_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + NOTIFY_TYPE + " INTEGER DEFAULT 0;";
+
+    public static final String CREATE_APPROVED_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + APPROVED + " INTEGER DEFAULT 0;";
+
+    public static final String CREATE_APPROVED_ME_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + APPROVED_ME + " INTEGER DEFAULT 0;";
+
+    public static final String CREATE_DISAPPEARING_STATE_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + DISAPPEARING_STATE + " INTEGER DEFAULT 0;";
+
+    public static final String ADD_WRAPPER_HASH = "ALTER TABLE "+TABLE_NAME+" "+
+            "ADD COLUMN "+WRAPPER_HASH+" TEXT DEFAULT NULL;";
+
+    public static final String ADD_BLOCKS_COMMUNITY_MESSAGE_REQUESTS = "ALTER TABLE "+TABLE_NAME+" "+
+            "ADD COLUMN "+BLOCKS_COMMUNITY_MESSAGE_REQUESTS+" INT DEFAULT 0;";
+
+    private Recipients() {}
+  }
+
+  /** {@code GroupDatabase} */
+  public static final class Groups {
+
+    public static final String TABLE_NAME          = "groups";
+           static final String ID                  = "_id";
+           static final String GROUP_ID            = "group_id";
+           static final String TITLE               = "title";
+           static final String MEMBERS             = "members";
+           static final String ZOMBIE_MEMBERS      = "zombie_members";
+           static final String AVATAR              = "avatar";
+           static final String AVATAR_ID           = "avatar_id";
+           static final String AVATAR_KEY          = "avatar_key";
+           static final String AVATAR_CONTENT_TYPE = "avatar_content_type";
+           static final String AVATAR_RELAY        = "avatar_relay";
+           static final String AVATAR_DIGEST       = "avatar_digest";
+           static final String TIMESTAMP           = "timestamp";
+           static final String ACTIVE              = "active";
+           static final String MMS                 = "mms";
+           static final String UPDATED             = "updated";
+
+    // Loki
+           static final String AVATAR_URL          = "avatar_url";
+           static final String ADMINS              = "admins";
+
+    public static final String CREATE_TABLE =
+        "CREATE TABLE " + TABLE_NAME +
+            " (" + ID + " INTEGER PRIMARY KEY, " +
+            GROUP_ID + " TEXT, " +
+            TITLE + " TEXT, " +
+            MEMBERS + " TEXT, " +
+            ZOMBIE_MEMBERS + " TEXT, " +
+            AVATAR + " BLOB, " +
+            AVATAR_ID + " INTEGER, " +
+            AVATAR_KEY + " BLOB, " +
+            AVATAR_CONTENT_TYPE + " TEXT, " +
+            AVATAR_RELAY + " TEXT, " +
+            TIMESTAMP + " INTEGER, " +
+            ACTIVE + " INTEGER DEFAULT 1, " +
+            AVATAR_DIGEST + " BLOB, " +
+            AVATAR_URL + " TEXT, " +
+            ADMINS + " TEXT, " +
+            MMS + " INTEGER DEFAULT 0);";
+
+    public static final String[] CREATE_INDEXS = {
+        "CREATE UNIQUE INDEX IF NOT EXISTS group_id_index ON " + TABLE_NAME + " (" + GROUP_ID + ");",
+    };
+
+    public static final String CREATE_UPDATED_TIMESTAMP_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
+            "ADD COLUMN " + UPDATED + " INTEGER DEFAULT 0;";
+
+    private Groups() {}
+  }
+
+  /** {@code SessionContactDatabase} */
+  public static final class SessionContacts {
+
+    public static final String TABLE_NAME                     = "session_contact_database";
+           static final String SESSION_ID                     = "session_id";
+           static final String NAME                           = "name";
+           static final String NICKNAME                       = "nickname";
+           static final String PROFILE_PICTURE_URL            = "profile_picture_url";
+           static final String PROFILE_PICTURE_FILE_NAME      = "profile_picture_file_name";
+           static final String PROFILE_PICTURE_ENCRYPTION_KEY = "profile_picture_encryption_key";
+           static final String THREAD_ID                      = "thread_id";
+           static final String IS_TRUSTED                     = "is_trusted";
+
+    public static final String CREATE_TABLE =
+        "CREATE TABLE " + TABLE_NAME + " " +
+            "(" + SESSION_ID + " STRING PRIMARY KEY, " +
+            NAME + " TEXT DEFAULT NULL, " +
+            NICKNAME + " TEXT DEFAULT NULL, " +
+            PROFILE_PICTURE_URL + " TEXT DEFAULT NULL, " +
+            PROFILE_PICTURE_FILE_NAME + " TEXT DEFAULT NULL, " +
+            PROFILE_PICTURE_ENCRYPTION_KEY + " BLOB DEFAULT NULL, " +
+            THREAD_ID + " INTEGER DEFAULT -1, " +
+            IS_TRUSTED + " INTEGER DEFAULT 0);";
+
+    private SessionContacts() {}
+  }
+
+  /** {@code SearchDatabase} */
+  public static final class Search {
+
+    public static final String SMS_FTS_TABLE_NAME = "sms_fts";
+    public static final String MMS_FTS_TABLE_NAME = "mms_fts";
+
+           static final String ID        = "rowid";
+           static final String BODY      = MmsSmsColumns.BODY;
+           static final String THREAD_ID = MmsSmsColumns.THREAD_ID;
+
+    public static final String[] CREATE_TABLE = {
+        "CREATE VIRTUAL TABLE " + SMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + Sms.TABLE_NAME + ", content_rowid=" + Sms.ID + ");",
+
+        "CREATE TRIGGER sms_ai AFTER INSERT ON " + Sms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + Sms.ID + ", new." + Sms.BODY + ", new." + Sms.THREAD_ID + ");\n" +
+            "END;\n",
+        "CREATE TRIGGER sms_ad AFTER DELETE ON " + Sms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + SMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + Sms.ID + ", old." + Sms.BODY + ", old." + Sms.THREAD_ID + ");\n" +
+            "END;\n",
+        "CREATE TRIGGER sms_au AFTER UPDATE ON " + Sms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + SMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + Sms.ID + ", old." + Sms.BODY + ", old." + Sms.THREAD_ID + ");\n" +
+            "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES(new." + Sms.ID + ", new." + Sms.BODY + ", new." + Sms.THREAD_ID + ");\n" +
+            "END;",
+
+
+        "CREATE VIRTUAL TABLE " + MMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + Mms.TABLE_NAME + ", content_rowid=" + Mms.ID + ");",
+
+        "CREATE TRIGGER mms_ai AFTER INSERT ON " + Mms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + Mms.ID + ", new." + Mms.BODY + ", new." + Mms.THREAD_ID + ");\n" +
+            "END;\n",
+        "CREATE TRIGGER mms_ad AFTER DELETE ON " + Mms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + MMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + Mms.ID + ", old." + Mms.BODY + ", old." + Mms.THREAD_ID + ");\n" +
+            "END;\n",
+        "CREATE TRIGGER mms_au AFTER UPDATE ON " + Mms.TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + MMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + Mms.ID + ", old." + Mms.BODY + ", old." + Mms.THREAD_ID + ");\n" +
+            "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + Mms.ID + ", new." + Mms.BODY + ", new." + Mms.THREAD_ID + ");\n" +
+            "END;"
+    };
+
+    public static final String RECIPIENT_TABLE_NAME     = "recipient_search";
+    public static final String RECIPIENT_FTS_TABLE_NAME = "recipient_fts";
+
+           static final String RECIPIENT_ID         = "_id";
+           static final String RECIPIENT_ADDRESS    = "address";
+           static final String RECIPIENT_KIND       = "kind";
+           static final String RECIPIENT_NICKNAME   = "nickname";
+           static final String RECIPIENT_NAME       = "name";
+           static final String RECIPIENT_SESSION_ID = "session_id";
+
+           static final int RECIPIENT_KIND_CONTACT = 0;
+           static final int RECIPIENT_KIND_GROUP   = 1;
+
+           static final String RECIPIENT_COLUMNS = RECIPIENT_ADDRESS + ", " + RECIPIENT_KIND + ", " + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID;
+
+    /**
+     * Contacts (name, nickname and Session ID) and groups (title, which is also the name of a
+     * community) share one FTS index so that they can be searched with a single query. The index reads
+     * from {@link #RECIPIENT_TABLE_NAME}, which the triggers below keep in sync with the contact and
+     * group tables. It has its own integer primary key because the implicit row ids of the contact
+     * table aren't stable across a VACUUM.
+     */
+    public static final String[] CREATE_RECIPIENT_TABLE = {
+        "CREATE TABLE " + RECIPIENT_TABLE_NAME + " (" + RECIPIENT_ID + " INTEGER PRIMARY KEY, " + RECIPIENT_ADDRESS + " TEXT UNIQUE, " +
+            RECIPIENT_KIND + " INTEGER NOT NULL, " + RECIPIENT_NICKNAME + " TEXT, " + RECIPIENT_NAME + " TEXT, " + RECIPIENT_SESSION_ID + " TEXT);",
+
+        "CREATE VIRTUAL TABLE " + RECIPIENT_FTS_TABLE_NAME + " USING fts5(" + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID + ", " +
+            "content=" + RECIPIENT_TABLE_NAME + ", content_rowid=" + RECIPIENT_ID + ", prefix='2 3');",
+
+        "CREATE TRIGGER recipient_search_ai AFTER INSERT ON " + RECIPIENT_TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + RECIPIENT_FTS_TABLE_NAME + "(" + ID + ", " + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID + ") VALUES (new." + RECIPIENT_ID + ", new." + RECIPIENT_NICKNAME + ", new." + RECIPIENT_NAME + ", new." + RECIPIENT_SESSION_ID + ");\n" +
+            "END;",
+        "CREATE TRIGGER recipient_search_ad AFTER DELETE ON " + RECIPIENT_TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + RECIPIENT_FTS_TABLE_NAME + "(" + RECIPIENT_FTS_TABLE_NAME + ", " + ID + ", " + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID + ") VALUES ('delete', old." + RECIPIENT_ID + ", old." + RECIPIENT_NICKNAME + ", old." + RECIPIENT_NAME + ", old." + RECIPIENT_SESSION_ID + ");\n" +
+            "END;",
+        "CREATE TRIGGER recipient_search_au AFTER UPDATE ON " + RECIPIENT_TABLE_NAME + " BEGIN\n" +
+            "  INSERT INTO " + RECIPIENT_FTS_TABLE_NAME + "(" + RECIPIENT_FTS_TABLE_NAME + ", " + ID + ", " + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID + ") VALUES ('delete', old." + RECIPIENT_ID + ", old." + RECIPIENT_NICKNAME + ", old." + RECIPIENT_NAME + ", old." + RECIPIENT_SESSION_ID + ");\n" +
+            "  INSERT INTO " + RECIPIENT_FTS_TABLE_NAME + "(" + ID + ", " + RECIPIENT_NICKNAME + ", " + RECIPIENT_NAME + ", " + RECIPIENT_SESSION_ID + ") VALUES (new." + RECIPIENT_ID + ", new." + RECIPIENT_NICKNAME + ", new." + RECIPIENT_NAME + ", new." + RECIPIENT_SESSION_ID + ");\n" +
+            "END;",
+
+        "CREATE TRIGGER session_contact_search_ai AFTER INSERT ON " + SessionContacts.TABLE_NAME + " BEGIN\n" +
+            "  DELETE FROM " + RECIPIENT_TABLE_NAME + " WHERE " + RECIPIENT_ADDRESS + " = new." + SessionContacts.SESSION_ID + ";\n" +
+            "  INSERT INTO " + RECIPIENT_TABLE_NAME + "(" + RECIPIENT_COLUMNS + ") VALUES (new." + SessionContacts.SESSION_ID + ", " + RECIPIENT_KIND_CONTACT + ", new." + SessionContacts.NICKNAME + ", new." + SessionContacts.NAME + ", new." + SessionContacts.SESSION_ID + ");\n" +
+            "END;",
+        "CREATE TRIGGER session_contact_search_ad AFTER DELETE ON " + SessionContacts.TABLE_NAME + " BEGIN\n" +
+            "  DELETE FROM " + RECIPIENT_TABLE_NAME + " WHERE " + RECIPIENT_ADDRESS + " = old." + SessionContacts.SESSION_ID + ";\n" +
+            "END;",
+        "CREATE TRIGGER session_contact_search_au AFTER UPDATE OF " + SessionContacts.NAME + ", " + SessionContacts.NICKNAME + " ON " + SessionContacts.TABLE_NAME + " BEGIN\n" +
+            "  UPDATE " + RECIPIENT_TABLE_NAME + " SET " + RECIPIENT_NICKNAME + " = new." + SessionContacts.NICKNAME + ", " + RECIPIENT_NAME + " = new." + SessionContacts.NAME + " WHERE " + RECIPIENT_ADDRESS + " = new." + SessionContacts.SESSION_ID + ";\n" +
+            "END;",
+
+        "CREATE TRIGGER groups_search_ai AFTER INSERT ON " + Groups.TABLE_NAME + " BEGIN\n" +
+            "  DELETE FROM " + RECIPIENT_TABLE_NAME + " WHERE " + RECIPIENT_ADDRESS + " = new." + Groups.GROUP_ID + ";\n" +
+            "  INSERT INTO " + RECIPIENT_TABLE_NAME + "(" + RECIPIENT_COLUMNS + ") VALUES (new." + Groups.GROUP_ID + ", " + RECIPIENT_KIND_GROUP + ", NULL, new." + Groups.TITLE + ", NULL);\n" +
+            "END;",
+        "CREATE TRIGGER groups_search_ad AFTER DELETE ON " + Groups.TABLE_NAME + " BEGIN\n" +
+            "  DELETE FROM " + RECIPIENT_TABLE_NAME + " WHERE " + RECIPIENT_ADDRESS + " = old." + Groups.GROUP_ID + ";\n" +
+            "END;",
+        "CREATE TRIGGER groups_search_au AFTER UPDATE OF " + Groups.TITLE + " ON " + Groups.TABLE_NAME + " BEGIN\n" +
+            "  UPDATE " + RECIPIENT_TABLE_NAME + " SET " + RECIPIENT_NAME + " = new." + Groups.TITLE + " WHERE " + RECIPIENT_ADDRESS + " = new." + Groups.GROUP_ID + ";\n" +
+            "END;"
+    };
+
+    private Search() {}
+  }
+
+  /** {@code ReactionDatabase} */
+  public static final class Reactions {
+
+    public static final String TABLE_NAME    = "reaction";
+           static final String ROW_ID        = "reaction_id";
+           static final String MESSAGE_ID    = "message_id";
+           static final String IS_MMS        = "is_mms";
+           static final String AUTHOR_ID     = "author_id";
+           static final String SERVER_ID     = "server_id";
+           static final String COUNT         = "count";
+           static final String SORT_ID       = "sort_id";
+           static final String EMOJI         = "emoji";
+           static final String DATE_SENT     = "reaction_date_sent";
+           static final String DATE_RECEIVED = "reaction_date_received";
+
+    public static final String CREATE_REACTION_TABLE_COMMAND =
+        "CREATE TABLE " + TABLE_NAME + " (\n" +
+        "  " + ROW_ID + " INTEGER PRIMARY KEY,\n" +
+        "  " + MESSAGE_ID + " INTEGER NOT NULL,\n" +
+        "  " + IS_MMS + " INTEGER NOT NULL,\n" +
+        "  " + AUTHOR_ID + " INTEGER NOT NULL REFERENCES " + Recipients.TABLE_NAME + " (" + Recipients.ID + ") ON DELETE CASCADE,\n" +
+        "  " + EMOJI + " TEXT NOT NULL,\n" +
+        "  " + SERVER_ID + " TEXT NOT NULL,\n" +
+        "  " + COUNT + " INTEGER NOT NULL,\n" +
+        "  " + SORT_ID + " INTEGER NOT NULL,\n" +
+        "  " + DATE_SENT + " INTEGER NOT NULL,\n" +
+        "  " + DATE_RECEIVED + " INTEGER NOT NULL,\n" +
+        "  UNIQUE(" + MESSAGE_ID + ", " + IS_MMS + ", " + EMOJI + ", " + AUTHOR_ID + ") ON CONFLICT REPLACE\n" +
+        ")";
+
+    public static final String[] CREATE_INDEXS = {
+        "CREATE INDEX IF NOT EXISTS reaction_message_id_index ON " + TABLE_NAME + " (" + MESSAGE_ID + ");",
+        "CREATE INDEX IF NOT EXISTS reaction_is_mms_index ON " + TABLE_NAME + " (" + IS_MMS + ");",
+        "CREATE INDEX IF NOT EXISTS reaction_message_id_is_mms_index ON " + TABLE_NAME + " (" + MESSAGE_ID + ", " + IS_MMS + ");",
+        "CREATE INDEX IF NOT EXISTS reaction_sort_id_index ON " + TABLE_NAME + " (" + SORT_ID + ");",
+    };
+
+    public static final String[] CREATE_REACTION_TRIGGERS = {
+        "CREATE TRIGGER reactions_sms_delete AFTER DELETE ON " + Sms.TABLE_NAME + "\n" +
+        "BEGIN\n" +
+        "  DELETE FROM " + TABLE_NAME + " WHERE " + MESSAGE_ID + " = old." + MmsSmsColumns.ID + " AND " + IS_MMS + " = 0;\n" +
+        "END",
+        "CREATE TRIGGER reactions_mms_delete AFTER DELETE ON " + Mms.TABLE_NAME + "\n" +
+        "BEGIN\n" +
+        "  DELETE FROM " + TABLE_NAME + " WHERE " + MESSAGE_ID + " = old." + MmsSmsColumns.ID + " AND " + IS_MMS + " = 1;\n" +
+        "END"
+    };
+
+    private Reactions() {}
+  }
+
+  /** {@code LokiMessageDatabase} */
+  public static final class LokiMessages {
+
+    public static final String MESSAGE_ID_TABLE             = "loki_message_friend_request_database";
+    public static final String MESSAGE_THREAD_MAPPING_TABLE = "loki_message_thread_mapping_database";
+    public static final String ERROR_MESSAGE_TABLE          = "loki_error_message_database";
+    public static final String MESSAGE_HASH_TABLE           = "loki_message_hash_database";
+    public static final String SMS_HASH_TABLE               = "loki_sms_hash_database";
+    public static final String MMS_HASH_TABLE               = "loki_mms_hash_database";
+
+           static final String MESSAGE_ID            = "message_id";
+           static final String SERVER_ID             = "server_id";
+           static final String FRIEND_REQUEST_STATUS = "friend_request_status";
+           static final String THREAD_ID             = "thread_id";
+           static final String ERROR_MESSAGE         = "error_message";
+           static final String MESSAGE_TYPE          = "message_type";
+           static final String SERVER_HASH           = "server_hash";
+
+    public static final String CREATE_MESSAGE_ID_TABLE_COMMAND                = "CREATE TABLE " + MESSAGE_ID_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + SERVER_ID + " INTEGER DEFAULT 0, " + FRIEND_REQUEST_STATUS + " INTEGER DEFAULT 0);";
+    public static final String CREATE_MESSAGE_TO_THREAD_MAPPING_TABLE_COMMAND = "CREATE TABLE IF NOT EXISTS " + MESSAGE_THREAD_MAPPING_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + THREAD_ID + " INTEGER);";
+    public static final String CREATE_ERROR_MESSAGE_TABLE_COMMAND             = "CREATE TABLE IF NOT EXISTS " + ERROR_MESSAGE_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + ERROR_MESSAGE + " STRING);";
+    public static final String UPDATE_MESSAGE_ID_TABLE_FOR_TYPE               = "ALTER TABLE " + MESSAGE_ID_TABLE + " ADD COLUMN " + MESSAGE_TYPE + " INTEGER DEFAULT 0; ALTER TABLE " + MESSAGE_ID_TABLE + " ADD CONSTRAINT PK_" + MESSAGE_ID_TABLE + " PRIMARY KEY (" + MESSAGE_ID + ", " + SERVER_ID + ");";
+    public static final String UPDATE_MESSAGE_MAPPING_TABLE                   = "ALTER TABLE " + MESSAGE_THREAD_MAPPING_TABLE + " ADD COLUMN " + SERVER_ID + " INTEGER DEFAULT 0; ALTER TABLE " + MESSAGE_THREAD_MAPPING_TABLE + " ADD CONSTRAINT PK_" + MESSAGE_THREAD_MAPPING_TABLE + " PRIMARY KEY (" + MESSAGE_ID + ", " + SERVER_ID + ");";
+    public static final String CREATE_MESSAGE_HASH_TABLE_COMMAND              = "CREATE TABLE IF NOT EXISTS " + MESSAGE_HASH_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + SERVER_HASH + " STRING);";
+    public static final String CREATE_MMS_HASH_TABLE_COMMAND                  = "CREATE TABLE IF NOT EXISTS " + MMS_HASH_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + SERVER_HASH + " STRING);";
+    public static final String CREATE_SMS_HASH_TABLE_COMMAND                  = "CREATE TABLE IF NOT EXISTS " + SMS_HASH_TABLE + " (" + MESSAGE_ID + " INTEGER PRIMARY KEY, " + SERVER_HASH + " STRING);";
+    public static final String CREATE_THREAD_SERVER_ID_INDEX_COMMAND          = "CREATE INDEX IF NOT EXISTS " + MESSAGE_THREAD_MAPPING_TABLE + "_thread_server_index ON " + MESSAGE_THREAD_MAPPING_TABLE + " (" + THREAD_ID + ", " + SERVER_ID + ");";
+
+    private LokiMessages() {}
+  }
+
+  /** {@code BlindedIdMappingDatabase} */
+  public static final class BlindedIdMappings {
+
+    public static final String TABLE_NAME = "blinded_id_mapping";
+           static final String ROW_ID     = "_id";
+           static final String BLINDED_PK = "blinded_pk";
+           static final String SESSION_PK = "session_pk";
+           static final String SERVER_URL = "server_url";
+           static final String SERVER_PK  = "server_pk";
+
+    public static final String CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND =
+        "CREATE TABLE " + TABLE_NAME + " (\n" +
+        "  " + ROW_ID + " INTEGER PRIMARY KEY,\n" +
+        "  " + BLINDED_PK + " TEXT NOT NULL,\n" +
+        "  " + SESSION_PK + " TEXT DEFAULT NULL,\n" +
+        "  " + SERVER_URL + " TEXT NOT NULL,\n" +
+        "  " + SERVER_PK + " TEXT NOT NULL\n" +
+        ")";
+
+    private BlindedIdMappings() {}
+  }
+
+  /** {@code ConfigDatabase} */
+  public static final class Configs {
+
+    public static final String TABLE_NAME = "configs_table";
+           static final String VARIANT    = "variant";
+           static final String PUBKEY     = "publicKey";
+           static final String DATA       = "data";
+           static final String TIMESTAMP  = "timestamp";   // Milliseconds
+
+    public static final String CREATE_CONFIG_TABLE_COMMAND =
+        "CREATE TABLE " + TABLE_NAME + " (" + VARIANT + " TEXT NOT NULL, " + PUBKEY + " TEXT NOT NULL, " + DATA + " BLOB, " + TIMESTAMP + " INTEGER NOT NULL DEFAULT 0, PRIMARY KEY(" + VARIANT + ", " + PUBKEY + "));";
+
+    private Configs() {}
+  }
+}
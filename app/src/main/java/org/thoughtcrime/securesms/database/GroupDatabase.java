@@ -36,49 +36,30 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   @SuppressWarnings("unused")
   private static final String TAG = GroupDatabase.class.getSimpleName();
 
-  public  static final String TABLE_NAME          = "groups";
-  private static final String ID                  = "_id";
-  public  static final String GROUP_ID            = "group_id";
-  private static final String TITLE               = "title";
-  private static final String MEMBERS             = "members";
-  private static final String ZOMBIE_MEMBERS      = "zombie_members";
-  private static final String AVATAR              = "avatar";
-  private static final String AVATAR_ID           = "avatar_id";
-  private static final String AVATAR_KEY          = "avatar_key";
-  private static final String AVATAR_CONTENT_TYPE = "avatar_content_type";
-  private static final String AVATAR_RELAY        = "avatar_relay";
-  private static final String AVATAR_DIGEST       = "avatar_digest";
-  private static final String TIMESTAMP           = "timestamp";
-  private static final String ACTIVE              = "active";
-  private static final String MMS                 = "mms";
-  private static final String UPDATED             = "updated";
+  public  static final String TABLE_NAME          = DatabaseSchema.Groups.TABLE_NAME;
+  private static final String ID                  = DatabaseSchema.Groups.ID;
+  public  static final String GROUP_ID            = DatabaseSchema.Groups.GROUP_ID;
+  public  static final String TITLE               = DatabaseSchema.Groups.TITLE;
+  private static final String MEMBERS             = DatabaseSchema.Groups.MEMBERS;
+  private static final String ZOMBIE_MEMBERS      = DatabaseSchema.Groups.ZOMBIE_MEMBERS;
+  private static final String AVATAR              = DatabaseSchema.Groups.AVATAR;
+  private static final String AVATAR_ID           = DatabaseSchema.Groups.AVATAR_ID;
+  private static final String AVATAR_KEY          = DatabaseSchema.Groups.AVATAR_KEY;
+  private static final String AVATAR_CONTENT_TYPE = DatabaseSchema.Groups.AVATAR_CONTENT_TYPE;
+  private static final String AVATAR_RELAY        = DatabaseSchema.Groups.AVATAR_RELAY;
+  private static final String AVATAR_DIGEST       = DatabaseSchema.Groups.AVATAR_DIGEST;
+  private static final String TIMESTAMP           = DatabaseSchema.Groups.TIMESTAMP;
+  private static final String ACTIVE              = DatabaseSchema.Groups.ACTIVE;
+  private static final String MMS                 = DatabaseSchema.Groups.MMS;
+  private static final String UPDATED             = DatabaseSchema.Groups.UPDATED;
 
   // Loki
-  private static final String AVATAR_URL          = "avatar_url";
-  public static final String ADMINS              = "admins";
-
-  public static final String CREATE_TABLE =
-      "CREATE TABLE " + TABLE_NAME +
-          " (" + ID + " INTEGER PRIMARY KEY, " +
-          GROUP_ID + " TEXT, " +
-          TITLE + " TEXT, " +
-          MEMBERS + " TEXT, " +
-          ZOMBIE_MEMBERS + " TEXT, " +
-          AVATAR + " BLOB, " +
-          AVATAR_ID + " INTEGER, " +
-          AVATAR_KEY + " BLOB, " +
-          AVATAR_CONTENT_TYPE + " TEXT, " +
-          AVATAR_RELAY + " TEXT, " +
-          TIMESTAMP + " INTEGER, " +
-          ACTIVE + " INTEGER DEFAULT 1, " +
-          AVATAR_DIGEST + " BLOB, " +
-          AVATAR_URL + " TEXT, " +
-          ADMINS + " TEXT, " +
-          MMS + " INTEGER DEFAULT 0);";
-
-  public static final String[] CREATE_INDEXS = {
-      "CREATE UNIQUE INDEX IF NOT EXISTS group_id_index ON " + TABLE_NAME + " (" + GROUP_ID + ");",
-  };
+  private static final String AVATAR_URL          = DatabaseSchema.Groups.AVATAR_URL;
+  public static final String ADMINS              = DatabaseSchema.Groups.ADMINS;
+
+  public static final String CREATE_TABLE = DatabaseSchema.Groups.CREATE_TABLE;
+
+  public static final String[] CREATE_INDEXS = DatabaseSchema.Groups.CREATE_INDEXS;
 
   private static final String[] GROUP_PROJECTION = {
       GROUP_ID, TITLE, MEMBERS, ZOMBIE_MEMBERS, AVATAR, AVATAR_ID, AVATAR_KEY, AVATAR_CONTENT_TYPE, AVATAR_RELAY, AVATAR_DIGEST,
@@ -88,8 +69,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   static final List<String> TYPED_GROUP_PROJECTION = Stream.of(GROUP_PROJECTION).map(columnName -> TABLE_NAME + "." + columnName).toList();
 
   public static String getCreateUpdatedTimestampCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + UPDATED + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Groups.CREATE_UPDATED_TIMESTAMP_COMMAND;
   }
 
   public GroupDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
@@ -168,19 +148,19 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   public @NonNull List<Recipient> getGroupMembers(String groupId, boolean includeSelf) {
-    List<Address>   members     = getCurrentMembers(groupId, false);
-    List<Recipient> recipients  = new LinkedList<>();
+    List<Address> members   = getCurrentMembers(groupId, false);
+    List<Address> addresses = new LinkedList<>();
 
     for (Address member : members) {
       if (!includeSelf && Util.isOwnNumber(context, member.serialize()))
         continue;
 
       if (member.isContact()) {
-        recipients.add(Recipient.from(context, member, false));
+        addresses.add(member);
       }
     }
 
-    return recipients;
+    return new LinkedList<>(Recipient.from(context, addresses, false));
   }
 
   public @NonNull List<Address> getGroupMemberAddresses(String groupId, boolean includeSelf) {
@@ -198,14 +178,8 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   public @NonNull List<Recipient> getGroupZombieMembers(String groupId) {
-    List<Address>   members     = getCurrentZombieMembers(groupId);
-    List<Recipient> recipients  = new LinkedList<>();
-
-    for (Address member : members) {
-        recipients.add(Recipient.from(context, member, false));
-    }
-
-    return recipients;
+    List<Address> members = getCurrentZombieMembers(groupId);
+    return new LinkedList<>(Recipient.from(context, members, false));
   }
 
   public long create(@NonNull String groupId, @Nullable String title, @NonNull List<Address> members,
@@ -240,7 +214,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       recipient.setName(title);
       recipient.setGroupAvatarId(avatar != null ? avatar.getId() : null);
-      recipient.setParticipants(Stream.of(members).map(memberAddress -> Recipient.from(context, memberAddress, true)).toList());
+      recipient.setParticipants(Recipient.from(context, members, true));
     });
 
     notifyConversationListeners(threadId);
@@ -361,7 +335,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
                                                 new String[] {groupId});
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
-      recipient.setParticipants(Stream.of(members).map(a -> Recipient.from(context, a, false)).toList());
+      recipient.setParticipants(Recipient.from(context, members, false));
     });
   }
 
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.database.Cursor;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 
@@ -105,6 +106,11 @@ public class GroupReceiptDatabase extends Database {
     db.delete(TABLE_NAME, idsAsString, null);
   }
 
+  void deleteRowsForMessages(@NonNull String mmsIdQuery, @Nullable String[] args) {
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    db.delete(TABLE_NAME, MMS_ID + " IN (" + mmsIdQuery + ")", args);
+  }
+
   void deleteRowsForMessage(long mmsId) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
     db.delete(TABLE_NAME, MMS_ID + " = ?", new String[] {String.valueOf(mmsId)});
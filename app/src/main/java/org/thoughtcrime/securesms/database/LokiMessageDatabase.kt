@@ -10,41 +10,47 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 class LokiMessageDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper), LokiMessageDatabaseProtocol {
 
     companion object {
-        private val messageIDTable = "loki_message_friend_request_database"
-        private val messageThreadMappingTable = "loki_message_thread_mapping_database"
-        private val errorMessageTable = "loki_error_message_database"
-        private val messageHashTable = "loki_message_hash_database"
-        private val smsHashTable = "loki_sms_hash_database"
-        private val mmsHashTable = "loki_mms_hash_database"
-        private val messageID = "message_id"
-        private val serverID = "server_id"
-        private val friendRequestStatus = "friend_request_status"
-        private val threadID = "thread_id"
-        private val errorMessage = "error_message"
-        private val messageType = "message_type"
-        private val serverHash = "server_hash"
+        private val messageIDTable = DatabaseSchema.LokiMessages.MESSAGE_ID_TABLE
+        private val messageThreadMappingTable = DatabaseSchema.LokiMessages.MESSAGE_THREAD_MAPPING_TABLE
+        private val errorMessageTable = DatabaseSchema.LokiMessages.ERROR_MESSAGE_TABLE
+        private val messageHashTable = DatabaseSchema.LokiMessages.MESSAGE_HASH_TABLE
+        private val smsHashTable = DatabaseSchema.LokiMessages.SMS_HASH_TABLE
+        private val mmsHashTable = DatabaseSchema.LokiMessages.MMS_HASH_TABLE
+        private val messageID = DatabaseSchema.LokiMessages.MESSAGE_ID
+        private val serverID = DatabaseSchema.LokiMessages.SERVER_ID
+        private val friendRequestStatus = DatabaseSchema.LokiMessages.FRIEND_REQUEST_STATUS
+        private val threadID = DatabaseSchema.LokiMessages.THREAD_ID
+        private val errorMessage = DatabaseSchema.LokiMessages.ERROR_MESSAGE
+        private val messageType = DatabaseSchema.LokiMessages.MESSAGE_TYPE
+        private val serverHash = DatabaseSchema.LokiMessages.SERVER_HASH
         @JvmStatic
-        val createMessageIDTableCommand = "CREATE TABLE $messageIDTable ($messageID INTEGER PRIMARY KEY, $serverID INTEGER DEFAULT 0, $friendRequestStatus INTEGER DEFAULT 0);"
+        val createMessageIDTableCommand = DatabaseSchema.LokiMessages.CREATE_MESSAGE_ID_TABLE_COMMAND
         @JvmStatic
-        val createMessageToThreadMappingTableCommand = "CREATE TABLE IF NOT EXISTS $messageThreadMappingTable ($messageID INTEGER PRIMARY KEY, $threadID INTEGER);"
+        val createMessageToThreadMappingTableCommand = DatabaseSchema.LokiMessages.CREATE_MESSAGE_TO_THREAD_MAPPING_TABLE_COMMAND
         @JvmStatic
-        val createErrorMessageTableCommand = "CREATE TABLE IF NOT EXISTS $errorMessageTable ($messageID INTEGER PRIMARY KEY, $errorMessage STRING);"
+        val createErrorMessageTableCommand = DatabaseSchema.LokiMessages.CREATE_ERROR_MESSAGE_TABLE_COMMAND
         @JvmStatic
-        val updateMessageIDTableForType = "ALTER TABLE $messageIDTable ADD COLUMN $messageType INTEGER DEFAULT 0; ALTER TABLE $messageIDTable ADD CONSTRAINT PK_$messageIDTable PRIMARY KEY ($messageID, $serverID);"
+        val updateMessageIDTableForType = DatabaseSchema.LokiMessages.UPDATE_MESSAGE_ID_TABLE_FOR_TYPE
         @JvmStatic
-        val updateMessageMappingTable = "ALTER TABLE $messageThreadMappingTable ADD COLUMN $serverID INTEGER DEFAULT 0; ALTER TABLE $messageThreadMappingTable ADD CONSTRAINT PK_$messageThreadMappingTable PRIMARY KEY ($messageID, $serverID);"
+        val updateMessageMappingTable = DatabaseSchema.LokiMessages.UPDATE_MESSAGE_MAPPING_TABLE
         @JvmStatic
-        val createMessageHashTableCommand = "CREATE TABLE IF NOT EXISTS $messageHashTable ($messageID INTEGER PRIMARY KEY, $serverHash STRING);"
+        val createMessageHashTableCommand = DatabaseSchema.LokiMessages.CREATE_MESSAGE_HASH_TABLE_COMMAND
         @JvmStatic
-        val createMmsHashTableCommand = "CREATE TABLE IF NOT EXISTS $mmsHashTable ($messageID INTEGER PRIMARY KEY, $serverHash STRING);"
+        val createMmsHashTableCommand = DatabaseSchema.LokiMessages.CREATE_MMS_HASH_TABLE_COMMAND
         @JvmStatic
-        val createSmsHashTableCommand = "CREATE TABLE IF NOT EXISTS $smsHashTable ($messageID INTEGER PRIMARY KEY, $serverHash STRING);"
+        val createSmsHashTableCommand = DatabaseSchema.LokiMessages.CREATE_SMS_HASH_TABLE_COMMAND
+        @JvmStatic
+        val createThreadServerIDIndexCommand = DatabaseSchema.LokiMessages.CREATE_THREAD_SERVER_ID_INDEX_COMMAND
 
         const val SMS_TYPE = 0
         const val MMS_TYPE = 1
 
+        /** Keeps the server ids bound in one lookup, plus the thread id, under SQLite's variable limit. */
+        private const val SERVER_ID_CHUNK_SIZE = 900
     }
 
+    data class ServerIDMapping(val messageID: Long, val serverID: Long, val isSms: Boolean)
+
     fun getServerID(messageID: Long): Long? {
         val database = databaseHelper.readableDatabase
         return database.get(messageIDTable, "${Companion.messageID} = ?", arrayOf(messageID.toString())) { cursor ->
@@ -113,45 +119,40 @@ class LokiMessageDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
      */
     fun getMessageID(serverID: Long, threadID: Long): Pair<Long, Boolean>? {
         val database = databaseHelper.readableDatabase
-        val mappingResult = database.get(messageThreadMappingTable, "${Companion.serverID} = ? AND ${Companion.threadID} = ?",
-                arrayOf(serverID.toString(), threadID.toString())) { cursor ->
-            cursor.getInt(messageID) to cursor.getInt(Companion.serverID)
-        } ?: return null
-
-        val (mappedID, mappedServerID) = mappingResult
-
-        return database.get(messageIDTable,
-                "$messageID = ? AND ${Companion.serverID} = ?",
-                arrayOf(mappedID.toString(), mappedServerID.toString())) { cursor ->
-            cursor.getInt(messageID).toLong() to (cursor.getInt(messageType) == SMS_TYPE)
+        val query = """
+            SELECT $messageIDTable.${Companion.messageID}, $messageIDTable.$messageType
+            FROM $messageThreadMappingTable
+            JOIN $messageIDTable ON $messageIDTable.${Companion.messageID} = $messageThreadMappingTable.${Companion.messageID}
+                AND $messageIDTable.${Companion.serverID} = $messageThreadMappingTable.${Companion.serverID}
+            WHERE $messageThreadMappingTable.${Companion.threadID} = ? AND $messageThreadMappingTable.${Companion.serverID} = ?
+            LIMIT 1
+        """
+        return database.rawQuery(query, arrayOf(threadID.toString(), serverID.toString())).use { cursor ->
+            if (cursor.moveToFirst()) cursor.getLong(0) to (cursor.getInt(1) == SMS_TYPE) else null
         }
     }
 
+    /**
+     * @return pair of the sms and mms table-specific IDs of the messages with the given server IDs in the thread
+     */
     fun getMessageIDs(serverIDs: List<Long>, threadID: Long): Pair<List<Long>, List<Long>> {
         val database = databaseHelper.readableDatabase
 
-        // Retrieve the message ids
-        val messageIdCursor = database
-            .rawQuery(
-                """
-                    SELECT ${messageThreadMappingTable}.${messageID}, ${messageIDTable}.${messageType}
-                    FROM ${messageThreadMappingTable}
-                    JOIN ${messageIDTable} ON ${messageIDTable}.message_id = ${messageThreadMappingTable}.${messageID} 
-                    WHERE (
-                        ${messageThreadMappingTable}.${Companion.threadID} = $threadID AND
-                        ${messageThreadMappingTable}.${Companion.serverID} IN (${serverIDs.joinToString(",")})
-                    )
-                """
-            )
-
         val smsMessageIds: MutableList<Long> = mutableListOf()
         val mmsMessageIds: MutableList<Long> = mutableListOf()
-        while (messageIdCursor.moveToNext()) {
-            if (messageIdCursor.getInt(1) == SMS_TYPE) {
-                smsMessageIds.add(messageIdCursor.getLong(0))
-            }
-            else {
-                mmsMessageIds.add(messageIdCursor.getLong(0))
+
+        serverIDs.distinct().chunked(SERVER_ID_CHUNK_SIZE).forEach { chunk ->
+            val query = DatabaseQueries.getMessageIdsForServerIds(chunk.size)
+            val arguments = arrayOf(threadID.toString()) + chunk.map { it.toString() }
+
+            database.rawQuery(query, arguments).use { cursor ->
+                while (cursor.moveToNext()) {
+                    if (cursor.getInt(1) == SMS_TYPE) {
+                        smsMessageIds.add(cursor.getLong(0))
+                    } else {
+                        mmsMessageIds.add(cursor.getLong(0))
+                    }
+                }
             }
         }
 
@@ -183,6 +184,40 @@ class LokiMessageDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
         database.insertWithOnConflict(messageThreadMappingTable, null, contentValues, CONFLICT_REPLACE)
     }
 
+    /**
+     * Stores the server ids of messages received in the community with the given thread id, and
+     * their mapping to that thread, in one transaction.
+     */
+    fun setServerIDs(threadID: Long, mappings: Collection<ServerIDMapping>) {
+        if (mappings.isEmpty()) return
+
+        val database = databaseHelper.writableDatabase
+        database.beginTransaction()
+        try {
+            val insertServerID = database.compileStatement(DatabaseQueries.INSERT_SERVER_ID)
+            val insertThreadMapping = database.compileStatement(DatabaseQueries.INSERT_THREAD_MAPPING)
+
+            insertServerID.use {
+                insertThreadMapping.use {
+                    mappings.forEach { mapping ->
+                        insertServerID.bindLong(1, mapping.messageID)
+                        insertServerID.bindLong(2, mapping.serverID)
+                        insertServerID.bindLong(3, (if (mapping.isSms) SMS_TYPE else MMS_TYPE).toLong())
+                        insertServerID.executeInsert()
+
+                        insertThreadMapping.bindLong(1, mapping.messageID)
+                        insertThreadMapping.bindLong(2, mapping.serverID)
+                        insertThreadMapping.bindLong(3, threadID)
+                        insertThreadMapping.executeInsert()
+                    }
+                }
+            }
+            database.setTransactionSuccessful()
+        } finally {
+            database.endTransaction()
+        }
+    }
+
     fun getErrorMessage(messageID: Long): String? {
         val database = databaseHelper.readableDatabase
         return database.get(errorMessageTable, "${Companion.messageID} = ?", arrayOf(messageID.toString())) { cursor ->
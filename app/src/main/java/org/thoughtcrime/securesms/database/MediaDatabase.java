@@ -6,6 +6,7 @@ import android.database.Cursor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 
@@ -18,48 +19,19 @@ import java.util.List;
 
 public class MediaDatabase extends Database {
 
-    private static final String BASE_MEDIA_QUERY = "SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ROW_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_TYPE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.UNIQUE_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.TRANSFER_STATE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.SIZE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FILE_NAME + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DATA + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_LOCATION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_DISPOSITION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DIGEST + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FAST_PREFLIGHT_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.VOICE_NOTE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.WIDTH + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.HEIGHT + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.QUOTE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.STICKER_PACK_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.STICKER_PACK_KEY + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.STICKER_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CAPTION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.NAME + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
-        + "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
-        + " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " "
-        + "WHERE " + AttachmentDatabase.MMS_ID + " IN (SELECT " + MmsSmsColumns.ID
-        + " FROM " + MmsDatabase.TABLE_NAME
-        + " WHERE " + MmsDatabase.THREAD_ID + " = ?) AND (%s) AND "
-        + AttachmentDatabase.DATA + " IS NOT NULL AND "
-        + AttachmentDatabase.QUOTE + " = 0 AND "
-        + AttachmentDatabase.STICKER_PACK_ID + " IS NULL "
-        + "ORDER BY " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " DESC";
-
-  private static final String GALLERY_MEDIA_QUERY  = String.format(BASE_MEDIA_QUERY, AttachmentDatabase.CONTENT_TYPE + " LIKE 'image/%' OR " + AttachmentDatabase.CONTENT_TYPE + " LIKE 'video/%'");
-  private static final String DOCUMENT_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'image/%' AND " +
-                                                                                     AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'video/%' AND " +
-                                                                                     AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'audio/%' AND " +
-                                                                                     AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'text/x-signal-plain'");
+  private static final String GALLERY_MEDIA_QUERY  = DatabaseQueries.GALLERY_MEDIA_QUERY;
+  private static final String DOCUMENT_MEDIA_QUERY = DatabaseQueries.DOCUMENT_MEDIA_QUERY;
+
+  public static final String GALLERY_BUCKET   = DatabaseQueries.GALLERY_BUCKET;
+  public static final String GALLERY_DATE     = DatabaseQueries.GALLERY_DATE;
+  public static final String GALLERY_COUNT    = DatabaseQueries.GALLERY_COUNT;
+  public static final String GALLERY_CHECKSUM = DatabaseQueries.GALLERY_CHECKSUM;
+
+  public static final int BUCKET_TODAY      = DatabaseQueries.BUCKET_TODAY;
+  public static final int BUCKET_YESTERDAY  = DatabaseQueries.BUCKET_YESTERDAY;
+  public static final int BUCKET_THIS_WEEK  = DatabaseQueries.BUCKET_THIS_WEEK;
+  public static final int BUCKET_THIS_MONTH = DatabaseQueries.BUCKET_THIS_MONTH;
+  public static final int MONTH_BUCKET_BASE = DatabaseQueries.MONTH_BUCKET_BASE;
 
   public MediaDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
     super(context, databaseHelper);
@@ -72,6 +44,40 @@ public class MediaDatabase extends Database {
     return cursor;
   }
 
+  /**
+   * @return one row for the first item of each page of each non-empty gallery bucket, in display
+   * order, with the {@link #GALLERY_DATE} and id of that item, and the {@link #GALLERY_COUNT} of its
+   * bucket and a {@link #GALLERY_CHECKSUM} of the attachment ids of its bucket that changes when
+   * media is added to or removed from it.
+   */
+  public Cursor getGalleryMediaPagesForThread(long threadId, long now, int pageSize) {
+    return databaseHelper.getReadableDatabase().rawQuery(DatabaseQueries.getGalleryMediaPages(now, pageSize), new String[]{threadId+""});
+  }
+
+  /**
+   * @return up to {@code limit} items of a bucket, starting from the one with the given date and id,
+   * as returned by {@link #getGalleryMediaPagesForThread(long, long, int)}.
+   */
+  public Cursor getGalleryMediaForBucket(long threadId, long now, int bucket, long startDate, long startId, int limit) {
+    return databaseHelper.getReadableDatabase().rawQuery(DatabaseQueries.getGalleryMediaForBucket(now, bucket, startDate, startId, limit), new String[]{threadId+""});
+  }
+
+  /**
+   * @return the first {@code limit} items in display order, from the start of the bucket on through
+   * the buckets after it, with the {@link #GALLERY_BUCKET} of each.
+   */
+  public Cursor getGalleryMediaFromBucket(long threadId, long now, int bucket, int limit) {
+    return databaseHelper.getReadableDatabase().rawQuery(DatabaseQueries.getGalleryMediaFromBucket(now, bucket, limit), new String[]{threadId+""});
+  }
+
+  /**
+   * @return the bucket of the media dated {@link #GALLERY_DATE}, as an SQL expression.
+   */
+  @VisibleForTesting
+  static String getGalleryBucket(long now) {
+    return DatabaseQueries.getGalleryBucket(now);
+  }
+
   public void subscribeToMediaChanges(@NonNull ContentObserver observer) {
     registerAttachmentListeners(observer);
   }
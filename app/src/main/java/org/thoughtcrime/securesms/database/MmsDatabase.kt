@@ -57,6 +57,7 @@ import org.thoughtcrime.securesms.database.SmsDatabase.InsertListener
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 import org.thoughtcrime.securesms.database.model.MediaMmsMessageRecord
 import org.thoughtcrime.securesms.database.model.MessageRecord
+import org.thoughtcrime.securesms.database.model.MmsAttachmentInfo
 import org.thoughtcrime.securesms.database.model.MmsMessageRecord
 import org.thoughtcrime.securesms.database.model.NotificationMmsMessageRecord
 import org.thoughtcrime.securesms.database.model.Quote
@@ -159,8 +160,7 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
                         )
                         get(context).groupReceiptDatabase()
                             .update(ourAddress, id, status, timestamp)
-                        get(context).threadDatabase().update(threadId, false, true)
-                        notifyConversationListeners(threadId)
+                        get(context).threadDatabase().scheduleUpdate(threadId, false)
                     }
                 }
             }
@@ -243,7 +243,7 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
                     " WHERE " + ID + " = ?", arrayOf(id.toString() + "")
         )
         if (threadId.isPresent) {
-            get(context).threadDatabase().update(threadId.get(), false, true)
+            get(context).threadDatabase().scheduleUpdate(threadId.get(), false)
         }
     }
 
@@ -1118,33 +1118,42 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
         notifyStickerPackListeners()
     }
 
+    /**
+     * Deletes the messages of a thread that are older than `date` along with their attachments and
+     * receipts, in a single transaction. Reactions are removed by their delete trigger. The caller
+     * is responsible for updating the thread afterwards.
+     *
+     * @return the number of deleted messages.
+     */
     /*package*/
-    fun deleteMessagesInThreadBeforeDate(threadId: Long, date: Long) {
-        var cursor: Cursor? = null
+    fun deleteMessagesInThreadBeforeDate(threadId: Long, date: Long): Int {
+        val where = DatabaseQueries.getMmsTrimSelection(date)
+        val args = arrayOf(threadId.toString())
+        val messageIdQuery = "SELECT $ID FROM $TABLE_NAME WHERE $where"
+
+        val attachmentDatabase = get(context).attachmentDatabase()
+        val db = databaseHelper.writableDatabase
+        val deletedAttachments: List<MmsAttachmentInfo>
+        val deletedCount: Int
+        db.beginTransaction()
         try {
-            val db = databaseHelper.readableDatabase
-            var where =
-                THREAD_ID + " = ? AND (CASE (" + MESSAGE_BOX + " & " + MmsSmsColumns.Types.BASE_TYPE_MASK + ") "
-            for (outgoingType in MmsSmsColumns.Types.OUTGOING_MESSAGE_TYPES) {
-                where += " WHEN $outgoingType THEN $DATE_SENT < $date"
-            }
-            where += " ELSE $DATE_RECEIVED < $date END)"
-            cursor = db!!.query(
-                TABLE_NAME,
-                arrayOf<String?>(ID),
-                where,
-                arrayOf<String?>(threadId.toString() + ""),
-                null,
-                null,
-                null
-            )
-            while (cursor != null && cursor.moveToNext()) {
-                Log.i("MmsDatabase", "Trimming: " + cursor.getLong(0))
-                deleteMessage(cursor.getLong(0))
-            }
+            deletedAttachments = attachmentDatabase.deleteAttachmentRowsForMessages(messageIdQuery, args)
+            get(context).groupReceiptDatabase().deleteRowsForMessages(messageIdQuery, args)
+            deletedCount = db.delete(TABLE_NAME, where, args)
+            db.setTransactionSuccessful()
         } finally {
-            cursor?.close()
+            db.endTransaction()
         }
+        Log.i("MmsDatabase", "Trimmed $deletedCount messages from thread $threadId")
+
+        if (deletedAttachments.isNotEmpty()) {
+            queue(Runnable { attachmentDatabase.deleteAttachmentFiles(deletedAttachments) })
+        }
+        if (deletedCount > 0) {
+            notifyStickerListeners()
+            notifyStickerPackListeners()
+        }
+        return deletedCount
     }
 
     fun readerFor(cursor: Cursor?): Reader {
@@ -1407,56 +1416,32 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
 
     companion object {
         private val TAG = MmsDatabase::class.java.simpleName
-        const val TABLE_NAME: String = "mms"
-        const val DATE_SENT: String = "date"
-        const val DATE_RECEIVED: String = "date_received"
-        const val MESSAGE_BOX: String = "msg_box"
-        const val CONTENT_LOCATION: String = "ct_l"
-        const val EXPIRY: String = "exp"
-        const val MESSAGE_TYPE: String = "m_type"
-        const val MESSAGE_SIZE: String = "m_size"
-        const val STATUS: String = "st"
-        const val TRANSACTION_ID: String = "tr_id"
-        const val PART_COUNT: String = "part_count"
-        const val NETWORK_FAILURE: String = "network_failures"
-        const val QUOTE_ID: String = "quote_id"
-        const val QUOTE_AUTHOR: String = "quote_author"
-        const val QUOTE_BODY: String = "quote_body"
-        const val QUOTE_ATTACHMENT: String = "quote_attachment"
-        const val QUOTE_MISSING: String = "quote_missing"
-        const val SHARED_CONTACTS: String = "shared_contacts"
-        const val LINK_PREVIEWS: String = "previews"
-        const val CREATE_TABLE: String =
-            "CREATE TABLE " + TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    THREAD_ID + " INTEGER, " + DATE_SENT + " INTEGER, " + DATE_RECEIVED + " INTEGER, " + MESSAGE_BOX + " INTEGER, " +
-                    READ + " INTEGER DEFAULT 0, " + "m_id" + " TEXT, " + "sub" + " TEXT, " +
-                    "sub_cs" + " INTEGER, " + BODY + " TEXT, " + PART_COUNT + " INTEGER, " +
-                    "ct_t" + " TEXT, " + CONTENT_LOCATION + " TEXT, " + ADDRESS + " TEXT, " +
-                    ADDRESS_DEVICE_ID + " INTEGER, " +
-                    EXPIRY + " INTEGER, " + "m_cls" + " TEXT, " + MESSAGE_TYPE + " INTEGER, " +
-                    "v" + " INTEGER, " + MESSAGE_SIZE + " INTEGER, " + "pri" + " INTEGER, " +
-                    "rr" + " INTEGER, " + "rpt_a" + " INTEGER, " + "resp_st" + " INTEGER, " +
-                    STATUS + " INTEGER, " + TRANSACTION_ID + " TEXT, " + "retr_st" + " INTEGER, " +
-                    "retr_txt" + " TEXT, " + "retr_txt_cs" + " INTEGER, " + "read_status" + " INTEGER, " +
-                    "ct_cls" + " INTEGER, " + "resp_txt" + " TEXT, " + "d_tm" + " INTEGER, " +
-                    DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, " +
-                    NETWORK_FAILURE + " TEXT DEFAULT NULL," + "d_rpt" + " INTEGER, " +
-                    SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " + EXPIRES_IN + " INTEGER DEFAULT 0, " +
-                    EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " INTEGER DEFAULT 0, " +
-                    READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + QUOTE_ID + " INTEGER DEFAULT 0, " +
-                    QUOTE_AUTHOR + " TEXT, " + QUOTE_BODY + " TEXT, " + QUOTE_ATTACHMENT + " INTEGER DEFAULT -1, " +
-                    QUOTE_MISSING + " INTEGER DEFAULT 0, " + SHARED_CONTACTS + " TEXT, " + UNIDENTIFIED + " INTEGER DEFAULT 0, " +
-                    LINK_PREVIEWS + " TEXT);"
+        const val TABLE_NAME: String = DatabaseSchema.Mms.TABLE_NAME
+        const val DATE_SENT: String = DatabaseSchema.Mms.DATE_SENT
+        const val DATE_RECEIVED: String = DatabaseSchema.Mms.DATE_RECEIVED
+        const val MESSAGE_BOX: String = DatabaseSchema.Mms.MESSAGE_BOX
+        const val CONTENT_LOCATION: String = DatabaseSchema.Mms.CONTENT_LOCATION
+        const val EXPIRY: String = DatabaseSchema.Mms.EXPIRY
+        const val MESSAGE_TYPE: String = DatabaseSchema.Mms.MESSAGE_TYPE
+        const val MESSAGE_SIZE: String = DatabaseSchema.Mms.MESSAGE_SIZE
+        const val STATUS: String = DatabaseSchema.Mms.STATUS
+        const val TRANSACTION_ID: String = DatabaseSchema.Mms.TRANSACTION_ID
+        const val PART_COUNT: String = DatabaseSchema.Mms.PART_COUNT
+        const val NETWORK_FAILURE: String = DatabaseSchema.Mms.NETWORK_FAILURE
+        const val QUOTE_ID: String = DatabaseSchema.Mms.QUOTE_ID
+        const val QUOTE_AUTHOR: String = DatabaseSchema.Mms.QUOTE_AUTHOR
+        const val QUOTE_BODY: String = DatabaseSchema.Mms.QUOTE_BODY
+        const val QUOTE_ATTACHMENT: String = DatabaseSchema.Mms.QUOTE_ATTACHMENT
+        const val QUOTE_MISSING: String = DatabaseSchema.Mms.QUOTE_MISSING
+        const val SHARED_CONTACTS: String = DatabaseSchema.Mms.SHARED_CONTACTS
+        const val LINK_PREVIEWS: String = DatabaseSchema.Mms.LINK_PREVIEWS
+        const val CREATE_TABLE: String = DatabaseSchema.Mms.CREATE_TABLE
 
         @JvmField
-        val CREATE_INDEXS: Array<String> = arrayOf(
-            "CREATE INDEX IF NOT EXISTS mms_thread_id_index ON $TABLE_NAME ($THREAD_ID);",
-            "CREATE INDEX IF NOT EXISTS mms_read_index ON $TABLE_NAME ($READ);",
-            "CREATE INDEX IF NOT EXISTS mms_read_and_notified_and_thread_id_index ON $TABLE_NAME($READ,$NOTIFIED,$THREAD_ID);",
-            "CREATE INDEX IF NOT EXISTS mms_message_box_index ON $TABLE_NAME ($MESSAGE_BOX);",
-            "CREATE INDEX IF NOT EXISTS mms_date_sent_index ON $TABLE_NAME ($DATE_SENT);",
-            "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON $TABLE_NAME ($THREAD_ID, $DATE_RECEIVED);"
-        )
+        val CREATE_THREAD_DATE_SENT_INDEX = DatabaseSchema.Mms.CREATE_THREAD_DATE_SENT_INDEX
+
+        @JvmField
+        val CREATE_INDEXS: Array<String> = DatabaseSchema.Mms.CREATE_INDEXS
         private val MMS_PROJECTION: Array<String> = arrayOf(
             "$TABLE_NAME.$ID AS $ID",
             THREAD_ID,
@@ -1528,10 +1513,10 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
                     ")) AS " + ReactionDatabase.REACTION_JSON_ALIAS
         )
         private const val RAW_ID_WHERE: String = "$TABLE_NAME._id = ?"
-        const val CREATE_MESSAGE_REQUEST_RESPONSE_COMMAND = "ALTER TABLE $TABLE_NAME ADD COLUMN $MESSAGE_REQUEST_RESPONSE INTEGER DEFAULT 0;"
-        const val CREATE_REACTIONS_UNREAD_COMMAND = "ALTER TABLE $TABLE_NAME ADD COLUMN $REACTIONS_UNREAD INTEGER DEFAULT 0;"
-        const val CREATE_REACTIONS_LAST_SEEN_COMMAND = "ALTER TABLE $TABLE_NAME ADD COLUMN $REACTIONS_LAST_SEEN INTEGER DEFAULT 0;"
-        const val CREATE_HAS_MENTION_COMMAND = "ALTER TABLE $TABLE_NAME ADD COLUMN $HAS_MENTION INTEGER DEFAULT 0;"
+        const val CREATE_MESSAGE_REQUEST_RESPONSE_COMMAND = DatabaseSchema.Mms.CREATE_MESSAGE_REQUEST_RESPONSE_COMMAND
+        const val CREATE_REACTIONS_UNREAD_COMMAND = DatabaseSchema.Mms.CREATE_REACTIONS_UNREAD_COMMAND
+        const val CREATE_REACTIONS_LAST_SEEN_COMMAND = DatabaseSchema.Mms.CREATE_REACTIONS_LAST_SEEN_COMMAND
+        const val CREATE_HAS_MENTION_COMMAND = DatabaseSchema.Mms.CREATE_HAS_MENTION_COMMAND
 
         private const val TEMP_TABLE_NAME = "TEMP_TABLE_NAME"
 
@@ -27,6 +27,7 @@ import androidx.annotation.Nullable;
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 import net.zetetic.database.sqlcipher.SQLiteQueryBuilder;
 
+import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.Util;
@@ -37,6 +38,7 @@ import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
 
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -47,9 +49,12 @@ public class MmsSmsDatabase extends Database {
   @SuppressWarnings("unused")
   private static final String TAG = MmsSmsDatabase.class.getSimpleName();
 
-  public static final String TRANSPORT     = "transport_type";
-  public static final String MMS_TRANSPORT = "mms";
-  public static final String SMS_TRANSPORT = "sms";
+  public static final String TRANSPORT     = DatabaseQueries.TRANSPORT;
+  public static final String MMS_TRANSPORT = DatabaseQueries.MMS_TRANSPORT;
+  public static final String SMS_TRANSPORT = DatabaseQueries.SMS_TRANSPORT;
+
+  public static final String REACTION_COUNT   = DatabaseQueries.REACTION_COUNT;
+  public static final String LAST_REACTION_ID = DatabaseQueries.LAST_REACTION_ID;
 
   private static final String[] PROJECTION = {MmsSmsColumns.ID, MmsSmsColumns.UNIQUE_ROW_ID,
                                               SmsDatabase.BODY, SmsDatabase.TYPE,
@@ -337,6 +342,38 @@ public class MmsSmsDatabase extends Database {
     return queryTables(PROJECTION, selection, order, null);
   }
 
+  /**
+   * A lighter version of {@link #getUnread()} which only returns the id, transport and thread of each
+   * unread message along with a summary of its reactions, so callers can tell which messages changed
+   * without loading their full records.
+   */
+  public Cursor getUnreadKeys() {
+    return getUnreadKeys(null);
+  }
+
+  /**
+   * Like {@link #getUnreadKeys()}, but only for the unread messages of the given thread.
+   */
+  public Cursor getUnreadKeys(long threadId) {
+    return getUnreadKeys(MmsSmsColumns.THREAD_ID + " = " + threadId);
+  }
+
+  private Cursor getUnreadKeys(@Nullable String threadSelection) {
+    return databaseHelper.getReadableDatabase().rawQuery(DatabaseQueries.getUnreadKeys(threadSelection), null);
+  }
+
+  /**
+   * Returns the messages with the given ids, oldest first. The ids of both tables are listed
+   * separately as they overlap.
+   */
+  public Cursor getMessages(@NonNull Collection<Long> smsIds, @NonNull Collection<Long> mmsIds) {
+    String order        = MmsSmsColumns.NORMALIZED_DATE_SENT + " ASC";
+    String smsSelection = SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " IN (" + StringUtils.join(smsIds, ',') + ")";
+    String mmsSelection = MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " IN (" + StringUtils.join(mmsIds, ',') + ")";
+
+    return queryTables(PROJECTION, smsSelection, mmsSelection, order, null);
+  }
+
   public int getUnreadCount(long threadId) {
     String selection = MmsSmsColumns.READ + " = 0 AND " + MmsSmsColumns.NOTIFIED + " = 0 AND " + MmsSmsColumns.THREAD_ID + " = " + threadId;
     Cursor cursor    = queryTables(PROJECTION, selection, null, null);
@@ -406,6 +443,10 @@ public class MmsSmsDatabase extends Database {
   }
 
   private Cursor queryTables(String[] projection, String selection, String order, String limit) {
+    return queryTables(projection, selection, selection, order, limit);
+  }
+
+  private Cursor queryTables(String[] projection, String smsSelection, String mmsSelection, String order, String limit) {
     String reactionsColumn = "json_group_array(json_object(" +
             "'" + ReactionDatabase.ROW_ID + "', " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.ROW_ID + ", " +
             "'" + ReactionDatabase.MESSAGE_ID + "', " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + ", " +
@@ -617,9 +658,9 @@ public class MmsSmsDatabase extends Database {
     smsColumnsPresent.add(ReactionDatabase.REACTION_JSON_ALIAS);
 
     @SuppressWarnings("deprecation")
-    String mmsSubQuery = mmsQueryBuilder.buildUnionSubQuery(TRANSPORT, mmsProjection, mmsColumnsPresent, 5, MMS_TRANSPORT, selection, null, MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID, null);
+    String mmsSubQuery = mmsQueryBuilder.buildUnionSubQuery(TRANSPORT, mmsProjection, mmsColumnsPresent, 5, MMS_TRANSPORT, mmsSelection, null, MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID, null);
     @SuppressWarnings("deprecation")
-    String smsSubQuery = smsQueryBuilder.buildUnionSubQuery(TRANSPORT, smsProjection, smsColumnsPresent, 5, SMS_TRANSPORT, selection, null, SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID, null);
+    String smsSubQuery = smsQueryBuilder.buildUnionSubQuery(TRANSPORT, smsProjection, smsColumnsPresent, 5, SMS_TRANSPORT, smsSelection, null, SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID, null);
 
     SQLiteQueryBuilder unionQueryBuilder = new SQLiteQueryBuilder();
     String unionQuery = unionQueryBuilder.buildUnionQuery(new String[] {smsSubQuery, mmsSubQuery}, order, limit);
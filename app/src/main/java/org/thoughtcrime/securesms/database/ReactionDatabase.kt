@@ -18,59 +18,27 @@ import org.thoughtcrime.securesms.util.CursorUtil
 class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper) {
 
   companion object {
-    const val TABLE_NAME = "reaction"
+    const val TABLE_NAME = DatabaseSchema.Reactions.TABLE_NAME
     const val REACTION_JSON_ALIAS = "reaction_json"
-    const val ROW_ID = "reaction_id"
-    const val MESSAGE_ID = "message_id"
-    const val IS_MMS = "is_mms"
-    const val AUTHOR_ID = "author_id"
-    const val SERVER_ID = "server_id"
-    const val COUNT = "count"
-    const val SORT_ID = "sort_id"
-    const val EMOJI = "emoji"
-    const val DATE_SENT = "reaction_date_sent"
-    const val DATE_RECEIVED = "reaction_date_received"
+    const val ROW_ID = DatabaseSchema.Reactions.ROW_ID
+    const val MESSAGE_ID = DatabaseSchema.Reactions.MESSAGE_ID
+    const val IS_MMS = DatabaseSchema.Reactions.IS_MMS
+    const val AUTHOR_ID = DatabaseSchema.Reactions.AUTHOR_ID
+    const val SERVER_ID = DatabaseSchema.Reactions.SERVER_ID
+    const val COUNT = DatabaseSchema.Reactions.COUNT
+    const val SORT_ID = DatabaseSchema.Reactions.SORT_ID
+    const val EMOJI = DatabaseSchema.Reactions.EMOJI
+    const val DATE_SENT = DatabaseSchema.Reactions.DATE_SENT
+    const val DATE_RECEIVED = DatabaseSchema.Reactions.DATE_RECEIVED
 
     @JvmField
-    val CREATE_REACTION_TABLE_COMMAND = """
-      CREATE TABLE $TABLE_NAME (
-        $ROW_ID INTEGER PRIMARY KEY,
-        $MESSAGE_ID INTEGER NOT NULL,
-        $IS_MMS INTEGER NOT NULL,
-        $AUTHOR_ID INTEGER NOT NULL REFERENCES ${RecipientDatabase.TABLE_NAME} (${RecipientDatabase.ID}) ON DELETE CASCADE,
-        $EMOJI TEXT NOT NULL,
-        $SERVER_ID TEXT NOT NULL,
-        $COUNT INTEGER NOT NULL,
-        $SORT_ID INTEGER NOT NULL,
-        $DATE_SENT INTEGER NOT NULL,
-        $DATE_RECEIVED INTEGER NOT NULL,
-        UNIQUE($MESSAGE_ID, $IS_MMS, $EMOJI, $AUTHOR_ID) ON CONFLICT REPLACE
-      )
-    """.trimIndent()
+    val CREATE_REACTION_TABLE_COMMAND = DatabaseSchema.Reactions.CREATE_REACTION_TABLE_COMMAND
 
     @JvmField
-    val CREATE_INDEXS = arrayOf(
-      "CREATE INDEX IF NOT EXISTS reaction_message_id_index ON " + ReactionDatabase.TABLE_NAME + " (" + ReactionDatabase.MESSAGE_ID + ");",
-      "CREATE INDEX IF NOT EXISTS reaction_is_mms_index ON " + ReactionDatabase.TABLE_NAME + " (" + ReactionDatabase.IS_MMS + ");",
-      "CREATE INDEX IF NOT EXISTS reaction_message_id_is_mms_index ON " + ReactionDatabase.TABLE_NAME + " (" + ReactionDatabase.MESSAGE_ID + ", " + ReactionDatabase.IS_MMS + ");",
-      "CREATE INDEX IF NOT EXISTS reaction_sort_id_index ON " + ReactionDatabase.TABLE_NAME + " (" + ReactionDatabase.SORT_ID + ");",
-    )
+    val CREATE_INDEXS = DatabaseSchema.Reactions.CREATE_INDEXS
 
     @JvmField
-    val CREATE_REACTION_TRIGGERS = arrayOf(
-      """
-        CREATE TRIGGER reactions_sms_delete AFTER DELETE ON ${SmsDatabase.TABLE_NAME} 
-        BEGIN 
-        	DELETE FROM $TABLE_NAME WHERE $MESSAGE_ID = old.${MmsSmsColumns.ID} AND $IS_MMS = 0;
-        END
-      """,
-      """
-        CREATE TRIGGER reactions_mms_delete AFTER DELETE ON ${MmsDatabase.TABLE_NAME} 
-        BEGIN 
-        	DELETE FROM $TABLE_NAME WHERE $MESSAGE_ID = old.${MmsSmsColumns.ID} AND $IS_MMS = 1;
-        END
-      """
-    )
+    val CREATE_REACTION_TRIGGERS = DatabaseSchema.Reactions.CREATE_REACTION_TRIGGERS
 
     private fun readReaction(cursor: Cursor): ReactionRecord {
       return ReactionRecord(
@@ -120,10 +88,49 @@ class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
 
       writableDatabase.insert(TABLE_NAME, null, values)
 
-      if (messageId.mms) {
-        DatabaseComponent.get(context).mmsDatabase().updateReactionsUnread(writableDatabase, messageId.id, hasReactions(messageId), false, notifyUnread)
-      } else {
-        DatabaseComponent.get(context).smsDatabase().updateReactionsUnread(writableDatabase, messageId.id, hasReactions(messageId), false, notifyUnread)
+      updateReactionsUnread(messageId, hasReactions = true, isRemoval = false, notifyUnread)
+
+      writableDatabase.setTransactionSuccessful()
+    } finally {
+      writableDatabase.endTransaction()
+    }
+  }
+
+  /**
+   * Replaces the reactions of each message with the given ones, in one transaction, and updates
+   * the unread reaction state of each message once rather than once per reaction.
+   */
+  fun setReactions(reactions: Map<MessageId, List<ReactionRecord>>, notifyUnread: Boolean) {
+    if (reactions.isEmpty()) return
+
+    writableDatabase.beginTransaction()
+    try {
+      val delete = writableDatabase.compileStatement(DatabaseQueries.DELETE_MESSAGE_REACTIONS)
+      val insert = writableDatabase.compileStatement(DatabaseQueries.INSERT_REACTION)
+
+      delete.use {
+        insert.use {
+          reactions.forEach { (messageId, messageReactions) ->
+            delete.bindLong(1, messageId.id)
+            delete.bindLong(2, if (messageId.mms) 1 else 0)
+            delete.executeUpdateDelete()
+
+            messageReactions.forEach { reaction ->
+              insert.bindLong(1, messageId.id)
+              insert.bindLong(2, if (messageId.mms) 1 else 0)
+              insert.bindString(3, reaction.emoji)
+              insert.bindString(4, reaction.author)
+              insert.bindString(5, reaction.serverId)
+              insert.bindLong(6, reaction.count)
+              insert.bindLong(7, reaction.sortId)
+              insert.bindLong(8, reaction.dateSent)
+              insert.bindLong(9, reaction.dateReceived)
+              insert.executeInsert()
+            }
+
+            updateReactionsUnread(messageId, messageReactions.isNotEmpty(), messageReactions.isEmpty(), notifyUnread)
+          }
+        }
       }
 
       writableDatabase.setTransactionSuccessful()
@@ -164,11 +171,7 @@ class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
     try {
       writableDatabase.delete(TABLE_NAME, query, args)
 
-      if (messageId.mms) {
-        DatabaseComponent.get(context).mmsDatabase().updateReactionsUnread(writableDatabase, messageId.id, hasReactions(messageId), true, notifyUnread)
-      } else {
-        DatabaseComponent.get(context).smsDatabase().updateReactionsUnread(writableDatabase, messageId.id, hasReactions(messageId), true, notifyUnread)
-      }
+      updateReactionsUnread(messageId, hasReactions(messageId), isRemoval = true, notifyUnread)
 
       writableDatabase.setTransactionSuccessful()
     } finally {
@@ -176,6 +179,11 @@ class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
     }
   }
 
+  private fun updateReactionsUnread(messageId: MessageId, hasReactions: Boolean, isRemoval: Boolean, notifyUnread: Boolean) {
+    val database = if (messageId.mms) DatabaseComponent.get(context).mmsDatabase() else DatabaseComponent.get(context).smsDatabase()
+    database.updateReactionsUnread(writableDatabase, messageId.id, hasReactions, isRemoval, notifyUnread)
+  }
+
   private fun hasReactions(messageId: MessageId): Boolean {
     val query = "$MESSAGE_ID = ? AND $IS_MMS = ?"
     val args = arrayOf("${messageId.id}", "${if (messageId.mms) 1 else 0}")
@@ -28,43 +28,47 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RecipientDatabase extends Database {
 
   private static final String TAG = RecipientDatabase.class.getSimpleName();
 
-          static final String TABLE_NAME               = "recipient_preferences";
-          static final String ID                       = "_id";
-  public  static final String ADDRESS                  = "recipient_ids";
-          static final String BLOCK                    = "block";
-          static final String APPROVED                 = "approved";
-  private static final String APPROVED_ME              = "approved_me";
-  private static final String NOTIFICATION             = "notification";
-  private static final String VIBRATE                  = "vibrate";
-  private static final String MUTE_UNTIL               = "mute_until";
-  private static final String COLOR                    = "color";
-  private static final String SEEN_INVITE_REMINDER     = "seen_invite_reminder";
-  private static final String DEFAULT_SUBSCRIPTION_ID  = "default_subscription_id";
-          static final String EXPIRE_MESSAGES          = "expire_messages";
-  private static final String DISAPPEARING_STATE       = "disappearing_state";
-  private static final String REGISTERED               = "registered";
-  private static final String PROFILE_KEY              = "profile_key";
-  private static final String SYSTEM_DISPLAY_NAME      = "system_display_name";
-  private static final String SYSTEM_PHOTO_URI         = "system_contact_photo";
-  private static final String SYSTEM_PHONE_LABEL       = "system_phone_label";
-  private static final String SYSTEM_CONTACT_URI       = "system_contact_uri";
-  private static final String SIGNAL_PROFILE_NAME      = "signal_profile_name";
-  private static final String SIGNAL_PROFILE_AVATAR    = "signal_profile_avatar";
-  private static final String PROFILE_SHARING          = "profile_sharing_approval";
-  private static final String CALL_RINGTONE            = "call_ringtone";
-  private static final String CALL_VIBRATE             = "call_vibrate";
-  private static final String NOTIFICATION_CHANNEL     = "notification_channel";
-  private static final String UNIDENTIFIED_ACCESS_MODE = "unidentified_access_mode";
-  private static final String FORCE_SMS_SELECTION      = "force_sms_selection";
-  private static final String NOTIFY_TYPE              = "notify_type"; // all, mentions only, none
-  private static final String WRAPPER_HASH             = "wrapper_hash";
-  private static final String BLOCKS_COMMUNITY_MESSAGE_REQUESTS = "blocks_community_message_requests";
+          static final String TABLE_NAME               = DatabaseSchema.Recipients.TABLE_NAME;
+          static final String ID                       = DatabaseSchema.Recipients.ID;
+  public  static final String ADDRESS                  = DatabaseSchema.Recipients.ADDRESS;
+          static final String BLOCK                    = DatabaseSchema.Recipients.BLOCK;
+          static final String APPROVED                 = DatabaseSchema.Recipients.APPROVED;
+  private static final String APPROVED_ME              = DatabaseSchema.Recipients.APPROVED_ME;
+  private static final String NOTIFICATION             = DatabaseSchema.Recipients.NOTIFICATION;
+  private static final String VIBRATE                  = DatabaseSchema.Recipients.VIBRATE;
+  private static final String MUTE_UNTIL               = DatabaseSchema.Recipients.MUTE_UNTIL;
+  private static final String COLOR                    = DatabaseSchema.Recipients.COLOR;
+  private static final String SEEN_INVITE_REMINDER     = DatabaseSchema.Recipients.SEEN_INVITE_REMINDER;
+  private static final String DEFAULT_SUBSCRIPTION_ID  = DatabaseSchema.Recipients.DEFAULT_SUBSCRIPTION_ID;
+          static final String EXPIRE_MESSAGES          = DatabaseSchema.Recipients.EXPIRE_MESSAGES;
+  private static final String DISAPPEARING_STATE       = DatabaseSchema.Recipients.DISAPPEARING_STATE;
+  private static final String REGISTERED               = DatabaseSchema.Recipients.REGISTERED;
+  private static final String PROFILE_KEY              = DatabaseSchema.Recipients.PROFILE_KEY;
+  private static final String SYSTEM_DISPLAY_NAME      = DatabaseSchema.Recipients.SYSTEM_DISPLAY_NAME;
+  private static final String SYSTEM_PHOTO_URI         = DatabaseSchema.Recipients.SYSTEM_PHOTO_URI;
+  private static final String SYSTEM_PHONE_LABEL       = DatabaseSchema.Recipients.SYSTEM_PHONE_LABEL;
+  private static final String SYSTEM_CONTACT_URI       = DatabaseSchema.Recipients.SYSTEM_CONTACT_URI;
+  private static final String SIGNAL_PROFILE_NAME      = DatabaseSchema.Recipients.SIGNAL_PROFILE_NAME;
+  private static final String SIGNAL_PROFILE_AVATAR    = DatabaseSchema.Recipients.SIGNAL_PROFILE_AVATAR;
+  private static final String PROFILE_SHARING          = DatabaseSchema.Recipients.PROFILE_SHARING;
+  private static final String CALL_RINGTONE            = DatabaseSchema.Recipients.CALL_RINGTONE;
+  private static final String CALL_VIBRATE             = DatabaseSchema.Recipients.CALL_VIBRATE;
+  private static final String NOTIFICATION_CHANNEL     = DatabaseSchema.Recipients.NOTIFICATION_CHANNEL;
+  private static final String UNIDENTIFIED_ACCESS_MODE = DatabaseSchema.Recipients.UNIDENTIFIED_ACCESS_MODE;
+  private static final String FORCE_SMS_SELECTION      = DatabaseSchema.Recipients.FORCE_SMS_SELECTION;
+  private static final String NOTIFY_TYPE              = DatabaseSchema.Recipients.NOTIFY_TYPE; // all, mentions only, none
+  private static final String WRAPPER_HASH             = DatabaseSchema.Recipients.WRAPPER_HASH;
+  private static final String BLOCKS_COMMUNITY_MESSAGE_REQUESTS = DatabaseSchema.Recipients.BLOCKS_COMMUNITY_MESSAGE_REQUESTS;
 
   private static final String[] RECIPIENT_PROJECTION = new String[] {
       BLOCK, APPROVED, APPROVED_ME, NOTIFICATION, CALL_RINGTONE, VIBRATE, CALL_VIBRATE, MUTE_UNTIL, COLOR, SEEN_INVITE_REMINDER, DEFAULT_SUBSCRIPTION_ID, EXPIRE_MESSAGES, REGISTERED,
@@ -78,46 +82,18 @@ public class RecipientDatabase extends Database {
                                                                .map(columnName -> TABLE_NAME + "." + columnName)
                                                                .toList();
 
-  public static final String CREATE_TABLE =
-      "CREATE TABLE " + TABLE_NAME +
-          " (" + ID + " INTEGER PRIMARY KEY, " +
-          ADDRESS + " TEXT UNIQUE, " +
-          BLOCK + " INTEGER DEFAULT 0," +
-          NOTIFICATION + " TEXT DEFAULT NULL, " +
-          VIBRATE + " INTEGER DEFAULT " + Recipient.VibrateState.DEFAULT.getId() + ", " +
-          MUTE_UNTIL + " INTEGER DEFAULT 0, " +
-          COLOR + " TEXT DEFAULT NULL, " +
-          SEEN_INVITE_REMINDER + " INTEGER DEFAULT 0, " +
-          DEFAULT_SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " +
-          EXPIRE_MESSAGES + " INTEGER DEFAULT 0, " +
-          REGISTERED + " INTEGER DEFAULT 0, " +
-          SYSTEM_DISPLAY_NAME + " TEXT DEFAULT NULL, " +
-          SYSTEM_PHOTO_URI + " TEXT DEFAULT NULL, " +
-          SYSTEM_PHONE_LABEL + " TEXT DEFAULT NULL, " +
-          SYSTEM_CONTACT_URI + " TEXT DEFAULT NULL, " +
-          PROFILE_KEY + " TEXT DEFAULT NULL, " +
-          SIGNAL_PROFILE_NAME + " TEXT DEFAULT NULL, " +
-          SIGNAL_PROFILE_AVATAR + " TEXT DEFAULT NULL, " +
-          PROFILE_SHARING + " INTEGER DEFAULT 0, " +
-          CALL_RINGTONE + " TEXT DEFAULT NULL, " +
-          CALL_VIBRATE + " INTEGER DEFAULT " + Recipient.VibrateState.DEFAULT.getId() + ", " +
-          NOTIFICATION_CHANNEL + " TEXT DEFAULT NULL, " +
-          UNIDENTIFIED_ACCESS_MODE + " INTEGER DEFAULT 0, " +
-          FORCE_SMS_SELECTION + " INTEGER DEFAULT 0);";
+  public static final String CREATE_TABLE = DatabaseSchema.Recipients.CREATE_TABLE;
 
   public static String getCreateNotificationTypeCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + NOTIFY_TYPE + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Recipients.CREATE_NOTIFICATION_TYPE_COMMAND;
   }
 
   public static String getCreateApprovedCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + APPROVED + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Recipients.CREATE_APPROVED_COMMAND;
   }
 
   public static String getCreateApprovedMeCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + APPROVED_ME + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Recipients.CREATE_APPROVED_ME_COMMAND;
   }
 
   public static String getUpdateApprovedCommand() {
@@ -140,18 +116,15 @@ public class RecipientDatabase extends Database {
   }
 
   public static String getCreateDisappearingStateCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + DISAPPEARING_STATE + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Recipients.CREATE_DISAPPEARING_STATE_COMMAND;
   }
 
   public static String getAddWrapperHash() {
-    return "ALTER TABLE "+TABLE_NAME+" "+
-            "ADD COLUMN "+WRAPPER_HASH+" TEXT DEFAULT NULL;";
+    return DatabaseSchema.Recipients.ADD_WRAPPER_HASH;
   }
 
   public static String getAddBlocksCommunityMessageRequests() {
-    return "ALTER TABLE "+TABLE_NAME+" "+
-            "ADD COLUMN "+BLOCKS_COMMUNITY_MESSAGE_REQUESTS+" INT DEFAULT 0;";
+    return DatabaseSchema.Recipients.ADD_BLOCKS_COMMUNITY_MESSAGE_REQUESTS;
   }
 
   public static final int NOTIFY_TYPE_ALL = 0;
@@ -183,6 +156,31 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  public Map<Address, RecipientSettings> getRecipientSettings(@NonNull Collection<Address> addresses) {
+    Map<Address, RecipientSettings> results = new HashMap<>(addresses.size());
+    if (addresses.isEmpty()) return results;
+
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    for (List<Address> partition : Util.partition(new ArrayList<>(addresses), 900)) {
+      String[] args = new String[partition.size()];
+      for (int i = 0; i < partition.size(); i++) {
+        args[i] = partition.get(i).serialize();
+      }
+
+      String selection = ADDRESS + " IN (" + Util.join(Collections.nCopies(args.length, "?"), ", ") + ")";
+
+      try (Cursor cursor = database.query(TABLE_NAME, null, selection, args, null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          Address address = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ADDRESS)));
+          results.put(address, getRecipientSettings(cursor).get());
+        }
+      }
+    }
+
+    return results;
+  }
+
   Optional<RecipientSettings> getRecipientSettings(@NonNull Cursor cursor) {
     boolean blocked                = cursor.getInt(cursor.getColumnIndexOrThrow(BLOCK))                == 1;
     boolean approved               = cursor.getInt(cursor.getColumnIndexOrThrow(APPROVED))             == 1;
@@ -2,17 +2,16 @@ package org.thoughtcrime.securesms.database;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
-
-import com.annimon.stream.Stream;
+import androidx.annotation.Nullable;
 
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 
-import org.session.libsession.utilities.Util;
-
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -20,125 +19,137 @@ import java.util.List;
  */
 public class SearchDatabase extends Database {
 
-  public static final String SMS_FTS_TABLE_NAME = "sms_fts";
-  public static final String MMS_FTS_TABLE_NAME = "mms_fts";
-
-  public static final String ID                   = "rowid";
-  public static final String BODY                 = MmsSmsColumns.BODY;
-  public static final String THREAD_ID            = MmsSmsColumns.THREAD_ID;
-  public static final String SNIPPET              = "snippet";
-  public static final String CONVERSATION_ADDRESS = "conversation_address";
-  public static final String MESSAGE_ADDRESS      = "message_address";
-
-  public static final String[] CREATE_TABLE = {
-      "CREATE VIRTUAL TABLE " + SMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + SmsDatabase.TABLE_NAME + ", content_rowid=" + SmsDatabase.ID + ");",
-
-      "CREATE TRIGGER sms_ai AFTER INSERT ON " + SmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + SmsDatabase.ID + ", new." + SmsDatabase.BODY + ", new." + SmsDatabase.THREAD_ID + ");\n" +
-          "END;\n",
-      "CREATE TRIGGER sms_ad AFTER DELETE ON " + SmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + SMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + SmsDatabase.ID + ", old." + SmsDatabase.BODY + ", old." + SmsDatabase.THREAD_ID + ");\n" +
-          "END;\n",
-      "CREATE TRIGGER sms_au AFTER UPDATE ON " + SmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + SMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + SmsDatabase.ID + ", old." + SmsDatabase.BODY + ", old." + SmsDatabase.THREAD_ID + ");\n" +
-          "  INSERT INTO " + SMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES(new." + SmsDatabase.ID + ", new." + SmsDatabase.BODY + ", new." + SmsDatabase.THREAD_ID + ");\n" +
-          "END;",
-
-
-      "CREATE VIRTUAL TABLE " + MMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + MmsDatabase.TABLE_NAME + ", content_rowid=" + MmsDatabase.ID + ");",
-
-      "CREATE TRIGGER mms_ai AFTER INSERT ON " + MmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + MmsDatabase.ID + ", new." + MmsDatabase.BODY + ", new." + MmsDatabase.THREAD_ID + ");\n" +
-          "END;\n",
-      "CREATE TRIGGER mms_ad AFTER DELETE ON " + MmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + MMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + MmsDatabase.ID + ", old." + MmsDatabase.BODY + ", old." + MmsDatabase.THREAD_ID + ");\n" +
-          "END;\n",
-      "CREATE TRIGGER mms_au AFTER UPDATE ON " + MmsDatabase.TABLE_NAME + " BEGIN\n" +
-          "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + MMS_FTS_TABLE_NAME + ", " + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES('delete', old." + MmsDatabase.ID + ", old." + MmsDatabase.BODY + ", old." + MmsDatabase.THREAD_ID + ");\n" +
-          "  INSERT INTO " + MMS_FTS_TABLE_NAME + "(" + ID + ", " + BODY + ", " + THREAD_ID + ") VALUES (new." + MmsDatabase.ID + ", new." + MmsDatabase.BODY + ", new." + MmsDatabase.THREAD_ID + ");\n" +
-          "END;"
+  public static final String SMS_FTS_TABLE_NAME = DatabaseSchema.Search.SMS_FTS_TABLE_NAME;
+  public static final String MMS_FTS_TABLE_NAME = DatabaseSchema.Search.MMS_FTS_TABLE_NAME;
+
+  public static final String ID                   = DatabaseSchema.Search.ID;
+  public static final String BODY                 = DatabaseSchema.Search.BODY;
+  public static final String THREAD_ID            = DatabaseSchema.Search.THREAD_ID;
+  public static final String SNIPPET              = DatabaseQueries.SNIPPET;
+  public static final String CONVERSATION_ADDRESS = DatabaseQueries.CONVERSATION_ADDRESS;
+  public static final String MESSAGE_ADDRESS      = DatabaseQueries.MESSAGE_ADDRESS;
+
+  public static final String[] CREATE_TABLE = DatabaseSchema.Search.CREATE_TABLE;
+
+  public static final String RECIPIENT_TABLE_NAME     = DatabaseSchema.Search.RECIPIENT_TABLE_NAME;
+  public static final String RECIPIENT_FTS_TABLE_NAME = DatabaseSchema.Search.RECIPIENT_FTS_TABLE_NAME;
+
+  public static final String RECIPIENT_ID         = DatabaseSchema.Search.RECIPIENT_ID;
+  public static final String RECIPIENT_ADDRESS    = DatabaseSchema.Search.RECIPIENT_ADDRESS;
+  public static final String RECIPIENT_KIND       = DatabaseSchema.Search.RECIPIENT_KIND;
+  public static final String RECIPIENT_NICKNAME   = DatabaseSchema.Search.RECIPIENT_NICKNAME;
+  public static final String RECIPIENT_NAME       = DatabaseSchema.Search.RECIPIENT_NAME;
+  public static final String RECIPIENT_SESSION_ID = DatabaseSchema.Search.RECIPIENT_SESSION_ID;
+
+  public static final int RECIPIENT_KIND_CONTACT = DatabaseSchema.Search.RECIPIENT_KIND_CONTACT;
+  public static final int RECIPIENT_KIND_GROUP   = DatabaseSchema.Search.RECIPIENT_KIND_GROUP;
+
+  private static final String RECIPIENT_COLUMNS = DatabaseSchema.Search.RECIPIENT_COLUMNS;
+
+  /**
+   * Contacts and groups share one FTS index, see {@link DatabaseSchema.Search#CREATE_RECIPIENT_TABLE}.
+   */
+  public static final String[] CREATE_RECIPIENT_TABLE = DatabaseSchema.Search.CREATE_RECIPIENT_TABLE;
+
+  public static final String[] POPULATE_RECIPIENT_TABLE = {
+      "INSERT INTO " + RECIPIENT_TABLE_NAME + "(" + RECIPIENT_COLUMNS + ") " +
+          "SELECT " + SessionContactDatabase.sessionID + ", " + RECIPIENT_KIND_CONTACT + ", " + SessionContactDatabase.nickname + ", " + SessionContactDatabase.name + ", " + SessionContactDatabase.sessionID + " " +
+          "FROM " + SessionContactDatabase.sessionContactTable + ";",
+      "INSERT OR IGNORE INTO " + RECIPIENT_TABLE_NAME + "(" + RECIPIENT_COLUMNS + ") " +
+          "SELECT " + GroupDatabase.GROUP_ID + ", " + RECIPIENT_KIND_GROUP + ", NULL, " + GroupDatabase.TITLE + ", NULL " +
+          "FROM " + GroupDatabase.TABLE_NAME + ";"
   };
 
-  private static final String MESSAGES_QUERY =
-      "SELECT " +
-        ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
-        MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-        "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
-        SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-        SMS_FTS_TABLE_NAME + "."  + THREAD_ID + " " +
-      "FROM " + SmsDatabase.TABLE_NAME + " " +
-      "INNER JOIN " + SMS_FTS_TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " " +
-      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + SMS_FTS_TABLE_NAME + " MATCH ? " +
-      "UNION ALL " +
-      "SELECT " +
-        ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
-        MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-        "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
-        MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-        MMS_FTS_TABLE_NAME + "." + THREAD_ID + " " +
-      "FROM " + MmsDatabase.TABLE_NAME + " " +
-      "INNER JOIN " + MMS_FTS_TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " " +
-      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? " +
-      "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC " +
-      "LIMIT ?";
-
-  private static final String MESSAGES_FOR_THREAD_QUERY =
-      "SELECT " +
-          ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
-          MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-          "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
-          SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-          SMS_FTS_TABLE_NAME + "." + THREAD_ID + " " +
-        "FROM " + SmsDatabase.TABLE_NAME + " " +
-        "INNER JOIN " + SMS_FTS_TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " " +
-        "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-        "WHERE " + SMS_FTS_TABLE_NAME + " MATCH ? AND " + SmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = ? " +
-        "UNION ALL " +
-        "SELECT " +
-          ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
-          MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-          "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
-          MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-          MMS_FTS_TABLE_NAME + "." + THREAD_ID + " " +
-        "FROM " + MmsDatabase.TABLE_NAME + " " +
-        "INNER JOIN " + MMS_FTS_TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " " +
-        "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-        "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? AND " + MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = ? " +
-        "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC " +
-        "LIMIT 500";
+  public static final String MESSAGE_ID = DatabaseQueries.MESSAGE_ID;
+  public static final String IS_MMS     = DatabaseQueries.IS_MMS;
+  public static final String SORT_KEY   = DatabaseQueries.SORT_KEY;
 
-  public SearchDatabase(@NonNull Context context, @NonNull SQLCipherOpenHelper databaseHelper) {
-    super(context, databaseHelper);
+  public static final long NO_THREAD = -1;
+
+  public enum MessageOrder {
+    /** Newest messages first. */
+    RECENT,
+    /** Best bm25 matches first. The scores of SMS and MMS matches come from separate indexes, so they only roughly compare. */
+    RELEVANCE
   }
 
-  public Cursor queryMessages(@NonNull String query) {
-    SQLiteDatabase db          = databaseHelper.getReadableDatabase();
-    String         prefixQuery = adjustQuery(query);
-    int queryLimit = Math.min(query.length()*50,500);
-    Cursor cursor = db.rawQuery(MESSAGES_QUERY, new String[] { prefixQuery, prefixQuery, String.valueOf(queryLimit) });
-    setNotifyConversationListListeners(cursor);
-    return cursor;
+  /**
+   * The position of a message in a list of search results. Pages are requested relative to the last
+   * result of the previous page rather than with an offset, so that SQLite doesn't have to produce
+   * (and skip) every earlier result again.
+   */
+  public static final class PageKey {
+    private final double  sortKey;
+    private final boolean mms;
+    private final long    messageId;
+
+    PageKey(double sortKey, boolean mms, long messageId) {
+      this.sortKey   = sortKey;
+      this.mms       = mms;
+      this.messageId = messageId;
+    }
+
+    public static @NonNull PageKey fromCursor(@NonNull Cursor cursor) {
+      return new PageKey(cursor.getDouble(cursor.getColumnIndexOrThrow(SORT_KEY)),
+                         cursor.getInt(cursor.getColumnIndexOrThrow(IS_MMS)) == 1,
+                         cursor.getLong(cursor.getColumnIndexOrThrow(MESSAGE_ID)));
+    }
   }
 
-  public Cursor queryMessages(@NonNull String query, long threadId) {
-    SQLiteDatabase db          = databaseHelper.getReadableDatabase();
-    String         prefixQuery = adjustQuery(query);
+  public SearchDatabase(@NonNull Context context, @NonNull SQLCipherOpenHelper databaseHelper) {
+    super(context, databaseHelper);
+  }
 
-    Cursor cursor = db.rawQuery(MESSAGES_FOR_THREAD_QUERY, new String[] { prefixQuery, String.valueOf(threadId), prefixQuery, String.valueOf(threadId) });
+  /**
+   * Returns one page of the messages matching the query, see {@link DatabaseQueries#searchMessages}.
+   *
+   * @param threadId the thread to search in, or {@link #NO_THREAD} to search every thread.
+   * @param after the key of the last message of the previous page, or null for the first page.
+   * @param cancellationSignal cancels the query inside SQLite, which then throws an
+   *                           {@link android.os.OperationCanceledException} while the cursor is filled.
+   */
+  public Cursor queryMessages(@NonNull String query,
+                              long threadId,
+                              @NonNull MessageOrder order,
+                              @Nullable PageKey after,
+                              int limit,
+                              @Nullable CancellationSignal cancellationSignal)
+  {
+    SQLiteDatabase db          = databaseHelper.getReadableDatabase();
+    String         prefixQuery = DatabaseQueries.toFtsQuery(query);
+    List<String>   args        = new ArrayList<>();
+
+    for (int i = 0; i < 2; i++) {
+      args.add(prefixQuery);
+      if (threadId != NO_THREAD) args.add(String.valueOf(threadId));
+    }
+
+    if (after != null) {
+      String sortKey = order == MessageOrder.RECENT ? String.valueOf((long) after.sortKey) : String.valueOf(after.sortKey);
+      String mms     = after.mms ? "1" : "0";
+      args.add(sortKey);
+      args.add(sortKey);
+      args.add(mms);
+      args.add(mms);
+      args.add(String.valueOf(after.messageId));
+    }
+
+    args.add(String.valueOf(limit));
+    args.add(prefixQuery);
+    args.add(prefixQuery);
+
+    String sql    = DatabaseQueries.searchMessages(order == MessageOrder.RELEVANCE, threadId != NO_THREAD, after != null);
+    Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]), cancellationSignal);
     setNotifyConversationListListeners(cursor);
     return cursor;
-
   }
 
-  private String adjustQuery(@NonNull String query) {
-    List<String> tokens      = Stream.of(query.split(" ")).filter(s -> s.trim().length() > 0).toList();
-    String       prefixQuery = Util.join(tokens, "* ");
-
-    prefixQuery += "*";
-
-    return prefixQuery;
+  /**
+   * @return the address and {@link #RECIPIENT_KIND} of the contacts and groups matching the query,
+   * best matches first.
+   */
+  public Cursor queryRecipients(@NonNull String query) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+    return db.rawQuery(DatabaseQueries.RECIPIENTS_QUERY, new String[] { DatabaseQueries.toFtsQuery(query) });
   }
 }
-
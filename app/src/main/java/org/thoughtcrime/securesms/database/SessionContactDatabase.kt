@@ -6,6 +6,7 @@ import android.database.Cursor
 import androidx.core.database.getStringOrNull
 import org.session.libsession.messaging.contacts.Contact
 import org.session.libsession.messaging.utilities.SessionId
+import org.session.libsession.utilities.recipients.Recipient
 import org.session.libsignal.utilities.Base64
 import org.session.libsignal.utilities.IdPrefix
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
@@ -13,25 +14,16 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper) {
 
     companion object {
-        private const val sessionContactTable = "session_contact_database"
-        const val sessionID = "session_id"
-        const val name = "name"
-        const val nickname = "nickname"
-        const val profilePictureURL = "profile_picture_url"
-        const val profilePictureFileName = "profile_picture_file_name"
-        const val profilePictureEncryptionKey = "profile_picture_encryption_key"
-        const val threadID = "thread_id"
-        const val isTrusted = "is_trusted"
-        @JvmStatic val createSessionContactTableCommand =
-            "CREATE TABLE $sessionContactTable " +
-                "($sessionID STRING PRIMARY KEY, " +
-                "$name TEXT DEFAULT NULL, " +
-                "$nickname TEXT DEFAULT NULL, " +
-                "$profilePictureURL TEXT DEFAULT NULL, " +
-                "$profilePictureFileName TEXT DEFAULT NULL, " +
-                "$profilePictureEncryptionKey BLOB DEFAULT NULL, " +
-                "$threadID INTEGER DEFAULT -1, " +
-                "$isTrusted INTEGER DEFAULT 0);"
+        const val sessionContactTable = DatabaseSchema.SessionContacts.TABLE_NAME
+        const val sessionID = DatabaseSchema.SessionContacts.SESSION_ID
+        const val name = DatabaseSchema.SessionContacts.NAME
+        const val nickname = DatabaseSchema.SessionContacts.NICKNAME
+        const val profilePictureURL = DatabaseSchema.SessionContacts.PROFILE_PICTURE_URL
+        const val profilePictureFileName = DatabaseSchema.SessionContacts.PROFILE_PICTURE_FILE_NAME
+        const val profilePictureEncryptionKey = DatabaseSchema.SessionContacts.PROFILE_PICTURE_ENCRYPTION_KEY
+        const val threadID = DatabaseSchema.SessionContacts.THREAD_ID
+        const val isTrusted = DatabaseSchema.SessionContacts.IS_TRUSTED
+        @JvmStatic val createSessionContactTableCommand = DatabaseSchema.SessionContacts.CREATE_TABLE
     }
 
     fun getContactWithSessionID(sessionID: String): Contact? {
@@ -41,6 +33,15 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         }
     }
 
+    fun getContactsWithSessionIDs(sessionIDs: Collection<String>): Map<String, Contact> {
+        val database = databaseHelper.readableDatabase
+        return sessionIDs.distinct().chunked(900).flatMap { chunk ->
+            database.getAll(sessionContactTable, "${Companion.sessionID} IN (${chunk.joinToString { "?" }})", chunk.toTypedArray()) { cursor ->
+                contactFromCursor(cursor)
+            }
+        }.associateBy { it.sessionID }
+    }
+
     fun getAllContacts(): Set<Contact> {
         val database = databaseHelper.readableDatabase
         return database.getAll(sessionContactTable, null, null) { cursor ->
@@ -76,6 +77,7 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         contentValues.put(threadID, contact.threadID)
         contentValues.put(isTrusted, if (contact.isTrusted) 1 else 0)
         database.insertOrUpdate(sessionContactTable, contentValues, "$sessionID = ?", arrayOf( contact.sessionID ))
+        Recipient.contactUpdated(contact)
         notifyConversationListListeners()
     }
 
@@ -93,14 +95,4 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         contact.isTrusted = cursor.getInt(cursor.getColumnIndexOrThrow(isTrusted)) != 0
         return contact
     }
-
-    fun queryContactsByName(constraint: String): Cursor {
-        return databaseHelper.readableDatabase.query(
-            sessionContactTable, null, " $name LIKE ? OR $nickname LIKE ?", arrayOf(
-                "%$constraint%",
-                "%$constraint%"
-            ),
-            null, null, null
-        )
-    }
 }
\ No newline at end of file
@@ -66,35 +66,22 @@ public class SmsDatabase extends MessagingDatabase {
 
   private static final String TAG = SmsDatabase.class.getSimpleName();
 
-  public  static final String TABLE_NAME         = "sms";
-  public  static final String PERSON             = "person";
-          static final String DATE_RECEIVED      = "date";
-          static final String DATE_SENT          = "date_sent";
-  public  static final String PROTOCOL           = "protocol";
-  public  static final String STATUS             = "status";
-  public  static final String TYPE               = "type";
-  public  static final String REPLY_PATH_PRESENT = "reply_path_present";
-  public  static final String SUBJECT            = "subject";
-  public  static final String SERVICE_CENTER     = "service_center";
-
-  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID + " integer PRIMARY KEY, "                +
-    THREAD_ID + " INTEGER, " + ADDRESS + " TEXT, " + ADDRESS_DEVICE_ID + " INTEGER DEFAULT 1, " + PERSON + " INTEGER, " +
-    DATE_RECEIVED  + " INTEGER, " + DATE_SENT + " INTEGER, " + PROTOCOL + " INTEGER, " + READ + " INTEGER DEFAULT 0, " +
-    STATUS + " INTEGER DEFAULT -1," + TYPE + " INTEGER, " + REPLY_PATH_PRESENT + " INTEGER, " +
-    DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0," + SUBJECT + " TEXT, " + BODY + " TEXT, " +
-    MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, " + SERVICE_CENTER + " TEXT, " + SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " +
-    EXPIRES_IN + " INTEGER DEFAULT 0, " + EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " DEFAULT 0, " +
-    READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + UNIDENTIFIED + " INTEGER DEFAULT 0);";
-
-
-  public static final String[] CREATE_INDEXS = {
-    "CREATE INDEX IF NOT EXISTS sms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
-    "CREATE INDEX IF NOT EXISTS sms_read_index ON " + TABLE_NAME + " (" + READ + ");",
-    "CREATE INDEX IF NOT EXISTS sms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + ","  + THREAD_ID + ");",
-    "CREATE INDEX IF NOT EXISTS sms_type_index ON " + TABLE_NAME + " (" + TYPE + ");",
-    "CREATE INDEX IF NOT EXISTS sms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
-    "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");"
-  };
+  public  static final String TABLE_NAME         = DatabaseSchema.Sms.TABLE_NAME;
+  public  static final String PERSON             = DatabaseSchema.Sms.PERSON;
+          static final String DATE_RECEIVED      = DatabaseSchema.Sms.DATE_RECEIVED;
+          static final String DATE_SENT          = DatabaseSchema.Sms.DATE_SENT;
+  public  static final String PROTOCOL           = DatabaseSchema.Sms.PROTOCOL;
+  public  static final String STATUS             = DatabaseSchema.Sms.STATUS;
+  public  static final String TYPE               = DatabaseSchema.Sms.TYPE;
+  public  static final String REPLY_PATH_PRESENT = DatabaseSchema.Sms.REPLY_PATH_PRESENT;
+  public  static final String SUBJECT            = DatabaseSchema.Sms.SUBJECT;
+  public  static final String SERVICE_CENTER     = DatabaseSchema.Sms.SERVICE_CENTER;
+
+  public static final String CREATE_TABLE = DatabaseSchema.Sms.CREATE_TABLE;
+
+  public static final String CREATE_THREAD_DATE_SENT_INDEX = DatabaseSchema.Sms.CREATE_THREAD_DATE_SENT_INDEX;
+
+  public static final String[] CREATE_INDEXS = DatabaseSchema.Sms.CREATE_INDEXS;
 
   private static final String[] MESSAGE_PROJECTION = new String[] {
       ID, THREAD_ID, ADDRESS, ADDRESS_DEVICE_ID, PERSON,
@@ -118,11 +105,9 @@ public class SmsDatabase extends MessagingDatabase {
               ")) AS " + ReactionDatabase.REACTION_JSON_ALIAS
   };
 
-  public static String CREATE_REACTIONS_UNREAD_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
-          "ADD COLUMN " + REACTIONS_UNREAD + " INTEGER DEFAULT 0;";
+  public static final String CREATE_REACTIONS_UNREAD_COMMAND = DatabaseSchema.Sms.CREATE_REACTIONS_UNREAD_COMMAND;
 
-  public static String CREATE_HAS_MENTION_COMMAND = "ALTER TABLE "+ TABLE_NAME + " " +
-          "ADD COLUMN " + HAS_MENTION + " INTEGER DEFAULT 0;";
+  public static final String CREATE_HAS_MENTION_COMMAND = DatabaseSchema.Sms.CREATE_HAS_MENTION_COMMAND;
 
   private static String COMMA_SEPARATED_COLUMNS = ID + ", " + THREAD_ID + ", " + ADDRESS + ", " + ADDRESS_DEVICE_ID + ", " + PERSON + ", " + DATE_RECEIVED + ", " + DATE_SENT + ", " + PROTOCOL + ", " + READ + ", " + STATUS + ", " + TYPE + ", " + REPLY_PATH_PRESENT + ", " + DELIVERY_RECEIPT_COUNT + ", " + SUBJECT + ", " + BODY + ", " + MISMATCHED_IDENTITIES + ", " + SERVICE_CENTER + ", " + SUBSCRIPTION_ID + ", " + EXPIRES_IN + ", " + EXPIRE_STARTED + ", " + NOTIFIED + ", " + READ_RECEIPT_COUNT + ", " + UNIDENTIFIED + ", " + REACTIONS_UNREAD + ", " + HAS_MENTION;
   private static String TEMP_TABLE_NAME = "TEMP_TABLE_NAME";
@@ -157,8 +142,7 @@ public class SmsDatabase extends MessagingDatabase {
 
     long threadId = getThreadIdForMessage(id);
 
-    DatabaseComponent.get(context).threadDatabase().update(threadId, false, true);
-    notifyConversationListeners(threadId);
+    DatabaseComponent.get(context).threadDatabase().scheduleUpdate(threadId, false);
   }
 
   public long getThreadIdForMessage(long id) {
@@ -256,8 +240,7 @@ public class SmsDatabase extends MessagingDatabase {
 
     long threadId = getThreadIdForMessage(id);
 
-    DatabaseComponent.get(context).threadDatabase().update(threadId, false, true);
-    notifyConversationListeners(threadId);
+    DatabaseComponent.get(context).threadDatabase().scheduleUpdate(threadId, false);
   }
 
   public void markAsSentFailed(long id) {
@@ -319,8 +302,7 @@ public class SmsDatabase extends MessagingDatabase {
                              ID + " = ?",
                              new String[] {String.valueOf(cursor.getLong(cursor.getColumnIndexOrThrow(ID)))});
 
-            DatabaseComponent.get(context).threadDatabase().update(threadId, false, true);
-            notifyConversationListeners(threadId);
+            DatabaseComponent.get(context).threadDatabase().scheduleUpdate(threadId, false);
             foundMessage = true;
           }
         }
@@ -696,17 +678,11 @@ public class SmsDatabase extends MessagingDatabase {
     }
   }
 
-  void deleteMessagesInThreadBeforeDate(long threadId, long date) {
+  int deleteMessagesInThreadBeforeDate(long threadId, long date) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    String where      = THREAD_ID + " = ? AND (CASE " + TYPE;
-
-    for (long outgoingType : Types.OUTGOING_MESSAGE_TYPES) {
-      where += " WHEN " + outgoingType + " THEN " + DATE_SENT + " < " + date;
-    }
-
-    where += (" ELSE " + DATE_RECEIVED + " < " + date + " END)");
+    String where      = DatabaseQueries.getSmsTrimSelection(date);
 
-    db.delete(TABLE_NAME, where, new String[] {threadId + ""});
+    return db.delete(TABLE_NAME, where, new String[] {threadId + ""});
   }
 
   void deleteThread(long threadId) {
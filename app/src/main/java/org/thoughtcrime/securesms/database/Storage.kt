@@ -699,8 +699,7 @@ open class Storage(
     }
 
     override fun setOpenGroupServerMessageID(messageID: Long, serverID: Long, threadID: Long, isSms: Boolean) {
-        DatabaseComponent.get(context).lokiMessageDatabase().setServerID(messageID, serverID, isSms)
-        DatabaseComponent.get(context).lokiMessageDatabase().setOriginalThreadID(messageID, serverID, threadID)
+        DatabaseComponent.get(context).lokiMessageDatabase().setServerIDs(threadID, listOf(LokiMessageDatabase.ServerIDMapping(messageID, serverID, isSms)))
     }
 
     override fun getOpenGroup(room: String, server: String): OpenGroup? {
@@ -1179,6 +1178,10 @@ open class Storage(
         return DatabaseComponent.get(context).sessionContactDatabase().getContactWithSessionID(sessionID)
     }
 
+    override fun getContactsWithSessionIDs(sessionIDs: Collection<String>): Map<String, Contact> {
+        return DatabaseComponent.get(context).sessionContactDatabase().getContactsWithSessionIDs(sessionIDs)
+    }
+
     override fun getAllContacts(): Set<Contact> {
         return DatabaseComponent.get(context).sessionContactDatabase().getAllContacts()
     }
@@ -1200,6 +1203,10 @@ open class Storage(
         return DatabaseComponent.get(context).recipientDatabase().getRecipientSettings(address).orNull()
     }
 
+    override fun getRecipientSettings(addresses: Collection<Address>): Map<Address, Recipient.RecipientSettings> {
+        return DatabaseComponent.get(context).recipientDatabase().getRecipientSettings(addresses)
+    }
+
     override fun addLibSessionContacts(contacts: List<LibSessionContact>, timestamp: Long) {
         val mappingDb = DatabaseComponent.get(context).blindedIdMappingDatabase()
         val moreContacts = contacts.filter { contact ->
@@ -1637,6 +1644,34 @@ open class Storage(
         return mapping
     }
 
+    override fun getOrCreateBlindedIdMappings(
+        blindedIds: Collection<String>,
+        server: String,
+        serverPublicKey: String,
+        fromOutbox: Boolean
+    ): Map<String, BlindedIdMapping> {
+        if (blindedIds.isEmpty()) return emptyMap()
+        val db = DatabaseComponent.get(context).blindedIdMappingDatabase()
+        val existingMappings = db.getBlindedIdMappings(blindedIds)
+        // Only loaded if some of the blinded ids still have to be resolved
+        val contactSessionIds by lazy {
+            getAllContacts().map { SessionId(it.sessionID) }.filter { it.prefix == IdPrefix.STANDARD }.map { it.hexString }
+        }
+        val otherMappings by lazy { db.getBlindedIdMappingsExceptFor(server) }
+        val newMappings = mutableListOf<BlindedIdMapping>()
+        val mappings = blindedIds.distinct().associateWith { blindedId ->
+            val existingMapping = existingMappings[blindedId]
+            if (existingMapping?.sessionId != null) return@associateWith existingMapping
+            val sessionId = contactSessionIds.firstOrNull { SodiumUtilities.sessionId(it, blindedId, serverPublicKey) }
+                ?: otherMappings.firstOrNull { SodiumUtilities.sessionId(it.sessionId!!, blindedId, serverPublicKey) }?.sessionId
+            val mapping = (existingMapping ?: BlindedIdMapping(blindedId, null, server, serverPublicKey)).copy(sessionId = sessionId)
+            if (existingMapping == null || sessionId != null) newMappings += mapping
+            mapping
+        }
+        db.addBlindedIdMappings(newMappings)
+        return mappings
+    }
+
     override fun addReaction(reaction: Reaction, messageSender: String, notifyUnread: Boolean) {
         val timestamp = reaction.timestamp
         val localId = reaction.localId
@@ -1690,6 +1725,26 @@ open class Storage(
         DatabaseComponent.get(context).reactionDatabase().deleteMessageReactions(MessageId(messageId, mms))
     }
 
+    override fun setReactions(reactions: Map<Pair<Long, Boolean>, List<Reaction>>, notifyUnread: Boolean) {
+        val records = reactions.entries.associate { (message, messageReactions) ->
+            val (messageId, isMms) = message
+            MessageId(messageId, isMms) to messageReactions.map { reaction ->
+                ReactionRecord(
+                    messageId = messageId,
+                    isMms = isMms,
+                    author = reaction.publicKey!!,
+                    emoji = reaction.emoji!!,
+                    serverId = reaction.serverId!!,
+                    count = reaction.count!!,
+                    sortId = reaction.index!!,
+                    dateSent = reaction.dateSent!!,
+                    dateReceived = reaction.dateReceived!!
+                )
+            }
+        }
+        DatabaseComponent.get(context).reactionDatabase().setReactions(records, notifyUnread)
+    }
+
     override fun setBlocked(recipients: Iterable<Recipient>, isBlocked: Boolean, fromConfigUpdate: Boolean) {
         val recipientDb = DatabaseComponent.get(context).recipientDatabase()
         recipientDb.setBlocked(recipients, isBlocked)
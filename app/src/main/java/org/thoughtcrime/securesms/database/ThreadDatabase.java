@@ -39,6 +39,7 @@ import org.session.libsession.utilities.DistributionTypes;
 import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.Util;
+import org.session.libsession.utilities.WindowDebouncer;
 import org.session.libsession.utilities.recipients.Recipient;
 import org.session.libsession.utilities.recipients.Recipient.RecipientSettings;
 import org.session.libsignal.utilities.IdPrefix;
@@ -58,12 +59,14 @@ import org.thoughtcrime.securesms.mms.SlideDeck;
 import org.thoughtcrime.securesms.notifications.MarkReadReceiver;
 import org.thoughtcrime.securesms.util.SessionMetaProtocol;
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
 
 public class ThreadDatabase extends Database {
 
@@ -74,46 +77,38 @@ public class ThreadDatabase extends Database {
 
   private static final String TAG = ThreadDatabase.class.getSimpleName();
 
-  private final Map<Long, Address> addressCache = new HashMap<>();
-
-  public  static final String TABLE_NAME             = "thread";
-  public  static final String ID                     = "_id";
-  public  static final String THREAD_CREATION_DATE   = "date";
-  public  static final String MESSAGE_COUNT          = "message_count";
-  public  static final String ADDRESS                = "recipient_ids";
-  public  static final String SNIPPET                = "snippet";
-  private static final String SNIPPET_CHARSET        = "snippet_cs";
-  public  static final String READ                   = "read";
-  public  static final String UNREAD_COUNT           = "unread_count";
-  public  static final String UNREAD_MENTION_COUNT   = "unread_mention_count";
-  public  static final String DISTRIBUTION_TYPE      = "type"; // See: DistributionTypes.kt
-  private static final String ERROR                  = "error";
-  public  static final String SNIPPET_TYPE           = "snippet_type";
-  public  static final String SNIPPET_URI            = "snippet_uri";
-  public  static final String ARCHIVED               = "archived";
-  public  static final String STATUS                 = "status";
-  public  static final String DELIVERY_RECEIPT_COUNT = "delivery_receipt_count";
-  public  static final String READ_RECEIPT_COUNT     = "read_receipt_count";
-  public  static final String EXPIRES_IN             = "expires_in";
-  public  static final String LAST_SEEN              = "last_seen";
-  public static final String HAS_SENT                = "has_sent";
-  public  static final String IS_PINNED              = "is_pinned";
-
-  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("                    +
-    ID + " INTEGER PRIMARY KEY, " + THREAD_CREATION_DATE + " INTEGER DEFAULT 0, "                  +
-    MESSAGE_COUNT + " INTEGER DEFAULT 0, " + ADDRESS + " TEXT, " + SNIPPET + " TEXT, "             +
-    SNIPPET_CHARSET + " INTEGER DEFAULT 0, " + READ + " INTEGER DEFAULT 1, "                       +
-          DISTRIBUTION_TYPE + " INTEGER DEFAULT 0, " + ERROR + " INTEGER DEFAULT 0, "                    +
-    SNIPPET_TYPE + " INTEGER DEFAULT 0, " + SNIPPET_URI + " TEXT DEFAULT NULL, "                   +
-    ARCHIVED + " INTEGER DEFAULT 0, " + STATUS + " INTEGER DEFAULT 0, "                            +
-    DELIVERY_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + EXPIRES_IN + " INTEGER DEFAULT 0, "          +
-    LAST_SEEN + " INTEGER DEFAULT 0, " + HAS_SENT + " INTEGER DEFAULT 0, "                         +
-    READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + UNREAD_COUNT + " INTEGER DEFAULT 0);";
-
-  public static final String[] CREATE_INDEXES = {
-    "CREATE INDEX IF NOT EXISTS thread_recipient_ids_index ON " + TABLE_NAME + " (" + ADDRESS + ");",
-    "CREATE INDEX IF NOT EXISTS archived_count_index ON " + TABLE_NAME + " (" + ARCHIVED + ", " + MESSAGE_COUNT + ");",
-  };
+  private static final long UPDATE_WINDOW_MS = 250;
+
+  private final Map<Long, Address>     addressCache    = new HashMap<>();
+  private final ThreadUpdateCoalescer  pendingUpdates  = new ThreadUpdateCoalescer(new PendingUpdateStore());
+  private final WindowDebouncer        updateDebouncer = new WindowDebouncer(UPDATE_WINDOW_MS, new Timer());
+
+  public  static final String TABLE_NAME             = DatabaseSchema.Threads.TABLE_NAME;
+  public  static final String ID                     = DatabaseSchema.Threads.ID;
+  public  static final String THREAD_CREATION_DATE   = DatabaseSchema.Threads.THREAD_CREATION_DATE;
+  public  static final String MESSAGE_COUNT          = DatabaseSchema.Threads.MESSAGE_COUNT;
+  public  static final String ADDRESS                = DatabaseSchema.Threads.ADDRESS;
+  public  static final String SNIPPET                = DatabaseSchema.Threads.SNIPPET;
+  private static final String SNIPPET_CHARSET        = DatabaseSchema.Threads.SNIPPET_CHARSET;
+  public  static final String READ                   = DatabaseSchema.Threads.READ;
+  public  static final String UNREAD_COUNT           = DatabaseSchema.Threads.UNREAD_COUNT;
+  public  static final String UNREAD_MENTION_COUNT   = DatabaseSchema.Threads.UNREAD_MENTION_COUNT;
+  public  static final String DISTRIBUTION_TYPE      = DatabaseSchema.Threads.DISTRIBUTION_TYPE; // See: DistributionTypes.kt
+  private static final String ERROR                  = DatabaseSchema.Threads.ERROR;
+  public  static final String SNIPPET_TYPE           = DatabaseSchema.Threads.SNIPPET_TYPE;
+  public  static final String SNIPPET_URI            = DatabaseSchema.Threads.SNIPPET_URI;
+  public  static final String ARCHIVED               = DatabaseSchema.Threads.ARCHIVED;
+  public  static final String STATUS                 = DatabaseSchema.Threads.STATUS;
+  public  static final String DELIVERY_RECEIPT_COUNT = DatabaseSchema.Threads.DELIVERY_RECEIPT_COUNT;
+  public  static final String READ_RECEIPT_COUNT     = DatabaseSchema.Threads.READ_RECEIPT_COUNT;
+  public  static final String EXPIRES_IN             = DatabaseSchema.Threads.EXPIRES_IN;
+  public  static final String LAST_SEEN              = DatabaseSchema.Threads.LAST_SEEN;
+  public static final String HAS_SENT                = DatabaseSchema.Threads.HAS_SENT;
+  public  static final String IS_PINNED              = DatabaseSchema.Threads.IS_PINNED;
+
+  public static final String CREATE_TABLE = DatabaseSchema.Threads.CREATE_TABLE;
+
+  public static final String[] CREATE_INDEXES = DatabaseSchema.Threads.CREATE_INDEXES;
 
   private static final String[] THREAD_PROJECTION = {
       ID, THREAD_CREATION_DATE, MESSAGE_COUNT, ADDRESS, SNIPPET, SNIPPET_CHARSET, READ, UNREAD_COUNT, UNREAD_MENTION_COUNT, DISTRIBUTION_TYPE, ERROR, SNIPPET_TYPE,
@@ -130,13 +125,11 @@ public class ThreadDatabase extends Database {
                                                                                                              .toList();
 
   public static String getCreatePinnedCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + IS_PINNED + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Threads.CREATE_PINNED_COMMAND;
   }
 
   public static String getUnreadMentionCountCommand() {
-    return "ALTER TABLE "+ TABLE_NAME + " " +
-            "ADD COLUMN " + UNREAD_MENTION_COUNT + " INTEGER DEFAULT 0;";
+    return DatabaseSchema.Threads.CREATE_UNREAD_MENTION_COUNT_COMMAND;
   }
 
   private ConversationThreadUpdateListener updateListener;
@@ -185,7 +178,6 @@ public class ThreadDatabase extends Database {
 
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
     db.update(TABLE_NAME, contentValues, ID + " = ?", new String[] {threadId + ""});
-    notifyConversationListListeners();
   }
 
   public void updateSnippet(long threadId, String snippet, @Nullable Uri attachment, long date, long type, boolean unarchive) {
@@ -265,37 +257,54 @@ public class ThreadDatabase extends Database {
 
   public void trimThread(long threadId, int length) {
     Log.i("ThreadDatabase", "Trimming thread: " + threadId + " to: " + length);
-    Cursor cursor = null;
-
-    try {
-      cursor = DatabaseComponent.get(context).mmsSmsDatabase().getConversation(threadId, true);
+    if (length <= 0) return;
 
-      if (cursor != null && length > 0 && cursor.getCount() > length) {
-        Log.w("ThreadDatabase", "Cursor count is greater than length!");
-        cursor.moveToPosition(length - 1);
+    long lastTweetDate = getTrimCutoffDate(threadId, length);
+    if (lastTweetDate == -1) return;
 
-        long lastTweetDate = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_RECEIVED));
+    Log.i("ThreadDatabase", "Cut off tweet date: " + lastTweetDate);
+    deleteMessagesBefore(threadId, lastTweetDate);
+  }
 
-        Log.i("ThreadDatabase", "Cut off tweet date: " + lastTweetDate);
+  public void trimThreadBefore(long threadId, long timestamp) {
+    Log.i("ThreadDatabase", "Trimming thread: " + threadId + " before :"+timestamp);
+    deleteMessagesBefore(threadId, timestamp);
+  }
 
-        DatabaseComponent.get(context).smsDatabase().deleteMessagesInThreadBeforeDate(threadId, lastTweetDate);
-        DatabaseComponent.get(context).mmsDatabase().deleteMessagesInThreadBeforeDate(threadId, lastTweetDate);
+  /**
+   * Returns the received date of the message at position {@code length} when ordering the thread by
+   * sent date, newest first, or -1 if the thread doesn't have more than {@code length} messages.
+   */
+  private long getTrimCutoffDate(long threadId, int length) {
+    String   query = DatabaseQueries.getTrimCutoffDate(length);
+    String[] args  = new String[] { String.valueOf(threadId), String.valueOf(threadId) };
 
-        update(threadId, false, true);
-        notifyConversationListeners(threadId);
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, args)) {
+      // A second row means the thread has more than `length` messages
+      if (cursor != null && cursor.getCount() > 1 && cursor.moveToFirst()) {
+        return cursor.getLong(0);
       }
-    } finally {
-      if (cursor != null)
-        cursor.close();
+      return -1;
     }
   }
 
-  public void trimThreadBefore(long threadId, long timestamp) {
-    Log.i("ThreadDatabase", "Trimming thread: " + threadId + " before :"+timestamp);
-    DatabaseComponent.get(context).smsDatabase().deleteMessagesInThreadBeforeDate(threadId, timestamp);
-    DatabaseComponent.get(context).mmsDatabase().deleteMessagesInThreadBeforeDate(threadId, timestamp);
-    update(threadId, false, true);
-    notifyConversationListeners(threadId);
+  private void deleteMessagesBefore(long threadId, long date) {
+    SQLiteDatabase db           = databaseHelper.getWritableDatabase();
+    int            deletedCount = 0;
+
+    db.beginTransaction();
+    try {
+      deletedCount += DatabaseComponent.get(context).smsDatabase().deleteMessagesInThreadBeforeDate(threadId, date);
+      deletedCount += DatabaseComponent.get(context).mmsDatabase().deleteMessagesInThreadBeforeDate(threadId, date);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    if (deletedCount > 0) {
+      update(threadId, false, true);
+      notifyConversationListeners(threadId);
+    }
   }
 
   public List<MarkedMessageInfo> setRead(long threadId, long lastReadTime) {
@@ -379,19 +388,6 @@ public class ThreadDatabase extends Database {
 
   }
 
-  public Cursor searchConversationAddresses(String addressQuery) {
-    if (addressQuery == null || addressQuery.isEmpty()) {
-      return null;
-    }
-
-    SQLiteDatabase db = databaseHelper.getReadableDatabase();
-    String   selection      = TABLE_NAME + "." + ADDRESS + " LIKE ? AND " + TABLE_NAME + "." + MESSAGE_COUNT + " != 0";
-    String[] selectionArgs  = new String[]{addressQuery+"%"};
-    String query = createQuery(selection, 0);
-    Cursor cursor = db.rawQuery(query, selectionArgs);
-    return cursor;
-  }
-
   public Cursor getFilteredConversationList(@Nullable List<Address> filter) {
     if (filter == null || filter.size() == 0)
       return null;
@@ -722,7 +718,43 @@ public class ThreadDatabase extends Database {
     notifyConversationListListeners();
   }
 
+  /**
+   * Schedules a call to {@link #update(long, boolean, boolean)} for a change that doesn't need to be
+   * reflected in the thread summary right away, e.g. a receipt or a status change. Scheduled updates
+   * are coalesced so that a burst of changes to a thread only recomputes its summary, and notifies
+   * its conversation listeners, once. Callers don't need to notify the listeners themselves.
+   */
+  public void scheduleUpdate(long threadId, boolean unarchive) {
+    if (pendingUpdates.markDirty(threadId, unarchive)) {
+      updateDebouncer.publish(this::flushPendingUpdates);
+    }
+  }
+
+  public void flushPendingUpdates() {
+    try {
+      int count = pendingUpdates.flush();
+      if (count > 0) Log.d(TAG, "Updated " + count + " pending threads");
+    } catch (Exception e) {
+      // This runs on the debouncer's timer, which would stop for good if this threw
+      Log.w(TAG, "Couldn't update pending threads, retrying.", e);
+      updateDebouncer.publish(this::flushPendingUpdates);
+    }
+  }
+
   public boolean update(long threadId, boolean unarchive, boolean shouldDeleteOnEmpty) {
+    try {
+      return updateWithoutNotifying(threadId, unarchive, shouldDeleteOnEmpty);
+    } finally {
+      notifyConversationListListeners();
+      notifyConversationListeners(threadId);
+    }
+  }
+
+  private boolean updateWithoutNotifying(long threadId, boolean unarchive, boolean shouldDeleteOnEmpty) {
+    // This update covers any scheduled one
+    Boolean pendingUnarchive = pendingUpdates.take(threadId);
+    unarchive |= pendingUnarchive != null && pendingUnarchive;
+
     MmsSmsDatabase mmsSmsDatabase = DatabaseComponent.get(context).mmsSmsDatabase();
     long count                    = mmsSmsDatabase.getConversationCount(threadId);
 
@@ -730,7 +762,6 @@ public class ThreadDatabase extends Database {
 
     if (count == 0 && shouldDeleteEmptyThread) {
       deleteThread(threadId);
-      notifyConversationListListeners();
       return true;
     }
 
@@ -755,9 +786,29 @@ public class ThreadDatabase extends Database {
         // todo: add empty snippet that clears existing data
         return false;
       }
-    } finally {
+    }
+  }
+
+  private class PendingUpdateStore implements ThreadUpdateCoalescer.Store {
+
+    @Override
+    public void recompute(@NonNull Map<Long, Boolean> threads) {
+      SQLiteDatabase db = databaseHelper.getWritableDatabase();
+      db.beginTransaction();
+      try {
+        for (Map.Entry<Long, Boolean> thread : threads.entrySet()) {
+          updateWithoutNotifying(thread.getKey(), thread.getValue(), true);
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+    }
+
+    @Override
+    public void notifyUpdated(@NonNull Set<Long> threadIds) {
       notifyConversationListListeners();
-      notifyConversationListeners(threadId);
+      notifyConversationListeners(threadIds);
     }
   }
 
@@ -888,15 +939,49 @@ public class ThreadDatabase extends Database {
       return getCurrent();
     }
 
+    /**
+     * Reads every remaining row. The recipients of all of them are resolved together, with one
+     * query for the settings and contacts that aren't cached yet rather than one per row.
+     */
+    public @NonNull List<ThreadRecord> getAll() {
+      if (cursor == null) return Collections.emptyList();
+
+      int                             firstPosition = cursor.getPosition() + 1;
+      List<Address>                   addresses     = new ArrayList<>(Math.max(cursor.getCount() - firstPosition, 0));
+      Map<Address, RecipientSettings> settings      = new HashMap<>();
+      Map<Address, GroupRecord>       groupRecords  = new HashMap<>();
+
+      while (cursor.moveToNext()) {
+        Address address = getAddress();
+        addresses.add(address);
+
+        if (hasRecipientDetails()) {
+          Optional<RecipientSettings> rowSettings    = DatabaseComponent.get(context).recipientDatabase().getRecipientSettings(cursor);
+          Optional<GroupRecord>       rowGroupRecord = DatabaseComponent.get(context).groupDatabase().getGroup(cursor);
+
+          if (rowSettings.isPresent())    settings.put(address, rowSettings.get());
+          if (rowGroupRecord.isPresent()) groupRecords.put(address, rowGroupRecord.get());
+        }
+      }
+
+      List<Recipient>    recipients = Recipient.from(context, addresses, settings, groupRecords, true);
+      List<ThreadRecord> records    = new ArrayList<>(recipients.size());
+
+      for (int i = 0; i < recipients.size(); i++) {
+        cursor.moveToPosition(firstPosition + i);
+        records.add(getCurrent(recipients.get(i)));
+      }
+
+      return records;
+    }
+
     public ThreadRecord getCurrent() {
-      long    threadId         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.ID));
-      int     distributionType = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.DISTRIBUTION_TYPE));
-      Address address          = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.ADDRESS)));
+      Address address = getAddress();
 
       Optional<RecipientSettings> settings;
       Optional<GroupRecord>       groupRecord;
 
-      if (distributionType != DistributionTypes.ARCHIVE && distributionType != DistributionTypes.INBOX_ZERO) {
+      if (hasRecipientDetails()) {
         settings    = DatabaseComponent.get(context).recipientDatabase().getRecipientSettings(cursor);
         groupRecord = DatabaseComponent.get(context).groupDatabase().getGroup(cursor);
       } else {
@@ -904,7 +989,21 @@ public class ThreadDatabase extends Database {
         groupRecord = Optional.absent();
       }
 
-      Recipient          recipient            = Recipient.from(context, address, settings, groupRecord, true);
+      return getCurrent(Recipient.from(context, address, settings, groupRecord, true));
+    }
+
+    private @NonNull Address getAddress() {
+      return Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.ADDRESS)));
+    }
+
+    private boolean hasRecipientDetails() {
+      int distributionType = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.DISTRIBUTION_TYPE));
+      return distributionType != DistributionTypes.ARCHIVE && distributionType != DistributionTypes.INBOX_ZERO;
+    }
+
+    private ThreadRecord getCurrent(@NonNull Recipient recipient) {
+      long               threadId             = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.ID));
+      int                distributionType     = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.DISTRIBUTION_TYPE));
       String             body                 = cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.SNIPPET));
       long               date                 = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.THREAD_CREATION_DATE));
       long               count                = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.MESSAGE_COUNT));
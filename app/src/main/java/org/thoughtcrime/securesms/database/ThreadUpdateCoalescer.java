@@ -0,0 +1,94 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the threads whose summary (message count, snippet, receipts...) is out of date,
+ * so that a burst of changes to the same thread only recomputes its summary, and notifies its
+ * listeners, once.
+ */
+public class ThreadUpdateCoalescer {
+
+  public interface Store {
+    /**
+     * Recomputes the summaries of `threads` (thread id to whether to unarchive it) as a whole, e.g.
+     * in a single transaction, without notifying anyone yet.
+     */
+    void recompute(@NonNull Map<Long, Boolean> threads);
+
+    /**
+     * Called once the recomputed summaries of `threadIds` have been committed.
+     */
+    void notifyUpdated(@NonNull Set<Long> threadIds);
+  }
+
+  private final ConcurrentHashMap<Long, Boolean> pendingThreads = new ConcurrentHashMap<>();
+  private final Store                            store;
+
+  public ThreadUpdateCoalescer(@NonNull Store store) {
+    this.store = store;
+  }
+
+  /**
+   * Marks the summary of a thread as out of date.
+   *
+   * @return true if the thread wasn't already waiting for a recomputation.
+   */
+  public boolean markDirty(long threadId, boolean unarchive) {
+    while (true) {
+      Boolean pending = pendingThreads.putIfAbsent(threadId, unarchive);
+
+      if (pending == null) return true;
+      if (pending || !unarchive || pendingThreads.replace(threadId, false, true)) return false;
+    }
+  }
+
+  /**
+   * Removes a thread from the pending ones, e.g. because its summary is being recomputed anyway.
+   *
+   * @return whether the pending recomputation should unarchive the thread, or null if there wasn't one.
+   */
+  public @Nullable Boolean take(long threadId) {
+    return pendingThreads.remove(threadId);
+  }
+
+  /**
+   * Recomputes the summary of every pending thread once, then notifies the listeners of each of
+   * them once. If the recomputation fails, the threads are marked as pending again before the
+   * exception is rethrown, so that they're part of the next flush.
+   *
+   * @return the number of recomputed threads.
+   */
+  public int flush() {
+    Map<Long, Boolean> threads = new HashMap<>();
+
+    for (Long threadId : pendingThreads.keySet()) {
+      Boolean unarchive = pendingThreads.remove(threadId);
+      if (unarchive != null) threads.put(threadId, unarchive);
+    }
+
+    if (threads.isEmpty()) return 0;
+
+    try {
+      store.recompute(threads);
+    } catch (RuntimeException e) {
+      for (Map.Entry<Long, Boolean> thread : threads.entrySet()) {
+        markDirty(thread.getKey(), thread.getValue());
+      }
+      throw e;
+    }
+
+    store.notifyUpdated(threads.keySet());
+    return threads.size();
+  }
+
+  public boolean isEmpty() {
+    return pendingThreads.isEmpty();
+  }
+}
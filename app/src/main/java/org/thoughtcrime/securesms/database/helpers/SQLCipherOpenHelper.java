@@ -93,9 +93,12 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
   private static final int lokiV44                          = 65;
   private static final int lokiV45                          = 66;
   private static final int lokiV46                          = 67;
+  private static final int lokiV47                          = 68;
+  private static final int lokiV48                          = 69;
+  private static final int lokiV49                          = 70;
 
   // Loki - onUpgrade(...) must be updated to use Loki version numbers if Signal makes any database changes
-  private static final int    DATABASE_VERSION         = lokiV46;
+  private static final int    DATABASE_VERSION         = lokiV49;
   private static final int    MIN_DATABASE_VERSION     = lokiV7;
   private static final String CIPHER3_DATABASE_NAME    = "signal.db";
   public static final String  DATABASE_NAME            = "signal_v4.db";
@@ -324,6 +327,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(SessionJobDatabase.getCreateSessionJobTableCommand());
     db.execSQL(LokiMessageDatabase.getUpdateMessageIDTableForType());
     db.execSQL(LokiMessageDatabase.getUpdateMessageMappingTable());
+    db.execSQL(LokiMessageDatabase.getCreateThreadServerIDIndexCommand());
     db.execSQL(SessionContactDatabase.getCreateSessionContactTableCommand());
     db.execSQL(RecipientDatabase.getCreateNotificationTypeCommand());
     db.execSQL(ThreadDatabase.getCreatePinnedCommand());
@@ -367,6 +371,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(RecipientDatabase.getAddWrapperHash());
     db.execSQL(RecipientDatabase.getAddBlocksCommunityMessageRequests());
     db.execSQL(LokiAPIDatabase.CREATE_LAST_LEGACY_MESSAGE_TABLE);
+    executeStatements(db, SearchDatabase.CREATE_RECIPIENT_TABLE);
   }
 
   @Override
@@ -633,6 +638,20 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
         db.execSQL(LokiAPIDatabase.CREATE_LAST_LEGACY_MESSAGE_TABLE);
       }
 
+      if (oldVersion < lokiV47) {
+        db.execSQL(SmsDatabase.CREATE_THREAD_DATE_SENT_INDEX);
+        db.execSQL(MmsDatabase.CREATE_THREAD_DATE_SENT_INDEX);
+      }
+
+      if (oldVersion < lokiV48) {
+        executeStatements(db, SearchDatabase.CREATE_RECIPIENT_TABLE);
+        executeStatements(db, SearchDatabase.POPULATE_RECIPIENT_TABLE);
+      }
+
+      if (oldVersion < lokiV49) {
+        db.execSQL(LokiMessageDatabase.getCreateThreadServerIDIndexCommand());
+      }
+
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
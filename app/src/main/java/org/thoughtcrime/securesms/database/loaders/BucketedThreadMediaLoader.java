@@ -5,26 +5,32 @@ import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.loader.content.AsyncTaskLoader;
 
-import com.annimon.stream.Stream;
-
 import org.session.libsession.utilities.Address;
+import org.session.libsession.utilities.Util;
+import org.session.libsession.utilities.concurrent.SignalExecutors;
 import org.session.libsession.utilities.recipients.Recipient;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.MediaDatabase;
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import network.loki.messenger.R;
 
@@ -36,6 +42,8 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
   private final Address         address;
   private final ContentObserver observer;
 
+  private volatile BucketedThreadMedia previous;
+
   public BucketedThreadMediaLoader(@NonNull Context context, @NonNull Address address) {
     super(context);
     this.address  = address;
@@ -62,171 +70,345 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
   }
 
   @Override
-  public BucketedThreadMedia loadInBackground() {
-    BucketedThreadMedia result   = new BucketedThreadMedia(getContext());
-    long                threadId = DatabaseComponent.get(getContext()).threadDatabase().getOrCreateThreadIdFor(Recipient.from(getContext(), address, true));
+  public void deliverResult(BucketedThreadMedia result) {
+    previous = result;
+    super.deliverResult(result);
+  }
 
+  @Override
+  public BucketedThreadMedia loadInBackground() {
+    long          threadId      = DatabaseComponent.get(getContext()).threadDatabase().getOrCreateThreadIdFor(Recipient.from(getContext(), address, true));
     MediaDatabase mediaDatabase = DatabaseComponent.get(getContext()).mediaDatabase();
+    long          now           = System.currentTimeMillis();
 
     mediaDatabase.subscribeToMediaChanges(observer);
-    try (Cursor cursor = mediaDatabase.getGalleryMediaForThread(threadId)) {
+
+    List<Section> sections = new ArrayList<>();
+
+    try (Cursor cursor = mediaDatabase.getGalleryMediaPagesForThread(threadId, now, BucketedThreadMedia.PAGE_SIZE)) {
       while (cursor != null && cursor.moveToNext()) {
-        result.add(MediaDatabase.MediaRecord.from(getContext(), cursor));
+        int     bucket  = cursor.getInt(cursor.getColumnIndexOrThrow(MediaDatabase.GALLERY_BUCKET));
+        Section section = sections.isEmpty() ? null : sections.get(sections.size() - 1);
+
+        if (section == null || section.bucket != bucket) {
+          section = new Section(bucket,
+                                cursor.getInt(cursor.getColumnIndexOrThrow(MediaDatabase.GALLERY_COUNT)),
+                                cursor.getLong(cursor.getColumnIndexOrThrow(MediaDatabase.GALLERY_CHECKSUM)));
+          sections.add(section);
+        }
+
+        section.addPageStart(cursor.getLong(cursor.getColumnIndexOrThrow(MediaDatabase.GALLERY_DATE)),
+                             cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentDatabase.ROW_ID)));
       }
     }
 
+    BucketedThreadMedia result = new BucketedThreadMedia(getContext(), threadId, now, sections, previous);
+    result.loadFirstPages();
+
     return result;
   }
 
+  /**
+   * The media of a thread, split into sections by date. Only the number of items in each section
+   * is known up front, the items themselves are loaded a page at a time as they are displayed.
+   * The pages that haven't been displayed for the longest are dropped once more than
+   * {@link #MAX_LOADED_ITEMS} items are loaded.
+   */
   public static class BucketedThreadMedia {
 
-    private final TimeBucket   TODAY;
-    private final TimeBucket   YESTERDAY;
-    private final TimeBucket   THIS_WEEK;
-    private final TimeBucket   THIS_MONTH;
-    private final MonthBuckets OLDER;
+    static final int PAGE_SIZE        = 60;
+    static final int MAX_LOADED_ITEMS = 6 * PAGE_SIZE;
+
+    private final Context       context;
+    private final long          threadId;
+    private final long          now;
+    private final List<Section> sections;
+
+    private final Set<Long> pendingPages = new HashSet<>();
 
-    private final TimeBucket[] TIME_SECTIONS;
+    // The loaded pages, from the one displayed the longest ago to the last one displayed
+    private final LinkedHashMap<Long, Integer> loadedPages = new LinkedHashMap<>(16, 0.75f, true);
+    private       int                          loadedItems;
+
+    private @Nullable PageListener listener;
 
     public BucketedThreadMedia(@NonNull Context context) {
-      this.TODAY         = new TimeBucket(context.getString(R.string.BucketedThreadMedia_Today), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -1), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, 1000));
-      this.YESTERDAY     = new TimeBucket(context.getString(R.string.BucketedThreadMedia_Yesterday), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -2), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -1));
-      this.THIS_WEEK     = new TimeBucket(context.getString(R.string.BucketedThreadMedia_This_week), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -7), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -2));
-      this.THIS_MONTH    = new TimeBucket(context.getString(R.string.BucketedThreadMedia_This_month), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -30), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -7));
-      this.TIME_SECTIONS = new TimeBucket[]{TODAY, YESTERDAY, THIS_WEEK, THIS_MONTH};
-      this.OLDER         = new MonthBuckets();
+      this(context, -1, 0, Collections.emptyList(), null);
     }
 
+    BucketedThreadMedia(@NonNull Context context, long threadId, long now, @NonNull List<Section> sections, @Nullable BucketedThreadMedia previous) {
+      this.context  = context.getApplicationContext();
+      this.threadId = threadId;
+      this.now      = now;
+      this.sections = sections;
+
+      if (previous != null) {
+        reusePages(previous);
+      }
+    }
+
+    /**
+     * Sections that have the same items as in the previous load keep the pages that were already
+     * loaded, so a change only reloads the sections it added items to or removed items from.
+     */
+    private void reusePages(@NonNull BucketedThreadMedia previous) {
+      if (previous.threadId != threadId) return;
+
+      List<Long> previousPages;
 
-    public void add(MediaDatabase.MediaRecord mediaRecord) {
-      for (TimeBucket timeSection : TIME_SECTIONS) {
-        if (timeSection.inRange(mediaRecord.getDate())) {
-          timeSection.add(mediaRecord);
-          return;
+      synchronized (previous.loadedPages) {
+        previousPages = new ArrayList<>(previous.loadedPages.keySet());
+      }
+
+      // In the order they were displayed in, so that the same pages are dropped first
+      for (long previousKey : previousPages) {
+        Section previousSection = previous.sections.get(getSectionIndex(previousKey));
+        int     page            = getPage(previousKey);
+
+        for (int index = 0; index < sections.size(); index++) {
+          Section section = sections.get(index);
+
+          if (section.hasSameItems(previousSection)) {
+            List<MediaDatabase.MediaRecord> records = previousSection.getPage(page);
+            if (records != null) putPage(index, page, records);
+            break;
+          }
         }
       }
+    }
 
-      OLDER.add(mediaRecord);
+    public void setPageListener(@Nullable PageListener listener) {
+      this.listener = listener;
     }
 
     public int getSectionCount() {
-      return (int)Stream.of(TIME_SECTIONS)
-                        .filter(timeBucket -> !timeBucket.isEmpty())
-                        .count() +
-             OLDER.getSectionCount();
+      return sections.size();
     }
 
     public int getSectionItemCount(int section) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItemCount();
-      else                                    return OLDER.getSectionItemCount(section - activeTimeBuckets.size());
+      return sections.get(section).count;
     }
 
-    public MediaDatabase.MediaRecord get(int section, int item) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
+    /**
+     * @return the item, or null if its page isn't loaded yet, in which case it is loaded in the
+     * background and the {@link PageListener} is told once it is.
+     */
+    @MainThread
+    public @Nullable MediaDatabase.MediaRecord get(int section, int item) {
+      Section                         bucket = sections.get(section);
+      List<MediaDatabase.MediaRecord> page   = bucket.getPage(item / PAGE_SIZE);
+
+      if (page == null) {
+        loadPage(section, item / PAGE_SIZE);
+        return null;
+      }
 
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItem(item);
-      else                                    return OLDER.getItem(section - activeTimeBuckets.size(), item);
+      synchronized (loadedPages) {
+        loadedPages.get(getKey(section, item / PAGE_SIZE));
+      }
+
+      int index = item % PAGE_SIZE;
+      return index < page.size() ? page.get(index) : null;
     }
 
     public String getName(int section, Locale locale) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getName();
-      else                                    return OLDER.getName(section - activeTimeBuckets.size(), locale);
+      int bucket = sections.get(section).bucket;
+
+      switch (bucket) {
+        case MediaDatabase.BUCKET_TODAY:      return context.getString(R.string.BucketedThreadMedia_Today);
+        case MediaDatabase.BUCKET_YESTERDAY:  return context.getString(R.string.BucketedThreadMedia_Yesterday);
+        case MediaDatabase.BUCKET_THIS_WEEK:  return context.getString(R.string.BucketedThreadMedia_This_week);
+        case MediaDatabase.BUCKET_THIS_MONTH: return context.getString(R.string.BucketedThreadMedia_This_month);
+        default:                              return new SimpleDateFormat("MMMM, yyyy", locale).format(getMonth(bucket));
+      }
     }
 
-    private static class TimeBucket {
-
-      private final List<MediaDatabase.MediaRecord> records = new LinkedList<>();
+    /**
+     * Reads every item, without keeping the pages that weren't loaded already.
+     */
+    @WorkerThread
+    public @NonNull List<MediaDatabase.MediaRecord> getAll() {
+      List<MediaDatabase.MediaRecord> all = new ArrayList<>();
+
+      for (Section section : sections) {
+        for (int page = 0; page < section.getPageCount(); page++) {
+          List<MediaDatabase.MediaRecord> records = section.getPage(page);
+          all.addAll(records != null ? records : queryPage(section, page));
+        }
+      }
 
-      private final long   startTime;
-      private final long   endtime;
-      private final String name;
+      return all;
+    }
 
-      TimeBucket(String name, long startTime, long endtime) {
-        this.name      = name;
-        this.startTime = startTime;
-        this.endtime   = endtime;
+    /**
+     * Loads enough pages to fill the first screen, so the gallery doesn't open empty. The recent
+     * sections are often smaller than a page, so their first pages are read with one query rather
+     * than one each.
+     */
+    @WorkerThread
+    void loadFirstPages() {
+      int     end     = 0;
+      int     loaded  = 0;
+      boolean missing = false;
+
+      // Every section but the last one on the first screen is smaller than a page
+      for (; end < sections.size() && loaded < PAGE_SIZE; end++) {
+        loaded  += Math.min(sections.get(end).count, PAGE_SIZE);
+        missing |= sections.get(end).getPage(0) == null;
       }
 
-      void add(MediaDatabase.MediaRecord record) {
-        this.records.add(record);
-      }
+      if (!missing) return;
 
-      boolean inRange(long timestamp) {
-        return timestamp > startTime && timestamp <= endtime;
-      }
+      Map<Integer, List<MediaDatabase.MediaRecord>> pages         = new HashMap<>();
+      MediaDatabase                                 mediaDatabase = DatabaseComponent.get(context).mediaDatabase();
 
-      boolean isEmpty() {
-        return records.isEmpty();
-      }
+      try (Cursor cursor = mediaDatabase.getGalleryMediaFromBucket(threadId, now, sections.get(0).bucket, loaded)) {
+        while (cursor != null && cursor.moveToNext()) {
+          int                             bucket = cursor.getInt(cursor.getColumnIndexOrThrow(MediaDatabase.GALLERY_BUCKET));
+          List<MediaDatabase.MediaRecord> page   = pages.get(bucket);
 
-      int getItemCount() {
-        return records.size();
-      }
+          if (page == null) {
+            page = new ArrayList<>(PAGE_SIZE);
+            pages.put(bucket, page);
+          }
 
-      MediaDatabase.MediaRecord getItem(int position) {
-        return records.get(position);
+          page.add(MediaDatabase.MediaRecord.from(context, cursor));
+        }
       }
 
-      String getName() {
-        return name;
-      }
+      for (int index = 0; index < end; index++) {
+        Section section = sections.get(index);
 
-      static long addToCalendar(int field, int amount) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(field, amount);
-        return calendar.getTimeInMillis();
+        if (section.getPage(0) == null) {
+          List<MediaDatabase.MediaRecord> page = pages.get(section.bucket);
+          putPage(index, 0, page != null ? page : new ArrayList<>());
+        }
       }
     }
 
-    private static class MonthBuckets {
+    @MainThread
+    private void loadPage(int sectionIndex, int page) {
+      Section section = sections.get(sectionIndex);
+      long    key     = getKey(sectionIndex, page);
 
-      private final Map<Date, List<MediaDatabase.MediaRecord>> months = new HashMap<>();
+      if (!pendingPages.add(key)) return;
 
-      void add(MediaDatabase.MediaRecord record) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(record.getDate());
+      SignalExecutors.BOUNDED.execute(() -> {
+        List<MediaDatabase.MediaRecord> records = queryPage(section, page);
 
-        int  year  = calendar.get(Calendar.YEAR) - 1900;
-        int  month = calendar.get(Calendar.MONTH);
-        Date date  = new Date(year, month, 1);
+        Util.runOnMain(() -> {
+          putPage(sectionIndex, page, records);
+          pendingPages.remove(key);
+
+          if (listener != null) {
+            listener.onPageLoaded(sectionIndex, page * PAGE_SIZE, records.size());
+          }
+        });
+      });
+    }
 
-        if (months.containsKey(date)) {
-          months.get(date).add(record);
-        } else {
-          List<MediaDatabase.MediaRecord> list = new LinkedList<>();
-          list.add(record);
-          months.put(date, list);
+    /**
+     * Keeps a page, and drops the pages that haven't been displayed for the longest if that makes
+     * more than {@link #MAX_LOADED_ITEMS} items loaded.
+     */
+    void putPage(int sectionIndex, int page, @NonNull List<MediaDatabase.MediaRecord> records) {
+      synchronized (loadedPages) {
+        Integer replaced = loadedPages.put(getKey(sectionIndex, page), records.size());
+        loadedItems += records.size() - (replaced != null ? replaced : 0);
+        sections.get(sectionIndex).putPage(page, records);
+
+        Iterator<Map.Entry<Long, Integer>> iterator = loadedPages.entrySet().iterator();
+
+        // The page that was just loaded is the last one, and is always kept
+        while (loadedItems > MAX_LOADED_ITEMS && loadedPages.size() > 1) {
+          Map.Entry<Long, Integer> eldest = iterator.next();
+
+          sections.get(getSectionIndex(eldest.getKey())).removePage(getPage(eldest.getKey()));
+          loadedItems -= eldest.getValue();
+          iterator.remove();
         }
       }
+    }
 
-      int getSectionCount() {
-        return months.size();
-      }
+    @WorkerThread
+    private @NonNull List<MediaDatabase.MediaRecord> queryPage(@NonNull Section section, int page) {
+      List<MediaDatabase.MediaRecord> records       = new ArrayList<>(PAGE_SIZE);
+      MediaDatabase                   mediaDatabase = DatabaseComponent.get(context).mediaDatabase();
+      long[]                          start         = section.getPageStart(page);
 
-      int getSectionItemCount(int section) {
-        return months.get(getSection(section)).size();
+      try (Cursor cursor = mediaDatabase.getGalleryMediaForBucket(threadId, now, section.bucket, start[0], start[1], PAGE_SIZE)) {
+        while (cursor != null && cursor.moveToNext()) {
+          records.add(MediaDatabase.MediaRecord.from(context, cursor));
+        }
       }
 
-      MediaDatabase.MediaRecord getItem(int section, int position) {
-        return months.get(getSection(section)).get(position);
-      }
+      return records;
+    }
 
-      Date getSection(int section) {
-        ArrayList<Date> keys = new ArrayList<>(months.keySet());
-        Collections.sort(keys, Collections.reverseOrder());
+    private static long getKey(int sectionIndex, int page) {
+      return ((long) sectionIndex << 32) | page;
+    }
 
-        return keys.get(section);
-      }
+    private static int getSectionIndex(long key) {
+      return (int) (key >>> 32);
+    }
 
-      String getName(int section, Locale locale) {
-        Date sectionDate = getSection(section);
+    private static int getPage(long key) {
+      return (int) key;
+    }
 
-        return new SimpleDateFormat("MMMM, yyyy", locale).format(sectionDate);
-      }
+    static @NonNull Date getMonth(int bucket) {
+      int yearAndMonth = MediaDatabase.MONTH_BUCKET_BASE - bucket;
+      return new Date(yearAndMonth / 100 - 1900, yearAndMonth % 100 - 1, 1);
     }
   }
+
+  static class Section {
+
+    private final int  bucket;
+    private final int  count;
+    private final long checksum;
+
+    // The date and id of the first item of each page, which the page is read from
+    private final List<long[]>                                  pageStarts = new ArrayList<>();
+    private final Map<Integer, List<MediaDatabase.MediaRecord>> pages      = new HashMap<>();
+
+    Section(int bucket, int count, long checksum) {
+      this.bucket   = bucket;
+      this.count    = count;
+      this.checksum = checksum;
+    }
+
+    void addPageStart(long date, long id) {
+      pageStarts.add(new long[] { date, id });
+    }
+
+    int getPageCount() {
+      return pageStarts.size();
+    }
+
+    @NonNull long[] getPageStart(int page) {
+      return pageStarts.get(page);
+    }
+
+    boolean hasSameItems(@NonNull Section other) {
+      return bucket == other.bucket && count == other.count && checksum == other.checksum;
+    }
+
+    synchronized @Nullable List<MediaDatabase.MediaRecord> getPage(int page) {
+      return pages.get(page);
+    }
+
+    synchronized void putPage(int page, @NonNull List<MediaDatabase.MediaRecord> records) {
+      pages.put(page, records);
+    }
+
+    synchronized void removePage(int page) {
+      pages.remove(page);
+    }
+  }
+
+  public interface PageListener {
+    void onPageLoaded(int section, int start, int count);
+  }
 }
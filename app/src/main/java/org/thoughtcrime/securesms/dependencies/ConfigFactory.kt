@@ -11,12 +11,15 @@ import org.session.libsession.snode.SnodeAPI
 import org.session.libsession.utilities.ConfigFactoryProtocol
 import org.session.libsession.utilities.ConfigFactoryUpdateListener
 import org.session.libsession.utilities.TextSecurePreferences
+import org.session.libsession.utilities.WindowDebouncer
 import org.session.libsignal.protos.SignalServiceProtos.SharedConfigMessage
 import org.session.libsignal.utilities.Log
 import org.thoughtcrime.securesms.database.ConfigDatabase
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent.Companion.get
 import org.thoughtcrime.securesms.groups.GroupManager
 import org.thoughtcrime.securesms.util.ConfigurationMessageUtilities
+import java.util.Timer
+import java.util.concurrent.ConcurrentHashMap
 
 class ConfigFactory(
     private val context: Context,
@@ -30,9 +33,17 @@ class ConfigFactory(
         // before `lastConfigMessage.timestamp - configChangeBufferPeriod` will not  actually have
         // it's changes applied (control text will still be added though)
         val configChangeBufferPeriod: Long = (2 * 60 * 1000)
+
+        // Changes persisted within this window are coalesced into a single dump per config
+        private const val PERSIST_WINDOW_MS: Long = 500
+
+        // Shared by every instance, so that each doesn't start a timer thread of its own
+        private val persistTimer by lazy { Timer("ConfigFactoryPersist", true) }
     }
 
     fun keyPairChanged() { // this should only happen restoring or clearing data
+        dirtyConfigs.clear()
+        lastUpdateTimestamps.clear()
         _userConfig?.free()
         _contacts?.free()
         _convoVolatileConfig?.free()
@@ -52,6 +63,11 @@ class ConfigFactory(
 
     private val isConfigForcedOn by lazy { TextSecurePreferences.hasForcedNewConfig(context) }
 
+    // Kinds with in-memory changes not yet written to the database, and the timestamp to store them with
+    private val dirtyConfigs = ConcurrentHashMap<SharedConfigMessage.Kind, Long>()
+    private val persistDebouncer = WindowDebouncer(PERSIST_WINDOW_MS, persistTimer)
+    private val lastUpdateTimestamps = ConcurrentHashMap<Pair<String, String>, Long>()
+
     private val listeners: MutableList<ConfigFactoryUpdateListener> = mutableListOf()
     fun registerListener(listener: ConfigFactoryUpdateListener) {
         listeners += listener
@@ -186,21 +202,56 @@ class ConfigFactory(
 
     override fun persist(forConfigObject: ConfigBase, timestamp: Long) {
         try {
+            val kind = when (forConfigObject) {
+                is UserProfile -> SharedConfigMessage.Kind.USER_PROFILE
+                is Contacts -> SharedConfigMessage.Kind.CONTACTS
+                is ConversationVolatileConfig -> SharedConfigMessage.Kind.CONVO_INFO_VOLATILE
+                is UserGroupsConfig -> SharedConfigMessage.Kind.GROUPS
+                else -> null
+            }
+            // Marked dirty before the listeners run, so that one of them throwing can't lose the change
+            if (kind != null) {
+                maybeGetUserInfo()?.let { (_, publicKey) ->
+                    lastUpdateTimestamps[kind.name to publicKey] = timestamp
+                }
+                dirtyConfigs[kind] = timestamp
+                persistDebouncer.publish { flushPendingChanges() }
+            }
             listeners.forEach { listener ->
                 listener.notifyUpdates(forConfigObject, timestamp)
             }
-            when (forConfigObject) {
-                is UserProfile -> persistUserConfigDump(timestamp)
-                is Contacts -> persistContactsConfigDump(timestamp)
-                is ConversationVolatileConfig -> persistConvoVolatileConfigDump(timestamp)
-                is UserGroupsConfig -> persistUserGroupsConfigDump(timestamp)
-                else -> throw UnsupportedOperationException("Can't support type of ${forConfigObject::class.simpleName} yet")
-            }
+            if (kind == null) throw UnsupportedOperationException("Can't support type of ${forConfigObject::class.simpleName} yet")
         } catch (e: Exception) {
             Log.e("Loki", "failed to persist ${forConfigObject.javaClass.simpleName}", e)
         }
     }
 
+    /**
+     * Writes the dumps of every config changed since the last flush.
+     *
+     * Changes are otherwise only written once per [PERSIST_WINDOW_MS]. This trades durability for
+     * fewer writes: if the process dies inside the window, the changes made in it are missing from
+     * the local dump. Those already pushed to the swarm come back with the next config poll, the
+     * others are lost. To keep the window small in practice, this is also called when the app is
+     * backgrounded and when memory is trimmed, after which the process may be killed without
+     * further notice.
+     */
+    fun flushPendingChanges() {
+        for (kind in dirtyConfigs.keys) {
+            val timestamp = dirtyConfigs.remove(kind) ?: continue
+            try {
+                when (kind) {
+                    SharedConfigMessage.Kind.USER_PROFILE -> persistUserConfigDump(timestamp)
+                    SharedConfigMessage.Kind.CONTACTS -> persistContactsConfigDump(timestamp)
+                    SharedConfigMessage.Kind.CONVO_INFO_VOLATILE -> persistConvoVolatileConfigDump(timestamp)
+                    SharedConfigMessage.Kind.GROUPS -> persistUserGroupsConfigDump(timestamp)
+                }
+            } catch (e: Exception) {
+                Log.e("Loki", "failed to persist $kind", e)
+            }
+        }
+    }
+
     override fun conversationInConfig(
         publicKey: String?,
         groupPublicKey: String?,
@@ -243,7 +294,9 @@ class ConfigFactory(
     override fun canPerformChange(variant: String, publicKey: String, changeTimestampMs: Long): Boolean {
         if (!ConfigBase.isNewConfigEnabled(isConfigForcedOn, SnodeAPI.nowWithOffset)) return true
 
-        val lastUpdateTimestampMs = configDatabase.retrieveConfigLastUpdateTimestamp(variant, publicKey)
+        val lastUpdateTimestampMs = lastUpdateTimestamps.getOrPut(variant to publicKey) {
+            configDatabase.retrieveConfigLastUpdateTimestamp(variant, publicKey)
+        }
 
         // Ensure the change occurred after the last config message was handled (minus the buffer period)
         return (changeTimestampMs >= (lastUpdateTimestampMs - ConfigFactory.configChangeBufferPeriod))
@@ -3,96 +3,378 @@ package org.thoughtcrime.securesms.glide.cache;
 
 import androidx.annotation.NonNull;
 
-import org.session.libsession.utilities.Util;
-
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.Mac;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Cache files are made of the magic bytes, 32 random bytes that the file key is derived from, and
+ * then the magic bytes again followed by the data, both encrypted with AES-CTR.
+ *
+ * Decoding a thumbnail opens its cache file at least twice, so the {@link Mac}, the {@link Cipher}
+ * and the buffers used for a file are kept per thread and reused by the next file. The streams
+ * encrypt and decrypt whole blocks of data at a time rather than going through
+ * {@link javax.crypto.CipherInputStream} and {@link javax.crypto.CipherOutputStream}.
+ */
 class EncryptedCoder {
 
-  private static byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
-                                       (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
-                                       (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
-                                       (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+  private static final byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
+                                             (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
+                                             (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
+                                             (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+
+  private static final int RANDOM_LENGTH = 32;
+  private static final int RANDOM_OFFSET = MAGIC_BYTES.length;
+  private static final int CHECK_OFFSET  = RANDOM_OFFSET + RANDOM_LENGTH;
+  private static final int HEADER_LENGTH = CHECK_OFFSET + MAGIC_BYTES.length;
+  private static final int BUFFER_SIZE   = 64 * 1024;
+
+  private static final IvParameterSpec ZERO_IV = new IvParameterSpec(new byte[16]);
+  private static final SecureRandom    RANDOM  = new SecureRandom();
+
+  private static final ThreadLocal<CipherState> CIPHER_STATE = new ThreadLocal<CipherState>() {
+    @Override
+    protected CipherState initialValue() {
+      return new CipherState();
+    }
+  };
 
   OutputStream createEncryptedOutputStream(@NonNull byte[] masterKey, @NonNull File file)
       throws IOException
   {
+    CipherState state = CipherState.acquire();
+
     try {
-      byte[] random = Util.getSecretBytes(32);
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+      byte[] header = state.header;
 
-      FileOutputStream fileOutputStream = new FileOutputStream(file);
-      byte[]           iv               = new byte[16];
-      byte[]           key              = mac.doFinal(random);
+      System.arraycopy(MAGIC_BYTES, 0, header, 0, MAGIC_BYTES.length);
+      RANDOM.nextBytes(state.random);
+      System.arraycopy(state.random, 0, header, RANDOM_OFFSET, RANDOM_LENGTH);
 
-      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+      state.init(Cipher.ENCRYPT_MODE, masterKey, header, RANDOM_OFFSET);
+      state.update(MAGIC_BYTES, 0, MAGIC_BYTES.length, header, CHECK_OFFSET);
 
-      fileOutputStream.write(MAGIC_BYTES);
-      fileOutputStream.write(random);
+      FileOutputStream fileOutputStream = new FileOutputStream(file);
 
-      CipherOutputStream outputStream = new CipherOutputStream(fileOutputStream, cipher);
-      outputStream.write(MAGIC_BYTES);
+      try {
+        fileOutputStream.write(header, 0, HEADER_LENGTH);
+      } catch (IOException e) {
+        fileOutputStream.close();
+        throw e;
+      }
 
-      return outputStream;
-    } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
-      throw new AssertionError(e);
+      return new EncryptingOutputStream(fileOutputStream, state);
+    } catch (IOException | RuntimeException e) {
+      state.release();
+      throw e;
     }
   }
 
   InputStream createEncryptedInputStream(@NonNull byte[] masterKey, @NonNull File file) throws IOException {
-    try {
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+    CipherState     state           = CipherState.acquire();
+    FileInputStream fileInputStream = null;
 
-      FileInputStream fileInputStream     = new FileInputStream(file);
-      byte[]          theirMagic          = new byte[MAGIC_BYTES.length];
-      byte[]          theirRandom         = new byte[32];
-      byte[]          theirEncryptedMagic = new byte[MAGIC_BYTES.length];
+    try {
+      byte[] header = state.header;
 
-      Util.readFully(fileInputStream, theirMagic);
-      Util.readFully(fileInputStream, theirRandom);
+      fileInputStream = new FileInputStream(file);
+      readFully(fileInputStream, header, 0, CHECK_OFFSET);
 
-      if (!MessageDigest.isEqual(theirMagic, MAGIC_BYTES)) {
+      if (!regionEquals(header, 0, MAGIC_BYTES)) {
         throw new IOException("Not an encrypted cache file!");
       }
 
-      byte[] iv  = new byte[16];
-      byte[] key = mac.doFinal(theirRandom);
+      readFully(fileInputStream, header, CHECK_OFFSET, MAGIC_BYTES.length);
 
-      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+      state.init(Cipher.DECRYPT_MODE, masterKey, header, RANDOM_OFFSET);
+      state.update(header, CHECK_OFFSET, MAGIC_BYTES.length, header, CHECK_OFFSET);
 
-      CipherInputStream inputStream = new CipherInputStream(fileInputStream, cipher);
-      Util.readFully(inputStream, theirEncryptedMagic);
-
-      if (!MessageDigest.isEqual(theirEncryptedMagic, MAGIC_BYTES)) {
+      if (!regionEquals(header, CHECK_OFFSET, MAGIC_BYTES)) {
         throw new IOException("Key change on encrypted cache file!");
       }
 
-      return inputStream;
-    } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
-      throw new AssertionError(e);
+      return new DecryptingInputStream(fileInputStream, state);
+    } catch (IOException | RuntimeException e) {
+      if (fileInputStream != null) fileInputStream.close();
+      state.release();
+      throw e;
+    }
+  }
+
+  private static void readFully(@NonNull InputStream in, @NonNull byte[] buffer, int offset, int length) throws IOException {
+    while (length > 0) {
+      int read = in.read(buffer, offset, length);
+      if (read == -1) throw new EOFException("Stream ended early");
+
+      offset += read;
+      length -= read;
+    }
+  }
+
+  /**
+   * Constant time comparison of part of a buffer with the magic bytes, without copying it out.
+   */
+  private static boolean regionEquals(@NonNull byte[] buffer, int offset, @NonNull byte[] expected) {
+    int result = 0;
+
+    for (int i = 0; i < expected.length; i++) {
+      result |= buffer[offset + i] ^ expected[i];
+    }
+
+    return result == 0;
+  }
+
+  /**
+   * The crypto objects and buffers for one open cache file. Each thread keeps one that is reused
+   * once the stream using it is closed, a thread opening a second file at the same time gets a
+   * new one instead.
+   */
+  private static final class CipherState {
+
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private final byte[] random = new byte[RANDOM_LENGTH];
+    private final byte[] key    = new byte[32];
+
+    private final boolean shared;
+
+    private Mac    mac;
+    private byte[] macKey;
+    private Cipher cipher;
+    private byte[] buffer;
+
+    private volatile boolean inUse;
+
+    private CipherState() {
+      this(true);
+    }
+
+    private CipherState(boolean shared) {
+      this.shared = shared;
+    }
+
+    static @NonNull CipherState acquire() {
+      CipherState state = CIPHER_STATE.get();
+
+      if (state.inUse) {
+        state = new CipherState(false);
+      }
+
+      state.inUse = true;
+      return state;
+    }
+
+    void release() {
+      if (shared) inUse = false;
+    }
+
+    void init(int mode, @NonNull byte[] masterKey, @NonNull byte[] random, int randomOffset) {
+      try {
+        if (mac == null) {
+          mac = Mac.getInstance("HmacSHA256");
+        }
+
+        if (macKey == null || !MessageDigest.isEqual(macKey, masterKey)) {
+          mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+          macKey = masterKey.clone();
+        }
+
+        mac.update(random, randomOffset, RANDOM_LENGTH);
+        mac.doFinal(key, 0);
+
+        if (cipher == null) {
+          cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        }
+
+        cipher.init(mode, new SecretKeySpec(key, "AES"), ZERO_IV);
+      } catch (GeneralSecurityException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    void update(@NonNull byte[] input, int inputOffset, int length, @NonNull byte[] output, int outputOffset) {
+      try {
+        int processed = cipher.update(input, inputOffset, length, output, outputOffset);
+
+        // CTR is a stream mode, nothing is ever held back for a later block
+        if (processed != length) {
+          throw new AssertionError("Processed " + processed + " of " + length + " bytes");
+        }
+      } catch (GeneralSecurityException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @NonNull byte[] buffer() {
+      if (buffer == null) {
+        buffer = new byte[BUFFER_SIZE];
+      }
+
+      return buffer;
     }
   }
 
+  /**
+   * Decrypts what the reader asked for in place, in the reader's own buffer.
+   */
+  private static final class DecryptingInputStream extends FilterInputStream {
 
+    private final CipherState state;
+    private final byte[]      single = new byte[1];
+
+    private boolean closed;
+
+    private DecryptingInputStream(@NonNull InputStream in, @NonNull CipherState state) {
+      super(in);
+      this.state = state;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = read(single, 0, 1);
+      return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      if (closed) throw new IOException("Stream closed");
+
+      int read = in.read(b, off, len);
+
+      if (read > 0) {
+        state.update(b, off, read, b, off);
+      }
+
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      if (closed) throw new IOException("Stream closed");
+
+      // The keystream has to be advanced over the skipped bytes as well
+      byte[] buffer  = state.buffer();
+      long   skipped = 0;
+
+      while (skipped < n) {
+        int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+        if (read == -1) break;
+        skipped += read;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+
+      try {
+        super.close();
+      } finally {
+        state.release();
+      }
+    }
+  }
+
+  /**
+   * Encrypts into one block sized buffer and only writes to the file once it is full.
+   */
+  private static final class EncryptingOutputStream extends FilterOutputStream {
+
+    private final CipherState state;
+    private final byte[]      buffer;
+    private final byte[]      single = new byte[1];
+
+    private int     count;
+    private boolean closed;
+
+    private EncryptingOutputStream(@NonNull OutputStream out, @NonNull CipherState state) {
+      super(out);
+      this.state  = state;
+      this.buffer = state.buffer();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      single[0] = (byte) b;
+      write(single, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+      if (closed) throw new IOException("Stream closed");
+
+      while (len > 0) {
+        if (count == buffer.length) flushBuffer();
+
+        int length = Math.min(len, buffer.length - count);
+
+        state.update(b, off, length, buffer, count);
+
+        count += length;
+        off   += length;
+        len   -= length;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (closed) throw new IOException("Stream closed");
+
+      flushBuffer();
+      out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+      if (count > 0) {
+        out.write(buffer, 0, count);
+        count = 0;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+
+      try {
+        flushBuffer();
+      } finally {
+        try {
+          out.close();
+        } finally {
+          state.release();
+        }
+      }
+    }
+  }
 }
@@ -265,12 +265,8 @@ class EditClosedGroupActivity : PassphraseRequiredActionBarActivity() {
 
         val name = if (hasNameChanged) this.name else originalName
 
-        val members = this.allMembers.map {
-            Recipient.from(this, Address.fromSerialized(it), false)
-        }.toSet()
-        val originalMembers = this.originalMembers.map {
-            Recipient.from(this, Address.fromSerialized(it), false)
-        }.toSet()
+        val members = Recipient.from(this, this.allMembers.map { Address.fromSerialized(it) }, false).toSet()
+        val originalMembers = Recipient.from(this, this.originalMembers.map { Address.fromSerialized(it) }, false).toSet()
 
         var isClosedGroup: Boolean
         var groupPublicKey: String?
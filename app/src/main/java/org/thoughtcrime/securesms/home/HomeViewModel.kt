@@ -52,11 +52,7 @@ class HomeViewModel @Inject constructor(private val threadDb: ThreadDatabase): V
                 executor.launch(Dispatchers.IO) {
                     for (update in listUpdateChannel) {
                         threadDb.approvedConversationList.use { openCursor ->
-                            val reader = threadDb.readerFor(openCursor)
-                            val threads = mutableListOf<ThreadRecord>()
-                            while (true) {
-                                threads += reader.next ?: break
-                            }
+                            val threads = threadDb.readerFor(openCursor).all
                             withContext(Dispatchers.Main) {
                                 _conversations.value = threads
                             }
@@ -96,7 +96,7 @@ fun ContentView.bindModel(query: String?, model: GroupConversation) {
     val nameString = model.groupRecord.title
     binding.searchResultTitle.text = getHighlight(query, nameString)
 
-    val groupRecipients = model.groupRecord.members.map { Recipient.from(binding.root.context, it, false) }
+    val groupRecipients = Recipient.from(binding.root.context, model.groupRecord.members, false)
 
     val membersString = groupRecipients.joinToString {
         val address = it.address.serialize()
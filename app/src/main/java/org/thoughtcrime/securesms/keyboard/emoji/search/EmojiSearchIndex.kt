@@ -0,0 +1,140 @@
+package org.thoughtcrime.securesms.keyboard.emoji.search
+
+import java.util.Locale
+import kotlin.math.roundToInt
+
+/**
+ * An in-memory substring index over emoji labels.
+ *
+ * Every 1, 2 and 3 character long substring of each label maps to the sorted list of labels that
+ * contain it, so short queries are answered directly and longer ones by intersecting the lists of
+ * their trigrams. The matches of recent queries are kept so that typing one more character only has
+ * to filter the matches of the previous query.
+ */
+class EmojiSearchIndex(entries: List<Entry>) {
+
+  companion object {
+    private const val MAX_GRAM_LENGTH = 3
+    private const val MAX_CACHED_QUERIES = 32
+  }
+
+  data class Entry(val label: String, val emoji: String)
+
+  private val labels: Array<String> = Array(entries.size) { entries[it].label.lowercase(Locale.ROOT) }
+  private val emoji: Array<String> = Array(entries.size) { entries[it].emoji }
+  private val grams: Map<String, IntArray>
+
+  private val recentMatches = object : LinkedHashMap<String, IntArray>(MAX_CACHED_QUERIES, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, IntArray>?): Boolean = size > MAX_CACHED_QUERIES
+  }
+
+  init {
+    val builder = HashMap<String, MutableList<Int>>()
+    labels.forEachIndexed { index, label ->
+      for (length in 1..MAX_GRAM_LENGTH) {
+        for (start in 0..label.length - length) {
+          val postings = builder.getOrPut(label.substring(start, start + length)) { mutableListOf() }
+          // Labels are visited in order, so each list stays sorted and only needs a check for repeats
+          if (postings.lastOrNull() != index) postings += index
+        }
+      }
+    }
+    grams = builder.mapValues { it.value.toIntArray() }
+  }
+
+  val size: Int get() = labels.size
+
+  /**
+   * @return the emoji whose labels contain `query`, best matches first, without duplicates.
+   */
+  fun query(query: String, limit: Int): List<String> {
+    val term = query.trim().lowercase(Locale.ROOT)
+    if (term.isEmpty() || limit <= 0) return emptyList()
+
+    val matches = matchesFor(term)
+
+    val scores = IntArray(matches.size) { similarityScore(term, labels[matches[it]]) }
+    val order = matches.indices.sortedWith(compareBy<Int>({ scores[it] }, { matches[it] }))
+
+    val result = LinkedHashSet<String>()
+    for (position in order) {
+      result += emoji[matches[position]]
+      if (result.size >= limit) break
+    }
+    return result.toList()
+  }
+
+  private fun matchesFor(term: String): IntArray {
+    synchronized(recentMatches) {
+      recentMatches[term]?.let { return it }
+    }
+
+    // A label containing `term` also contains every prefix of it, so the matches of the longest
+    // recently searched prefix are a superset of the ones we're looking for.
+    val candidates = (term.length - 1 downTo 1).firstNotNullOfOrNull { length ->
+      synchronized(recentMatches) { recentMatches[term.substring(0, length)] }
+    } ?: candidatesFor(term)
+
+    val matches = if (term.length <= MAX_GRAM_LENGTH && candidates === grams[term]) {
+      candidates
+    } else {
+      candidates.filter { labels[it].contains(term) }.toIntArray()
+    }
+
+    synchronized(recentMatches) { recentMatches[term] = matches }
+    return matches
+  }
+
+  private fun candidatesFor(term: String): IntArray {
+    if (term.length <= MAX_GRAM_LENGTH) return grams[term] ?: IntArray(0)
+
+    val postings = (0..term.length - MAX_GRAM_LENGTH)
+      .map { grams[term.substring(it, it + MAX_GRAM_LENGTH)] ?: return IntArray(0) }
+      .sortedBy { it.size }
+
+    return postings.drop(1).fold(postings.first()) { result, next -> intersect(result, next) }
+  }
+
+  private fun intersect(lhs: IntArray, rhs: IntArray): IntArray {
+    val result = IntArray(minOf(lhs.size, rhs.size))
+    var count = 0
+    var i = 0
+    var j = 0
+    while (i < lhs.size && j < rhs.size) {
+      when {
+        lhs[i] < rhs[j] -> i++
+        lhs[i] > rhs[j] -> j++
+        else -> {
+          result[count++] = lhs[i]
+          i++
+          j++
+        }
+      }
+    }
+    return result.copyOf(count)
+  }
+
+  /**
+   * Ranks how "similar" a match is to the original search term.
+   * A lower score means more similar, with 0 being a perfect match.
+   *
+   * We know that the `searchTerm` must be a substring of the `match`.
+   * We determine similarity by how many letters appear before or after the `searchTerm` in the `match`.
+   * We give letters that come before the term a bigger weight than those that come after as a way to prefer matches that are prefixed by the `searchTerm`.
+   */
+  private fun similarityScore(searchTerm: String, match: String): Int {
+    if (searchTerm == match) {
+      return 0
+    }
+
+    val startIndex = match.indexOf(searchTerm)
+
+    val prefixCount = startIndex
+    val suffixCount = match.length - (startIndex + searchTerm.length)
+
+    val prefixRankWeight = 1.5f
+    val suffixRankWeight = 1f
+
+    return ((prefixCount * prefixRankWeight) + (suffixCount * suffixRankWeight)).roundToInt()
+  }
+}
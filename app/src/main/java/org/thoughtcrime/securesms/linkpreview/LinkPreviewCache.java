@@ -0,0 +1,82 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+/**
+ * Keeps the most recently fetched link previews for a while, so that typing or sending the same
+ * link again doesn't download and decode the page and its image again.
+ *
+ * Thumbnails are kept as their compressed data rather than as attachments, as the blob behind an
+ * attachment can be deleted once the preview is dismissed or sent.
+ */
+final class LinkPreviewCache {
+
+  private final LRUCache<String, Entry> entries;
+  private final long                    ttlMillis;
+
+  LinkPreviewCache(int maxSize, long ttlMillis) {
+    this.entries   = new LRUCache<>(maxSize);
+    this.ttlMillis = ttlMillis;
+  }
+
+  synchronized @Nullable Preview get(@NonNull String url, long now) {
+    Entry entry = entries.get(url);
+
+    if (entry == null) {
+      return null;
+    } else if (now - entry.createdAt >= ttlMillis || now < entry.createdAt) {
+      entries.remove(url);
+      return null;
+    }
+
+    // Moved to the end so that the least recently used previews are evicted first
+    entries.remove(url);
+    entries.put(url, entry);
+
+    return entry.preview;
+  }
+
+  synchronized void put(@NonNull String url, @NonNull Preview preview, long now) {
+    entries.remove(url);
+    entries.put(url, new Entry(preview, now));
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  static final class Preview {
+    final @NonNull  String    title;
+    final @Nullable Thumbnail thumbnail;
+
+    Preview(@NonNull String title, @Nullable Thumbnail thumbnail) {
+      this.title     = title;
+      this.thumbnail = thumbnail;
+    }
+  }
+
+  static final class Thumbnail {
+    final @NonNull byte[] data;
+    final          int    width;
+    final          int    height;
+
+    Thumbnail(@NonNull byte[] data, int width, int height) {
+      this.data   = data;
+      this.width  = width;
+      this.height = height;
+    }
+  }
+
+  private static final class Entry {
+    private final Preview preview;
+    private final long    createdAt;
+
+    private Entry(@NonNull Preview preview, long createdAt) {
+      this.preview   = preview;
+      this.createdAt = createdAt;
+    }
+  }
+}
@@ -8,7 +8,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.session.libsession.messaging.sending_receiving.attachments.Attachment;
 import org.session.libsession.messaging.sending_receiving.attachments.AttachmentTransferProgress;
@@ -24,16 +24,22 @@ import org.thoughtcrime.securesms.net.CompositeRequestController;
 import org.thoughtcrime.securesms.net.ContentProxySafetyInterceptor;
 import org.thoughtcrime.securesms.net.RequestController;
 import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.util.LimitedInputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class LinkPreviewRepository {
 
@@ -41,16 +47,34 @@ public class LinkPreviewRepository {
 
   private static final CacheControl NO_CACHE = new CacheControl.Builder().noCache().build();
 
-  private final OkHttpClient client;
+  // Pages are only read up to the end of their head, which is usually much smaller than this
+  private static final long MAX_HEAD_BYTES      = 1024 * 1024;
+  private static final long MAX_THUMBNAIL_BYTES = 10 * 1024 * 1024;
+  private static final int  MAX_THUMBNAIL_SIZE  = 1024;
+
+  private static final LinkPreviewCache CACHE = new LinkPreviewCache(32, TimeUnit.MINUTES.toMillis(30));
+
+  private final OkHttpClient     client;
+  private final LinkPreviewCache cache;
 
   public LinkPreviewRepository() {
-    this.client = new OkHttpClient.Builder()
-                                  .addNetworkInterceptor(new ContentProxySafetyInterceptor())
-                                  .cache(null)
-                                  .build();
+    this(new OkHttpClient.Builder()
+                         .addNetworkInterceptor(new ContentProxySafetyInterceptor())
+                         .cache(null)
+                         .build(),
+         CACHE);
   }
 
-  RequestController getLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Callback<Optional<LinkPreview>> callback) {
+  @VisibleForTesting
+  LinkPreviewRepository(@NonNull OkHttpClient client, @NonNull LinkPreviewCache cache) {
+    this.client = client;
+    this.cache  = cache;
+  }
+
+  /**
+   * @param owner The object the thumbnail blob of the preview is tied to, see {@link BlobProvider.MemoryBlobBuilder#withOwner(Object)}.
+   */
+  RequestController getLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Object owner, @NonNull Callback<Optional<LinkPreview>> callback) {
     CompositeRequestController compositeController = new CompositeRequestController();
 
     if (!LinkPreviewUtil.isValidLinkUrl(url)) {
@@ -59,6 +83,13 @@ public class LinkPreviewRepository {
       return compositeController;
     }
 
+    LinkPreviewCache.Preview cachedPreview = cache.get(url, System.currentTimeMillis());
+
+    if (cachedPreview != null) {
+      SignalExecutors.UNBOUNDED.execute(() -> callback.onComplete(Optional.of(toLinkPreview(url, cachedPreview, owner))));
+      return compositeController;
+    }
+
     RequestController metadataController;
 
     metadataController = fetchMetadata(url, metadata -> {
@@ -68,16 +99,24 @@ public class LinkPreviewRepository {
       }
 
       if (!metadata.getImageUrl().isPresent()) {
-        callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().get(), Optional.absent())));
+        LinkPreviewCache.Preview preview = new LinkPreviewCache.Preview(metadata.getTitle().get(), null);
+        cache.put(url, preview, System.currentTimeMillis());
+        callback.onComplete(Optional.of(toLinkPreview(url, preview, owner)));
         return;
       }
 
-      RequestController imageController = fetchThumbnail(context, metadata.getImageUrl().get(), attachment -> {
-        if (!metadata.getTitle().isPresent() && !attachment.isPresent()) {
+      RequestController imageController = fetchThumbnail(metadata.getImageUrl().get(), thumbnail -> {
+        if (!metadata.getTitle().isPresent() && !thumbnail.isPresent()) {
           callback.onComplete(Optional.absent());
-        } else {
-          callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().or(""), attachment)));
+          return;
         }
+
+        LinkPreviewCache.Preview preview = new LinkPreviewCache.Preview(metadata.getTitle().or(""), thumbnail.orNull());
+
+        // A preview missing its image might only be missing it because of the network
+        if (thumbnail.isPresent()) cache.put(url, preview, System.currentTimeMillis());
+
+        callback.onComplete(Optional.of(toLinkPreview(url, preview, owner)));
       });
 
       compositeController.addController(imageController);
@@ -110,8 +149,22 @@ public class LinkPreviewRepository {
           return;
         }
 
-        String            body     = response.body().string();
-        OpenGraph        openGraph   = LinkPreviewUtil.parseOpenGraphFields(body);
+        ResponseBody     body        = response.body();
+        MediaType        contentType = body.contentType();
+        Charset          charset     = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+        OpenGraph        openGraph;
+
+        try {
+          openGraph = LinkPreviewUtil.parseOpenGraphFields(body.byteStream(), charset, MAX_HEAD_BYTES);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to read the page.", e);
+          callback.onComplete(Metadata.empty());
+          return;
+        } finally {
+          // The rest of the page isn't needed, so the connection is dropped rather than drained
+          response.close();
+        }
+
         Optional<String> title       = openGraph.getTitle();
         Optional<String> imageUrl    = openGraph.getImageUrl();
 
@@ -132,29 +185,39 @@ public class LinkPreviewRepository {
     return new CallRequestController(call);
   }
 
-  private @NonNull RequestController fetchThumbnail(@NonNull Context context, @NonNull String imageUrl, @NonNull Callback<Optional<Attachment>> callback) {
+  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Callback<Optional<LinkPreviewCache.Thumbnail>> callback) {
     Call                  call       = client.newCall(new Request.Builder().url(imageUrl).build());
     CallRequestController controller = new CallRequestController(call);
 
     SignalExecutors.UNBOUNDED.execute(() -> {
-      try {
-        Response response = call.execute();
-        if (!response.isSuccessful() || response.body() == null) {
+      try (Response response = call.execute()) {
+        ResponseBody body = response.body();
+
+        if (!response.isSuccessful() || body == null) {
           controller.cancel();
           callback.onComplete(Optional.absent());
           return;
         }
 
-        InputStream bodyStream = response.body().byteStream();
+        if (body.contentLength() > MAX_THUMBNAIL_BYTES) {
+          Log.w(TAG, "Link preview image is too large. Skipping.");
+          callback.onComplete(Optional.absent());
+          return;
+        }
+
+        InputStream bodyStream = body.byteStream();
         controller.setStream(bodyStream);
 
-        byte[]               data      = readFully(bodyStream);
-        Bitmap               bitmap    = BitmapFactory.decodeByteArray(data, 0, data.length);
-        Optional<Attachment> thumbnail = bitmapToAttachment(bitmap, Bitmap.CompressFormat.JPEG, MediaTypes.IMAGE_JPEG);
+        // The length isn't always known up front, so the download is capped as well
+        byte[] data = readFully(new LimitedInputStream(bodyStream, MAX_THUMBNAIL_BYTES + 1));
 
-        if (bitmap != null) bitmap.recycle();
+        if (data.length > MAX_THUMBNAIL_BYTES) {
+          Log.w(TAG, "Link preview image is too large. Skipping.");
+          callback.onComplete(Optional.absent());
+          return;
+        }
 
-        callback.onComplete(thumbnail);
+        callback.onComplete(decodeThumbnail(data));
       } catch (IOException e) {
         Log.w(TAG, "Exception during link preview image retrieval.", e);
         controller.cancel();
@@ -165,36 +228,74 @@ public class LinkPreviewRepository {
     return controller;
   }
 
-  private static Optional<Attachment> bitmapToAttachment(@Nullable Bitmap bitmap,
-                                                         @NonNull Bitmap.CompressFormat format,
-                                                         @NonNull String contentType)
-  {
+  /**
+   * Decodes an image no larger than needed for a thumbnail, and compresses it as a JPEG.
+   */
+  private static @NonNull Optional<LinkPreviewCache.Thumbnail> decodeThumbnail(@NonNull byte[] data) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return Optional.absent();
+    }
+
+    options.inSampleSize       = getInSampleSize(options.outWidth, options.outHeight, MAX_THUMBNAIL_SIZE);
+    options.inJustDecodeBounds = false;
+
+    Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
     if (bitmap == null) {
       return Optional.absent();
     }
 
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
 
-    bitmap.compress(format, 80, baos);
+    LinkPreviewCache.Thumbnail thumbnail = new LinkPreviewCache.Thumbnail(baos.toByteArray(), bitmap.getWidth(), bitmap.getHeight());
+    bitmap.recycle();
 
-    byte[] bytes = baos.toByteArray();
-    Uri    uri   = BlobProvider.getInstance().forData(bytes).createForSingleSessionInMemory();
+    return Optional.of(thumbnail);
+  }
 
-    return Optional.of(new UriAttachment(uri,
-           uri,
-           contentType,
-           AttachmentTransferProgress.TRANSFER_PROGRESS_STARTED,
-           bytes.length,
-           bitmap.getWidth(),
-           bitmap.getHeight(),
-           null,
-           null,
-           false,
-           false,
-           null));
+  /**
+   * @return the largest power of two that an image can be subsampled by and still be at least
+   * {@code maxSize} pixels wide or high, if it was larger than that to begin with.
+   */
+  static int getInSampleSize(int width, int height, int maxSize) {
+    int inSampleSize = 1;
+
+    while (Math.max(width, height) / (inSampleSize * 2) >= maxSize) {
+      inSampleSize *= 2;
+    }
 
+    return inSampleSize;
   }
 
+  private static @NonNull LinkPreview toLinkPreview(@NonNull String url, @NonNull LinkPreviewCache.Preview preview, @NonNull Object owner) {
+    LinkPreviewCache.Thumbnail thumbnail = preview.thumbnail;
+
+    if (thumbnail == null) {
+      return new LinkPreview(url, preview.title, Optional.absent());
+    }
+
+    Uri uri = BlobProvider.getInstance().forData(thumbnail.data).withOwner(owner).createForSingleSessionInMemory();
+
+    Attachment attachment = new UriAttachment(uri,
+                                              uri,
+                                              MediaTypes.IMAGE_JPEG,
+                                              AttachmentTransferProgress.TRANSFER_PROGRESS_STARTED,
+                                              thumbnail.data.length,
+                                              thumbnail.width,
+                                              thumbnail.height,
+                                              null,
+                                              null,
+                                              false,
+                                              false,
+                                              null);
+
+    return new LinkPreview(url, preview.title, Optional.of(attachment));
+  }
 
   private static class Metadata {
     private final Optional<String> title;
@@ -13,12 +13,17 @@ import android.text.util.Linkify;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.util.DateUtils;
+import org.thoughtcrime.securesms.util.LimitedInputStream;
 import org.session.libsignal.utilities.guava.Optional;
 
 import org.session.libsession.utilities.Util;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -28,15 +33,9 @@ import okhttp3.HttpUrl;
 
 public final class LinkPreviewUtil {
 
-  private static final Pattern DOMAIN_PATTERN             = Pattern.compile("^(https?://)?([^/]+).*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ALL_ASCII_PATTERN          = Pattern.compile("^[\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ALL_NON_ASCII_PATTERN      = Pattern.compile("^[^\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPEN_GRAPH_TAG_PATTERN     = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*og:([^\"]+)\"[^>]*/?\\s*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ARTICLE_TAG_PATTERN        = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*article:([^\"]+)\"[^>]*/?\\s*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPEN_GRAPH_CONTENT_PATTERN = Pattern.compile("content\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
-  private static final Pattern TITLE_PATTERN              = Pattern.compile("<\\s*title[^>]*>(.*)<\\s*/title[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern FAVICON_PATTERN            = Pattern.compile("<\\s*link[^>]*rel\\s*=\\s*\".*icon.*\"[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern FAVICON_HREF_PATTERN       = Pattern.compile("href\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+  private static final Pattern DOMAIN_PATTERN        = Pattern.compile("^(https?://)?([^/]+).*$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ALL_ASCII_PATTERN     = Pattern.compile("^[\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ALL_NON_ASCII_PATTERN = Pattern.compile("^[^\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
 
   /**
    * @return All whitelisted URLs in the source text.
@@ -117,54 +116,27 @@ public final class LinkPreviewUtil {
       return new OpenGraph(Collections.emptyMap(), null, null);
     }
 
-    Map<String, String> openGraphTags    = new HashMap<>();
-    Matcher             openGraphMatcher = OPEN_GRAPH_TAG_PATTERN.matcher(html);
-
-    while (openGraphMatcher.find()) {
-      String tag      = openGraphMatcher.group();
-      String property = openGraphMatcher.groupCount() > 0 ? openGraphMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = htmlDecoder.fromEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
-    }
-
-    Matcher articleMatcher = ARTICLE_TAG_PATTERN.matcher(html);
-
-    while (articleMatcher.find()) {
-      String tag      = articleMatcher.group();
-      String property = articleMatcher.groupCount() > 0 ? articleMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = htmlDecoder.fromEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
-    }
-
-    String htmlTitle  = "";
-    String faviconUrl = "";
-
-    Matcher titleMatcher = TITLE_PATTERN.matcher(html);
-    if (titleMatcher.find() && titleMatcher.groupCount() > 0) {
-      htmlTitle = htmlDecoder.fromEncoded(titleMatcher.group(1));
+    try {
+      return OpenGraphParser.parse(new StringReader(html), htmlDecoder);
+    } catch (IOException e) {
+      throw new AssertionError(e);
     }
+  }
 
-    Matcher faviconMatcher = FAVICON_PATTERN.matcher(html);
-    if (faviconMatcher.find()) {
-      Matcher faviconHrefMatcher = FAVICON_HREF_PATTERN.matcher(faviconMatcher.group());
-      if (faviconHrefMatcher.find() && faviconHrefMatcher.groupCount() > 0) {
-        faviconUrl = faviconHrefMatcher.group(1);
-      }
-    }
+  /**
+   * Parses the head of a page as it is being downloaded, without reading more than {@code maxBytes} of it.
+   */
+  public static @NonNull OpenGraph parseOpenGraphFields(@NonNull InputStream inputStream, @NonNull Charset charset, long maxBytes) throws IOException {
+    return parseOpenGraphFields(inputStream, charset, maxBytes, text -> Html.fromHtml(text).toString());
+  }
 
-    return new OpenGraph(openGraphTags, htmlTitle, faviconUrl);
+  static @NonNull OpenGraph parseOpenGraphFields(@NonNull InputStream inputStream,
+                                                 @NonNull Charset charset,
+                                                 long maxBytes,
+                                                 @NonNull HtmlDecoder htmlDecoder)
+      throws IOException
+  {
+    return OpenGraphParser.parse(new InputStreamReader(new LimitedInputStream(inputStream, maxBytes), charset), htmlDecoder);
   }
 
   public static final class OpenGraph {
@@ -83,7 +83,7 @@ public class LinkPreviewViewModel extends ViewModel {
       linkPreviewState.setValue(LinkPreviewState.forLoading());
 
       activeUrl     = link.get().getUrl();
-      activeRequest = repository.getLinkPreview(context, link.get().getUrl(), lp -> {
+      activeRequest = repository.getLinkPreview(context, link.get().getUrl(), this, lp -> {
         Util.runOnMain(() -> {
           if (!userCanceled) {
             linkPreviewState.setValue(LinkPreviewState.forPreview(lp));
@@ -0,0 +1,248 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.HtmlDecoder;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.OpenGraph;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the Open Graph tags, the title and the favicon of a page in a single pass over its markup.
+ *
+ * Everything we're interested in is in the head of the page, so reading stops as soon as the head
+ * is closed or the body starts, and the rest of the page is never read. Scripts, styles and
+ * comments are skipped without looking for tags in them.
+ */
+final class OpenGraphParser {
+
+  private static final int MAX_TAG_LENGTH   = 16 * 1024;
+  private static final int MAX_TITLE_LENGTH = 4 * 1024;
+
+  private final Reader      reader;
+  private final HtmlDecoder htmlDecoder;
+
+  private final Map<String, String> openGraphTags = new HashMap<>();
+  private final Map<String, String> articleTags   = new HashMap<>();
+  private final StringBuilder       tag           = new StringBuilder();
+
+  private @Nullable StringBuilder title;
+  private @Nullable String        htmlTitle;
+  private @Nullable String        faviconUrl;
+
+  private final char[] buffer = new char[8192];
+  private int          bufferLength;
+  private int          bufferPosition;
+
+  private OpenGraphParser(@NonNull Reader reader, @NonNull HtmlDecoder htmlDecoder) {
+    this.reader      = reader;
+    this.htmlDecoder = htmlDecoder;
+  }
+
+  static @NonNull OpenGraph parse(@NonNull Reader reader, @NonNull HtmlDecoder htmlDecoder) throws IOException {
+    return new OpenGraphParser(reader, htmlDecoder).parse();
+  }
+
+  private @NonNull OpenGraph parse() throws IOException {
+    int c;
+
+    while ((c = read()) != -1) {
+      if (c != '<') {
+        if (title != null && title.length() < MAX_TITLE_LENGTH) title.append((char) c);
+        continue;
+      }
+
+      if (!readTag()) break;
+
+      String name = tagName();
+
+      if (name.equals("!--")) {
+        skipPast("-->");
+      } else if (name.equals("script") || name.equals("style")) {
+        if (!isSelfClosing()) skipPast("</" + name);
+      } else if (name.equals("title")) {
+        if (htmlTitle == null) title = new StringBuilder();
+      } else if (name.equals("/title")) {
+        if (title != null) htmlTitle = htmlDecoder.fromEncoded(title.toString());
+        title = null;
+      } else if (name.equals("meta")) {
+        onMeta();
+      } else if (name.equals("link")) {
+        onLink();
+      } else if (name.equals("/head") || name.equals("body")) {
+        break;
+      }
+    }
+
+    // Article tags take precedence over the Open Graph ones with the same name
+    Map<String, String> values = new HashMap<>(openGraphTags);
+    values.putAll(articleTags);
+
+    return new OpenGraph(values, htmlTitle != null ? htmlTitle : "", faviconUrl != null ? faviconUrl : "");
+  }
+
+  private void onMeta() {
+    String property = attribute("property");
+    String content  = attribute("content");
+
+    if (property == null || content == null) return;
+
+    property = property.trim().toLowerCase(Locale.ROOT);
+
+    if (property.startsWith("og:") && property.length() > 3) {
+      openGraphTags.put(property.substring(3), htmlDecoder.fromEncoded(content));
+    } else if (property.startsWith("article:") && property.length() > 8) {
+      articleTags.put(property.substring(8), htmlDecoder.fromEncoded(content));
+    }
+  }
+
+  private void onLink() {
+    if (faviconUrl != null) return;
+
+    String rel  = attribute("rel");
+    String href = attribute("href");
+
+    if (rel != null && href != null && rel.toLowerCase(Locale.ROOT).contains("icon")) {
+      faviconUrl = href;
+    }
+  }
+
+  /**
+   * Reads the rest of a tag, up to its closing bracket, into {@link #tag}.
+   *
+   * @return false if the end of the input was reached first.
+   */
+  private boolean readTag() throws IOException {
+    tag.setLength(0);
+
+    char quote = 0;
+    int  c;
+
+    while ((c = read()) != -1) {
+      if (quote != 0) {
+        if (c == quote) quote = 0;
+      } else if (c == '"' || c == '\'') {
+        // Only attribute values are quoted, a lone quote elsewhere doesn't hide the end of the tag
+        if (isAfterEquals()) quote = (char) c;
+      } else if (c == '>') {
+        return true;
+      } else if (c == '-' && tag.length() == 2 && tag.charAt(0) == '!' && tag.charAt(1) == '-') {
+        // A comment ends with "-->" rather than at the first closing bracket
+        tag.append('-');
+        return true;
+      }
+
+      if (tag.length() < MAX_TAG_LENGTH) tag.append((char) c);
+    }
+
+    return false;
+  }
+
+  private boolean isAfterEquals() {
+    for (int i = tag.length() - 1; i >= 0; i--) {
+      char c = tag.charAt(i);
+      if (c == '=') return true;
+      if (!Character.isWhitespace(c)) return false;
+    }
+    return false;
+  }
+
+  private @NonNull String tagName() {
+    int end = 0;
+    while (end < tag.length()) {
+      char c = tag.charAt(end);
+      if (Character.isWhitespace(c) || (c == '/' && end > 0)) break;
+      end++;
+    }
+    return tag.substring(0, end).toLowerCase(Locale.ROOT);
+  }
+
+  private boolean isSelfClosing() {
+    return tag.length() > 0 && tag.charAt(tag.length() - 1) == '/';
+  }
+
+  /**
+   * @return the value of an attribute of the current tag, or null if it doesn't have it.
+   */
+  private @Nullable String attribute(@NonNull String name) {
+    int length = tag.length();
+    int i      = 0;
+
+    // Skip the tag name
+    while (i < length && !Character.isWhitespace(tag.charAt(i))) i++;
+
+    while (i < length) {
+      while (i < length && (Character.isWhitespace(tag.charAt(i)) || tag.charAt(i) == '/')) i++;
+
+      int nameStart = i;
+      while (i < length && tag.charAt(i) != '=' && tag.charAt(i) != '/' && !Character.isWhitespace(tag.charAt(i))) i++;
+      int nameEnd = i;
+
+      while (i < length && Character.isWhitespace(tag.charAt(i))) i++;
+
+      String value = null;
+
+      if (i < length && tag.charAt(i) == '=') {
+        i++;
+        while (i < length && Character.isWhitespace(tag.charAt(i))) i++;
+
+        if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+          char quote      = tag.charAt(i++);
+          int  valueStart = i;
+          while (i < length && tag.charAt(i) != quote) i++;
+          value = tag.substring(valueStart, i);
+          i++;
+        } else {
+          int valueStart = i;
+          while (i < length && !Character.isWhitespace(tag.charAt(i))) i++;
+          value = tag.substring(valueStart, i);
+        }
+      }
+
+      if (nameEnd > nameStart && tag.substring(nameStart, nameEnd).equalsIgnoreCase(name)) {
+        return value != null ? value : "";
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Skips everything up to and including the first occurrence of a string, ignoring case.
+   */
+  private void skipPast(@NonNull String end) throws IOException {
+    StringBuilder window = new StringBuilder(end.length());
+    int           c;
+
+    while ((c = read()) != -1) {
+      if (window.length() == end.length()) window.deleteCharAt(0);
+      window.append(Character.toLowerCase((char) c));
+
+      if (window.length() == end.length() && window.indexOf(end) == 0) break;
+    }
+
+    if (c != -1 && end.startsWith("</")) {
+      // Skip the rest of the closing tag
+      while ((c = read()) != -1 && c != '>');
+    }
+  }
+
+  private int read() throws IOException {
+    if (bufferPosition == bufferLength) {
+      bufferLength   = reader.read(buffer, 0, buffer.length);
+      bufferPosition = 0;
+
+      if (bufferLength <= 0) {
+        bufferLength = 0;
+        return -1;
+      }
+    }
+
+    return buffer[bufferPosition++];
+  }
+}
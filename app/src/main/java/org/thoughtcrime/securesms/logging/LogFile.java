@@ -29,6 +29,8 @@ import javax.crypto.spec.SecretKeySpec;
 
 class LogFile {
 
+  private static final int BUFFER_SIZE = 16 * 1024;
+
   public static class GrowingBuffer {
 
     private byte[] buffer;
@@ -45,6 +47,7 @@ class LogFile {
 
     private final byte[]        ivBuffer         = new byte[16];
     private final GrowingBuffer ciphertextBuffer = new GrowingBuffer();
+    private final SecureRandom  secureRandom     = new SecureRandom();
 
     private final byte[]               secret;
     private final File                 file;
@@ -54,7 +57,7 @@ class LogFile {
     Writer(@NonNull byte[] secret, @NonNull File file) throws IOException {
       this.secret       = secret;
       this.file         = file;
-      this.outputStream = new BufferedOutputStream(new FileOutputStream(file, true));
+      this.outputStream = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE);
 
       try {
         this.cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
@@ -63,8 +66,12 @@ class LogFile {
       }
     }
 
+    /**
+     * Encrypts and appends a single entry, flushing it to disk. An entry may contain several
+     * newline separated log lines, so callers should batch lines into one entry where possible.
+     */
     void writeEntry(@NonNull String entry) throws IOException {
-      new SecureRandom().nextBytes(ivBuffer);
+      secureRandom.nextBytes(ivBuffer);
 
       byte[] plaintext = entry.getBytes();
       try {
@@ -107,7 +114,7 @@ class LogFile {
 
     Reader(@NonNull byte[] secret, @NonNull File file) throws IOException {
       this.secret      = secret;
-      this.inputStream = new BufferedInputStream(new FileInputStream(file));
+      this.inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
 
       try {
         this.cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
@@ -128,6 +135,11 @@ class LogFile {
     }
 
     String readEntry() throws IOException {
+      byte[] plaintext = readEntryBytes();
+      return plaintext != null ? new String(plaintext) : null;
+    }
+
+    byte[] readEntryBytes() throws IOException {
       try {
         Util.readFully(inputStream, ivBuffer);
         Util.readFully(inputStream, intBuffer);
@@ -140,8 +152,7 @@ class LogFile {
         try {
           synchronized (CIPHER_LOCK) {
             cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(ivBuffer));
-            byte[] plaintext = cipher.doFinal(ciphertext, 0, length);
-            return new String(plaintext);
+            return cipher.doFinal(ciphertext, 0, length);
           }
         } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
           throw new AssertionError(e);
@@ -150,5 +161,9 @@ class LogFile {
         return null;
       }
     }
+
+    void close() {
+      Util.close(inputStream);
+    }
   }
 }
@@ -0,0 +1,161 @@
+package org.thoughtcrime.securesms.logging;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects log lines from any thread and turns them into blocks of newline separated lines on a
+ * single logger thread, so that each block can be encrypted and flushed at once.
+ *
+ * Adding a line never blocks: lines wait in a {@link RingBuffer}, and once it's full further lines
+ * are dropped, and the number dropped is logged with the next drain. Timestamps are formatted on
+ * the logger thread, and once per millisecond.
+ */
+final class LogLineBatcher {
+
+  interface BlockWriter {
+    @WorkerThread
+    void writeBlock(@NonNull String block);
+  }
+
+  private static final String LOG_W = "W";
+
+  private final RingBuffer<PendingLine> pendingLines;
+  private final int                     maxBlockSize;
+  private final String                  tag;
+  private final BlockWriter             blockWriter;
+  private final AtomicBoolean           drainScheduled = new AtomicBoolean(false);
+  private final AtomicInteger           droppedLines   = new AtomicInteger(0);
+  private final StringBuilder           block;
+  private final SimpleDateFormat        dateFormat     = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS zzz");
+  private final Date                    date           = new Date();
+
+  private long   lastTimestamp = -1;
+  private String lastFormattedTimestamp;
+
+  /**
+   * @param maxPendingLines the number of lines that can wait for the logger thread.
+   * @param maxBlockSize    the length past which a block is handed to the writer.
+   * @param tag             the tag to log dropped lines with.
+   */
+  LogLineBatcher(int maxPendingLines, int maxBlockSize, @NonNull String tag, @NonNull BlockWriter blockWriter) {
+    this.pendingLines = new RingBuffer<>(maxPendingLines);
+    this.maxBlockSize = maxBlockSize;
+    this.tag          = tag;
+    this.blockWriter  = blockWriter;
+    this.block        = new StringBuilder(maxBlockSize * 2);
+  }
+
+  /**
+   * Queues a line for the logger thread.
+   *
+   * @return true if the caller has to have {@link #drain()} run on the logger thread, because no
+   *         drain is pending yet.
+   */
+  @AnyThread
+  boolean add(long timestamp, @NonNull String level, String tag, String message, @Nullable Throwable t) {
+    if (!pendingLines.offer(new PendingLine(timestamp, level, tag, message, t))) {
+      droppedLines.incrementAndGet();
+    }
+
+    return drainScheduled.compareAndSet(false, true);
+  }
+
+  /**
+   * Writes every queued line, in blocks of about {@code maxBlockSize}.
+   */
+  @WorkerThread
+  void drain() {
+    // Cleared first, so that a line queued while draining schedules another drain
+    drainScheduled.set(false);
+
+    PendingLine line;
+    while ((line = pendingLines.poll()) != null) {
+      appendLogEntries(line);
+
+      if (block.length() >= maxBlockSize) {
+        writeBlock();
+      }
+    }
+
+    int dropped = droppedLines.getAndSet(0);
+    if (dropped > 0) {
+      appendEntry(formatTimestamp(System.currentTimeMillis()), LOG_W, tag, "Dropped " + dropped + " lines logged faster than they could be written.");
+    }
+
+    if (block.length() > 0) {
+      writeBlock();
+    }
+  }
+
+  @WorkerThread
+  private void writeBlock() {
+    String entry = block.toString();
+    block.setLength(0);
+    blockWriter.writeBlock(entry);
+  }
+
+  @WorkerThread
+  private void appendLogEntries(PendingLine line) {
+    String timestamp = formatTimestamp(line.timestamp);
+
+    appendEntry(timestamp, line.level, line.tag, line.message);
+
+    if (line.throwable != null) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      line.throwable.printStackTrace(new PrintStream(outputStream));
+
+      String   trace = new String(outputStream.toByteArray());
+      String[] lines = trace.split("\\n");
+
+      for (String traceLine : lines) {
+        appendEntry(timestamp, line.level, line.tag, traceLine);
+      }
+    }
+  }
+
+  @WorkerThread
+  private void appendEntry(String timestamp, String level, String tag, String message) {
+    if (block.length() > 0) {
+      block.append('\n');
+    }
+
+    block.append(timestamp).append(' ').append(level).append(' ').append(tag).append(": ").append(message);
+  }
+
+  @WorkerThread
+  private String formatTimestamp(long timestamp) {
+    if (timestamp != lastTimestamp) {
+      date.setTime(timestamp);
+      lastTimestamp          = timestamp;
+      lastFormattedTimestamp = dateFormat.format(date);
+    }
+
+    return lastFormattedTimestamp;
+  }
+
+  private static class PendingLine {
+    private final long      timestamp;
+    private final String    level;
+    private final String    tag;
+    private final String    message;
+    private final Throwable throwable;
+
+    private PendingLine(long timestamp, String level, String tag, String message, Throwable throwable) {
+      this.timestamp = timestamp;
+      this.level     = level;
+      this.tag       = tag;
+      this.message   = message;
+      this.throwable = throwable;
+    }
+  }
+}
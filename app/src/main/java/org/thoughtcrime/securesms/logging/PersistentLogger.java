@@ -10,15 +10,10 @@ import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.NoExternalStorageException;
 import org.session.libsignal.utilities.SettableFuture;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -34,16 +29,18 @@ public class PersistentLogger extends Log.Logger {
   private static final String LOG_E   = "E";
   private static final String LOG_WTF = "A";
 
-  private static final String           LOG_DIRECTORY   = "log";
-  private static final String           FILENAME_PREFIX = "log-";
-  private static final int              MAX_LOG_FILES   = 5;
-  private static final int              MAX_LOG_SIZE    = 300 * 1024;
-  private static final int              MAX_LOG_EXPORT  = 10_000;
-  private static final SimpleDateFormat DATE_FORMAT     = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS zzz");
+  private static final String           LOG_DIRECTORY        = "log";
+  private static final String           FILENAME_PREFIX      = "log-";
+  private static final int              MAX_LOG_FILES        = 5;
+  private static final int              MAX_LOG_SIZE         = 300 * 1024;
+  private static final int              MAX_LOG_EXPORT_LINES = 10_000;
+  private static final int              MAX_BLOCK_SIZE       = 8 * 1024;
+  private static final int              MAX_PENDING_LINES    = 16 * 1024;
 
-  private final Context  context;
-  private final Executor executor;
-  private final byte[]   secret;
+  private final Context        context;
+  private final Executor       executor;
+  private final byte[]         secret;
+  private final LogLineBatcher batcher = new LogLineBatcher(MAX_PENDING_LINES, MAX_BLOCK_SIZE, TAG, this::writeBlock);
 
   private LogFile.Writer writer;
 
@@ -102,32 +99,45 @@ public class PersistentLogger extends Log.Logger {
     }
   }
 
-  @WorkerThread
-  public ListenableFuture<String> getLogs() {
-    final SettableFuture<String> future = new SettableFuture<>();
+  /**
+   * Decrypts all persisted logs, oldest first, into the provided stream. Any lines logged before
+   * this call are written out before the export starts. No further log files are read once
+   * {@link #MAX_LOG_EXPORT_LINES} lines have been written, counting every line of a block. The stream
+   * is not closed.
+   *
+   * @return A future holding the number of bytes written.
+   */
+  public ListenableFuture<Long> exportLogs(OutputStream outputStream) {
+    final SettableFuture<Long> future = new SettableFuture<>();
 
     executor.execute(() -> {
-      StringBuilder builder = new StringBuilder();
-      long entriesWritten = 0;
+      long linesWritten = 0;
+      long bytesWritten = 0;
 
       try {
         File[] logs = getSortedLogFiles();
-        for (int i = logs.length - 1; i >= 0 && entriesWritten <= MAX_LOG_EXPORT; i--) {
+        for (int i = logs.length - 1; i >= 0 && linesWritten <= MAX_LOG_EXPORT_LINES; i--) {
+          LogFile.Reader reader = null;
           try {
-            LogFile.Reader reader = new LogFile.Reader(secret, logs[i]);
-            String entry;
-            while ((entry = reader.readEntry()) != null) {
-              entriesWritten++;
-              builder.append(entry).append('\n');
+            reader = new LogFile.Reader(secret, logs[i]);
+            byte[] entry;
+            while ((entry = reader.readEntryBytes()) != null) {
+              linesWritten += countLines(entry);
+              outputStream.write(entry);
+              outputStream.write('\n');
+              bytesWritten += entry.length + 1;
             }
           } catch (IOException e) {
             android.util.Log.w(TAG, "Failed to read log at index " + i + ". Removing reference.");
             logs[i].delete();
+          } finally {
+            if (reader != null) reader.close();
           }
         }
 
-        future.set(builder.toString());
-      } catch (NoExternalStorageException e) {
+        outputStream.flush();
+        future.set(bytesWritten);
+      } catch (NoExternalStorageException | IOException e) {
         future.setException(e);
       }
     });
@@ -144,32 +154,37 @@ public class PersistentLogger extends Log.Logger {
     }
   }
 
+  /**
+   * Queues a line for the logger thread, see {@link LogLineBatcher}.
+   */
   @AnyThread
   private void write(String level, String tag, String message, Throwable t) {
-    executor.execute(() -> {
-      try {
-        if (writer == null) {
-          return;
-        }
-
-        if (writer.getLogSize() >= MAX_LOG_SIZE) {
-          writer.close();
-          writer = new LogFile.Writer(secret, createNewLogFile());
-          trimLogFilesOverMax();
-        }
+    if (batcher.add(System.currentTimeMillis(), level, tag, message, t)) {
+      executor.execute(batcher::drain);
+    }
+  }
 
-        for (String entry : buildLogEntries(level, tag, message, t)) {
-          writer.writeEntry(entry);
-        }
+  @WorkerThread
+  private void writeBlock(String entry) {
+    try {
+      if (writer == null) {
+        return;
+      }
 
-      } catch (NoExternalStorageException e) {
-        android.util.Log.w(TAG, "Cannot persist logs.", e);
-      } catch (IOException e) {
-        android.util.Log.w(TAG, "Failed to write line. Deleting all logs and starting over.");
-        deleteAllLogs();
-        initializeWriter();
+      if (writer.getLogSize() >= MAX_LOG_SIZE) {
+        writer.close();
+        writer = new LogFile.Writer(secret, createNewLogFile());
+        trimLogFilesOverMax();
       }
-    });
+
+      writer.writeEntry(entry);
+    } catch (NoExternalStorageException e) {
+      android.util.Log.w(TAG, "Cannot persist logs.", e);
+    } catch (IOException e) {
+      android.util.Log.w(TAG, "Failed to write line. Deleting all logs and starting over.");
+      deleteAllLogs();
+      initializeWriter();
+    }
   }
 
   private void trimLogFilesOverMax() throws NoExternalStorageException {
@@ -223,28 +238,11 @@ public class PersistentLogger extends Log.Logger {
     return logDir;
   }
 
-  private List<String> buildLogEntries(String level, String tag, String message, Throwable t) {
-    List<String> entries = new LinkedList<>();
-    Date         date    = new Date();
-
-    entries.add(buildEntry(level, tag, message, date));
-
-    if (t != null) {
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      t.printStackTrace(new PrintStream(outputStream));
-
-      String   trace = new String(outputStream.toByteArray());
-      String[] lines = trace.split("\\n");
-
-      for (String line : lines) {
-        entries.add(buildEntry(level, tag, line, date));
-      }
+  private static int countLines(byte[] entry) {
+    int lines = 1;
+    for (byte b : entry) {
+      if (b == '\n') lines++;
     }
-
-    return entries;
-  }
-
-  private String buildEntry(String level, String tag, String message, Date date) {
-    return DATE_FORMAT.format(date) + ' ' + level + ' ' + tag + ": " + message;
+    return lines;
   }
 }
@@ -0,0 +1,83 @@
+package org.thoughtcrime.securesms.logging;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue that any number of threads can add to without taking a lock, and a single thread
+ * takes from.
+ *
+ * A producer claims the next slot by advancing {@link #tail} and then stores its element there, so
+ * an element becomes visible to the consumer only once it's stored. Until then {@link #poll()}
+ * returns {@code null}, even if elements added after it are already stored, which keeps the
+ * elements in the order their slots were claimed.
+ */
+final class RingBuffer<E> {
+
+  private final AtomicReferenceArray<E> slots;
+  private final int                     mask;
+  private final AtomicLong              head = new AtomicLong();
+  private final AtomicLong              tail = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of elements held, rounded up to a power of two.
+   */
+  RingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) size <<= 1;
+
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask  = size - 1;
+  }
+
+  int capacity() {
+    return slots.length();
+  }
+
+  /**
+   * @return false if the buffer is full, in which case the element isn't added.
+   */
+  @AnyThread
+  boolean offer(@NonNull E element) {
+    while (true) {
+      long claimed = tail.get();
+
+      // The consumer clears a slot before moving the head past it, so a slot behind the head is free
+      if (claimed - head.get() >= slots.length()) {
+        return false;
+      }
+
+      if (tail.compareAndSet(claimed, claimed + 1)) {
+        slots.lazySet((int) claimed & mask, element);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return the oldest element, or null if there's none or it hasn't been stored yet.
+   */
+  @WorkerThread
+  @Nullable E poll() {
+    long current = head.get();
+    int  index   = (int) current & mask;
+    E    element = slots.get(index);
+
+    if (element == null) {
+      return null;
+    }
+
+    slots.lazySet(index, null);
+    head.lazySet(current + 1);
+    return element;
+  }
+}
@@ -24,7 +24,6 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
@@ -38,19 +37,15 @@ import androidx.core.app.NotificationManagerCompat;
 
 import com.annimon.stream.Optional;
 import com.annimon.stream.Stream;
-import com.goterl.lazysodium.utils.KeyPair;
 
-import org.session.libsession.messaging.open_groups.OpenGroup;
 import org.session.libsession.messaging.sending_receiving.notifications.MessageNotifier;
-import org.session.libsession.messaging.utilities.SessionId;
-import org.session.libsession.messaging.utilities.SodiumUtilities;
 import org.session.libsession.snode.SnodeAPI;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.Contact;
+import org.session.libsession.utilities.PreferencesSnapshot;
 import org.session.libsession.utilities.ServiceUtil;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.recipients.Recipient;
-import org.session.libsignal.utilities.IdPrefix;
 import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.Util;
 import org.thoughtcrime.securesms.ApplicationContext;
@@ -58,9 +53,6 @@ import org.thoughtcrime.securesms.contacts.ContactUtil;
 import org.thoughtcrime.securesms.conversation.v2.ConversationActivityV2;
 import org.thoughtcrime.securesms.conversation.v2.utilities.MentionManagerUtilities;
 import org.thoughtcrime.securesms.conversation.v2.utilities.MentionUtilities;
-import org.thoughtcrime.securesms.crypto.KeyPairUtilities;
-import org.thoughtcrime.securesms.database.LokiThreadDatabase;
-import org.thoughtcrime.securesms.database.MmsSmsDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
 import org.thoughtcrime.securesms.database.model.MediaMmsMessageRecord;
@@ -74,11 +66,11 @@ import org.thoughtcrime.securesms.service.KeyCachingService;
 import org.thoughtcrime.securesms.util.SessionMetaProtocol;
 import org.thoughtcrime.securesms.util.SpanUtil;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -116,6 +108,8 @@ public class DefaultMessageNotifier implements MessageNotifier {
   private volatile static       long               lastAudibleNotification      = -1;
   private          static final CancelableExecutor executor                     = new CancelableExecutor();
 
+  private final NotificationRecordCache recordCache = new NotificationRecordCache();
+
   @Override
   public void setVisibleThread(long threadId) {
     visibleThread = threadId;
@@ -249,7 +243,8 @@ public class DefaultMessageNotifier implements MessageNotifier {
     }
 
     if ((!isVisible && !homeScreenVisible) || hasExistingNotifications(context)) {
-      updateNotification(context, signal, 0);
+      recordCache.refreshThread(context, threadId);
+      updateNotificationFromCache(context, signal, 0);
     }
   }
 
@@ -266,50 +261,47 @@ public class DefaultMessageNotifier implements MessageNotifier {
   @Override
   public void updateNotification(@NonNull Context context, boolean signal, int reminderCount)
   {
-    Cursor telcoCursor = null;
-    Cursor pushCursor  = null;
-
-    try {
-      telcoCursor = DatabaseComponent.get(context).mmsSmsDatabase().getUnread(); // TODO: add a notification specific lighter query here
+    recordCache.refreshAll(context);
+    updateNotificationFromCache(context, signal, reminderCount);
+  }
 
-      if ((telcoCursor == null || telcoCursor.isAfterLast()) || !TextSecurePreferences.hasSeenWelcomeScreen(context))
-      {
-        updateBadge(context, 0);
-        cancelActiveNotifications(context);
-        clearReminder(context);
-        return;
-      }
+  private void updateNotificationFromCache(@NonNull Context context, boolean signal, int reminderCount)
+  {
+    if (!recordCache.hasUnread() || !TextSecurePreferences.hasSeenWelcomeScreen(context))
+    {
+      updateBadge(context, 0);
+      cancelActiveNotifications(context);
+      clearReminder(context);
+      return;
+    }
 
-      NotificationState notificationState = constructNotificationState(context, telcoCursor);
+    NotificationState notificationState = constructNotificationState(context);
 
-      if (signal && (System.currentTimeMillis() - lastAudibleNotification) < MIN_AUDIBLE_PERIOD_MILLIS) {
-        signal = false;
-      } else if (signal) {
-        lastAudibleNotification = System.currentTimeMillis();
-      }
+    if (signal && (System.currentTimeMillis() - lastAudibleNotification) < MIN_AUDIBLE_PERIOD_MILLIS) {
+      signal = false;
+    } else if (signal) {
+      lastAudibleNotification = System.currentTimeMillis();
+    }
 
-      try {
-        if (notificationState.hasMultipleThreads()) {
-          for (long threadId : notificationState.getThreads()) {
-            sendSingleThreadNotification(context, new NotificationState(notificationState.getNotificationsForThread(threadId)), false, true);
-          }
-          sendMultipleThreadNotification(context, notificationState, signal);
-        } else if (notificationState.getMessageCount() > 0) {
-          sendSingleThreadNotification(context, notificationState, signal, false);
-        } else {
-          cancelActiveNotifications(context);
+    try {
+      if (notificationState.hasMultipleThreads()) {
+        for (long threadId : notificationState.getThreads()) {
+          sendSingleThreadNotification(context, new NotificationState(notificationState.getNotificationsForThread(threadId)), false, true);
         }
-      } catch (Exception e) {
-        Log.e(TAG, "Error creating notification", e);
+        sendMultipleThreadNotification(context, notificationState, signal);
+      } else if (notificationState.getMessageCount() > 0) {
+        sendSingleThreadNotification(context, notificationState, signal, false);
+      } else {
+        cancelActiveNotifications(context);
       }
-      cancelOrphanedNotifications(context, notificationState);
-      updateBadge(context, notificationState.getMessageCount());
+    } catch (Exception e) {
+      Log.e(TAG, "Error creating notification", e);
+    }
+    cancelOrphanedNotifications(context, notificationState);
+    updateBadge(context, notificationState.getMessageCount());
 
-      if (signal) {
-        scheduleReminder(context, reminderCount);
-      }
-    } finally {
-      if (telcoCursor != null) telcoCursor.close();
+    if (signal) {
+      scheduleReminder(context, reminderCount);
     }
   }
 
@@ -460,111 +452,101 @@ public class DefaultMessageNotifier implements MessageNotifier {
     Log.i(TAG, "Posted notification. " + notification);
   }
 
-  private NotificationState constructNotificationState(@NonNull  Context context,
-                                                       @NonNull  Cursor cursor)
+  private NotificationState constructNotificationState(@NonNull Context context) {
+    PreferencesSnapshot preferences              = PreferencesSnapshot.get(context);
+    String              userPublicKey            = preferences.getLocalNumber();
+    boolean             hasHiddenMessageRequests = preferences.getHasHiddenMessageRequests();
+    boolean             locked                   = KeyCachingService.isLocked(context);
+    List<Object>        itemsKey                 = Arrays.asList(userPublicKey, hasHiddenMessageRequests, locked);
+
+    return recordCache.getNotificationState(context, itemsKey, (c, threadInfo, record) ->
+        createNotificationItems(c, threadInfo, record, userPublicKey, hasHiddenMessageRequests, locked));
+  }
+
+  private List<NotificationItem> createNotificationItems(@NonNull  Context context,
+                                                         @Nullable NotificationRecordCache.ThreadInfo threadInfo,
+                                                         @NonNull  MessageRecord record,
+                                                         @Nullable String userPublicKey,
+                                                         boolean hasHiddenMessageRequests,
+                                                         boolean locked)
   {
-    NotificationState     notificationState = new NotificationState();
-    MmsSmsDatabase.Reader reader            = DatabaseComponent.get(context).mmsSmsDatabase().readerFor(cursor);
-    ThreadDatabase        threadDatabase    = DatabaseComponent.get(context).threadDatabase();
-
-    MessageRecord record;
-    Map<Long, String> cache = new HashMap<Long, String>();
-
-    while ((record = reader.getNext()) != null) {
-      long         id                    = record.getId();
-      boolean      mms                   = record.isMms() || record.isMmsNotification();
-      Recipient    recipient             = record.getIndividualRecipient();
-      Recipient    conversationRecipient = record.getRecipient();
-      long         threadId              = record.getThreadId();
-      CharSequence body                  = record.getDisplayBody(context);
-      Recipient    threadRecipients      = null;
-      SlideDeck    slideDeck             = null;
-      long         timestamp             = record.getTimestamp();
-      boolean      messageRequest        = false;
-
-      if (threadId != -1) {
-        threadRecipients = threadDatabase.getRecipientForThreadId(threadId);
-        messageRequest = threadRecipients != null && !threadRecipients.isGroupRecipient() &&
-                !threadRecipients.isApproved() && !threadDatabase.getLastSeenAndHasSent(threadId).second();
-        if (messageRequest && (threadDatabase.getMessageCount(threadId) > 1 || !TextSecurePreferences.hasHiddenMessageRequests(context))) {
-          continue;
-        }
+    List<NotificationItem> items = new ArrayList<>(2);
+    long         id                    = record.getId();
+    boolean      mms                   = record.isMms() || record.isMmsNotification();
+    Recipient    recipient             = record.getIndividualRecipient();
+    Recipient    conversationRecipient = record.getRecipient();
+    long         threadId              = record.getThreadId();
+    CharSequence body                  = record.getDisplayBody(context);
+    Recipient    threadRecipients      = null;
+    String       blindedPublicKey      = null;
+    SlideDeck    slideDeck             = null;
+    long         timestamp             = record.getTimestamp();
+    boolean      messageRequest        = false;
+
+    if (threadInfo != null) {
+      threadRecipients = threadInfo.recipient;
+      blindedPublicKey = threadInfo.blindedPublicKey;
+      messageRequest = threadRecipients != null && !threadRecipients.isGroupRecipient() &&
+              !threadRecipients.isApproved() && !threadInfo.hasSent;
+      if (messageRequest && (threadInfo.messageCount > 1 || !hasHiddenMessageRequests)) {
+        return items;
       }
-      if (messageRequest) {
-        body = SpanUtil.italic(context.getString(R.string.message_requests_notification));
-      } else if (KeyCachingService.isLocked(context)) {
-        body = SpanUtil.italic(context.getString(R.string.MessageNotifier_locked_message));
-      } else if (record.isMms() && !((MmsMessageRecord) record).getSharedContacts().isEmpty()) {
-        Contact contact = ((MmsMessageRecord) record).getSharedContacts().get(0);
-        body = ContactUtil.getStringSummary(context, contact);
-      } else if (record.isMms() && TextUtils.isEmpty(body) && !((MmsMessageRecord) record).getSlideDeck().getSlides().isEmpty()) {
-        slideDeck = ((MediaMmsMessageRecord)record).getSlideDeck();
-        body = SpanUtil.italic(slideDeck.getBody());
-      } else if (record.isMms() && !record.isMmsNotification() && !((MmsMessageRecord) record).getSlideDeck().getSlides().isEmpty()) {
-        slideDeck = ((MediaMmsMessageRecord)record).getSlideDeck();
-        String message      = slideDeck.getBody() + ": " + record.getBody();
-        int    italicLength = message.length() - body.length();
-        body = SpanUtil.italic(message, italicLength);
-      } else if (record.isOpenGroupInvitation()) {
-        body = SpanUtil.italic(context.getString(R.string.ThreadRecord_open_group_invitation));
-      }
-      String userPublicKey = TextSecurePreferences.getLocalNumber(context);
-      String blindedPublicKey = cache.get(threadId);
-      if (blindedPublicKey == null) {
-        blindedPublicKey = generateBlindedId(threadId, context);
-        cache.put(threadId, blindedPublicKey);
-      }
-      if (threadRecipients == null || !threadRecipients.isMuted()) {
-        if (threadRecipients != null && threadRecipients.notifyType == RecipientDatabase.NOTIFY_TYPE_MENTIONS) {
-          // check if mentioned here
-          boolean isQuoteMentioned = false;
-          if (record instanceof MmsMessageRecord) {
-            Quote quote = ((MmsMessageRecord) record).getQuote();
-            Address quoteAddress = quote != null ? quote.getAuthor() : null;
-            String serializedAddress = quoteAddress != null ? quoteAddress.serialize() : null;
-            isQuoteMentioned = (serializedAddress!= null && Objects.equals(userPublicKey, serializedAddress)) ||
-                    (blindedPublicKey != null && Objects.equals(userPublicKey, blindedPublicKey));
-          }
-          if (body.toString().contains("@"+userPublicKey) || body.toString().contains("@"+blindedPublicKey) || isQuoteMentioned) {
-            notificationState.addNotification(new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, slideDeck));
-          }
-        } else if (threadRecipients != null && threadRecipients.notifyType == RecipientDatabase.NOTIFY_TYPE_NONE) {
-          // do nothing, no notifications
-        } else {
-          notificationState.addNotification(new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, slideDeck));
-        }
+    }
 
-        String userBlindedPublicKey = blindedPublicKey;
-        Optional<ReactionRecord> lastReact = Stream.of(record.getReactions())
-                .filter(r -> !(r.getAuthor().equals(userPublicKey) || r.getAuthor().equals(userBlindedPublicKey)))
-                .findLast();
-
-        if (lastReact.isPresent()) {
-          if (threadRecipients != null && !threadRecipients.isGroupRecipient()) {
-            ReactionRecord reaction = lastReact.get();
-            Recipient reactor = Recipient.from(context, Address.fromSerialized(reaction.getAuthor()), false);
-            String emoji = context.getString(R.string.reaction_notification, reactor.toShortString(), reaction.getEmoji());
-            notificationState.addNotification(new NotificationItem(id, mms, reactor, reactor, threadRecipients, threadId, emoji, reaction.getDateSent(), slideDeck));
-          }
+    if (messageRequest) {
+      body = SpanUtil.italic(context.getString(R.string.message_requests_notification));
+    } else if (locked) {
+      body = SpanUtil.italic(context.getString(R.string.MessageNotifier_locked_message));
+    } else if (record.isMms() && !((MmsMessageRecord) record).getSharedContacts().isEmpty()) {
+      Contact contact = ((MmsMessageRecord) record).getSharedContacts().get(0);
+      body = ContactUtil.getStringSummary(context, contact);
+    } else if (record.isMms() && TextUtils.isEmpty(body) && !((MmsMessageRecord) record).getSlideDeck().getSlides().isEmpty()) {
+      slideDeck = ((MediaMmsMessageRecord)record).getSlideDeck();
+      body = SpanUtil.italic(slideDeck.getBody());
+    } else if (record.isMms() && !record.isMmsNotification() && !((MmsMessageRecord) record).getSlideDeck().getSlides().isEmpty()) {
+      slideDeck = ((MediaMmsMessageRecord)record).getSlideDeck();
+      String message      = slideDeck.getBody() + ": " + record.getBody();
+      int    italicLength = message.length() - body.length();
+      body = SpanUtil.italic(message, italicLength);
+    } else if (record.isOpenGroupInvitation()) {
+      body = SpanUtil.italic(context.getString(R.string.ThreadRecord_open_group_invitation));
+    }
+    if (threadRecipients == null || !threadRecipients.isMuted()) {
+      if (threadRecipients != null && threadRecipients.notifyType == RecipientDatabase.NOTIFY_TYPE_MENTIONS) {
+        // check if mentioned here
+        boolean isQuoteMentioned = false;
+        if (record instanceof MmsMessageRecord) {
+          Quote quote = ((MmsMessageRecord) record).getQuote();
+          Address quoteAddress = quote != null ? quote.getAuthor() : null;
+          String serializedAddress = quoteAddress != null ? quoteAddress.serialize() : null;
+          isQuoteMentioned = (serializedAddress!= null && Objects.equals(userPublicKey, serializedAddress)) ||
+                  (blindedPublicKey != null && Objects.equals(userPublicKey, blindedPublicKey));
         }
+        if (body.toString().contains("@"+userPublicKey) || body.toString().contains("@"+blindedPublicKey) || isQuoteMentioned) {
+          items.add(new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, slideDeck));
+        }
+      } else if (threadRecipients != null && threadRecipients.notifyType == RecipientDatabase.NOTIFY_TYPE_NONE) {
+        // do nothing, no notifications
+      } else {
+        items.add(new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, slideDeck));
       }
-    }
-
-    reader.close();
-    return notificationState;
-  }
 
-  private @Nullable String generateBlindedId(long threadId, Context context) {
-    LokiThreadDatabase lokiThreadDatabase   = DatabaseComponent.get(context).lokiThreadDatabase();
-    OpenGroup openGroup = lokiThreadDatabase.getOpenGroupChat(threadId);
-    KeyPair edKeyPair = KeyPairUtilities.INSTANCE.getUserED25519KeyPair(context);
-    if (openGroup != null && edKeyPair != null) {
-      KeyPair blindedKeyPair = SodiumUtilities.blindedKeyPair(openGroup.getPublicKey(), edKeyPair);
-      if (blindedKeyPair != null) {
-        return new SessionId(IdPrefix.BLINDED, blindedKeyPair.getPublicKey().getAsBytes()).getHexString();
+      String userBlindedPublicKey = blindedPublicKey;
+      Optional<ReactionRecord> lastReact = Stream.of(record.getReactions())
+              .filter(r -> !(r.getAuthor().equals(userPublicKey) || r.getAuthor().equals(userBlindedPublicKey)))
+              .findLast();
+
+      if (lastReact.isPresent()) {
+        if (threadRecipients != null && !threadRecipients.isGroupRecipient()) {
+          ReactionRecord reaction = lastReact.get();
+          Recipient reactor = Recipient.from(context, Address.fromSerialized(reaction.getAuthor()), false);
+          String emoji = context.getString(R.string.reaction_notification, reactor.toShortString(), reaction.getEmoji());
+          items.add(new NotificationItem(id, mms, reactor, reactor, threadRecipients, threadId, emoji, reaction.getDateSent(), slideDeck));
+        }
       }
     }
-    return null;
+
+    return items;
   }
 
   private void updateBadge(Context context, int count) {
@@ -0,0 +1,393 @@
+package org.thoughtcrime.securesms.notifications;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.goterl.lazysodium.utils.KeyPair;
+
+import org.session.libsession.messaging.open_groups.OpenGroup;
+import org.session.libsession.messaging.utilities.SessionId;
+import org.session.libsession.messaging.utilities.SodiumUtilities;
+import org.session.libsession.utilities.Util;
+import org.session.libsession.utilities.recipients.Recipient;
+import org.session.libsignal.utilities.IdPrefix;
+import org.session.libsignal.utilities.Log;
+import org.thoughtcrime.securesms.crypto.KeyPairUtilities;
+import org.thoughtcrime.securesms.database.DatabaseContentProviders;
+import org.thoughtcrime.securesms.database.MmsSmsColumns;
+import org.thoughtcrime.securesms.database.MmsSmsDatabase;
+import org.thoughtcrime.securesms.database.ThreadDatabase;
+import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the unread message records of each thread, along with the thread details and the
+ * notification items built from them, between updates. An update only queries the unread messages
+ * of the threads that changed, loads the messages that were added or whose reactions changed in a
+ * single query, and rebuilds the items of those threads alone.
+ *
+ * A single content observer marks threads as changed whenever anything in them changes, and all
+ * threads whenever a recipient changes.
+ */
+class NotificationRecordCache {
+
+  private static final String TAG = NotificationRecordCache.class.getSimpleName();
+
+  interface ItemFactory {
+    /**
+     * Returns the notification items for an unread message, in the order they should be shown.
+     */
+    @NonNull List<NotificationItem> createItems(@NonNull Context context, @Nullable ThreadInfo threadInfo, @NonNull MessageRecord record);
+  }
+
+  private final Map<Long, ThreadEntry> threads        = new HashMap<>();
+  private final Map<Long, Boolean>     changedThreads = new ConcurrentHashMap<>();
+  private final ChangeObserver         observer       = new ChangeObserver();
+
+  private volatile boolean  allThreadsChanged = true;
+  private          boolean  observing;
+  private @Nullable Object  itemsKey;
+
+  /**
+   * Brings the unread messages of all threads up to date.
+   */
+  synchronized void refreshAll(@NonNull Context context) {
+    observe(context);
+
+    boolean   rebuildAll     = allThreadsChanged;
+    Set<Long> changedThreads = new HashSet<>(this.changedThreads.keySet());
+
+    allThreadsChanged = false;
+    this.changedThreads.keySet().removeAll(changedThreads);
+
+    try (Cursor cursor = DatabaseComponent.get(context).mmsSmsDatabase().getUnreadKeys()) {
+      Map<Long, List<RecordKey>> keysByThread = readKeys(cursor);
+
+      for (Iterator<Long> iterator = threads.keySet().iterator(); iterator.hasNext();) {
+        if (!keysByThread.containsKey(iterator.next())) iterator.remove();
+      }
+
+      applyKeys(context, keysByThread, rebuildAll ? keysByThread.keySet() : changedThreads);
+    }
+  }
+
+  /**
+   * Brings the unread messages of `threadId`, and of any thread that changed since the previous
+   * update, up to date.
+   */
+  synchronized void refreshThread(@NonNull Context context, long threadId) {
+    if (!observing || allThreadsChanged) {
+      refreshAll(context);
+      return;
+    }
+
+    List<Long> threadIds = new ArrayList<>(changedThreads.keySet());
+    changedThreads.keySet().removeAll(threadIds);
+    if (!threadIds.contains(threadId)) threadIds.add(threadId);
+
+    Map<Long, List<RecordKey>> keysByThread = new HashMap<>();
+
+    for (long changedThreadId : threadIds) {
+      try (Cursor cursor = DatabaseComponent.get(context).mmsSmsDatabase().getUnreadKeys(changedThreadId)) {
+        List<RecordKey> keys = readKeys(cursor).get(changedThreadId);
+
+        if (keys == null) threads.remove(changedThreadId);
+        else              keysByThread.put(changedThreadId, keys);
+      }
+    }
+
+    applyKeys(context, keysByThread, keysByThread.keySet());
+  }
+
+  synchronized boolean hasUnread() {
+    return !threads.isEmpty();
+  }
+
+  /**
+   * Returns the notification state for the unread messages as of the last refresh, only building
+   * the items of threads that changed since the previous call. `itemsKey` should capture anything
+   * the items depend on besides their thread and messages; all items are rebuilt when it changes.
+   */
+  synchronized @NonNull NotificationState getNotificationState(@NonNull Context context, @NonNull Object itemsKey, @NonNull ItemFactory factory) {
+    boolean rebuildAll = !itemsKey.equals(this.itemsKey);
+    this.itemsKey = itemsKey;
+
+    List<CachedItem> items = new ArrayList<>();
+
+    for (Map.Entry<Long, ThreadEntry> entry : threads.entrySet()) {
+      ThreadEntry thread = entry.getValue();
+
+      if (thread.items == null || rebuildAll) {
+        if (thread.info == null && entry.getKey() != -1) thread.info = loadThreadInfo(context, entry.getKey());
+
+        thread.items = new ArrayList<>();
+        for (CachedRecord cached : thread.records) {
+          for (NotificationItem item : factory.createItems(context, thread.info, cached.record)) {
+            thread.items.add(new CachedItem(cached.record.getDateSent(), item));
+          }
+        }
+      }
+
+      items.addAll(thread.items);
+    }
+
+    // Stable, so the items of a message stay in the order the factory returned them
+    Collections.sort(items, (lhs, rhs) -> Long.compare(lhs.dateSent, rhs.dateSent));
+
+    NotificationState notificationState = new NotificationState();
+    for (CachedItem item : items) {
+      notificationState.addNotification(item.item);
+    }
+    return notificationState;
+  }
+
+  /**
+   * Replaces the records of each thread in `keysByThread`. The details and items of threads whose
+   * records changed, and of `invalidatedThreads`, are dropped so they're loaded again when needed.
+   */
+  private void applyKeys(@NonNull Context context, @NonNull Map<Long, List<RecordKey>> keysByThread, @NonNull Set<Long> invalidatedThreads) {
+    Map<String, MessageRecord> loaded = loadMissingRecords(context, keysByThread);
+
+    for (Map.Entry<Long, List<RecordKey>> entry : keysByThread.entrySet()) {
+      ThreadEntry               previous = threads.get(entry.getKey());
+      Map<String, CachedRecord> cached   = new HashMap<>();
+      List<CachedRecord>        records  = new ArrayList<>(entry.getValue().size());
+      boolean                   changed  = previous == null || invalidatedThreads.contains(entry.getKey());
+
+      if (previous != null) {
+        for (CachedRecord record : previous.records) cached.put(record.key.key, record);
+      }
+
+      for (RecordKey key : entry.getValue()) {
+        CachedRecord record = cached.remove(key.key);
+
+        if (record == null || !record.key.hasSameReactions(key)) {
+          MessageRecord loadedRecord = loaded.get(key.key);
+          if (loadedRecord == null) {
+            Log.w(TAG, "Message " + key.key + " was deleted before it could be loaded.");
+            continue;
+          }
+          record  = new CachedRecord(key, loadedRecord);
+          changed = true;
+        }
+
+        records.add(record);
+      }
+
+      changed |= !cached.isEmpty();
+
+      if      (records.isEmpty()) threads.remove(entry.getKey());
+      else if (changed)           threads.put(entry.getKey(), new ThreadEntry(records));
+    }
+  }
+
+  /**
+   * Loads the records of all `keys` that aren't cached yet, or whose reactions changed, in as few
+   * queries as possible.
+   */
+  private @NonNull Map<String, MessageRecord> loadMissingRecords(@NonNull Context context, @NonNull Map<Long, List<RecordKey>> keysByThread) {
+    List<RecordKey> missing = new ArrayList<>();
+
+    for (Map.Entry<Long, List<RecordKey>> entry : keysByThread.entrySet()) {
+      ThreadEntry            thread = threads.get(entry.getKey());
+      Map<String, RecordKey> cached = new HashMap<>();
+
+      if (thread != null) {
+        for (CachedRecord record : thread.records) cached.put(record.key.key, record.key);
+      }
+
+      for (RecordKey key : entry.getValue()) {
+        RecordKey cachedKey = cached.get(key.key);
+        if (cachedKey == null || !cachedKey.hasSameReactions(key)) missing.add(key);
+      }
+    }
+
+    Map<String, MessageRecord> records        = new HashMap<>(missing.size());
+    MmsSmsDatabase             mmsSmsDatabase = DatabaseComponent.get(context).mmsSmsDatabase();
+
+    for (List<RecordKey> partition : Util.partition(missing, 900)) {
+      List<Long> smsIds = new ArrayList<>();
+      List<Long> mmsIds = new ArrayList<>();
+
+      for (RecordKey key : partition) {
+        if (key.mms) mmsIds.add(key.id);
+        else         smsIds.add(key.id);
+      }
+
+      try (Cursor cursor = mmsSmsDatabase.getMessages(smsIds, mmsIds)) {
+        MmsSmsDatabase.Reader reader = mmsSmsDatabase.readerFor(cursor);
+        MessageRecord         record;
+
+        while ((record = reader.getNext()) != null) {
+          records.put(RecordKey.key(record.getId(), record.isMms()), record);
+        }
+      }
+    }
+
+    return records;
+  }
+
+  private static @NonNull Map<Long, List<RecordKey>> readKeys(@Nullable Cursor cursor) {
+    Map<Long, List<RecordKey>> keysByThread = new HashMap<>();
+
+    while (cursor != null && cursor.moveToNext()) {
+      RecordKey key = new RecordKey(cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID)),
+                                    MmsSmsDatabase.MMS_TRANSPORT.equals(cursor.getString(cursor.getColumnIndexOrThrow(MmsSmsDatabase.TRANSPORT))),
+                                    cursor.getInt(cursor.getColumnIndexOrThrow(MmsSmsDatabase.REACTION_COUNT)),
+                                    cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsDatabase.LAST_REACTION_ID)));
+      long threadId = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.THREAD_ID));
+
+      List<RecordKey> keys = keysByThread.get(threadId);
+      if (keys == null) {
+        keys = new ArrayList<>();
+        keysByThread.put(threadId, keys);
+      }
+      keys.add(key);
+    }
+
+    return keysByThread;
+  }
+
+  private void observe(@NonNull Context context) {
+    if (observing) return;
+
+    context.getContentResolver().registerContentObserver(DatabaseContentProviders.Conversation.CONTENT_URI, true, observer);
+    context.getContentResolver().registerContentObserver(DatabaseContentProviders.Recipient.CONTENT_URI, true, observer);
+    observing = true;
+  }
+
+  private static @NonNull ThreadInfo loadThreadInfo(@NonNull Context context, long threadId) {
+    ThreadDatabase threadDatabase = DatabaseComponent.get(context).threadDatabase();
+    Recipient      recipient      = threadDatabase.getRecipientForThreadId(threadId);
+    boolean        hasSent        = recipient != null && threadDatabase.getLastSeenAndHasSent(threadId).second();
+    int            messageCount   = recipient != null ? threadDatabase.getMessageCount(threadId) : 0;
+
+    return new ThreadInfo(recipient, hasSent, messageCount, generateBlindedId(context, threadId));
+  }
+
+  private static @Nullable String generateBlindedId(@NonNull Context context, long threadId) {
+    OpenGroup openGroup = DatabaseComponent.get(context).lokiThreadDatabase().getOpenGroupChat(threadId);
+    KeyPair   edKeyPair = KeyPairUtilities.INSTANCE.getUserED25519KeyPair(context);
+    if (openGroup != null && edKeyPair != null) {
+      KeyPair blindedKeyPair = SodiumUtilities.blindedKeyPair(openGroup.getPublicKey(), edKeyPair);
+      if (blindedKeyPair != null) {
+        return new SessionId(IdPrefix.BLINDED, blindedKeyPair.getPublicKey().getAsBytes()).getHexString();
+      }
+    }
+    return null;
+  }
+
+  static class ThreadInfo {
+
+    final @Nullable Recipient recipient;
+    final           boolean   hasSent;
+    final           int       messageCount;
+    final @Nullable String    blindedPublicKey;
+
+    ThreadInfo(@Nullable Recipient recipient, boolean hasSent, int messageCount, @Nullable String blindedPublicKey) {
+      this.recipient        = recipient;
+      this.hasSent          = hasSent;
+      this.messageCount     = messageCount;
+      this.blindedPublicKey = blindedPublicKey;
+    }
+  }
+
+  private static class RecordKey {
+
+    private final String  key;
+    private final long    id;
+    private final boolean mms;
+    private final int     reactionCount;
+    private final long    lastReactionId;
+
+    private RecordKey(long id, boolean mms, int reactionCount, long lastReactionId) {
+      this.key            = key(id, mms);
+      this.id             = id;
+      this.mms            = mms;
+      this.reactionCount  = reactionCount;
+      this.lastReactionId = lastReactionId;
+    }
+
+    private boolean hasSameReactions(@NonNull RecordKey other) {
+      return reactionCount == other.reactionCount && lastReactionId == other.lastReactionId;
+    }
+
+    private static @NonNull String key(long id, boolean mms) {
+      return (mms ? MmsSmsDatabase.MMS_TRANSPORT : MmsSmsDatabase.SMS_TRANSPORT) + ":" + id;
+    }
+  }
+
+  private static class CachedRecord {
+
+    private final RecordKey     key;
+    private final MessageRecord record;
+
+    private CachedRecord(RecordKey key, MessageRecord record) {
+      this.key    = key;
+      this.record = record;
+    }
+  }
+
+  private static class CachedItem {
+
+    private final long             dateSent;
+    private final NotificationItem item;
+
+    private CachedItem(long dateSent, NotificationItem item) {
+      this.dateSent = dateSent;
+      this.item     = item;
+    }
+  }
+
+  private static class ThreadEntry {
+
+    private final     List<CachedRecord> records;
+    private @Nullable ThreadInfo         info;
+    private @Nullable List<CachedItem>   items;
+
+    private ThreadEntry(List<CachedRecord> records) {
+      this.records = records;
+    }
+  }
+
+  private class ChangeObserver extends ContentObserver {
+
+    private ChangeObserver() {
+      super(null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+      onChange(selfChange, null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, @Nullable Uri uri) {
+      String threadId = uri != null && DatabaseContentProviders.Conversation.CONTENT_URI.getAuthority().equals(uri.getAuthority())
+                        ? uri.getLastPathSegment()
+                        : null;
+
+      try {
+        if (threadId != null) changedThreads.put(Long.parseLong(threadId), true);
+        else                  allThreadsChanged = true;
+      } catch (NumberFormatException e) {
+        allThreadsChanged = true;
+      }
+    }
+  }
+}
@@ -32,7 +32,6 @@ import org.session.libsignal.utilities.Log
 import org.thoughtcrime.securesms.ApplicationContext
 import org.thoughtcrime.securesms.createSessionDialog
 import org.thoughtcrime.securesms.util.FileProviderUtil
-import org.thoughtcrime.securesms.util.StreamUtil
 
 import java.io.File
 import java.io.FileOutputStream
@@ -74,18 +73,17 @@ class ShareLogsDialog(private val updateCallback: (Boolean)->Unit): DialogFragme
                 val outputUri: Uri = ExternalStorageUtil.getDownloadUri()
                 val mediaUri = getExternalFile() ?: return@launch
 
-                val inputStream = persistentLogger.logs.get().byteInputStream()
                 val updateValues = ContentValues()
 
                 // Add details into the output or media files as appropriate
                 if (outputUri.scheme == ContentResolver.SCHEME_FILE) {
                     FileOutputStream(mediaUri.path).use { outputStream ->
-                        StreamUtil.copy(inputStream, outputStream)
+                        persistentLogger.exportLogs(outputStream).get()
                         MediaScannerConnection.scanFile(context, arrayOf(mediaUri.path), arrayOf("text/plain"), null)
                     }
                 } else {
-                    context.contentResolver.openOutputStream(mediaUri, "w").use { outputStream ->
-                        val total: Long = StreamUtil.copy(inputStream, outputStream)
+                    context.contentResolver.openOutputStream(mediaUri, "w")!!.use { outputStream ->
+                        val total: Long = persistentLogger.exportLogs(outputStream).get()
                         if (total > 0) {
                             updateValues.put(MediaStore.MediaColumns.SIZE, total)
                         }
@@ -22,9 +22,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Allows for the creation and retrieval of blobs.
@@ -53,7 +53,15 @@ public class BlobProvider {
 
   private static final BlobProvider INSTANCE = new BlobProvider();
 
-  private final Map<Uri, byte[]> memoryBlobs = new HashMap<>();
+  private static final long DEFAULT_MEMORY_BUDGET = Math.min(Runtime.getRuntime().maxMemory() / 8, 32 * 1024 * 1024);
+
+  private final MemoryBlobStore memoryBlobs = new MemoryBlobStore(DEFAULT_MEMORY_BUDGET, new SpilledBlobStorage(), (id, owner, spilled) ->
+      Log.w(TAG, "In-memory blob " + id + " outlived its owner " + owner + (spilled ? ", moved it to disk." : "."))
+  );
+
+  private final Set<String> spilledFileNames = ConcurrentHashMap.newKeySet();
+
+  private volatile Context applicationContext;
 
 
   public static BlobProvider getInstance() {
@@ -74,22 +82,27 @@ public class BlobProvider {
     return new BlobBuilder(data, fileSize);
   }
 
+  /**
+   * Set how many bytes of in-memory blobs can be held in memory. In-memory blobs created beyond that
+   * are kept in encrypted single-session files instead.
+   */
+  public void setMemoryBudget(long bytes) {
+    memoryBlobs.setMemoryBudget(bytes);
+  }
+
   /**
    * Retrieve a stream for the content with the specified URI.
    * @throws IOException If the stream fails to open or the spec of the URI doesn't match.
    */
-  public synchronized @NonNull InputStream getStream(@NonNull Context context, @NonNull Uri uri) throws IOException {
+  public @NonNull InputStream getStream(@NonNull Context context, @NonNull Uri uri) throws IOException {
     if (isAuthority(uri)) {
       StorageType storageType = StorageType.decode(uri.getPathSegments().get(STORAGE_TYPE_PATH_SEGMENT));
 
       if (storageType.isMemory()) {
-        byte[] data = memoryBlobs.get(uri);
+        InputStream data = memoryBlobs.open(uri.getPathSegments().get(ID_PATH_SEGMENT), storageType == StorageType.SINGLE_USE_MEMORY);
 
         if (data != null) {
-          if (storageType == StorageType.SINGLE_USE_MEMORY) {
-            memoryBlobs.remove(uri);
-          }
-          return new ByteArrayInputStream(data);
+          return data;
         } else {
           throw new IOException("Failed to find in-memory blob for: " + uri);
         }
@@ -108,7 +121,7 @@ public class BlobProvider {
   /**
    * Delete the content with the specified URI.
    */
-  public synchronized void delete(@NonNull Context context, @NonNull Uri uri) {
+  public void delete(@NonNull Context context, @NonNull Uri uri) {
     if (!isAuthority(uri)) {
       Log.d(TAG, "Can't delete. Not the authority for uri: " + uri);
       return;
@@ -118,7 +131,7 @@ public class BlobProvider {
       StorageType storageType = StorageType.decode(uri.getPathSegments().get(STORAGE_TYPE_PATH_SEGMENT));
 
       if (storageType.isMemory()) {
-        memoryBlobs.remove(uri);
+        memoryBlobs.remove(uri.getPathSegments().get(ID_PATH_SEGMENT));
       } else {
         String id        = uri.getPathSegments().get(ID_PATH_SEGMENT);
         String directory = getDirectory(storageType);
@@ -133,13 +146,26 @@ public class BlobProvider {
     }
   }
 
+  /**
+   * Gives the provider the context it needs to move in-memory blobs to disk. Should be called from
+   * {@link Application#onCreate()}, before any blob is created.
+   */
+  public void initialize(@NonNull Context context) {
+    applicationContext = context.getApplicationContext();
+  }
+
   /**
    * Indicates a new app session has started, allowing old single-session blobs to be deleted.
    */
   public synchronized void onSessionStart(@NonNull Context context) {
+    initialize(context);
+
     File directory = getOrCreateCacheDirectory(context, SINGLE_SESSION_DIRECTORY);
     for (File file : directory.listFiles()) {
-      file.delete();
+      // In-memory blobs may already have been moved to disk during this session
+      if (!spilledFileNames.contains(file.getName())) {
+        file.delete();
+      }
     }
   }
 
@@ -192,10 +218,9 @@ public class BlobProvider {
     return buildUri(blobSpec);
   }
 
-  private synchronized @NonNull Uri writeBlobSpecToMemory(@NonNull BlobSpec blobSpec, @NonNull byte[] data) {
-    Uri uri = buildUri(blobSpec);
-    memoryBlobs.put(uri, data);
-    return uri;
+  private @NonNull Uri writeBlobSpecToMemory(@NonNull BlobSpec blobSpec, @NonNull byte[] data, @Nullable Object owner) {
+    memoryBlobs.put(blobSpec.getId(), data, owner);
+    return buildUri(blobSpec);
   }
 
   private static @NonNull String buildFileName(@NonNull String id) {
@@ -275,6 +300,7 @@ public class BlobProvider {
   public class MemoryBlobBuilder extends BlobBuilder {
 
     private byte[] data;
+    private Object owner;
 
     private MemoryBlobBuilder(@NonNull byte[] data) {
       super(new ByteArrayInputStream(data), data.length);
@@ -293,12 +319,22 @@ public class BlobProvider {
       return this;
     }
 
+    /**
+     * Ties the blob to an object, e.g. the screen it's created for, that is expected to delete it
+     * before being garbage collected. The owner is only weakly referenced; if it is collected while
+     * the blob is still held in memory, the blob is logged as leaked and moved to disk.
+     */
+    public MemoryBlobBuilder withOwner(@NonNull Object owner) {
+      this.owner = owner;
+      return this;
+    }
+
     /**
      * Create a blob that is stored in memory and can only be read a single time. After a single
      * read, it will be removed from storage. Useful for when a Uri is needed to read transient data.
      */
     public Uri createForSingleUseInMemory() {
-      return writeBlobSpecToMemory(buildBlobSpec(StorageType.SINGLE_USE_MEMORY), data);
+      return writeBlobSpecToMemory(buildBlobSpec(StorageType.SINGLE_USE_MEMORY), data, owner);
     }
 
     /**
@@ -307,7 +343,57 @@ public class BlobProvider {
      * to free up memory.
      */
     public Uri createForSingleSessionInMemory() {
-      return writeBlobSpecToMemory(buildBlobSpec(StorageType.SINGLE_SESSION_MEMORY), data);
+      return writeBlobSpecToMemory(buildBlobSpec(StorageType.SINGLE_SESSION_MEMORY), data, owner);
+    }
+  }
+
+  /**
+   * Keeps the in-memory blobs that don't fit in the memory budget in encrypted files next to the
+   * single-session blobs, so that they're cleaned up at the start of the next session too.
+   */
+  private class SpilledBlobStorage implements MemoryBlobStore.SpillStorage {
+
+    @Override
+    public void write(@NonNull String id, @NonNull byte[] data) throws IOException {
+      Context context = applicationContext;
+      if (context == null) throw new IOException("Blobs can't be spilled before the provider is initialized.");
+
+      AttachmentSecret attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
+      String           fileName         = buildSpillFileName(id);
+      File             file             = new File(getOrCreateCacheDirectory(context, SINGLE_SESSION_DIRECTORY), fileName);
+
+      // Recorded before the file exists, so that the start of the session can't delete it
+      spilledFileNames.add(fileName);
+
+      try (OutputStream outputStream = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, true).second) {
+        outputStream.write(data);
+      }
+    }
+
+    @Override
+    public @NonNull InputStream read(@NonNull String id) throws IOException {
+      Context context = applicationContext;
+      if (context == null) throw new IOException("The provider isn't initialized.");
+
+      File file = new File(getOrCreateCacheDirectory(context, SINGLE_SESSION_DIRECTORY), buildSpillFileName(id));
+      return ModernDecryptingPartInputStream.createFor(AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret(), file, 0);
+    }
+
+    @Override
+    public void delete(@NonNull String id) {
+      Context context = applicationContext;
+      if (context == null) return;
+
+      String fileName = buildSpillFileName(id);
+      File   file     = new File(getOrCreateCacheDirectory(context, SINGLE_SESSION_DIRECTORY), fileName);
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete spilled blob: " + id);
+      }
+      spilledFileNames.remove(fileName);
+    }
+
+    private @NonNull String buildSpillFileName(@NonNull String id) {
+      return id + ".spilled.blob";
     }
   }
 
@@ -0,0 +1,203 @@
+package org.thoughtcrime.securesms.providers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.session.libsignal.utilities.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the data of in-memory blobs within a memory budget.
+ *
+ * A blob that doesn't fit in what's left of the budget is handed to a {@link SpillStorage} instead
+ * of being kept in memory. A blob can also be created on behalf of an owner, which is only weakly
+ * referenced: if the owner is garbage collected while its blob is still held in memory, the blob
+ * has leaked, so it's reported and moved to the spill storage to free its memory.
+ */
+final class MemoryBlobStore {
+
+  private static final String TAG = MemoryBlobStore.class.getSimpleName();
+
+  interface SpillStorage {
+    void write(@NonNull String id, @NonNull byte[] data) throws IOException;
+
+    @NonNull InputStream read(@NonNull String id) throws IOException;
+
+    void delete(@NonNull String id);
+  }
+
+  interface LeakListener {
+    void onLeak(@NonNull String id, @NonNull String owner, boolean spilled);
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries      = new ConcurrentHashMap<>();
+  private final ReferenceQueue<Object>           ownerQueue   = new ReferenceQueue<>();
+  private final AtomicLong                       memoryUsage  = new AtomicLong();
+  private final AtomicLong                       peakUsage    = new AtomicLong();
+  private final SpillStorage                     spillStorage;
+  private final LeakListener                     leakListener;
+
+  private volatile long memoryBudget;
+
+  MemoryBlobStore(long memoryBudget, @NonNull SpillStorage spillStorage, @NonNull LeakListener leakListener) {
+    this.memoryBudget = memoryBudget;
+    this.spillStorage = spillStorage;
+    this.leakListener = leakListener;
+  }
+
+  void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Stores a blob, in memory if it fits in the budget and in the spill storage otherwise.
+   *
+   * @param owner what the blob is created for, if anything. It is only weakly referenced.
+   */
+  void put(@NonNull String id, @NonNull byte[] data, @Nullable Object owner) {
+    reapLeaks();
+
+    OwnerReference ownerReference = owner != null ? new OwnerReference(owner, id, ownerQueue) : null;
+
+    if (!reserve(data.length)) {
+      try {
+        spillStorage.write(id, data);
+        entries.put(id, new Entry(null, ownerReference));
+        return;
+      } catch (IOException e) {
+        // Going over the budget is better than losing the blob
+        Log.w(TAG, "Failed to spill blob, keeping it in memory.", e);
+        updatePeak(memoryUsage.addAndGet(data.length));
+      }
+    }
+
+    entries.put(id, new Entry(data, ownerReference));
+  }
+
+  /**
+   * @param remove whether the blob should be removed once opened, e.g. because it can only be read once.
+   * @return the data of the blob, or null if there is no such blob.
+   */
+  @Nullable InputStream open(@NonNull String id, boolean remove) throws IOException {
+    reapLeaks();
+
+    Entry entry = remove ? entries.remove(id) : entries.get(id);
+    if (entry == null) return null;
+
+    if (entry.data != null) {
+      if (remove) release(entry.data.length);
+      return new ByteArrayInputStream(entry.data);
+    }
+
+    InputStream inputStream = spillStorage.read(id);
+    if (remove) spillStorage.delete(id);
+    return inputStream;
+  }
+
+  boolean remove(@NonNull String id) {
+    Entry entry = entries.remove(id);
+    if (entry == null) return false;
+
+    if (entry.data != null) {
+      release(entry.data.length);
+    } else {
+      spillStorage.delete(id);
+    }
+    return true;
+  }
+
+  boolean contains(@NonNull String id) {
+    return entries.containsKey(id);
+  }
+
+  long getMemoryUsage() {
+    return memoryUsage.get();
+  }
+
+  long getPeakMemoryUsage() {
+    return peakUsage.get();
+  }
+
+  /**
+   * Reports and spills the in-memory blobs whose owner has been garbage collected.
+   */
+  void reapLeaks() {
+    OwnerReference reference;
+    while ((reference = (OwnerReference) ownerQueue.poll()) != null) {
+      Entry entry = entries.get(reference.id);
+      if (entry == null || entry.ownerReference != reference) continue;
+
+      boolean spilled = entry.data != null && spill(reference.id, entry);
+      leakListener.onLeak(reference.id, reference.ownerName, spilled);
+    }
+  }
+
+  private boolean spill(@NonNull String id, @NonNull Entry entry) {
+    try {
+      spillStorage.write(id, entry.data);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to spill leaked blob.", e);
+      return false;
+    }
+
+    if (entries.replace(id, entry, new Entry(null, null))) {
+      release(entry.data.length);
+      return true;
+    } else {
+      // It was removed or replaced while being written out
+      spillStorage.delete(id);
+      return false;
+    }
+  }
+
+  private boolean reserve(long size) {
+    while (true) {
+      long current = memoryUsage.get();
+      long updated = current + size;
+
+      if (updated > memoryBudget) return false;
+
+      if (memoryUsage.compareAndSet(current, updated)) {
+        updatePeak(updated);
+        return true;
+      }
+    }
+  }
+
+  private void updatePeak(long usage) {
+    long peak;
+    while ((peak = peakUsage.get()) < usage && !peakUsage.compareAndSet(peak, usage));
+  }
+
+  private void release(long size) {
+    memoryUsage.addAndGet(-size);
+  }
+
+  private static final class Entry {
+    private final @Nullable byte[]         data;
+    private final @Nullable OwnerReference ownerReference;
+
+    private Entry(@Nullable byte[] data, @Nullable OwnerReference ownerReference) {
+      this.data           = data;
+      this.ownerReference = ownerReference;
+    }
+  }
+
+  private static final class OwnerReference extends WeakReference<Object> {
+    private final String id;
+    private final String ownerName;
+
+    private OwnerReference(@NonNull Object owner, @NonNull String id, @NonNull ReferenceQueue<Object> queue) {
+      super(owner, queue);
+      this.id        = id;
+      this.ownerName = owner.getClass().getName();
+    }
+  }
+}
@@ -3,16 +3,16 @@ package org.thoughtcrime.securesms.search;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
-import android.database.MergeCursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import androidx.annotation.NonNull;
-import com.annimon.stream.Stream;
+import androidx.annotation.Nullable;
 import org.session.libsession.messaging.contacts.Contact;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.recipients.Recipient;
 import org.session.libsignal.utilities.Log;
-import org.thoughtcrime.securesms.contacts.ContactAccessor;
 import org.thoughtcrime.securesms.database.CursorList;
 import org.thoughtcrime.securesms.database.GroupDatabase;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
@@ -28,12 +28,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import kotlin.Pair;
 
 // Class to manage data retrieval for search
 public class SearchRepository {
   private static final String TAG = SearchRepository.class.getSimpleName();
 
+  public static final int MESSAGE_PAGE_SIZE = 100;
+
+  private static final int MAX_GLOBAL_MESSAGE_RESULTS = 500;
+
   private static final Set<Character> BANNED_CHARACTERS = new HashSet<>();
   static {
     // Construct a list containing several ranges of invalid ASCII characters
@@ -49,15 +54,15 @@ public class SearchRepository {
   private final ThreadDatabase         threadDatabase;
   private final GroupDatabase          groupDatabase;
   private final SessionContactDatabase contactDatabase;
-  private final ContactAccessor        contactAccessor;
   private final Executor               executor;
 
+  private final AtomicReference<CancellationSignal> pendingQuery = new AtomicReference<>();
+
   public SearchRepository(@NonNull Context context,
                           @NonNull SearchDatabase searchDatabase,
                           @NonNull ThreadDatabase threadDatabase,
                           @NonNull GroupDatabase groupDatabase,
                           @NonNull SessionContactDatabase contactDatabase,
-                          @NonNull ContactAccessor contactAccessor,
                           @NonNull Executor executor)
   {
     this.context          = context.getApplicationContext();
@@ -65,7 +70,6 @@ public class SearchRepository {
     this.threadDatabase   = threadDatabase;
     this.groupDatabase    = groupDatabase;
     this.contactDatabase  = contactDatabase;
-    this.contactAccessor  = contactAccessor;
     this.executor         = executor;
   }
 
@@ -77,17 +81,38 @@ public class SearchRepository {
       return;
     }
 
+    CancellationSignal cancellationSignal = replacePendingQuery();
+
     executor.execute(() -> {
+      if (cancellationSignal.isCanceled()) {
+        callback.onResult(SearchResult.EMPTY);
+        return;
+      }
+
       Stopwatch timer = new Stopwatch("FtsQuery");
       timer.split("clean");
 
-      Pair<CursorList<Contact>, List<String>> contacts = queryContacts(cleanQuery);
+      Pair<List<Address>, List<Address>> recipients = queryRecipients(cleanQuery);
+      timer.split("Recipients");
+
+      Pair<CursorList<Contact>, List<String>> contacts = queryContacts(recipients.getFirst());
       timer.split("Contacts");
 
-      CursorList<GroupRecord> conversations = queryConversations(cleanQuery, contacts.getSecond());
+      CursorList<GroupRecord> conversations = queryConversations(recipients.getSecond(), contacts.getSecond());
       timer.split("Conversations");
 
-      CursorList<MessageResult> messages = queryMessages(cleanQuery);
+      CursorList<MessageResult> messages;
+      try {
+        messages = queryMessages(cleanQuery, SearchDatabase.NO_THREAD, null, Math.min(cleanQuery.length() * 50, MAX_GLOBAL_MESSAGE_RESULTS), cancellationSignal);
+      } catch (OperationCanceledException e) {
+        Log.d(TAG, "Search for a superseded query was cancelled.");
+        contacts.getFirst().close();
+        conversations.close();
+        callback.onResult(SearchResult.EMPTY);
+        return;
+      } finally {
+        pendingQuery.compareAndSet(cancellationSignal, null);
+      }
       timer.split("Messages");
 
       timer.stop(TAG);
@@ -97,6 +122,18 @@ public class SearchRepository {
   }
 
   public void query(@NonNull String query, long threadId, @NonNull Callback<CursorList<MessageResult>> callback) {
+    queryMessages(query, threadId, null, callback);
+  }
+
+  /**
+   * Searches the messages of a thread one page of {@link #MESSAGE_PAGE_SIZE} results at a time.
+   *
+   * A new query cancels the previous one if it is still running, in which case the previous one
+   * gets an empty result.
+   *
+   * @param after the key of the last result of the previous page, or null for the first page.
+   */
+  public void queryMessages(@NonNull String query, long threadId, @Nullable SearchDatabase.PageKey after, @NonNull Callback<CursorList<MessageResult>> callback) {
     // If the sanitized search query is empty then abort the search
     String cleanQuery = sanitizeQuery(query).trim();
     if (cleanQuery.isEmpty()) {
@@ -104,48 +141,78 @@ public class SearchRepository {
       return;
     }
 
+    CancellationSignal cancellationSignal = replacePendingQuery();
+
     executor.execute(() -> {
-      CursorList<MessageResult> messages = queryMessages(cleanQuery, threadId);
+      CursorList<MessageResult> messages = CursorList.emptyList();
+      try {
+        if (!cancellationSignal.isCanceled()) {
+          messages = queryMessages(cleanQuery, threadId, after, MESSAGE_PAGE_SIZE, cancellationSignal);
+        }
+      } catch (OperationCanceledException e) {
+        Log.d(TAG, "Search for a superseded query was cancelled.");
+      } finally {
+        pendingQuery.compareAndSet(cancellationSignal, null);
+      }
       callback.onResult(messages);
     });
   }
 
-  private Pair<CursorList<Contact>, List<String>> queryContacts(String query) {
-    Cursor contacts = contactDatabase.queryContactsByName(query);
-    List<Address> contactList = new ArrayList<>();
-    List<String> contactStrings = new ArrayList<>();
+  private CancellationSignal replacePendingQuery() {
+    CancellationSignal cancellationSignal = new CancellationSignal();
+    CancellationSignal previous           = pendingQuery.getAndSet(cancellationSignal);
 
-    while (contacts.moveToNext()) {
-      try {
-        Contact contact = contactDatabase.contactFromCursor(contacts);
-        String contactSessionId = contact.getSessionID();
-        Address address = Address.fromSerialized(contactSessionId);
-        contactList.add(address);
-        contactStrings.add(contactSessionId);
-      } catch (Exception e) {
-        Log.e("Loki", "Error building Contact from cursor in query", e);
+    if (previous != null) {
+      previous.cancel();
+    }
+
+    return cancellationSignal;
+  }
+
+  /**
+   * Looks the query up in the contact and group search index.
+   *
+   * @return the addresses of the matching contacts and of the matching groups.
+   */
+  private Pair<List<Address>, List<Address>> queryRecipients(@NonNull String query) {
+    List<Address> contacts = new ArrayList<>();
+    List<Address> groups   = new ArrayList<>();
+
+    try (Cursor cursor = searchDatabase.queryRecipients(query)) {
+      while (cursor.moveToNext()) {
+        Address address = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(SearchDatabase.RECIPIENT_ADDRESS)));
+
+        if (cursor.getInt(cursor.getColumnIndexOrThrow(SearchDatabase.RECIPIENT_KIND)) == SearchDatabase.RECIPIENT_KIND_GROUP) {
+          groups.add(address);
+        } else {
+          contacts.add(address);
+        }
       }
     }
 
-    contacts.close();
+    return new Pair<>(contacts, groups);
+  }
+
+  private Pair<CursorList<Contact>, List<String>> queryContacts(@NonNull List<Address> contactList) {
+    List<String> contactStrings = new ArrayList<>(contactList.size());
+    for (Address address : contactList) {
+      contactStrings.add(address.serialize());
+    }
 
-    Cursor addressThreads = threadDatabase.searchConversationAddresses(query);
     Cursor individualRecipients = threadDatabase.getFilteredConversationList(contactList);
-    if (individualRecipients == null && addressThreads == null) {
-      return new Pair<>(CursorList.emptyList(),contactStrings);
+    if (individualRecipients == null) {
+      return new Pair<>(CursorList.emptyList(), contactStrings);
     }
-    MergeCursor merged = new MergeCursor(new Cursor[]{addressThreads, individualRecipients});
 
-    return new Pair<>(new CursorList<>(merged, new ContactModelBuilder(contactDatabase, threadDatabase)), contactStrings);
+    return new Pair<>(new CursorList<>(individualRecipients, new ContactModelBuilder(contactDatabase, threadDatabase)), contactStrings);
   }
 
-  private CursorList<GroupRecord> queryConversations(@NonNull String query, List<String> matchingAddresses) {
-    List<String> numbers = contactAccessor.getNumbersForThreadSearchFilter(context, query);
+  private CursorList<GroupRecord> queryConversations(@NonNull List<Address> groups, List<String> matchingAddresses) {
     String localUserNumber = TextSecurePreferences.getLocalNumber(context);
     if (localUserNumber != null) {
       matchingAddresses.remove(localUserNumber);
     }
-    Set<Address> addresses = new HashSet<>(Stream.of(numbers).map(number -> Address.fromExternal(context, number)).toList());
+    Set<Address> addresses = new HashSet<>(groups);
 
     Cursor membersGroupList = groupDatabase.getGroupsFilteredByMembers(matchingAddresses);
     if (membersGroupList != null) {
@@ -164,16 +231,22 @@ public class SearchRepository {
             : CursorList.emptyList();
   }
 
-  private CursorList<MessageResult> queryMessages(@NonNull String query) {
-    Cursor messages = searchDatabase.queryMessages(query);
-    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context))
-                            : CursorList.emptyList();
-  }
-
-  private CursorList<MessageResult> queryMessages(@NonNull String query, long threadId) {
-    Cursor messages = searchDatabase.queryMessages(query, threadId);
-    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context))
-                            : CursorList.emptyList();
+  private CursorList<MessageResult> queryMessages(@NonNull String query,
+                                                  long threadId,
+                                                  @Nullable SearchDatabase.PageKey after,
+                                                  int limit,
+                                                  @NonNull CancellationSignal cancellationSignal)
+  {
+    Cursor messages = searchDatabase.queryMessages(query, threadId, SearchDatabase.MessageOrder.RECENT, after, limit, cancellationSignal);
+    if (messages == null) return CursorList.emptyList();
+
+    try {
+      // Filling the cursor is what runs the query, so this is where a cancellation is noticed
+      return new CursorList<>(messages, new MessageModelBuilder(context));
+    } catch (OperationCanceledException e) {
+      messages.close();
+      throw e;
+    }
   }
 
   /**
@@ -279,7 +352,7 @@ public class SearchRepository {
       long      sentMs                = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_SENT));
       long      threadId              = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.THREAD_ID));
 
-      return new MessageResult(conversationRecipient, messageRecipient, body, threadId, sentMs);
+      return new MessageResult(conversationRecipient, messageRecipient, body, threadId, sentMs, SearchDatabase.PageKey.fromCursor(cursor));
     }
   }
 
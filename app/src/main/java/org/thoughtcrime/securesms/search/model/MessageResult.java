@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.search.model;
 import androidx.annotation.NonNull;
 
 import org.session.libsession.utilities.recipients.Recipient;
+import org.thoughtcrime.securesms.database.SearchDatabase;
 
 /**
  * Represents a search result for a message.
@@ -15,16 +16,21 @@ public class MessageResult {
   public final long      threadId;
   public final long      sentTimestampMs;
 
+  /** Where the next page of results starts when this is the last result of a page. */
+  public final SearchDatabase.PageKey pageKey;
+
   public MessageResult(@NonNull Recipient conversationRecipient,
                        @NonNull Recipient messageRecipient,
                        @NonNull String bodySnippet,
                        long threadId,
-                       long sentTimestampMs)
+                       long sentTimestampMs,
+                       @NonNull SearchDatabase.PageKey pageKey)
   {
     this.conversationRecipient = conversationRecipient;
     this.messageRecipient      = messageRecipient;
     this.bodySnippet           = bodySnippet;
     this.threadId              = threadId;
     this.sentTimestampMs       = sentTimestampMs;
+    this.pageKey               = pageKey;
   }
 }
@@ -43,11 +43,9 @@ public class BitmapUtil {
 
   private static final String TAG = BitmapUtil.class.getSimpleName();
 
-  private static final int MAX_COMPRESSION_QUALITY          = 95;
-  private static final int MIN_COMPRESSION_QUALITY          = 45;
-  private static final int MAX_COMPRESSION_ATTEMPTS         = 5;
-  private static final int MIN_COMPRESSION_QUALITY_DECREASE = 5;
-  private static final int MAX_IMAGE_HALF_SCALES            = 3;
+  private static final int MAX_COMPRESSION_ATTEMPTS = 5;
+  private static final int MAX_IMAGE_HALF_SCALES    = 3;
+  private static final int PROBE_SIZE               = 256;
 
   @WorkerThread
   public static <T> ScaleResult createScaledBytes(@NonNull Context context, @NonNull T model, @NonNull MediaConstraints constraints)
@@ -79,84 +77,111 @@ public class BitmapUtil {
                                                   @NonNull CompressFormat format)
       throws BitmapDecodingException
   {
-    return createScaledBytes(context, model, maxImageWidth, maxImageHeight, maxImageSize, format, 1, 0);
+    try {
+      Bitmap decodedBitmap = GlideApp.with(context.getApplicationContext())
+                                     .asBitmap()
+                                     .load(model)
+                                     .skipMemoryCache(true)
+                                     .diskCacheStrategy(DiskCacheStrategy.NONE)
+                                     .centerInside()
+                                     .submit(maxImageWidth, maxImageHeight)
+                                     .get();
+
+      if (decodedBitmap == null) {
+        throw new BitmapDecodingException("Unable to decode image");
+      }
+
+      Log.i(TAG, String.format(Locale.US,"Initial scaled bitmap has size of %d bytes.", decodedBitmap.getByteCount()));
+      Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
+
+      try {
+        return createScaledBytes(decodedBitmap, maxImageSize, format, model.getClass().getName());
+      } finally {
+        decodedBitmap.recycle();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new BitmapDecodingException(e);
+    }
   }
 
+  /**
+   * Encodes an already decoded bitmap to fit in {@code maxImageSize}. A small probe of the bitmap is
+   * encoded first to pick the quality and dimensions to start at, and every attempt, including
+   * those at halved dimensions, is made from the same decoded bitmap into the same buffer.
+   */
   @WorkerThread
-  private static <T> ScaleResult createScaledBytes(@NonNull Context context,
-                                                   @NonNull T model,
-                                                   final int maxImageWidth,
-                                                   final int maxImageHeight,
-                                                   final int maxImageSize,
-                                                   @NonNull CompressFormat format,
-                                                   final int sizeAttempt,
-                                                   int totalAttempts)
+  private static ScaleResult createScaledBytes(@NonNull Bitmap decodedBitmap, int maxImageSize, @NonNull CompressFormat format, @NonNull String source)
       throws BitmapDecodingException
   {
-    try {
-      int    quality  = MAX_COMPRESSION_QUALITY;
-      int    attempts = 0;
-      byte[] bytes;
-
-      Bitmap scaledBitmap = GlideApp.with(context.getApplicationContext())
-                                    .asBitmap()
-                                    .load(model)
-                                    .skipMemoryCache(true)
-                                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                                    .centerInside()
-                                    .submit(maxImageWidth, maxImageHeight)
-                                    .get();
-
-      if (scaledBitmap == null) {
-        throw new BitmapDecodingException("Unable to decode image");
-      }
+    ByteArrayOutputStream   output   = new ByteArrayOutputStream();
+    ImageCompressionPlanner planner  = probe(decodedBitmap, maxImageSize, format, output);
+    int                     halvings = planner.getHalvings(MAX_IMAGE_HALF_SCALES);
+    int                     encodes  = 0;
 
-      Log.i(TAG, String.format(Locale.US,"Initial scaled bitmap has size of %d bytes.", scaledBitmap.getByteCount()));
-      Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
+    for (; halvings <= MAX_IMAGE_HALF_SCALES; halvings++) {
+      Bitmap scaledBitmap = halve(decodedBitmap, halvings);
 
       try {
-        do {
-          totalAttempts++;
-          ByteArrayOutputStream baos = new ByteArrayOutputStream();
-          scaledBitmap.compress(format, quality, baos);
-          bytes = baos.toByteArray();
-
-          Log.d(TAG, "iteration with quality " + quality + " size " + bytes.length + " bytes.");
-          if (quality == MIN_COMPRESSION_QUALITY) break;
-
-          int nextQuality = (int)Math.floor(quality * Math.sqrt((double)maxImageSize / bytes.length));
-          if (quality - nextQuality < MIN_COMPRESSION_QUALITY_DECREASE) {
-            nextQuality = quality - MIN_COMPRESSION_QUALITY_DECREASE;
-          }
-          quality = Math.max(nextQuality, MIN_COMPRESSION_QUALITY);
-        }
-        while (bytes.length > maxImageSize && attempts++ < MAX_COMPRESSION_ATTEMPTS);
+        int quality  = planner.getQuality(halvings);
+        int attempts = 0;
 
-        if (bytes.length > maxImageSize) {
-          if (sizeAttempt <= MAX_IMAGE_HALF_SCALES) {
-            scaledBitmap.recycle();
-            scaledBitmap = null;
+        while (true) {
+          output.reset();
+          scaledBitmap.compress(format, quality, output);
+          encodes++;
 
-            Log.i(TAG, "Halving dimensions and retrying.");
-            return createScaledBytes(context, model, maxImageWidth / 2, maxImageHeight / 2, maxImageSize, format, sizeAttempt + 1, totalAttempts);
-          } else {
-            throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
-          }
-        }
+          Log.d(TAG, "iteration with quality " + quality + " size " + output.size() + " bytes.");
+          if (output.size() <= maxImageSize || quality == ImageCompressionPlanner.MIN_QUALITY || attempts++ >= MAX_COMPRESSION_ATTEMPTS) break;
 
-        if (bytes.length <= 0) {
-          throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
+          quality = planner.getNextQuality(quality, output.size());
         }
 
-        Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d attempt(s) over %d sizes.", model.getClass().getName(), quality, totalAttempts, sizeAttempt));
+        if (output.size() <= maxImageSize) {
+          if (output.size() <= 0) {
+            throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + output.size() + " bytes.");
+          }
+
+          Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d encode(s), halved %d time(s).", source, quality, encodes, halvings));
 
-        return new ScaleResult(bytes, scaledBitmap.getWidth(), scaledBitmap.getHeight());
+          return new ScaleResult(output.toByteArray(), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+        }
+
+        Log.i(TAG, "Halving dimensions and retrying.");
       } finally {
-        if (scaledBitmap != null) scaledBitmap.recycle();
+        if (scaledBitmap != decodedBitmap) scaledBitmap.recycle();
       }
-    } catch (InterruptedException | ExecutionException e) {
-      throw new BitmapDecodingException(e);
     }
+
+    throw new BitmapDecodingException("Unable to scale image below " + output.size() + " bytes.");
+  }
+
+  private static @NonNull ImageCompressionPlanner probe(@NonNull Bitmap bitmap, int maxImageSize, @NonNull CompressFormat format, @NonNull ByteArrayOutputStream output) {
+    int width  = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    int scale  = Math.max(width, height) / PROBE_SIZE;
+
+    if (scale < 2) {
+      return ImageCompressionPlanner.withoutEstimate(maxImageSize);
+    }
+
+    Bitmap probe = Bitmap.createScaledBitmap(bitmap, Math.max(1, width / scale), Math.max(1, height / scale), true);
+
+    try {
+      output.reset();
+      probe.compress(format, ImageCompressionPlanner.MAX_QUALITY, output);
+
+      Log.d(TAG, "probe of " + probe.getWidth() + "x" + probe.getHeight() + " has size " + output.size() + " bytes.");
+
+      return ImageCompressionPlanner.fromProbe(output.size(), (long) probe.getWidth() * probe.getHeight(), (long) width * height, maxImageSize);
+    } finally {
+      if (probe != bitmap) probe.recycle();
+    }
+  }
+
+  private static @NonNull Bitmap halve(@NonNull Bitmap bitmap, int times) {
+    if (times == 0) return bitmap;
+
+    return Bitmap.createScaledBitmap(bitmap, Math.max(1, bitmap.getWidth() >> times), Math.max(1, bitmap.getHeight() >> times), true);
   }
 
   @WorkerThread
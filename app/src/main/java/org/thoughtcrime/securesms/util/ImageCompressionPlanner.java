@@ -0,0 +1,79 @@
+package org.thoughtcrime.securesms.util;
+
+/**
+ * Picks the quality and dimensions to encode an image at so that it fits in a size limit, from
+ * the size of a small probe encode of it rather than from full size attempts.
+ *
+ * The encoded size is taken to grow with the number of pixels and with the square of the quality,
+ * which is the same model the quality is adjusted with when an attempt still doesn't fit.
+ */
+final class ImageCompressionPlanner {
+
+  static final int MAX_QUALITY          = 95;
+  static final int MIN_QUALITY          = 45;
+  static final int MIN_QUALITY_DECREASE = 5;
+
+  private final int  maxSize;
+  private final long estimatedSize;
+
+  private ImageCompressionPlanner(int maxSize, long estimatedSize) {
+    this.maxSize       = maxSize;
+    this.estimatedSize = estimatedSize;
+  }
+
+  /**
+   * @param probeSize   the encoded size of the probe at {@link #MAX_QUALITY}.
+   * @param probePixels the number of pixels in the probe.
+   * @param pixels      the number of pixels in the full size image.
+   */
+  static ImageCompressionPlanner fromProbe(long probeSize, long probePixels, long pixels, int maxSize) {
+    return new ImageCompressionPlanner(maxSize, probeSize * pixels / Math.max(probePixels, 1));
+  }
+
+  /**
+   * A plan without an estimate, which starts at full size and {@link #MAX_QUALITY}.
+   */
+  static ImageCompressionPlanner withoutEstimate(int maxSize) {
+    return new ImageCompressionPlanner(maxSize, -1);
+  }
+
+  /**
+   * @return the number of times the dimensions should be halved before the first attempt, the
+   * fewest that are expected to fit at {@link #MIN_QUALITY} or above.
+   */
+  int getHalvings(int maxHalvings) {
+    for (int halvings = 0; halvings < maxHalvings; halvings++) {
+      if (getEstimatedQuality(halvings) >= MIN_QUALITY) return halvings;
+    }
+    return maxHalvings;
+  }
+
+  /**
+   * @return the quality the first attempt at the given number of halvings should be made at.
+   */
+  int getQuality(int halvings) {
+    return Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, getEstimatedQuality(halvings)));
+  }
+
+  private int getEstimatedQuality(int halvings) {
+    if (estimatedSize <= 0) return MAX_QUALITY;
+
+    long size = estimatedSize >> (2 * halvings);
+    if (size <= maxSize) return MAX_QUALITY;
+
+    return (int) Math.floor(MAX_QUALITY * Math.sqrt((double) maxSize / size));
+  }
+
+  /**
+   * @return the quality to try next after an attempt at {@code quality} came out at {@code size}.
+   */
+  int getNextQuality(int quality, long size) {
+    int nextQuality = (int) Math.floor(quality * Math.sqrt((double) maxSize / size));
+
+    if (quality - nextQuality < MIN_QUALITY_DECREASE) {
+      nextQuality = quality - MIN_QUALITY_DECREASE;
+    }
+
+    return Math.max(nextQuality, MIN_QUALITY);
+  }
+}
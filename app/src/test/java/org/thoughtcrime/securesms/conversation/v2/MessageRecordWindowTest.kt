@@ -0,0 +1,122 @@
+package org.thoughtcrime.securesms.conversation.v2
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MessageRecordWindowTest {
+
+    private val window = MessageRecordWindow<String>(capacity = 4)
+
+    @Test
+    fun `should drop the records furthest from the bound position`() {
+        window.moveTo(10)
+        for (position in 7..13) window.put(position, "record $position")
+
+        assertEquals(4, window.size)
+        assertEquals("record 9", window[9])
+        assertEquals("record 10", window[10])
+        assertEquals("record 11", window[11])
+        assertNull(window[7])
+        assertNull(window[13])
+    }
+
+    @Test
+    fun `should not add records read before being invalidated`() {
+        val generation = window.generation
+        window.put(1, "old")
+
+        window.invalidate()
+
+        assertNull(window[1])
+        assertFalse(window.put(2, "prefetched", generation))
+        assertNull(window[2])
+        assertTrue(window.put(2, "current", window.generation))
+        assertEquals("current", window[2])
+    }
+
+    @Test
+    fun `should return the range of missing positions`() {
+        window.put(2, "record 2")
+        window.put(5, "record 5")
+
+        assertEquals(3..4, window.missing(2..5))
+        assertEquals(0..4, window.missing(0..5))
+        assertNull(window.missing(5..5))
+        assertNull(window.missing(IntRange.EMPTY))
+    }
+
+    @Test
+    fun `should read each record once when binding a conversation in order`() {
+        val binder = Binder(messages = 1_000, prefetchSize = 0)
+
+        for (position in 0 until 1_000) binder.bind(position)
+
+        // getItemViewType, the bind itself and the messages before and after each one
+        assertEquals(4 * 1_000 - 2, binder.lookups)
+        assertEquals(1_000, binder.reads)
+    }
+
+    @Test
+    fun `should not read prefetched records when binding`() {
+        val binder = Binder(messages = 1_000, prefetchSize = 30)
+
+        for (position in 0 until 1_000) binder.bind(position)
+
+        assertEquals(1, binder.reads)
+        assertEquals(999, binder.prefetched)
+    }
+
+    @Test
+    fun `should read records again once they're stale`() {
+        val binder = Binder(messages = 10, prefetchSize = 0)
+        for (position in 0 until 10) binder.bind(position)
+        val reads = binder.reads
+
+        binder.ids[5] = 42L
+        binder.bind(5)
+
+        assertEquals(reads + 1, binder.reads)
+        assertEquals(42L, binder.window[5])
+    }
+
+    /**
+     * Looks up records the way [ConversationAdapter] does when it binds a message, counting how
+     * many of them are read from the cursor on the main thread.
+     */
+    private class Binder(messages: Int, private val prefetchSize: Int) {
+        val ids = MutableList(messages) { it.toLong() }
+        val window = MessageRecordWindow<Long>(capacity = 100)
+        var lookups = 0
+        var reads = 0
+        var prefetched = 0
+
+        fun bind(position: Int) {
+            getMessage(position)
+            window.moveTo(position)
+            prefetch(position)
+            getMessage(position)
+            if (position + 1 < ids.size) getMessage(position + 1)
+            if (position > 0) getMessage(position - 1)
+        }
+
+        private fun getMessage(position: Int): Long? {
+            lookups++
+            return window.getOrRead(position, isCurrent = { it == ids[position] }) {
+                reads++
+                ids[position]
+            }
+        }
+
+        private fun prefetch(position: Int) {
+            val positions = (position + 1)..minOf(position + prefetchSize, ids.size - 1)
+            val missing = window.missing(positions) ?: return
+            for (prefetchedPosition in missing) {
+                window.put(prefetchedPosition, ids[prefetchedPosition])
+                prefetched++
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.thoughtcrime.securesms.database;
+
+import android.app.Application;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the buckets the gallery query puts media in are the ones the media gallery used to
+ * sort it into in Java, with its TimeBucket and MonthBuckets.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class GalleryBucketTest {
+
+  private SQLiteDatabase database;
+
+  @Before
+  public void setUp() {
+    database = SQLiteDatabase.create(null);
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void galleryBucket_matchesJavaBuckets_aroundRelativeBoundaries() {
+    for (long now : getNows()) {
+      for (int days : new int[] { 1000, 0, -1, -2, -7, -30 }) {
+        long boundary = addToCalendar(now, Calendar.DAY_OF_YEAR, days);
+
+        assertSameBucket(boundary - 1, now);
+        assertSameBucket(boundary, now);
+        assertSameBucket(boundary + 1, now);
+      }
+    }
+  }
+
+  @Test
+  public void galleryBucket_matchesJavaBuckets_aroundMonthAndYearBoundaries() {
+    for (long now : getNows()) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(now);
+      calendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), 1, 0, 0, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+
+      long startOfMonth = calendar.getTimeInMillis();
+      calendar.add(Calendar.MONTH, -1);
+      long startOfLastMonth = calendar.getTimeInMillis();
+      calendar.setTimeInMillis(startOfMonth);
+      calendar.set(Calendar.MONTH, Calendar.JANUARY);
+      long startOfYear = calendar.getTimeInMillis();
+      calendar.add(Calendar.YEAR, -10);
+      long tenYearsAgo = calendar.getTimeInMillis();
+
+      for (long boundary : new long[] { startOfMonth, startOfLastMonth, startOfYear, tenYearsAgo }) {
+        assertSameBucket(boundary - 1, now);
+        assertSameBucket(boundary, now);
+        assertSameBucket(boundary + 1, now);
+      }
+    }
+  }
+
+  @Test
+  public void galleryBucket_olderMedia_isInItsMonthBucket() {
+    long now  = getLocalTime(2024, Calendar.MARCH, 15, 12, 0);
+    long date = getLocalTime(2023, Calendar.DECEMBER, 31, 23, 59);
+
+    assertEquals(MediaDatabase.MONTH_BUCKET_BASE - 202312, getSqlBucket(date, now));
+    assertEquals(MediaDatabase.MONTH_BUCKET_BASE - 202401, getSqlBucket(date + 60 * 1000, now));
+  }
+
+  private void assertSameBucket(long date, long now) {
+    assertEquals("Media dated " + date + " at " + now, getJavaBucket(date, now), getSqlBucket(date, now));
+  }
+
+  private int getSqlBucket(long date, long now) {
+    String query = "SELECT " + MediaDatabase.getGalleryBucket(now) + " FROM (SELECT " + date + " AS " + MediaDatabase.GALLERY_DATE + ")";
+
+    try (Cursor cursor = database.rawQuery(query, null)) {
+      cursor.moveToFirst();
+      return cursor.getInt(0);
+    }
+  }
+
+  /**
+   * The bucket the media gallery used to sort media into, before it was done by the query.
+   */
+  private static int getJavaBucket(long date, long now) {
+    if (isInRange(date, addToCalendar(now, Calendar.DAY_OF_YEAR, -1), addToCalendar(now, Calendar.DAY_OF_YEAR, 1000))) return MediaDatabase.BUCKET_TODAY;
+    if (isInRange(date, addToCalendar(now, Calendar.DAY_OF_YEAR, -2), addToCalendar(now, Calendar.DAY_OF_YEAR, -1)))   return MediaDatabase.BUCKET_YESTERDAY;
+    if (isInRange(date, addToCalendar(now, Calendar.DAY_OF_YEAR, -7), addToCalendar(now, Calendar.DAY_OF_YEAR, -2)))   return MediaDatabase.BUCKET_THIS_WEEK;
+    if (isInRange(date, addToCalendar(now, Calendar.DAY_OF_YEAR, -30), addToCalendar(now, Calendar.DAY_OF_YEAR, -7)))  return MediaDatabase.BUCKET_THIS_MONTH;
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(date);
+
+    return MediaDatabase.MONTH_BUCKET_BASE - (calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1);
+  }
+
+  private static boolean isInRange(long timestamp, long startTime, long endTime) {
+    return timestamp > startTime && timestamp <= endTime;
+  }
+
+  private static List<Long> getNows() {
+    List<Long> nows = new ArrayList<>();
+    nows.add(System.currentTimeMillis());
+    nows.add(getLocalTime(2024, Calendar.MARCH, 1, 0, 30));
+    nows.add(getLocalTime(2024, Calendar.JANUARY, 1, 0, 0));
+    nows.add(getLocalTime(2024, Calendar.MARCH, 31, 23, 59));
+    nows.add(getLocalTime(2023, Calendar.DECEMBER, 31, 12, 0));
+    return nows;
+  }
+
+  private static long getLocalTime(int year, int month, int day, int hour, int minute) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.set(year, month, day, hour, minute, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    return calendar.getTimeInMillis();
+  }
+
+  private static long addToCalendar(long time, int field, int amount) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    calendar.add(field, amount);
+    return calendar.getTimeInMillis();
+  }
+}
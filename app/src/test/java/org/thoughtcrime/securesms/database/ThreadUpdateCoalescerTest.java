@@ -0,0 +1,163 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class ThreadUpdateCoalescerTest {
+
+  @Test
+  public void burst_of_changes_recomputes_and_notifies_each_thread_once() {
+    RecordingStore        store     = new RecordingStore();
+    ThreadUpdateCoalescer coalescer = new ThreadUpdateCoalescer(store);
+
+    int scheduledFlushes = 0;
+    for (int i = 0; i < 5000; i++) {
+      if (coalescer.markDirty(i % 10 == 0 ? 2 : 1, false)) scheduledFlushes++;
+    }
+
+    assertEquals(2, scheduledFlushes);
+    assertEquals(2, coalescer.flush());
+    assertEquals(1, store.recomputations.size());
+    assertEquals(2, store.recomputations.get(0).size());
+    assertEquals(2, store.notifications.size());
+    assertTrue(store.notifications.contains(1L));
+    assertTrue(store.notifications.contains(2L));
+    assertTrue(coalescer.isEmpty());
+    assertEquals(0, coalescer.flush());
+    assertEquals(2, store.notifications.size());
+  }
+
+  @Test
+  public void unarchive_request_is_kept_when_coalesced() {
+    RecordingStore        store     = new RecordingStore();
+    ThreadUpdateCoalescer coalescer = new ThreadUpdateCoalescer(store);
+
+    assertTrue(coalescer.markDirty(1, false));
+    assertFalse(coalescer.markDirty(1, true));
+    assertFalse(coalescer.markDirty(1, false));
+    coalescer.flush();
+
+    assertEquals(Boolean.TRUE, store.recomputations.get(0).get(1L));
+  }
+
+  @Test
+  public void take_removes_pending_update() {
+    RecordingStore        store     = new RecordingStore();
+    ThreadUpdateCoalescer coalescer = new ThreadUpdateCoalescer(store);
+
+    coalescer.markDirty(1, true);
+
+    assertEquals(Boolean.TRUE, coalescer.take(1));
+    assertNull(coalescer.take(1));
+    assertEquals(0, coalescer.flush());
+    assertTrue(store.recomputations.isEmpty());
+    assertTrue(store.notifications.isEmpty());
+  }
+
+  @Test
+  public void failed_recomputation_keeps_threads_pending_without_notifying() {
+    RecordingStore        store     = new RecordingStore();
+    ThreadUpdateCoalescer coalescer = new ThreadUpdateCoalescer(store);
+    RuntimeException      failure   = new RuntimeException();
+
+    coalescer.markDirty(1, true);
+    coalescer.markDirty(2, false);
+    store.failure = failure;
+
+    try {
+      coalescer.flush();
+      fail();
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    }
+
+    assertTrue(store.notifications.isEmpty());
+    assertFalse(coalescer.markDirty(1, false));
+    assertFalse(coalescer.markDirty(2, false));
+
+    store.failure = null;
+    assertEquals(2, coalescer.flush());
+    assertEquals(Boolean.TRUE, store.recomputations.get(0).get(1L));
+    assertEquals(Boolean.FALSE, store.recomputations.get(0).get(2L));
+    assertEquals(2, store.notifications.size());
+  }
+
+  @Test
+  public void changes_made_while_flushing_are_not_lost() throws InterruptedException {
+    int                   threadCount    = 4;
+    int                   changesPerTask = 5000;
+    AtomicInteger         recomputations = new AtomicInteger();
+    AtomicInteger         notifications  = new AtomicInteger();
+    ThreadUpdateCoalescer coalescer      = new ThreadUpdateCoalescer(new ThreadUpdateCoalescer.Store() {
+      @Override
+      public void recompute(@NonNull Map<Long, Boolean> threads) {
+        recomputations.addAndGet(threads.size());
+      }
+
+      @Override
+      public void notifyUpdated(@NonNull Set<Long> threadIds) {
+        notifications.addAndGet(threadIds.size());
+      }
+    });
+    ExecutorService       executor       = Executors.newFixedThreadPool(threadCount + 1);
+    CountDownLatch        done           = new CountDownLatch(threadCount);
+
+    for (int task = 0; task < threadCount; task++) {
+      long threadId = task;
+      executor.execute(() -> {
+        for (int i = 0; i < changesPerTask; i++) coalescer.markDirty(threadId, false);
+        done.countDown();
+      });
+    }
+    executor.execute(() -> {
+      while (done.getCount() > 0) coalescer.flush();
+    });
+
+    assertTrue(done.await(1, TimeUnit.MINUTES));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    coalescer.flush();
+
+    assertTrue(coalescer.isEmpty());
+    assertTrue(recomputations.get() >= threadCount);
+    assertTrue(recomputations.get() <= threadCount * changesPerTask);
+    assertEquals(recomputations.get(), notifications.get());
+  }
+
+  private static class RecordingStore implements ThreadUpdateCoalescer.Store {
+
+    private final List<Map<Long, Boolean>> recomputations = new ArrayList<>();
+    private final List<Long>               notifications  = new ArrayList<>();
+    private       RuntimeException         failure;
+
+    @Override
+    public void recompute(@NonNull Map<Long, Boolean> threads) {
+      if (failure != null) throw failure;
+      recomputations.add(new HashMap<>(threads));
+    }
+
+    @Override
+    public void notifyUpdated(@NonNull Set<Long> threadIds) {
+      notifications.addAll(threadIds);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.thoughtcrime.securesms.database.loaders;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.MediaDatabase;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaRecord;
+import org.thoughtcrime.securesms.database.loaders.BucketedThreadMediaLoader.BucketedThreadMedia;
+import org.thoughtcrime.securesms.database.loaders.BucketedThreadMediaLoader.Section;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class BucketedThreadMediaTest {
+
+  private final Context context = mock(Context.class);
+
+  @Test
+  public void getMonth_fromOlderBucket() {
+    assertEquals(new Date(2023 - 1900, 11, 1), BucketedThreadMedia.getMonth(MediaDatabase.MONTH_BUCKET_BASE - 202312));
+    assertEquals(new Date(2024 - 1900, 0, 1), BucketedThreadMedia.getMonth(MediaDatabase.MONTH_BUCKET_BASE - 202401));
+  }
+
+  @Test
+  public void reload_keepsPagesOfUnchangedSections() {
+    MediaRecord record = mock(MediaRecord.class);
+
+    Section today = new Section(MediaDatabase.BUCKET_TODAY, 1, 10);
+    Section older = new Section(MediaDatabase.MONTH_BUCKET_BASE - 202312, 1, 20);
+
+    BucketedThreadMedia previous = new BucketedThreadMedia(context, 1, 0, Arrays.asList(today, older), null);
+    previous.putPage(0, 0, Collections.singletonList(mock(MediaRecord.class)));
+    previous.putPage(1, 0, Collections.singletonList(record));
+
+    Section newToday = new Section(MediaDatabase.BUCKET_TODAY, 2, 21);
+    Section newOlder = new Section(MediaDatabase.MONTH_BUCKET_BASE - 202312, 1, 20);
+
+    new BucketedThreadMedia(context, 1, 1000, Arrays.asList(newToday, newOlder), previous);
+
+    assertNull(newToday.getPage(0));
+    assertSame(record, newOlder.getPage(0).get(0));
+  }
+
+  @Test
+  public void reload_ofOtherThread_keepsNoPages() {
+    Section             section  = new Section(MediaDatabase.BUCKET_TODAY, 1, 10);
+    BucketedThreadMedia previous = new BucketedThreadMedia(context, 1, 0, Collections.singletonList(section), null);
+    Section             other    = new Section(MediaDatabase.BUCKET_TODAY, 1, 10);
+
+    previous.putPage(0, 0, Collections.singletonList(mock(MediaRecord.class)));
+
+    new BucketedThreadMedia(context, 2, 0, Collections.singletonList(other), previous);
+
+    assertNull(other.getPage(0));
+  }
+
+  @Test
+  public void sectionCounts_comeFromBuckets() {
+    List<Section>       sections = Arrays.asList(new Section(MediaDatabase.BUCKET_YESTERDAY, 5, 1), new Section(MediaDatabase.MONTH_BUCKET_BASE - 202312, 70, 2));
+    BucketedThreadMedia media    = new BucketedThreadMedia(context, 1, 0, sections, null);
+
+    assertEquals(2, media.getSectionCount());
+    assertEquals(5, media.getSectionItemCount(0));
+    assertEquals(70, media.getSectionItemCount(1));
+  }
+
+  @Test
+  public void putPage_dropsPagesDisplayedLongestAgo() {
+    int                 pageCount = BucketedThreadMedia.MAX_LOADED_ITEMS / BucketedThreadMedia.PAGE_SIZE;
+    Section             section   = new Section(MediaDatabase.BUCKET_TODAY, (pageCount + 2) * BucketedThreadMedia.PAGE_SIZE, 1);
+    BucketedThreadMedia media     = new BucketedThreadMedia(context, 1, 0, Collections.singletonList(section), null);
+
+    for (int page = 0; page < pageCount; page++) {
+      media.putPage(0, page, newPage());
+    }
+
+    // Displaying the first page again makes the second one the page displayed longest ago
+    assertNotNull(media.get(0, 0));
+    media.putPage(0, pageCount, newPage());
+
+    assertNotNull(section.getPage(0));
+    assertNull(section.getPage(1));
+    assertNotNull(section.getPage(2));
+    assertNotNull(section.getPage(pageCount));
+
+    media.putPage(0, pageCount + 1, newPage());
+
+    assertNull(section.getPage(2));
+    assertNotNull(section.getPage(pageCount + 1));
+  }
+
+  @Test
+  public void putPage_keepsPageLargerThanLimit() {
+    Section             section = new Section(MediaDatabase.BUCKET_TODAY, 1, 1);
+    BucketedThreadMedia media   = new BucketedThreadMedia(context, 1, 0, Collections.singletonList(section), null);
+    List<MediaRecord>   records = new ArrayList<>();
+
+    for (int i = 0; i <= BucketedThreadMedia.MAX_LOADED_ITEMS; i++) records.add(mock(MediaRecord.class));
+    media.putPage(0, 0, records);
+
+    assertSame(records, section.getPage(0));
+  }
+
+  private static List<MediaRecord> newPage() {
+    List<MediaRecord> records = new ArrayList<>(BucketedThreadMedia.PAGE_SIZE);
+    for (int i = 0; i < BucketedThreadMedia.PAGE_SIZE; i++) records.add(mock(MediaRecord.class));
+    return records;
+  }
+}
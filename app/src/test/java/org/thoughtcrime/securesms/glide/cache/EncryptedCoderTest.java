@@ -0,0 +1,216 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EncryptedCoderTest {
+
+  private static final byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
+                                             (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
+                                             (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
+                                             (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+
+  private final EncryptedCoder coder     = new EncryptedCoder();
+  private final byte[]         masterKey = bytes(32, 1);
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("glide", ".cache");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void encrypt_decrypt_roundTrip() throws IOException {
+    byte[] data = bytes(200 * 1024 + 17, 2);
+
+    try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, file)) {
+      outputStream.write(data[0]);
+      outputStream.write(data, 1, 1000);
+      outputStream.write(data, 1001, data.length - 1001);
+    }
+
+    try (InputStream inputStream = coder.createEncryptedInputStream(masterKey, file)) {
+      byte[] result = new byte[data.length];
+
+      result[0] = (byte) inputStream.read();
+      assertEquals(1000, inputStream.skip(1000));
+      System.arraycopy(data, 1, result, 1, 1000);
+
+      int offset = 1001;
+      int read;
+      while ((read = inputStream.read(result, offset, Math.min(4096, result.length - offset))) > 0) {
+        offset += read;
+      }
+
+      assertEquals(data.length, offset);
+      assertEquals(-1, inputStream.read());
+      assertArrayEquals(data, result);
+    }
+  }
+
+  @Test
+  public void decrypt_fileWrittenByCipherOutputStream() throws Exception {
+    byte[] data = bytes(50 * 1024, 3);
+
+    writeLegacy(data);
+
+    try (InputStream inputStream = coder.createEncryptedInputStream(masterKey, file)) {
+      assertArrayEquals(data, readAll(inputStream));
+    }
+  }
+
+  @Test
+  public void encrypt_readableByCipherInputStream() throws Exception {
+    byte[] data = bytes(50 * 1024, 4);
+
+    try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, file)) {
+      outputStream.write(data);
+    }
+
+    assertArrayEquals(data, readLegacy());
+  }
+
+  @Test
+  public void decrypt_nestedStreamsOnOneThread() throws IOException {
+    File   other     = File.createTempFile("glide", ".cache");
+    byte[] data      = bytes(10 * 1024, 5);
+    byte[] otherData = bytes(10 * 1024, 6);
+
+    try {
+      try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, file)) {
+        outputStream.write(data);
+      }
+
+      try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, other)) {
+        outputStream.write(otherData);
+      }
+
+      try (InputStream first = coder.createEncryptedInputStream(masterKey, file);
+           InputStream second = coder.createEncryptedInputStream(masterKey, other))
+      {
+        assertArrayEquals(otherData, readAll(second));
+        assertArrayEquals(data, readAll(first));
+      }
+    } finally {
+      other.delete();
+    }
+  }
+
+  @Test
+  public void decrypt_withOtherKey_fails() throws IOException {
+    try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, file)) {
+      outputStream.write(bytes(100, 7));
+    }
+
+    try {
+      coder.createEncryptedInputStream(bytes(32, 8), file).close();
+      fail();
+    } catch (IOException e) {
+      assertEquals("Key change on encrypted cache file!", e.getMessage());
+    }
+
+    try (InputStream inputStream = coder.createEncryptedInputStream(masterKey, file)) {
+      assertArrayEquals(bytes(100, 7), readAll(inputStream));
+    }
+  }
+
+  @Test
+  public void decrypt_plainFile_fails() throws IOException {
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(bytes(100, 9));
+    }
+
+    try {
+      coder.createEncryptedInputStream(masterKey, file).close();
+      fail();
+    } catch (IOException e) {
+      assertEquals("Not an encrypted cache file!", e.getMessage());
+    }
+  }
+
+  private void writeLegacy(byte[] data) throws Exception {
+    byte[] random = bytes(32, 10);
+
+    try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+      fileOutputStream.write(MAGIC_BYTES);
+      fileOutputStream.write(random);
+
+      try (CipherOutputStream outputStream = new CipherOutputStream(fileOutputStream, legacyCipher(Cipher.ENCRYPT_MODE, random))) {
+        outputStream.write(MAGIC_BYTES);
+        outputStream.write(data);
+      }
+    }
+  }
+
+  private byte[] readLegacy() throws Exception {
+    try (FileInputStream fileInputStream = new FileInputStream(file)) {
+      byte[] magic  = new byte[MAGIC_BYTES.length];
+      byte[] random = new byte[32];
+
+      assertEquals(magic.length, fileInputStream.read(magic));
+      assertEquals(random.length, fileInputStream.read(random));
+      assertArrayEquals(MAGIC_BYTES, magic);
+
+      byte[] decrypted = readAll(new CipherInputStream(fileInputStream, legacyCipher(Cipher.DECRYPT_MODE, random)));
+
+      assertArrayEquals(MAGIC_BYTES, Arrays.copyOf(decrypted, MAGIC_BYTES.length));
+      return Arrays.copyOfRange(decrypted, MAGIC_BYTES.length, decrypted.length);
+    }
+  }
+
+  private Cipher legacyCipher(int mode, byte[] random) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+
+    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+    cipher.init(mode, new SecretKeySpec(mac.doFinal(random), "AES"), new IvParameterSpec(new byte[16]));
+
+    return cipher;
+  }
+
+  private static byte[] readAll(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[]                buffer       = new byte[8192];
+    int                   read;
+
+    while ((read = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, read);
+    }
+
+    return outputStream.toByteArray();
+  }
+
+  private static byte[] bytes(int length, long seed) {
+    byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
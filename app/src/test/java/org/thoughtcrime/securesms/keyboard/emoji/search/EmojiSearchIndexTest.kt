@@ -0,0 +1,61 @@
+package org.thoughtcrime.securesms.keyboard.emoji.search
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class EmojiSearchIndexTest {
+
+  private val index = EmojiSearchIndex(
+    listOf(
+      EmojiSearchIndex.Entry("grinning face", "😀"),
+      EmojiSearchIndex.Entry("face", "🙂"),
+      EmojiSearchIndex.Entry("facepalm", "🤦"),
+      EmojiSearchIndex.Entry("cat face", "🐱"),
+      EmojiSearchIndex.Entry("cat", "🐈"),
+      EmojiSearchIndex.Entry("smiling face", "🙂"),
+      EmojiSearchIndex.Entry("Pizza", "🍕")
+    )
+  )
+
+  @Test
+  fun `it should rank exact and prefix matches first`() {
+    assertEquals(listOf("🙂", "🤦", "🐱", "😀"), index.query("face", 10))
+    assertEquals(listOf("🐈", "🐱"), index.query("cat", 10))
+  }
+
+  @Test
+  fun `it should match substrings of any length like a LIKE query`() {
+    assertEquals(listOf("🐈", "🙂"), index.query("a", 2))
+    assertEquals(setOf("🐈", "🐱"), index.query("at", 10).toSet())
+    assertEquals(listOf("🤦"), index.query("palm", 10))
+    assertEquals(listOf("🤦"), index.query("cepa", 10))
+    assertTrue(index.query("cat palm", 10).isEmpty())
+    assertTrue(index.query("zzz", 10).isEmpty())
+  }
+
+  @Test
+  fun `it should ignore case and surrounding whitespace`() {
+    assertEquals(listOf("🍕"), index.query("  PIZ ", 10))
+    assertTrue(index.query("   ", 10).isEmpty())
+  }
+
+  @Test
+  fun `it should give the same results while typing as for a fresh query`() {
+    val typed = "facepalm".indices.map { index.query("facepalm".substring(0, it + 1), 10) }
+    val fresh = EmojiSearchIndex(
+      listOf(
+        EmojiSearchIndex.Entry("grinning face", "😀"),
+        EmojiSearchIndex.Entry("face", "🙂"),
+        EmojiSearchIndex.Entry("facepalm", "🤦"),
+        EmojiSearchIndex.Entry("cat face", "🐱"),
+        EmojiSearchIndex.Entry("cat", "🐈"),
+        EmojiSearchIndex.Entry("smiling face", "🙂"),
+        EmojiSearchIndex.Entry("Pizza", "🍕")
+      )
+    )
+
+    assertEquals(fresh.query("facepalm", 10), typed.last())
+    assertEquals(fresh.query("facep", 10), index.query("facep", 10))
+  }
+}
@@ -0,0 +1,47 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewCache.Preview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LinkPreviewCacheTest {
+
+  private static final long TTL = 1000;
+
+  @Test
+  public void get_beforeExpiry_returnsPreview() {
+    LinkPreviewCache cache   = new LinkPreviewCache(2, TTL);
+    Preview          preview = new Preview("Title", null);
+
+    cache.put("https://example.org", preview, 0);
+
+    assertSame(preview, cache.get("https://example.org", TTL - 1));
+  }
+
+  @Test
+  public void get_afterExpiry_removesPreview() {
+    LinkPreviewCache cache = new LinkPreviewCache(2, TTL);
+
+    cache.put("https://example.org", new Preview("Title", null), 0);
+
+    assertNull(cache.get("https://example.org", TTL));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void put_whenFull_evictsLeastRecentlyUsed() {
+    LinkPreviewCache cache = new LinkPreviewCache(2, TTL);
+
+    cache.put("https://a.example.org", new Preview("A", null), 0);
+    cache.put("https://b.example.org", new Preview("B", null), 0);
+    cache.get("https://a.example.org", 1);
+    cache.put("https://c.example.org", new Preview("C", null), 2);
+
+    assertEquals("A", cache.get("https://a.example.org", 3).title);
+    assertNull(cache.get("https://b.example.org", 3));
+    assertEquals("C", cache.get("https://c.example.org", 3).title);
+  }
+}
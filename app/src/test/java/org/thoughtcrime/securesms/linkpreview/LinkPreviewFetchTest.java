@@ -0,0 +1,127 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.app.Application;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.OpenGraph;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class LinkPreviewFetchTest {
+
+  private static final int  PAGE_SIZE      = 4 * 1024 * 1024;
+  private static final long MAX_HEAD_BYTES = 1024 * 1024;
+
+  private final OkHttpClient  client = new OkHttpClient();
+  private       MockWebServer server;
+  private       long          bytesRead;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void fetch_largePage_onlyReadsHead() throws IOException {
+    server.enqueue(new MockResponse().setBody(page("<head><meta property=\"og:title\" content=\"Title\"></head><body>", PAGE_SIZE)));
+
+    OpenGraph openGraph = fetch();
+
+    assertEquals("Title", openGraph.getTitle().get());
+    assertTrue("Read " + bytesRead + " bytes", bytesRead < 64 * 1024);
+  }
+
+  @Test
+  public void fetch_largeHead_stopsAtByteCap() throws IOException {
+    StringBuilder head = new StringBuilder("<head><title>Title</title>");
+    while (head.length() < 2 * MAX_HEAD_BYTES) head.append("<meta name=\"filler\" content=\"filler\">");
+    head.append("<meta property=\"og:image\" content=\"https://example.org/image.png\">");
+
+    server.enqueue(new MockResponse().setBody(page(head.toString(), PAGE_SIZE)));
+
+    OpenGraph openGraph = fetch();
+
+    assertEquals("Title", openGraph.getTitle().get());
+    assertEquals("", openGraph.getImageUrl().get());
+    assertTrue("Read " + bytesRead + " bytes", bytesRead <= MAX_HEAD_BYTES);
+  }
+
+  @Test
+  public void fetch_usesCharsetOfResponse() throws IOException {
+    byte[] body = "<head><title>Café</title></head>".getBytes(StandardCharsets.ISO_8859_1);
+    server.enqueue(new MockResponse().setHeader("Content-Type", "text/html; charset=ISO-8859-1").setBody(new Buffer().write(body)));
+
+    try (Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute()) {
+      OpenGraph openGraph = LinkPreviewUtil.parseOpenGraphFields(response.body().byteStream(),
+                                                                 response.body().contentType().charset(StandardCharsets.UTF_8),
+                                                                 MAX_HEAD_BYTES,
+                                                                 text -> text);
+
+      assertEquals("Café", openGraph.getTitle().get());
+    }
+  }
+
+  private OpenGraph fetch() throws IOException {
+    try (Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute()) {
+      CountingInputStream stream    = new CountingInputStream(response.body().byteStream());
+      OpenGraph           openGraph = LinkPreviewUtil.parseOpenGraphFields(stream, StandardCharsets.UTF_8, MAX_HEAD_BYTES, text -> text);
+
+      bytesRead = stream.count;
+      return openGraph;
+    }
+  }
+
+  private static Buffer page(String head, int size) {
+    Buffer buffer = new Buffer().writeUtf8("<!DOCTYPE html><html>").writeUtf8(head);
+    while (buffer.size() < size) buffer.writeUtf8("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit.</p>\n");
+    return buffer.writeUtf8("</body></html>");
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read != -1) count++;
+      return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) count += read;
+      return read;
+    }
+  }
+}
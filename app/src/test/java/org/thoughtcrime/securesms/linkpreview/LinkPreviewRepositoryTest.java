@@ -0,0 +1,219 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.session.libsession.messaging.sending_receiving.attachments.Attachment;
+import org.session.libsession.messaging.sending_receiving.link_preview.LinkPreview;
+import org.session.libsession.utilities.Util;
+import org.session.libsignal.utilities.guava.Optional;
+import org.thoughtcrime.securesms.providers.BlobProvider;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class LinkPreviewRepositoryTest {
+
+  private static final String PAGE_URL   = "https://example.org/article";
+  private static final String IMAGE_PATH = "/image.png";
+
+  private static final int  PAGE_SIZE           = 4 * 1024 * 1024;
+  private static final long MAX_THUMBNAIL_BYTES = 10 * 1024 * 1024;
+
+  private final AtomicLong pageBytesRead  = new AtomicLong();
+  private final AtomicLong imageBytesRead = new AtomicLong();
+
+  private Context               context;
+  private MockWebServer         server;
+  private LinkPreviewRepository repository;
+  private MockResponse          imageResponse;
+
+  @Before
+  public void setUp() throws IOException {
+    context = ApplicationProvider.getApplicationContext();
+    server  = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if (IMAGE_PATH.equals(request.getPath())) {
+          return imageResponse;
+        } else {
+          return new MockResponse().setBody(page("<head><title>Title</title><meta property=\"og:image\" content=\"https://example.org" + IMAGE_PATH + "\"></head><body>"));
+        }
+      }
+    });
+    server.start();
+
+    // The repository only fetches https links, so they're sent to the server as they are
+    OkHttpClient client = new OkHttpClient.Builder()
+                                          .addInterceptor(chain -> {
+                                            HttpUrl url = chain.request().url().newBuilder()
+                                                                             .scheme("http")
+                                                                             .host(server.getHostName())
+                                                                             .port(server.getPort())
+                                                                             .build();
+                                            return chain.proceed(chain.request().newBuilder().url(url).build());
+                                          })
+                                          .addNetworkInterceptor(chain -> {
+                                            Response response = chain.proceed(chain.request());
+                                            return countBytesRead(response, IMAGE_PATH.equals(chain.request().url().encodedPath()) ? imageBytesRead : pageBytesRead);
+                                          })
+                                          .build();
+
+    repository = new LinkPreviewRepository(client, new LinkPreviewCache(32, TimeUnit.MINUTES.toMillis(30)));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void getLinkPreview_largePageAndImage_stopsReadingAtHeadAndCachesPreview() throws Exception {
+    byte[] image = noisePng(1200, 1000);
+    assertTrue("Image is only " + image.length + " bytes", image.length > 2 * 1024 * 1024);
+    imageResponse = new MockResponse().setBody(new Buffer().write(image));
+
+    LinkPreview preview = getLinkPreview();
+
+    assertEquals("Title", preview.getTitle());
+    assertTrue(preview.getThumbnail().isPresent());
+    assertTrue("Read " + pageBytesRead.get() + " bytes of the page", pageBytesRead.get() < 64 * 1024);
+    assertEquals(image.length, imageBytesRead.get());
+    assertEquals(2, server.getRequestCount());
+
+    LinkPreview cachedPreview = getLinkPreview();
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals("Title", cachedPreview.getTitle());
+    assertTrue(cachedPreview.getThumbnail().isPresent());
+    assertNotEquals(preview.getThumbnail().get().getDataUri(), cachedPreview.getThumbnail().get().getDataUri());
+    assertArrayEquals(read(preview.getThumbnail().get()), read(cachedPreview.getThumbnail().get()));
+  }
+
+  @Test
+  public void getLinkPreview_oversizedImageOfUnknownLength_stopsDownloadAtCap() throws Exception {
+    imageResponse = new MockResponse().setChunkedBody(new Buffer().write(new byte[(int) (MAX_THUMBNAIL_BYTES + 2 * 1024 * 1024)]), 64 * 1024);
+
+    LinkPreview preview = getLinkPreview();
+
+    assertEquals("Title", preview.getTitle());
+    assertFalse(preview.getThumbnail().isPresent());
+    assertTrue("Read " + imageBytesRead.get() + " bytes of the image", imageBytesRead.get() <= MAX_THUMBNAIL_BYTES + 64 * 1024);
+
+    // Previews missing their image aren't cached
+    getLinkPreview();
+    assertEquals(4, server.getRequestCount());
+  }
+
+  @Test
+  public void getLinkPreview_oversizedImageOfKnownLength_isNotDownloaded() throws Exception {
+    imageResponse = new MockResponse().setBody(new Buffer().write(new byte[(int) (MAX_THUMBNAIL_BYTES + 2 * 1024 * 1024)]));
+
+    LinkPreview preview = getLinkPreview();
+
+    assertEquals("Title", preview.getTitle());
+    assertFalse(preview.getThumbnail().isPresent());
+    assertTrue("Read " + imageBytesRead.get() + " bytes of the image", imageBytesRead.get() < 64 * 1024);
+  }
+
+  private @NonNull LinkPreview getLinkPreview() throws InterruptedException {
+    CountDownLatch                         done   = new CountDownLatch(1);
+    AtomicReference<Optional<LinkPreview>> result = new AtomicReference<>();
+
+    repository.getLinkPreview(context, PAGE_URL, this, preview -> {
+      result.set(preview);
+      done.countDown();
+    });
+
+    assertTrue(done.await(1, TimeUnit.MINUTES));
+    assertTrue(result.get().isPresent());
+    return result.get().get();
+  }
+
+  private byte[] read(@NonNull Attachment attachment) throws IOException {
+    try (InputStream stream = BlobProvider.getInstance().getStream(context, attachment.getDataUri())) {
+      return Util.readFully(stream);
+    }
+  }
+
+  private static @NonNull Response countBytesRead(@NonNull Response response, @NonNull AtomicLong count) {
+    ResponseBody body = response.body();
+    if (body == null) return response;
+
+    ForwardingSource source = new ForwardingSource(body.source()) {
+      @Override
+      public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read > 0) count.addAndGet(read);
+        return read;
+      }
+    };
+
+    return response.newBuilder()
+                   .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                   .build();
+  }
+
+  private static @NonNull Buffer page(@NonNull String head) {
+    Buffer buffer = new Buffer().writeUtf8("<!DOCTYPE html><html>").writeUtf8(head);
+    while (buffer.size() < PAGE_SIZE) buffer.writeUtf8("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit.</p>\n");
+    return buffer.writeUtf8("</body></html>");
+  }
+
+  /**
+   * @return a PNG of random pixels, which barely compresses.
+   */
+  private static @NonNull byte[] noisePng(int width, int height) throws IOException {
+    BufferedImage image  = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Random        random = new Random(width * height);
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", baos);
+    return baos.toByteArray();
+  }
+}
@@ -0,0 +1,94 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.OpenGraph;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class OpenGraphParserTest {
+
+  private static final LinkPreviewUtil.HtmlDecoder NO_DECODING = text -> text;
+
+  @Test
+  public void parse_openGraphTags() throws IOException {
+    OpenGraph openGraph = parse("<html><head>" +
+                                "<meta property=\"og:title\" content=\"Title\">" +
+                                "<meta content='https://example.org/a.png' property='og:image' />" +
+                                "<title>Page title</title>" +
+                                "</head><body></body></html>");
+
+    assertEquals("Title", openGraph.getTitle().get());
+    assertEquals("https://example.org/a.png", openGraph.getImageUrl().get());
+  }
+
+  @Test
+  public void parse_fallsBackToTitleAndFavicon() throws IOException {
+    OpenGraph openGraph = parse("<html><head>" +
+                                "<TITLE>Page &amp; title</TITLE>" +
+                                "<link rel=\"shortcut icon\" href=\"https://example.org/favicon.png\">" +
+                                "<link rel=\"icon\" href=\"https://example.org/other.png\">" +
+                                "</head></html>");
+
+    assertEquals("Page &amp; title", openGraph.getTitle().get());
+    assertEquals("https://example.org/favicon.png", openGraph.getImageUrl().get());
+  }
+
+  @Test
+  public void parse_ignoresTagsInScriptsAndComments() throws IOException {
+    OpenGraph openGraph = parse("<head>" +
+                                "<script>if (a < b) document.write('<meta property=\"og:title\" content=\"Script\">');</script>" +
+                                "<!-- <meta property=\"og:title\" content=\"Comment\"> -->" +
+                                "<style>a > b { color: red }</style>" +
+                                "<meta property=\"og:title\" content=\"Title > with bracket\">" +
+                                "</head>");
+
+    assertEquals("Title > with bracket", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_stopsAtEndOfHead() throws IOException {
+    OpenGraph openGraph = parse("<head><title>Head</title></head>" +
+                                "<body><meta property=\"og:title\" content=\"Body\"></body>");
+
+    assertEquals("Head", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_stopsAtBodyWithoutEndOfHead() throws IOException {
+    OpenGraph openGraph = parse("<title>Head</title><body><meta property=\"og:title\" content=\"Body\">");
+
+    assertEquals("Head", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_articleTagsOverrideOpenGraphTags() throws IOException {
+    OpenGraph openGraph = parse("<head>" +
+                                "<meta property=\"article:title\" content=\"Article\">" +
+                                "<meta property=\"og:title\" content=\"Open Graph\">" +
+                                "</head>");
+
+    assertEquals("Article", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_unterminatedTag() throws IOException {
+    OpenGraph openGraph = parse("<head><title>Title</title><meta property=\"og:image\" content=\"https://exa");
+
+    assertEquals("Title", openGraph.getTitle().get());
+    assertEquals("", openGraph.getImageUrl().get());
+  }
+
+  private static OpenGraph parse(String html) throws IOException {
+    return OpenGraphParser.parse(new StringReader(html), NO_DECODING);
+  }
+}
@@ -0,0 +1,54 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class LogFileTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final byte[] secret = new byte[32];
+
+  @Test
+  public void write_then_read_multiline_blocks() throws IOException {
+    File           file   = folder.newFile();
+    LogFile.Writer writer = new LogFile.Writer(secret, file);
+
+    writer.writeEntry("first\nsecond");
+    writer.writeEntry("third");
+    writer.close();
+
+    LogFile.Reader reader = new LogFile.Reader(secret, file);
+
+    assertEquals("first\nsecond", reader.readEntry());
+    assertEquals("third", reader.readEntry());
+    assertNull(reader.readEntry());
+    reader.close();
+  }
+
+  @Test
+  public void writer_appends_entries_after_existing_file() throws IOException {
+    File file = folder.newFile();
+
+    LogFile.Writer writer = new LogFile.Writer(secret, file);
+    writer.writeEntry("one");
+    writer.close();
+
+    writer = new LogFile.Writer(secret, file);
+    writer.writeEntry("two\nthree");
+    writer.close();
+
+    LogFile.Reader reader = new LogFile.Reader(secret, file);
+    assertEquals("one", reader.readEntry());
+    assertEquals("two\nthree", reader.readEntry());
+    assertNull(reader.readEntry());
+    reader.close();
+  }
+}
@@ -0,0 +1,126 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class LogLineBatcherTest {
+
+  private final List<String>   blocks  = new ArrayList<>();
+  private final LogLineBatcher batcher = new LogLineBatcher(16, 64, "Logger", blocks::add);
+
+  @Test
+  public void only_the_first_line_since_a_drain_schedules_one() {
+    assertTrue(batcher.add(0, "I", "Tag", "first", null));
+    assertFalse(batcher.add(0, "I", "Tag", "second", null));
+
+    batcher.drain();
+
+    assertTrue(batcher.add(0, "I", "Tag", "third", null));
+  }
+
+  @Test
+  public void drain_writes_lines_in_order_in_blocks() {
+    for (int i = 0; i < 10; i++) {
+      batcher.add(0, "I", "Tag", "line " + i, null);
+    }
+
+    batcher.drain();
+
+    List<String> lines = lines();
+    assertEquals(10, lines.size());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(lines.get(i), lines.get(i).endsWith(" I Tag: line " + i));
+    }
+    assertTrue(blocks.size() > 1);
+  }
+
+  @Test
+  public void lines_over_the_bound_are_dropped_and_counted() {
+    for (int i = 0; i < 20; i++) {
+      batcher.add(0, "I", "Tag", "line " + i, null);
+    }
+
+    batcher.drain();
+
+    List<String> lines = lines();
+    assertEquals(17, lines.size());
+    assertTrue(lines.get(15).endsWith(" I Tag: line 15"));
+    assertTrue(lines.get(16).endsWith(" W Logger: Dropped 4 lines logged faster than they could be written."));
+  }
+
+  @Test
+  public void throwables_are_written_line_by_line() {
+    batcher.add(0, "E", "Tag", "failed", new IllegalStateException("broken"));
+
+    batcher.drain();
+
+    List<String> lines = lines();
+    assertTrue(lines.get(0).endsWith(" E Tag: failed"));
+    assertTrue(lines.get(1).endsWith(" E Tag: java.lang.IllegalStateException: broken"));
+  }
+
+  @Test
+  public void concurrent_lines_all_arrive_in_the_order_of_each_thread() throws Exception {
+    int             threads        = 4;
+    int             linesPerThread = 10_000;
+    LogLineBatcher  batcher        = new LogLineBatcher(threads * linesPerThread, 8 * 1024, "Logger", blocks::add);
+    ExecutorService loggerThread   = Executors.newSingleThreadExecutor();
+    CountDownLatch  start          = new CountDownLatch(1);
+    List<Thread>    producers      = new ArrayList<>();
+
+    for (int thread = 0; thread < threads; thread++) {
+      String tag = "Thread" + thread;
+      producers.add(new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        for (int i = 0; i < linesPerThread; i++) {
+          if (batcher.add(0, "I", tag, String.valueOf(i), null)) {
+            loggerThread.execute(batcher::drain);
+          }
+        }
+      }));
+    }
+
+    for (Thread producer : producers) producer.start();
+    start.countDown();
+    for (Thread producer : producers) producer.join();
+
+    // Every drain that was needed has been scheduled by now
+    loggerThread.submit(() -> {}).get();
+    loggerThread.shutdown();
+
+    int[] next = new int[threads];
+    for (String line : lines()) {
+      String   entry  = line.substring(line.indexOf(" I Thread") + " I Thread".length());
+      String[] parts  = entry.split(": ");
+      int      thread = Integer.parseInt(parts[0]);
+
+      assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+    }
+    for (int count : next) {
+      assertEquals(linesPerThread, count);
+    }
+  }
+
+  private List<String> lines() {
+    List<String> lines = new ArrayList<>();
+    for (String block : blocks) {
+      for (String line : block.split("\n")) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+}
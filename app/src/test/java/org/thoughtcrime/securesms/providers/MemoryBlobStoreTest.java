@@ -0,0 +1,188 @@
+package org.thoughtcrime.securesms.providers;
+
+import androidx.annotation.NonNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.session.libsignal.utilities.Log;
+import org.thoughtcrime.securesms.NoOpLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class MemoryBlobStoreTest {
+
+  private static final MemoryBlobStore.LeakListener NO_LEAKS = (id, owner, spilled) -> { throw new AssertionError("Unexpected leak of " + id); };
+
+  @BeforeClass
+  public static void setUpLogger() {
+    Log.initialize(NoOpLogger.INSTANCE);
+  }
+
+  @Test
+  public void concurrent_large_blobs_stay_within_budget_and_are_not_lost() throws Exception {
+    int             threadCount    = 8;
+    int             blobsPerThread = 50;
+    int             blobSize       = 64 * 1024;
+    long            budget         = 1024 * 1024;
+    FakeStorage     storage        = new FakeStorage();
+    MemoryBlobStore store          = new MemoryBlobStore(budget, storage, NO_LEAKS);
+    ExecutorService executor       = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch  start          = new CountDownLatch(1);
+    List<Future<?>> futures        = new ArrayList<>();
+
+    for (int thread = 0; thread < threadCount; thread++) {
+      int first = thread * blobsPerThread;
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int i = first; i < first + blobsPerThread; i++) {
+          store.put(String.valueOf(i), blobData(i, blobSize), null);
+          // Read back a blob created by some thread, possibly while it is still being written by another
+          int other = (i * 31) % (threadCount * blobsPerThread);
+          if (store.contains(String.valueOf(other))) {
+            assertArrayEquals(blobData(other, blobSize), read(store.open(String.valueOf(other), false)));
+          }
+        }
+        return null;
+      }));
+    }
+
+    start.countDown();
+    for (Future<?> future : futures) future.get(1, TimeUnit.MINUTES);
+    executor.shutdown();
+
+    assertTrue(store.getPeakMemoryUsage() <= budget);
+    assertEquals(threadCount * blobsPerThread - budget / blobSize, storage.files.size());
+
+    for (int i = 0; i < threadCount * blobsPerThread; i++) {
+      assertArrayEquals(blobData(i, blobSize), read(store.open(String.valueOf(i), false)));
+      assertTrue(store.remove(String.valueOf(i)));
+    }
+
+    assertEquals(0, store.getMemoryUsage());
+    assertTrue(storage.files.isEmpty());
+  }
+
+  @Test
+  public void single_use_blobs_are_removed_when_read() throws IOException {
+    FakeStorage     storage = new FakeStorage();
+    MemoryBlobStore store   = new MemoryBlobStore(10, storage, NO_LEAKS);
+
+    store.put("memory", new byte[] { 1, 2, 3 }, null);
+    store.put("spilled", new byte[20], null);
+
+    assertEquals(3, store.getMemoryUsage());
+    assertEquals(1, storage.files.size());
+
+    assertArrayEquals(new byte[] { 1, 2, 3 }, read(store.open("memory", true)));
+    assertArrayEquals(new byte[20], read(store.open("spilled", true)));
+
+    assertNull(store.open("memory", true));
+    assertNull(store.open("spilled", true));
+    assertEquals(0, store.getMemoryUsage());
+    assertTrue(storage.files.isEmpty());
+  }
+
+  @Test
+  public void blob_is_kept_in_memory_when_it_cannot_be_spilled() throws IOException {
+    FakeStorage     storage = new FakeStorage();
+    MemoryBlobStore store   = new MemoryBlobStore(10, storage, NO_LEAKS);
+
+    storage.failWrites = true;
+    store.put("blob", new byte[20], null);
+
+    assertEquals(20, store.getMemoryUsage());
+    assertArrayEquals(new byte[20], read(store.open("blob", false)));
+  }
+
+  @Test
+  public void blob_outliving_its_owner_is_reported_and_spilled() throws Exception {
+    FakeStorage     storage = new FakeStorage();
+    AtomicInteger   leaks   = new AtomicInteger();
+    MemoryBlobStore store   = new MemoryBlobStore(1024, storage, (id, owner, spilled) -> {
+      assertEquals("leaked", id);
+      assertTrue(spilled);
+      leaks.incrementAndGet();
+    });
+
+    Object owner = new Object();
+    store.put("leaked", new byte[] { 4, 5, 6 }, new Object());
+    store.put("owned", new byte[] { 7 }, owner);
+
+    for (int i = 0; i < 100 && leaks.get() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      store.reapLeaks();
+    }
+
+    assertEquals(1, leaks.get());
+    assertEquals(1, store.getMemoryUsage());
+    assertEquals(1, storage.files.size());
+    assertArrayEquals(new byte[] { 4, 5, 6 }, read(store.open("leaked", false)));
+    assertArrayEquals(new byte[] { 7 }, read(store.open("owned", false)));
+    assertFalse(owner.toString().isEmpty());
+  }
+
+  private static byte[] blobData(int index, int size) {
+    byte[] data = new byte[size];
+    new Random(index).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] read(InputStream inputStream) throws IOException {
+    assertNotNull(inputStream);
+
+    ByteArrayOutputStream out    = new ByteArrayOutputStream();
+    byte[]                buffer = new byte[8192];
+    int                   read;
+
+    while ((read = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static final class FakeStorage implements MemoryBlobStore.SpillStorage {
+    private final ConcurrentHashMap<String, byte[]> files = new ConcurrentHashMap<>();
+
+    private volatile boolean failWrites;
+
+    @Override
+    public void write(@NonNull String id, @NonNull byte[] data) throws IOException {
+      if (failWrites) throw new IOException("Disk full");
+      files.put(id, Arrays.copyOf(data, data.length));
+    }
+
+    @Override
+    public @NonNull InputStream read(@NonNull String id) throws IOException {
+      byte[] data = files.get(id);
+      if (data == null) throw new IOException("No such file: " + id);
+      return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public void delete(@NonNull String id) {
+      files.remove(id);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.thoughtcrime.securesms.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageCompressionPlannerTest {
+
+  private static final int MAX_SIZE = 1000 * 1000;
+
+  @Test
+  public void plan_smallImage_fullSizeAtMaxQuality() {
+    ImageCompressionPlanner planner = ImageCompressionPlanner.fromProbe(20_000, 256 * 192, 1024 * 768, MAX_SIZE);
+
+    assertEquals(0, planner.getHalvings(3));
+    assertEquals(ImageCompressionPlanner.MAX_QUALITY, planner.getQuality(0));
+  }
+
+  @Test
+  public void plan_slightlyTooLarge_lowersQuality() {
+    // Estimated at 2 MB at full quality, so about 1 / sqrt(2) of it
+    ImageCompressionPlanner planner = ImageCompressionPlanner.fromProbe(50_000, 1000, 40_000, MAX_SIZE);
+
+    assertEquals(0, planner.getHalvings(3));
+    assertEquals(67, planner.getQuality(0));
+  }
+
+  @Test
+  public void plan_muchTooLarge_halvesDimensions() {
+    // Estimated at 12 MB at full quality, 3 MB once halved
+    ImageCompressionPlanner planner = ImageCompressionPlanner.fromProbe(12_000, 1000, 1000 * 1000, MAX_SIZE);
+
+    assertEquals(1, planner.getHalvings(3));
+    assertEquals(54, planner.getQuality(1));
+  }
+
+  @Test
+  public void plan_tooLargeAtEveryScale_usesMaxHalvings() {
+    ImageCompressionPlanner planner = ImageCompressionPlanner.fromProbe(1_000_000, 1000, 1000 * 1000, MAX_SIZE);
+
+    assertEquals(3, planner.getHalvings(3));
+    assertEquals(ImageCompressionPlanner.MIN_QUALITY, planner.getQuality(3));
+  }
+
+  @Test
+  public void plan_withoutEstimate_startsAtFullSizeAndMaxQuality() {
+    ImageCompressionPlanner planner = ImageCompressionPlanner.withoutEstimate(MAX_SIZE);
+
+    assertEquals(0, planner.getHalvings(3));
+    assertEquals(ImageCompressionPlanner.MAX_QUALITY, planner.getQuality(0));
+  }
+
+  @Test
+  public void nextQuality_decreasesByAtLeastMinimum() {
+    ImageCompressionPlanner planner = ImageCompressionPlanner.withoutEstimate(MAX_SIZE);
+
+    assertEquals(90, planner.getNextQuality(95, MAX_SIZE + 1));
+    assertEquals(47, planner.getNextQuality(95, 4 * MAX_SIZE));
+    assertEquals(ImageCompressionPlanner.MIN_QUALITY, planner.getNextQuality(50, 4 * MAX_SIZE));
+  }
+}
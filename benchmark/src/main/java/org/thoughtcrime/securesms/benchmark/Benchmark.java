@@ -0,0 +1,28 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A benchmark run by {@link BenchmarkRunner}. Only {@link #run} is timed; {@link #setUp} and
+ * {@link #tearDown} run around every iteration, for benchmarks that have to undo what they did.
+ * It is public so that benchmarks of package-private app classes can live in their packages.
+ */
+public interface Benchmark {
+
+  String getName();
+
+  default void setUp() throws Exception {}
+
+  void run() throws Exception;
+
+  default void tearDown() throws Exception {}
+
+  /**
+   * Counts that describe one iteration besides its time, such as the bytes it read. They are read
+   * once all the iterations have run.
+   */
+  default Map<String, Long> getMetrics() {
+    return Collections.emptyMap();
+  }
+}
@@ -0,0 +1,39 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.util.Map;
+
+/**
+ * The timings of one benchmark, in nanoseconds per iteration.
+ */
+final class BenchmarkResult {
+
+  final String name;
+  final int    iterations;
+  final long   minNanos;
+  final long   medianNanos;
+  final long   p90Nanos;
+  final long   maxNanos;
+  final long   meanNanos;
+  /** Bytes allocated per iteration by the benchmarking thread, or -1 if the JVM doesn't say. */
+  final long   allocatedBytes;
+  final long   gcCount;
+  final long   gcMillis;
+  /** See {@link Benchmark#getMetrics}. */
+  final Map<String, Long> metrics;
+
+  BenchmarkResult(String name, int iterations, long minNanos, long medianNanos, long p90Nanos, long maxNanos, long meanNanos,
+                  long allocatedBytes, long gcCount, long gcMillis, Map<String, Long> metrics)
+  {
+    this.name           = name;
+    this.iterations     = iterations;
+    this.minNanos       = minNanos;
+    this.medianNanos    = medianNanos;
+    this.p90Nanos       = p90Nanos;
+    this.maxNanos       = maxNanos;
+    this.meanNanos      = meanNanos;
+    this.allocatedBytes = allocatedBytes;
+    this.gcCount        = gcCount;
+    this.gcMillis       = gcMillis;
+    this.metrics        = metrics;
+  }
+}
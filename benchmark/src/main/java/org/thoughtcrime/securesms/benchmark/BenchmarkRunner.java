@@ -0,0 +1,109 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Runs a benchmark a number of times after warming it up, and records how long each iteration
+ * took along with what it allocated and how much the garbage collector ran while it was measured.
+ */
+final class BenchmarkRunner {
+
+  private final int warmupIterations;
+  private final int iterations;
+
+  BenchmarkRunner(int warmupIterations, int iterations) {
+    if (iterations < 1) throw new IllegalArgumentException("At least one iteration is needed");
+
+    this.warmupIterations = warmupIterations;
+    this.iterations       = iterations;
+  }
+
+  BenchmarkResult run(Benchmark benchmark) throws Exception {
+    for (int i = 0; i < warmupIterations; i++) {
+      runOnce(benchmark);
+    }
+
+    long[] times          = new long[iterations];
+    long   allocatedBytes = getAllocatedBytes() >= 0 ? 0 : -1;
+    long   gcCount        = -getGcCount();
+    long   gcTime         = -getGcTime();
+
+    for (int i = 0; i < iterations; i++) {
+      benchmark.setUp();
+      long allocatedBefore = getAllocatedBytes();
+      long start           = System.nanoTime();
+      try {
+        benchmark.run();
+        times[i] = System.nanoTime() - start;
+        if (allocatedBytes >= 0) allocatedBytes += getAllocatedBytes() - allocatedBefore;
+      } finally {
+        benchmark.tearDown();
+      }
+    }
+
+    gcCount += getGcCount();
+    gcTime  += getGcTime();
+
+    Arrays.sort(times);
+
+    long total = 0;
+    for (long time : times) total += time;
+
+    return new BenchmarkResult(benchmark.getName(),
+                               iterations,
+                               times[0],
+                               percentile(times, 50),
+                               percentile(times, 90),
+                               times[times.length - 1],
+                               total / iterations,
+                               allocatedBytes >= 0 ? allocatedBytes / iterations : -1,
+                               gcCount,
+                               gcTime,
+                               new LinkedHashMap<>(benchmark.getMetrics()));
+  }
+
+  private static void runOnce(Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      benchmark.run();
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private static long percentile(long[] sorted, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * @return the bytes allocated by this thread so far, or -1 when the JVM can't tell.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long getGcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long getGcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, bean.getCollectionTime());
+    }
+    return time;
+  }
+}
@@ -0,0 +1,1137 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import org.sqlite.ProgressHandler;
+import org.thoughtcrime.securesms.conversation.v2.MessageRecordWindow;
+import org.thoughtcrime.securesms.database.DatabaseQueries;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The benchmarks run against every dataset, in the order they run in. Those that only read come
+ * first, then those that only change what no other benchmark reads: reactions, receipt counts and
+ * configs. Trimming is rolled back after every iteration. Receiving and the DM backlog run last as
+ * they leave the dataset with more messages.
+ *
+ * Where a change replaced a query or the way statements are grouped into transactions, the old way
+ * is timed next to the new one, with the queries it ran copied into {@link Queries}.
+ */
+final class Benchmarks {
+
+  private static final int CONVERSATION_PAGE_SIZE = 50;
+  private static final int SEARCH_PAGE_SIZE       = 50;
+  private static final int RECEIVE_BATCH_SIZE     = 100;
+  private static final int SERVER_ID_LOOKUPS      = 10_000;
+  private static final int SERVER_ID_CHUNK_SIZE   = 900;
+  private static final int POLL_REACTIONS         = 5_000;
+  private static final int POLL_MESSAGES          = 1_000;
+  private static final int SETTINGS_LOOKUPS       = 1_000;
+  private static final int SETTINGS_CHUNK_SIZE    = 900;
+  private static final int BOUND_MESSAGES         = 1_000;
+  private static final int RECORD_WINDOW_SIZE     = 100;
+  private static final int GALLERY_PAGE_SIZE      = 60;
+  private static final int RECEIPTS               = 500;
+  private static final int CONFIG_CHANGES         = 200;
+  private static final int CONFIG_DUMP_BYTES      = 64 * 1024;
+  private static final int BACKLOG_MESSAGES       = 512;
+  private static final int BACKLOG_SENDERS        = 50;
+  private static final int BLINDED_ID_CHUNK_SIZE  = 900;
+  private static final int PROGRESS_INSTRUCTIONS  = 1_000;
+
+  private static final String USER_SESSION_ID  = "05" + String.join("", Collections.nCopies(64, "0"));
+  private static final String COMMUNITY_SERVER = "https://open.getsession.org";
+  private static final String COMMUNITY_KEY    = "a03c383cf63c3c4efe67acc52112a6dd734b3a946b9545f488aaa93da7991238";
+
+  private final Connection               connection;
+  private final MessageStore             messageStore;
+  private final SyntheticDataset.Summary summary;
+  private final Random                   random;
+
+  private long                   nextTimestamp = SyntheticDataset.NOW;
+  private List<MessageReactions> reactionPoll;
+  private List<String>           settingsAddresses;
+  private ConversationRows       conversationRows;
+  private List<Long>             receiptTimestamps;
+  private List<String>           blindedIds;
+  private List<Long>             backlogThreadIds;
+
+  Benchmarks(Connection connection, MessageStore messageStore, SyntheticDataset.Summary summary, long seed) {
+    this.connection   = connection;
+    this.messageStore = messageStore;
+    this.summary      = summary;
+    this.random       = new Random(seed);
+  }
+
+  List<Benchmark> create() {
+    long threadId = summary.targetThreadId;
+    int  middle   = summary.targetMessages / 2;
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(query("thread_list", Queries.THREAD_LIST));
+    benchmarks.add(query("conversation.count", Queries.CONVERSATION_COUNT, threadId, threadId));
+    benchmarks.add(query("conversation.first_page", Queries.CONVERSATION_PAGE, threadId, threadId, CONVERSATION_PAGE_SIZE, 0));
+    benchmarks.add(query("conversation.middle_page", Queries.CONVERSATION_PAGE, threadId, threadId, CONVERSATION_PAGE_SIZE, middle));
+
+    // A common word, a rarer prefix and a phrase, in every thread and in the target thread, as one
+    // page and as the whole result the search used to read before it was paged
+    for (String term : new String[] { "dolor", "volupt", "sed quia" }) {
+      String ftsQuery = DatabaseQueries.toFtsQuery(term);
+      String name     = term.replace(' ', '_');
+
+      benchmarks.add(query("search.all." + name, DatabaseQueries.searchMessages(false, false, false), ftsQuery, ftsQuery, SEARCH_PAGE_SIZE, ftsQuery, ftsQuery));
+      benchmarks.add(query("search.thread." + name, DatabaseQueries.searchMessages(false, true, false), ftsQuery, threadId, ftsQuery, threadId, SEARCH_PAGE_SIZE, ftsQuery, ftsQuery));
+      benchmarks.add(query("search.unpaged_all." + name, Queries.UNPAGED_MESSAGES, ftsQuery, ftsQuery, Math.min(term.length() * 50, 500)));
+      benchmarks.add(query("search.unpaged_thread." + name, Queries.UNPAGED_THREAD_MESSAGES, ftsQuery, threadId, ftsQuery, threadId));
+    }
+
+    benchmarks.add(supersededSearch("search.superseded_waited", false));
+    benchmarks.add(supersededSearch("search.superseded_cancelled", true));
+
+    benchmarks.add(query("notifications.full_projection", Queries.UNREAD_RECORDS));
+    benchmarks.add(query("notifications.unread_keys", DatabaseQueries.getUnreadKeys(null)));
+    benchmarks.add(query("notifications.unread_keys_thread", DatabaseQueries.getUnreadKeys("thread_id = " + threadId)));
+
+    // A name prefix and a Session ID prefix
+    for (String term : new String[] { "ab", "05ab" }) {
+      benchmarks.add(likeRecipients("recipients.like." + term, term));
+      benchmarks.add(query("recipients.fts." + term, DatabaseQueries.RECIPIENTS_QUERY, DatabaseQueries.toFtsQuery(term)));
+    }
+
+    benchmarks.add(settingsPerAddress("recipients.settings_per_address"));
+    benchmarks.add(settingsBatched("recipients.settings_batched"));
+
+    benchmarks.add(bind("bind.per_lookup", threadId, false));
+    benchmarks.add(bind("bind.window", threadId, true));
+
+    if (summary.galleryThreadId != -1) {
+      benchmarks.add(galleryAllMedia("gallery.all_media", summary.galleryThreadId));
+      benchmarks.add(galleryFirstPages("gallery.first_pages_per_section", summary.galleryThreadId, true));
+      benchmarks.add(galleryFirstPages("gallery.first_pages", summary.galleryThreadId, false));
+    }
+
+    if (summary.communityThreadId != -1) {
+      benchmarks.add(resolveServerIds("server_ids.resolve_10k", summary.communityThreadId, summary.communityFirstServerId, summary.communityMessages));
+      benchmarks.add(reactionsPerReaction("reactions.per_reaction_5k", summary.communityThreadId));
+      benchmarks.add(reactionsBatched("reactions.batched_5k", summary.communityThreadId));
+    }
+
+    benchmarks.add(receipts("receipts.per_receipt", threadId, false));
+    benchmarks.add(receipts("receipts.coalesced", threadId, true));
+
+    benchmarks.add(configChanges("config.persist_per_change", false));
+    benchmarks.add(configChanges("config.persist_coalesced", true));
+
+    benchmarks.add(new Benchmark() {
+      @Override
+      public String getName() {
+        return "trim.half";
+      }
+
+      @Override
+      public void setUp() throws SQLException {
+        connection.setAutoCommit(false);
+      }
+
+      @Override
+      public void run() throws SQLException {
+        messageStore.trimThread(threadId, middle);
+      }
+
+      @Override
+      public void tearDown() throws SQLException {
+        connection.rollback();
+        connection.setAutoCommit(true);
+      }
+    });
+
+    benchmarks.add(receive("receive.single", threadId, 1));
+    benchmarks.add(receive("receive.batch_" + RECEIVE_BATCH_SIZE, threadId, RECEIVE_BATCH_SIZE));
+
+    benchmarks.add(dmBacklog("dm_backlog.per_message", false));
+    benchmarks.add(dmBacklog("dm_backlog.batched", true));
+
+    return benchmarks;
+  }
+
+  /**
+   * Runs a query and reads every column of every row, like filling a cursor window does.
+   */
+  private Benchmark query(String name, String sql, Object... args) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        readAll(sql, args);
+      }
+    };
+  }
+
+  /**
+   * @return the number of rows read.
+   */
+  private int readAll(String sql, Object... args) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (int i = 0; i < args.length; i++) {
+        statement.setObject(i + 1, args[i]);
+      }
+
+      int rows = 0;
+      try (ResultSet resultSet = statement.executeQuery()) {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int               columns  = metaData.getColumnCount();
+
+        while (resultSet.next()) {
+          for (int column = 1; column <= columns; column++) {
+            resultSet.getObject(column);
+          }
+          rows++;
+        }
+      }
+      return rows;
+    }
+  }
+
+  /**
+   * Searches for a single letter, then for a word before the first search is done, the way typing
+   * a query goes. Both run on one thread like {@code SearchRepository}'s executor. If
+   * {@code cancel}, the first search is cancelled as soon as the second one is asked for, through a
+   * progress handler like the one {@code CancellationSignal} sets; otherwise the second search waits
+   * for it, as it did before searches could be cancelled.
+   */
+  private Benchmark supersededSearch(String name, boolean cancel) {
+    String        firstQuery  = DatabaseQueries.toFtsQuery("d");
+    String        secondQuery = DatabaseQueries.toFtsQuery("dolor");
+    AtomicBoolean cancelled   = new AtomicBoolean();
+
+    return new MeasuredBenchmark(name) {
+      private ExecutorService executor;
+      private CountDownLatch  started;
+
+      @Override
+      public void setUp() throws SQLException {
+        executor = Executors.newSingleThreadExecutor();
+        ProgressHandler.setHandler(connection, PROGRESS_INSTRUCTIONS, new ProgressHandler() {
+          @Override
+          protected int progress() {
+            started.countDown();
+            return cancelled.get() ? 1 : 0;
+          }
+        });
+      }
+
+      @Override
+      public void run() throws Exception {
+        started = new CountDownLatch(1);
+        cancelled.set(false);
+
+        Future<Boolean> first = executor.submit(() -> {
+          try {
+            readAll(DatabaseQueries.searchMessages(true, false, false), firstQuery, firstQuery, SEARCH_PAGE_SIZE, firstQuery, firstQuery);
+            return false;
+          } catch (SQLException e) {
+            if (!cancelled.get()) throw e;
+            return true;
+          } finally {
+            // In case it was done before the handler was first called
+            started.countDown();
+          }
+        });
+
+        started.await();
+        if (cancel) cancelled.set(true);
+
+        Future<Integer> second = executor.submit(() -> {
+          cancelled.set(false);
+          return readAll(DatabaseQueries.searchMessages(false, false, false), secondQuery, secondQuery, SEARCH_PAGE_SIZE, secondQuery, secondQuery);
+        });
+
+        second.get();
+        metrics.put("cancelled", first.get() ? 1L : 0L);
+      }
+
+      @Override
+      public void tearDown() throws SQLException {
+        executor.shutdown();
+        ProgressHandler.clearHandler(connection);
+      }
+    };
+  }
+
+  /**
+   * The three queries {@code SearchRepository} ran to find the contacts and groups matching a query
+   * before they shared an FTS index.
+   */
+  private Benchmark likeRecipients(String name, String term) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        readAll(Queries.CONTACTS_BY_NAME, "%" + term + "%", "%" + term + "%");
+        readAll(Queries.THREADS_BY_ADDRESS, term + "%");
+        readAll(Queries.GROUPS_BY_TITLE, "%" + term + "%");
+      }
+    };
+  }
+
+  /**
+   * Loads the settings of {@link #SETTINGS_LOOKUPS} recipients one at a time, the way the members of
+   * a large group were resolved before {@code Recipient.from} took a list.
+   */
+  private Benchmark settingsPerAddress(String name) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        for (String address : getSettingsAddresses()) {
+          readAll(Queries.RECIPIENT_SETTINGS, address);
+        }
+      }
+    };
+  }
+
+  /**
+   * Loads the same settings as {@link #settingsPerAddress} the way
+   * {@code RecipientDatabase.getRecipientSettings} does for a list of addresses.
+   */
+  private Benchmark settingsBatched(String name) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        List<String> addresses = getSettingsAddresses();
+
+        for (int start = 0; start < addresses.size(); start += SETTINGS_CHUNK_SIZE) {
+          List<String> chunk = addresses.subList(start, Math.min(start + SETTINGS_CHUNK_SIZE, addresses.size()));
+          readAll("SELECT * FROM recipient_preferences WHERE recipient_ids IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                  chunk.toArray());
+        }
+      }
+    };
+  }
+
+  private List<String> getSettingsAddresses() throws SQLException {
+    if (settingsAddresses != null) return settingsAddresses;
+    return settingsAddresses = readStrings("SELECT recipient_ids FROM recipient_preferences ORDER BY _id LIMIT ?", SETTINGS_LOOKUPS);
+  }
+
+  /**
+   * Binds the newest {@link #BOUND_MESSAGES} messages of a thread in order, the way scrolling up the
+   * conversation does. Each bind asks for the record at the position for its view type, then for the
+   * bind itself, then for the messages before and after it. With {@code window} those go through a
+   * {@link MessageRecordWindow} like {@code ConversationAdapter.getMessage} does, otherwise every one
+   * of them reads a new record.
+   *
+   * The rows are read up front, as the adapter's cursor window holds them, and a record is read from
+   * a row by looking its columns up by name, like {@code MmsSmsDatabase.Reader} does. The background
+   * prefetching is left out, so the window only saves the reads of the main thread.
+   */
+  private Benchmark bind(String name, long threadId, boolean window) {
+    return new MeasuredBenchmark(name) {
+      @Override
+      public void run() throws SQLException {
+        ConversationRows                        rows    = getConversationRows(threadId);
+        MessageRecordWindow<ConversationRecord> records = new MessageRecordWindow<>(RECORD_WINDOW_SIZE);
+        long[]                                  reads   = new long[1];
+
+        for (int position = 0; position < rows.size(); position++) {
+          getMessage(rows, records, position, reads);
+          getMessage(rows, records, position, reads);
+          records.moveTo(position);
+          // The layout is reversed, so the message before is the next row and the one after the previous
+          if (position + 1 < rows.size()) getMessage(rows, records, position + 1, reads);
+          if (position > 0)               getMessage(rows, records, position - 1, reads);
+        }
+
+        metrics.put("recordReads", reads[0]);
+      }
+
+      private ConversationRecord getMessage(ConversationRows rows, MessageRecordWindow<ConversationRecord> records, int position, long[] reads) {
+        if (!window) {
+          reads[0]++;
+          return rows.read(position);
+        }
+
+        return records.getOrRead(position, cached -> cached.id == rows.getLong(position, "_id") && cached.transport.equals(rows.getString(position, "transport_type")), () -> {
+          reads[0]++;
+          return rows.read(position);
+        });
+      }
+    };
+  }
+
+  private ConversationRows getConversationRows(long threadId) throws SQLException {
+    if (conversationRows != null) return conversationRows;
+
+    try (PreparedStatement statement = connection.prepareStatement(Queries.CONVERSATION_PAGE)) {
+      statement.setLong(1, threadId);
+      statement.setLong(2, threadId);
+      statement.setInt(3, BOUND_MESSAGES);
+      statement.setInt(4, 0);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return conversationRows = new ConversationRows(resultSet);
+      }
+    }
+  }
+
+  /**
+   * Opens the media gallery the way {@code BucketedThreadMediaLoader} did before it was paged: reads
+   * every image and video of the thread, then sorts them into buckets.
+   */
+  private Benchmark galleryAllMedia(String name, long threadId) {
+    return new MeasuredBenchmark(name) {
+      @Override
+      public void run() throws SQLException {
+        GalleryBuckets buckets = new GalleryBuckets(SyntheticDataset.NOW);
+        long           rows    = 0;
+
+        try (PreparedStatement statement = connection.prepareStatement(DatabaseQueries.GALLERY_MEDIA_QUERY)) {
+          statement.setLong(1, threadId);
+
+          try (ResultSet resultSet = statement.executeQuery()) {
+            int columns = resultSet.getMetaData().getColumnCount();
+
+            while (resultSet.next()) {
+              for (int column = 1; column <= columns; column++) {
+                resultSet.getObject(column);
+              }
+
+              boolean push = (resultSet.getLong("msg_box") & MessageStore.PUSH_MESSAGE_BIT) != 0;
+              buckets.add(resultSet.getLong("_id"), push ? resultSet.getLong("date") : resultSet.getLong("date_received"));
+              rows++;
+            }
+          }
+        }
+
+        metrics.put("rowsRead", rows);
+        metrics.put("buckets", (long) buckets.size());
+      }
+    };
+  }
+
+  /**
+   * Opens the media gallery the way {@code BucketedThreadMediaLoader} does now: reads the first item
+   * of every page of every bucket, then the pages that fill the first screen. Unless
+   * {@code perSection}, those pages are read with one query rather than one for each section, which
+   * is how they were first read.
+   */
+  private Benchmark galleryFirstPages(String name, long threadId, boolean perSection) {
+    return new MeasuredBenchmark(name) {
+      @Override
+      public void run() throws SQLException {
+        List<long[]> pageStarts = new ArrayList<>();
+        long         rows       = 0;
+
+        try (PreparedStatement statement = connection.prepareStatement(DatabaseQueries.getGalleryMediaPages(SyntheticDataset.NOW, GALLERY_PAGE_SIZE))) {
+          statement.setLong(1, threadId);
+
+          try (ResultSet resultSet = statement.executeQuery()) {
+            long lastBucket = Long.MIN_VALUE;
+
+            while (resultSet.next()) {
+              long bucket = resultSet.getLong(DatabaseQueries.GALLERY_BUCKET);
+              if (bucket != lastBucket) {
+                pageStarts.add(new long[] { bucket, resultSet.getLong(DatabaseQueries.GALLERY_DATE), resultSet.getLong("_id"), resultSet.getLong(DatabaseQueries.GALLERY_COUNT) });
+                lastBucket = bucket;
+              }
+              rows++;
+            }
+          }
+        }
+
+        int loaded = 0;
+        for (int i = 0; i < pageStarts.size() && loaded < GALLERY_PAGE_SIZE; i++) {
+          long[] start = pageStarts.get(i);
+          if (perSection) rows += readAll(DatabaseQueries.getGalleryMediaForBucket(SyntheticDataset.NOW, (int) start[0], start[1], start[2], GALLERY_PAGE_SIZE), threadId);
+          loaded += (int) Math.min(start[3], GALLERY_PAGE_SIZE);
+        }
+
+        if (!perSection && !pageStarts.isEmpty()) {
+          rows += readAll(DatabaseQueries.getGalleryMediaFromBucket(SyntheticDataset.NOW, (int) pageStarts.get(0)[0], loaded), threadId);
+        }
+
+        metrics.put("rowsRead", rows);
+        metrics.put("buckets", (long) pageStarts.size());
+      }
+    };
+  }
+
+  /**
+   * Looks up the message ids of {@link #SERVER_ID_LOOKUPS} server ids spread over the community,
+   * a chunk at a time like {@code LokiMessageDatabase.getMessageIDs} does, which is what a deletion
+   * poll of a busy room amounts to.
+   */
+  private Benchmark resolveServerIds(String name, long threadId, long firstServerId, int messages) {
+    long[] serverIds = new long[SERVER_ID_LOOKUPS];
+    for (int i = 0; i < serverIds.length; i++) {
+      serverIds[i] = firstServerId + (long) i * messages / serverIds.length;
+    }
+
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        for (int start = 0; start < serverIds.length; start += SERVER_ID_CHUNK_SIZE) {
+          int count = Math.min(SERVER_ID_CHUNK_SIZE, serverIds.length - start);
+
+          try (PreparedStatement statement = connection.prepareStatement(DatabaseQueries.getMessageIdsForServerIds(count))) {
+            statement.setLong(1, threadId);
+            for (int i = 0; i < count; i++) {
+              statement.setLong(i + 2, serverIds[start + i]);
+            }
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+              while (resultSet.next()) {
+                resultSet.getLong(1);
+                resultSet.getInt(2);
+              }
+            }
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Applies a poll's worth of reaction changes the way {@code handleOpenGroupReactions} used to:
+   * clearing each message's reactions, then adding every reaction in a transaction of its own,
+   * checking whether the message has reactions and updating its unread reaction state every time.
+   */
+  private Benchmark reactionsPerReaction(String name, long threadId) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        for (MessageReactions message : getReactionPoll(threadId)) {
+          inTransaction(() -> {
+            messageStore.deleteReactions(message.messageId, message.mms);
+            messageStore.updateReactionsUnread(message.messageId, message.mms, messageStore.hasReactions(message.messageId, message.mms));
+          });
+
+          for (int i = 0; i < message.authorIds.length; i++) {
+            int reaction = i;
+            inTransaction(() -> {
+              messageStore.addReaction(message.messageId, message.mms, message.authorIds[reaction], message.emoji[reaction], message.serverId, reaction, 0);
+              messageStore.updateReactionsUnread(message.messageId, message.mms, messageStore.hasReactions(message.messageId, message.mms));
+            });
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Applies the same changes as {@link #reactionsPerReaction} the way {@code ReactionDatabase.setReactions}
+   * does: every message's reactions replaced in one transaction, and its unread reaction state
+   * updated once.
+   */
+  private Benchmark reactionsBatched(String name, long threadId) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        List<MessageReactions> poll = getReactionPoll(threadId);
+
+        inTransaction(() -> {
+          for (MessageReactions message : poll) {
+            messageStore.deleteReactions(message.messageId, message.mms);
+            for (int i = 0; i < message.authorIds.length; i++) {
+              messageStore.addReaction(message.messageId, message.mms, message.authorIds[i], message.emoji[i], message.serverId, i, 0);
+            }
+            messageStore.updateReactionsUnread(message.messageId, message.mms, message.authorIds.length > 0);
+          }
+        });
+      }
+    };
+  }
+
+  /**
+   * {@link #POLL_REACTIONS} reactions spread over the newest {@link #POLL_MESSAGES} messages of the
+   * community, the same ones every time so that each run replaces the reactions the last one set.
+   */
+  private List<MessageReactions> getReactionPoll(long threadId) throws SQLException {
+    if (reactionPoll != null) return reactionPoll;
+
+    List<MessageReactions> messages = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(Queries.NEWEST_SERVER_IDS)) {
+      statement.setLong(1, threadId);
+      statement.setInt(2, POLL_MESSAGES);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          messages.add(new MessageReactions(resultSet.getLong(1), resultSet.getInt(2) == 1, resultSet.getLong(3)));
+        }
+      }
+    }
+
+    if (messages.isEmpty()) return reactionPoll = messages;
+
+    Random random = new Random(POLL_REACTIONS);
+    for (int i = 0; i < messages.size(); i++) {
+      MessageReactions message = messages.get(i);
+      int              count   = POLL_REACTIONS / messages.size() + (i < POLL_REACTIONS % messages.size() ? 1 : 0);
+
+      message.authorIds = new long[count];
+      message.emoji     = new String[count];
+      for (int j = 0; j < count; j++) {
+        message.authorIds[j] = 1 + random.nextInt(summary.recipients);
+        message.emoji[j]     = SyntheticDataset.REACTION_EMOJI[random.nextInt(SyntheticDataset.REACTION_EMOJI.length)];
+      }
+    }
+
+    return reactionPoll = messages;
+  }
+
+  /**
+   * Applies {@link #RECEIPTS} read receipts for the newest outgoing messages of a thread, like
+   * {@code MmsSmsDatabase.incrementReadReceiptCount} does. Without {@code coalesce}, the thread is
+   * updated after every receipt, as it was before; with it, once for all of them, as
+   * {@code ThreadDatabase.scheduleUpdate} does for a burst of receipts.
+   *
+   * The generator stores outgoing messages under the user's own address, so a receipt's message is
+   * matched by its thread rather than by the receipt's author. Receipt counts aren't read by any
+   * other benchmark, so they're left to grow between iterations.
+   */
+  private Benchmark receipts(String name, long threadId, boolean coalesce) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        try (PreparedStatement smsQuery  = connection.prepareStatement(Queries.RECEIPT_SMS_MESSAGES);
+             PreparedStatement mmsQuery  = connection.prepareStatement(Queries.RECEIPT_MMS_MESSAGES);
+             PreparedStatement smsUpdate = connection.prepareStatement(Queries.INCREMENT_SMS_READ_RECEIPTS);
+             PreparedStatement mmsUpdate = connection.prepareStatement(Queries.INCREMENT_MMS_READ_RECEIPTS))
+        {
+          for (long timestamp : getReceiptTimestamps(threadId)) {
+            incrementReceiptCount(smsQuery, smsUpdate, timestamp, threadId, coalesce);
+            incrementReceiptCount(mmsQuery, mmsUpdate, timestamp, threadId, coalesce);
+          }
+        }
+
+        if (coalesce) inTransaction(() -> messageStore.updateThread(threadId));
+      }
+    };
+  }
+
+  private void incrementReceiptCount(PreparedStatement query, PreparedStatement update, long timestamp, long threadId, boolean coalesce) throws SQLException {
+    query.setLong(1, timestamp);
+
+    try (ResultSet resultSet = query.executeQuery()) {
+      while (resultSet.next()) {
+        if ((resultSet.getLong("type") & MessageStore.BASE_TYPE_MASK) != MessageStore.BASE_SENT_TYPE) continue;
+        if (resultSet.getLong("thread_id") != threadId) continue;
+
+        update.setLong(1, resultSet.getLong("_id"));
+        update.executeUpdate();
+
+        if (!coalesce) messageStore.updateThread(threadId);
+      }
+    }
+  }
+
+  private List<Long> getReceiptTimestamps(long threadId) throws SQLException {
+    if (receiptTimestamps != null) return receiptTimestamps;
+
+    List<Long> timestamps = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(Queries.NEWEST_OUTGOING_DATE_SENT)) {
+      statement.setLong(1, threadId);
+      statement.setLong(2, MessageStore.OUTGOING_TYPE);
+      statement.setLong(3, threadId);
+      statement.setLong(4, MessageStore.OUTGOING_TYPE);
+      statement.setInt(5, RECEIPTS);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) timestamps.add(resultSet.getLong(1));
+      }
+    }
+
+    return receiptTimestamps = timestamps;
+  }
+
+  /**
+   * Makes {@link #CONFIG_CHANGES} changes to the contacts config, like approving that many message
+   * requests does. Every change is checked against the config's last update with
+   * {@code ConfigFactory.canPerformChange}, then persisted. Without {@code coalesce}, every change
+   * reads that timestamp from the database and stores the whole dump, as it did before; with it,
+   * the timestamp comes from memory and the dump is stored once, as when the changes fall within one
+   * persist window.
+   *
+   * The dump is made by libsession, which doesn't run here, so the same {@link #CONFIG_DUMP_BYTES}
+   * stand in for every dump; only storing it is timed.
+   */
+  private Benchmark configChanges(String name, boolean coalesce) {
+    byte[] dump = new byte[CONFIG_DUMP_BYTES];
+    random.nextBytes(dump);
+
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        Map<String, Long> lastUpdates = new HashMap<>();
+
+        try (PreparedStatement lastUpdate = connection.prepareStatement(Queries.CONFIG_TIMESTAMP)) {
+          for (int i = 0; i < CONFIG_CHANGES; i++) {
+            long timestamp = ++nextTimestamp;
+            long last;
+
+            if (coalesce) {
+              last = lastUpdates.getOrDefault("CONTACTS", 0L);
+            } else {
+              lastUpdate.setString(1, "CONTACTS");
+              lastUpdate.setString(2, USER_SESSION_ID);
+              try (ResultSet resultSet = lastUpdate.executeQuery()) {
+                last = resultSet.next() ? resultSet.getLong(1) : 0;
+              }
+            }
+
+            if (timestamp < last) throw new IllegalStateException("Change older than the config");
+
+            if (coalesce) lastUpdates.put("CONTACTS", timestamp);
+            else          storeConfig("CONTACTS", USER_SESSION_ID, dump, timestamp);
+          }
+        }
+
+        if (coalesce) storeConfig("CONTACTS", USER_SESSION_ID, dump, lastUpdates.get("CONTACTS"));
+      }
+    };
+  }
+
+  private void storeConfig(String variant, String publicKey, byte[] data, long timestamp) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(Queries.INSERT_CONFIG)) {
+      insert.setString(1, variant);
+      insert.setString(2, publicKey);
+      insert.setBytes(3, data);
+      insert.setLong(4, timestamp);
+      if (insert.executeUpdate() > 0) return;
+    }
+
+    try (PreparedStatement update = connection.prepareStatement(Queries.UPDATE_CONFIG)) {
+      update.setString(1, variant);
+      update.setString(2, publicKey);
+      update.setBytes(3, data);
+      update.setLong(4, timestamp);
+      update.setString(5, variant);
+      update.setString(6, publicKey);
+      update.executeUpdate();
+    }
+  }
+
+  private interface Transaction {
+    void run() throws SQLException;
+  }
+
+  private void inTransaction(Transaction transaction) throws SQLException {
+    connection.setAutoCommit(false);
+    try {
+      transaction.run();
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(true);
+    }
+  }
+
+  private static final class MessageReactions {
+    final long    messageId;
+    final boolean mms;
+    final long    serverId;
+
+    long[]   authorIds;
+    String[] emoji;
+
+    MessageReactions(long messageId, boolean mms, long serverId) {
+      this.messageId = messageId;
+      this.mms       = mms;
+      this.serverId  = serverId;
+    }
+  }
+
+  /**
+   * The rows of a conversation page, held the way a cursor window holds them. Columns are looked up
+   * by name the way Android's {@code AbstractCursor.getColumnIndex} does.
+   */
+  private static final class ConversationRows {
+    private final List<Object[]> rows = new ArrayList<>();
+    private final String[]       columnNames;
+
+    ConversationRows(ResultSet resultSet) throws SQLException {
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      int               count    = metaData.getColumnCount();
+
+      columnNames = new String[count];
+      for (int column = 1; column <= count; column++) {
+        columnNames[column - 1] = metaData.getColumnLabel(column);
+      }
+
+      while (resultSet.next()) {
+        Object[] row = new Object[count];
+        for (int column = 1; column <= count; column++) {
+          row[column - 1] = resultSet.getObject(column);
+        }
+        rows.add(row);
+      }
+    }
+
+    int size() {
+      return rows.size();
+    }
+
+    long getLong(int position, String column) {
+      Object value = rows.get(position)[getColumnIndexOrThrow(column)];
+      return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    String getString(int position, String column) {
+      Object value = rows.get(position)[getColumnIndexOrThrow(column)];
+      return value != null ? value.toString() : null;
+    }
+
+    private int getColumnIndexOrThrow(String column) {
+      for (int i = 0; i < columnNames.length; i++) {
+        if (columnNames[i].equalsIgnoreCase(column)) return i;
+      }
+      throw new IllegalArgumentException("column '" + column + "' does not exist");
+    }
+
+    ConversationRecord read(int position) {
+      return new ConversationRecord(getLong(position, "_id"), getString(position, "transport_type"), getLong(position, "thread_id"),
+                                    getString(position, "address"), getLong(position, "date_sent"), getLong(position, "date_received"),
+                                    getLong(position, "type"), getString(position, "body"), getLong(position, "read") == 1,
+                                    getLong(position, "quote_id"), getString(position, "quote_author"), getString(position, "quote_body"),
+                                    getLong(position, "has_mention") == 1, getLong(position, "reactions_unread") == 1);
+    }
+  }
+
+  private static final class ConversationRecord {
+    final long    id;
+    final String  transport;
+    final long    threadId;
+    final String  address;
+    final long    dateSent;
+    final long    dateReceived;
+    final long    type;
+    final String  body;
+    final boolean read;
+    final long    quoteId;
+    final String  quoteAuthor;
+    final String  quoteBody;
+    final boolean mention;
+    final boolean reactionsUnread;
+
+    ConversationRecord(long id, String transport, long threadId, String address, long dateSent, long dateReceived, long type, String body,
+                       boolean read, long quoteId, String quoteAuthor, String quoteBody, boolean mention, boolean reactionsUnread)
+    {
+      this.id              = id;
+      this.transport       = transport;
+      this.threadId        = threadId;
+      this.address         = address;
+      this.dateSent        = dateSent;
+      this.dateReceived    = dateReceived;
+      this.type            = type;
+      this.body            = body;
+      this.read            = read;
+      this.quoteId         = quoteId;
+      this.quoteAuthor     = quoteAuthor;
+      this.quoteBody       = quoteBody;
+      this.mention         = mention;
+      this.reactionsUnread = reactionsUnread;
+    }
+  }
+
+  /**
+   * Sorts media into buckets the way {@code BucketedThreadMedia} did before the gallery was paged:
+   * today, yesterday, this week and this month, then one bucket for every older month.
+   */
+  private static final class GalleryBuckets {
+    private final long[]                   starts;
+    private final Map<Integer, List<Long>> recent = new HashMap<>();
+    private final Map<Date, List<Long>>    months = new TreeMap<>();
+
+    GalleryBuckets(long now) {
+      starts = new long[] { addToCalendar(now, 1000), addToCalendar(now, -1), addToCalendar(now, -2), addToCalendar(now, -7), addToCalendar(now, -30) };
+    }
+
+    @SuppressWarnings("deprecation")
+    void add(long id, long date) {
+      for (int bucket = 0; bucket < starts.length - 1; bucket++) {
+        if (date > starts[bucket + 1] && date <= starts[bucket]) {
+          recent.computeIfAbsent(bucket, key -> new LinkedList<>()).add(id);
+          return;
+        }
+      }
+
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(date);
+
+      Date month = new Date(calendar.get(Calendar.YEAR) - 1900, calendar.get(Calendar.MONTH), 1);
+      months.computeIfAbsent(month, key -> new LinkedList<>()).add(id);
+    }
+
+    int size() {
+      return recent.size() + months.size();
+    }
+
+    private static long addToCalendar(long now, int days) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(now);
+      calendar.add(Calendar.DAY_OF_YEAR, days);
+      return calendar.getTimeInMillis();
+    }
+  }
+
+  /**
+   * Stores {@code count} incoming messages with their server hashes in one transaction and updates
+   * the thread once, which is what receiving a batch from a poll amounts to.
+   */
+  private Benchmark receive(String name, long threadId, int count) {
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+          for (int i = 0; i < count; i++) {
+            long   timestamp = ++nextTimestamp;
+            String body      = SyntheticDataset.randomWords(random, 1 + random.nextInt(19));
+            long   messageId = messageStore.insertSms(threadId, "05" + Long.toHexString(random.nextLong()), MessageStore.INCOMING_TYPE,
+                                                      timestamp, timestamp, body, false, false);
+            messageStore.setServerHash(messageId, false, Long.toHexString(random.nextLong()));
+          }
+          messageStore.updateThread(threadId);
+          connection.commit();
+        } catch (SQLException e) {
+          connection.rollback();
+          throw e;
+        } finally {
+          connection.setAutoCommit(true);
+        }
+      }
+    };
+  }
+
+  /**
+   * Stores a community DM backlog of {@link #BACKLOG_MESSAGES} messages the user sent from another
+   * device to {@link #BACKLOG_SENDERS} blinded ids, which is what a first poll of a community inbox
+   * and outbox can return. Without {@code batched}, it goes the way the poller used to handle every
+   * message on its own: looking its blinded id up, reading all the contacts and the other servers'
+   * mappings to try to resolve it, storing the mapping again, then storing the message and updating
+   * its thread. With it, it goes the way {@code BatchMessageReceiveJob} and
+   * {@code getOrCreateBlindedIdMappings} handle them now: the blinded ids are looked up together,
+   * the new mappings stored in one transaction, and the messages in another with one update per
+   * thread.
+   *
+   * Checking a blinded id against a Session ID needs libsodium, so it's left out on both sides, and
+   * none of the ids resolve. The old way checked every contact for every message, so it does less
+   * work here than it did on a device. The mappings are cleared before every iteration; the messages
+   * stay, so this runs last. They go to the first {@link #BACKLOG_SENDERS} direct threads.
+   */
+  private Benchmark dmBacklog(String name, boolean batched) {
+    return new MeasuredBenchmark(name) {
+      @Override
+      public void setUp() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+          statement.executeUpdate("DELETE FROM blinded_id_mapping");
+        }
+      }
+
+      @Override
+      public void run() throws SQLException {
+        List<String> blindedIds = getBlindedIds();
+        List<Long>   threadIds  = getBacklogThreadIds();
+        long[]       lookups    = new long[1];
+
+        if (batched) {
+          storeBacklogBatched(blindedIds, threadIds, lookups);
+        } else {
+          for (int i = 0; i < BACKLOG_MESSAGES; i++) {
+            int    sender    = i % blindedIds.size();
+            String blindedId = blindedIds.get(sender);
+
+            lookups[0]++;
+            if (!isBlindedIdResolved(blindedId)) {
+              readAll(Queries.ALL_CONTACTS);
+              readAll(Queries.OTHER_BLINDED_ID_MAPPINGS, COMMUNITY_SERVER);
+              insertBlindedIdMapping(blindedId);
+            }
+
+            long threadId  = threadIds.get(sender % threadIds.size());
+            long timestamp = ++nextTimestamp;
+            messageStore.insertSms(threadId, blindedId, MessageStore.OUTGOING_TYPE, timestamp, timestamp,
+                                   SyntheticDataset.randomWords(random, 1 + random.nextInt(19)), true, false);
+            messageStore.updateThread(threadId);
+          }
+        }
+
+        metrics.put("mappingLookups", lookups[0]);
+      }
+    };
+  }
+
+  private void storeBacklogBatched(List<String> blindedIds, List<Long> threadIds, long[] lookups) throws SQLException {
+    Set<String> mapped = new HashSet<>();
+
+    for (int start = 0; start < blindedIds.size(); start += BLINDED_ID_CHUNK_SIZE) {
+      List<String> chunk = blindedIds.subList(start, Math.min(start + BLINDED_ID_CHUNK_SIZE, blindedIds.size()));
+      lookups[0]++;
+      mapped.addAll(readStrings("SELECT blinded_pk FROM blinded_id_mapping WHERE blinded_pk IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                                chunk.toArray()));
+    }
+
+    // Nothing is resolved, so the contacts and other mappings are needed, but only once
+    readAll(Queries.ALL_CONTACTS);
+    readAll(Queries.OTHER_BLINDED_ID_MAPPINGS, COMMUNITY_SERVER);
+
+    inTransaction(() -> {
+      for (String blindedId : blindedIds) {
+        if (!mapped.contains(blindedId)) insertBlindedIdMapping(blindedId);
+      }
+    });
+
+    inTransaction(() -> {
+      Set<Long> updatedThreads = new LinkedHashSet<>();
+
+      for (int i = 0; i < BACKLOG_MESSAGES; i++) {
+        int  sender    = i % blindedIds.size();
+        long threadId  = threadIds.get(sender % threadIds.size());
+        long timestamp = ++nextTimestamp;
+
+        messageStore.insertSms(threadId, blindedIds.get(sender), MessageStore.OUTGOING_TYPE, timestamp, timestamp,
+                               SyntheticDataset.randomWords(random, 1 + random.nextInt(19)), true, false);
+        updatedThreads.add(threadId);
+      }
+
+      for (long threadId : updatedThreads) {
+        messageStore.updateThread(threadId);
+      }
+    });
+  }
+
+  private boolean isBlindedIdResolved(String blindedId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(Queries.BLINDED_ID_MAPPING)) {
+      statement.setString(1, blindedId);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() && resultSet.getString("session_pk") != null;
+      }
+    }
+  }
+
+  private void insertBlindedIdMapping(String blindedId) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(Queries.INSERT_BLINDED_ID_MAPPING)) {
+      insert.setString(1, blindedId);
+      insert.setString(2, null);
+      insert.setString(3, COMMUNITY_SERVER);
+      insert.setString(4, COMMUNITY_KEY);
+      insert.executeUpdate();
+    }
+  }
+
+  private List<String> getBlindedIds() {
+    if (blindedIds != null) return blindedIds;
+
+    Random       random = new Random(BACKLOG_SENDERS);
+    List<String> ids    = new ArrayList<>(BACKLOG_SENDERS);
+    for (int i = 0; i < BACKLOG_SENDERS; i++) {
+      StringBuilder id = new StringBuilder("15");
+      for (int j = 0; j < 64; j++) {
+        id.append(Character.forDigit(random.nextInt(16), 16));
+      }
+      ids.add(id.toString());
+    }
+
+    return blindedIds = ids;
+  }
+
+  private List<Long> getBacklogThreadIds() throws SQLException {
+    if (backlogThreadIds != null) return backlogThreadIds;
+
+    List<Long> threadIds = new ArrayList<>();
+    for (String threadId : readStrings("SELECT _id FROM thread WHERE type = 0 ORDER BY _id LIMIT ?", BACKLOG_SENDERS)) {
+      threadIds.add(Long.parseLong(threadId));
+    }
+
+    return backlogThreadIds = threadIds;
+  }
+
+  /**
+   * @return the first column of every row.
+   */
+  private List<String> readStrings(String sql, Object... args) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (int i = 0; i < args.length; i++) {
+        statement.setObject(i + 1, args[i]);
+      }
+
+      List<String> values = new ArrayList<>();
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) values.add(resultSet.getString(1));
+      }
+      return values;
+    }
+  }
+}
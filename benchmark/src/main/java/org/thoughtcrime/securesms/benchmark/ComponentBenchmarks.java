@@ -0,0 +1,351 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import org.session.libsession.utilities.RmsAccumulator;
+import org.thoughtcrime.securesms.glide.cache.EncryptedCoderBenchmarks;
+import org.thoughtcrime.securesms.keyboard.emoji.search.EmojiSearchIndex;
+import org.thoughtcrime.securesms.logging.LogLineBatcherBenchmarks;
+import org.thoughtcrime.securesms.util.ImageCompressionBenchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The benchmarks of app code that doesn't need a dataset, each timing the code the app runs now
+ * next to a copy of what it ran before, kept here so that both can still be measured. They run
+ * once after all the datasets.
+ *
+ * Code that only builds for Android isn't covered, as the benchmarks run on a plain JVM: the
+ * community signature verification and the blob store, which log through libsignal's Android
+ * {@code Log}, the preferences snapshot, which reads {@code SharedPreferences}, and the link
+ * preview parser, which {@code LinkPreviewUtil} ties to Android.
+ */
+final class ComponentBenchmarks implements AutoCloseable {
+
+  private static final int AUDIO_SAMPLE_RATE   = 44_100;
+  private static final int AUDIO_CHANNELS      = 2;
+  private static final int AUDIO_SECONDS       = 180;
+  private static final int AUDIO_CHUNK_BYTES   = 8 * 1024;
+  private static final int AUDIO_CHUNKS        = 16;
+  private static final int AUDIO_RESOLUTION    = 4096;
+  private static final int VISUAL_RMS_FRAMES   = 100;
+
+  private static final String   EMOJI_INDEX_ASSET = "/emoji/emoji_search_index.json";
+  private static final Pattern  EMOJI_ENTRY       = Pattern.compile("\\{\"emoji\":\"([^\"]*)\",\"tags\":\\[([^\\]]*)\\]\\}");
+  private static final Pattern  EMOJI_TAG         = Pattern.compile("\"([^\"]*)\"");
+  private static final int      EMOJI_LIMIT       = 20;
+  private static final String[] EMOJI_TYPED       = { "smile", "heart", "thumbs up", "cat face", "flag", "party" };
+
+  private final File       directory;
+  private final long       seed;
+  private final Connection connection;
+
+  ComponentBenchmarks(File directory, long seed) throws SQLException {
+    this.directory  = directory;
+    this.seed       = seed;
+    this.connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+  }
+
+  List<Benchmark> create() throws Exception {
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.addAll(createAudio());
+    benchmarks.addAll(createEmoji());
+    benchmarks.addAll(EncryptedCoderBenchmarks.create(directory, seed));
+    benchmarks.addAll(ImageCompressionBenchmarks.create(seed));
+    benchmarks.addAll(LogLineBatcherBenchmarks.create(seed));
+
+    return benchmarks;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    connection.close();
+  }
+
+  /**
+   * The waveform of a three minute stereo track, fed in the chunks a decoder hands out. The copy of
+   * the old {@code DecodedAudio} keeps every decoded byte and computes the waveform at the end, the
+   * app folds each chunk into a {@link RmsAccumulator} as it comes.
+   */
+  private List<Benchmark> createAudio() {
+    Random   random = new Random(seed);
+    byte[][] chunks = new byte[AUDIO_CHUNKS][AUDIO_CHUNK_BYTES];
+
+    for (byte[] chunk : chunks) {
+      ShortBuffer samples   = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+      int         amplitude = 1000 + random.nextInt(30_000);
+
+      for (int i = 0; i < samples.capacity(); i++) {
+        samples.put(i, (short) (amplitude * Math.sin(i / (double) AUDIO_CHANNELS * 0.05) + random.nextInt(200) - 100));
+      }
+    }
+
+    long totalBytes    = (long) AUDIO_SAMPLE_RATE * AUDIO_SECONDS * AUDIO_CHANNELS * 2;
+    int  chunkCount    = (int) (totalBytes / AUDIO_CHUNK_BYTES);
+    int  expectedCount = chunkCount * AUDIO_CHUNK_BYTES / (2 * AUDIO_CHANNELS);
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new MeasuredBenchmark("audio.rms_whole_track") {
+      @Override
+      public void run() {
+        ByteBuffer decodedBytes = ByteBuffer.allocate(1 << 20);
+
+        for (int i = 0; i < chunkCount; i++) {
+          byte[] chunk = chunks[i % chunks.length];
+
+          if (decodedBytes.remaining() < chunk.length) {
+            // The old code estimated the total from how much of the file had been read, which is
+            // taken to be exact here
+            int position = decodedBytes.position();
+            int newSize  = (int) (totalBytes * 1.2);
+            if (newSize - position < chunk.length + 5 * (1 << 20)) {
+              newSize = position + chunk.length + 5 * (1 << 20);
+            }
+
+            ByteBuffer newDecodedBytes = ByteBuffer.allocate(newSize);
+            decodedBytes.rewind();
+            newDecodedBytes.put(decodedBytes);
+            decodedBytes = newDecodedBytes;
+            decodedBytes.position(position);
+          }
+
+          decodedBytes.put(chunk);
+        }
+
+        int numSamples = decodedBytes.position() / (AUDIO_CHANNELS * 2);
+        decodedBytes.rewind();
+        decodedBytes.order(ByteOrder.LITTLE_ENDIAN);
+
+        calculateWholeTrackRms(decodedBytes.asShortBuffer(), numSamples, AUDIO_CHANNELS, VISUAL_RMS_FRAMES);
+        metrics.put("bufferBytes", (long) decodedBytes.capacity());
+      }
+    });
+
+    benchmarks.add(new MeasuredBenchmark("audio.rms_accumulated") {
+      @Override
+      public void run() {
+        RmsAccumulator accumulator = new RmsAccumulator(expectedCount, AUDIO_RESOLUTION);
+
+        for (int i = 0; i < chunkCount; i++) {
+          accumulator.add(ByteBuffer.wrap(chunks[i % chunks.length]).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), AUDIO_CHANNELS);
+        }
+
+        accumulator.calculateRms(VISUAL_RMS_FRAMES);
+        metrics.put("bufferBytes", (long) AUDIO_RESOLUTION * Double.BYTES);
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * A copy of how {@code DecodedAudio} computed the waveform from the whole decoded track.
+   */
+  private static byte[] calculateWholeTrackRms(ShortBuffer samples, int numSamples, int channels, int maxFrames) {
+    int   numFrames;
+    float frameStep;
+
+    int samplesPerChannel = numSamples / channels;
+    if (samplesPerChannel <= maxFrames) {
+      frameStep = 1f;
+      numFrames = samplesPerChannel;
+    } else {
+      frameStep = numSamples / (float) maxFrames;
+      numFrames = maxFrames;
+    }
+
+    float[] rmsValues       = new float[numFrames];
+    double  squaredFrameSum = 0.0;
+    int     currentFrameIdx = 0;
+
+    for (int sampleIdx = 0; sampleIdx < numSamples * channels; sampleIdx += channels) {
+      int channelSampleIdx = sampleIdx / channels;
+      int frameIdx         = (int) (channelSampleIdx / frameStep);
+
+      if (currentFrameIdx != frameIdx) {
+        rmsValues[currentFrameIdx] = (float) Math.sqrt((float) squaredFrameSum);
+        squaredFrameSum = 0.0;
+        currentFrameIdx = frameIdx;
+      }
+
+      float samplesInCurrentFrame = (float) (Math.ceil((currentFrameIdx + 1) * frameStep) - Math.ceil(currentFrameIdx * frameStep));
+      squaredFrameSum += (samples.get(sampleIdx) * samples.get(sampleIdx)) / samplesInCurrentFrame;
+    }
+    rmsValues[currentFrameIdx] = (float) Math.sqrt((float) squaredFrameSum);
+
+    float maxValue = -Float.MAX_VALUE;
+    float minValue = Float.MAX_VALUE;
+    for (float value : rmsValues) {
+      maxValue = Math.max(maxValue, value);
+      minValue = Math.min(minValue, value);
+    }
+
+    byte[] result = new byte[numFrames];
+    float  span   = maxValue - minValue;
+    for (int i = 0; i < numFrames; i++) {
+      float normalized = span == 0f ? 0f : (rmsValues[i] - minValue) / span;
+      result[i] = (byte) Math.round(255f * normalized - 128f);
+    }
+    return result;
+  }
+
+  /**
+   * Typing a few searches one character at a time into the emoji keyboard, against the labels the
+   * app ships. The old search ran a {@code LIKE} over the fts table for every keystroke and ranked
+   * the rows in memory, the app now asks an {@link EmojiSearchIndex}, which is rebuilt before
+   * every iteration so that no query is answered from what the previous iteration cached.
+   */
+  private List<Benchmark> createEmoji() throws IOException, SQLException {
+    List<EmojiSearchIndex.Entry> entries = readEmojiIndex();
+    List<String>                 queries = new ArrayList<>();
+
+    for (String typed : EMOJI_TYPED) {
+      for (int length = 1; length <= typed.length(); length++) {
+        queries.add(typed.substring(0, length));
+      }
+    }
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE VIRTUAL TABLE emoji_search USING fts5(label, emoji UNINDEXED)");
+    }
+
+    connection.setAutoCommit(false);
+    try (PreparedStatement statement = connection.prepareStatement("INSERT INTO emoji_search (label, emoji) VALUES (?, ?)")) {
+      for (EmojiSearchIndex.Entry entry : entries) {
+        statement.setString(1, entry.getLabel());
+        statement.setString(2, entry.getEmoji());
+        statement.executeUpdate();
+      }
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+    }
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new Benchmark() {
+      @Override
+      public String getName() {
+        return "emoji.like_per_keystroke";
+      }
+
+      @Override
+      public void run() throws SQLException {
+        for (String query : queries) {
+          queryEmojiTable(query, EMOJI_LIMIT);
+        }
+      }
+    });
+
+    benchmarks.add(new Benchmark() {
+      private EmojiSearchIndex index;
+
+      @Override
+      public String getName() {
+        return "emoji.index_per_keystroke";
+      }
+
+      @Override
+      public void setUp() {
+        index = new EmojiSearchIndex(entries);
+      }
+
+      @Override
+      public void run() {
+        for (String query : queries) {
+          index.query(query, EMOJI_LIMIT);
+        }
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * A copy of the old {@code EmojiSearchDatabase.query}.
+   */
+  private List<String> queryEmojiTable(String originalQuery, int originalLimit) throws SQLException {
+    String query = originalQuery.trim();
+    if (query.isEmpty()) return Collections.emptyList();
+
+    List<String[]> entries = new ArrayList<>();
+
+    try (PreparedStatement statement = connection.prepareStatement("SELECT label, emoji FROM emoji_search WHERE label LIKE ? LIMIT " + Math.max(originalLimit, 100))) {
+      statement.setString(1, "%" + query + "%");
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          entries.add(new String[] { resultSet.getString(1), resultSet.getString(2) });
+        }
+      }
+    }
+
+    entries.sort((lhs, rhs) -> similarityScore(query, lhs[0]) - similarityScore(query, rhs[0]));
+
+    Set<String> emoji = new LinkedHashSet<>();
+    for (String[] entry : entries) {
+      if (emoji.size() >= originalLimit) break;
+      emoji.add(entry[1]);
+    }
+    return new ArrayList<>(emoji);
+  }
+
+  private static int similarityScore(String searchTerm, String match) {
+    if (searchTerm.equals(match)) return 0;
+
+    int startIndex  = match.indexOf(searchTerm);
+    int prefixCount = startIndex;
+    int suffixCount = match.length() - (startIndex + searchTerm.length());
+
+    return Math.round(prefixCount * 1.5f + suffixCount * 1f);
+  }
+
+  private static List<EmojiSearchIndex.Entry> readEmojiIndex() throws IOException {
+    String json;
+
+    try (InputStream inputStream = ComponentBenchmarks.class.getResourceAsStream(EMOJI_INDEX_ASSET)) {
+      if (inputStream == null) throw new IOException("Missing " + EMOJI_INDEX_ASSET);
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[]                buffer = new byte[8192];
+      int                   read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      json = new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    List<EmojiSearchIndex.Entry> entries = new ArrayList<>();
+    Matcher                      emoji   = EMOJI_ENTRY.matcher(json);
+
+    while (emoji.find()) {
+      Matcher tag = EMOJI_TAG.matcher(emoji.group(2));
+      while (tag.find()) {
+        entries.add(new EmojiSearchIndex.Entry(tag.group(1), emoji.group(1)));
+      }
+    }
+
+    return entries;
+  }
+}
@@ -0,0 +1,91 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the threads of a synthetic dataset. The first group of threads is the one the
+ * benchmarks target, so profiles list the thread they are about first.
+ */
+final class DatasetSpec {
+
+  enum Kind { DIRECT, GROUP, COMMUNITY }
+
+  static final class Threads {
+    final Kind    kind;
+    final int     count;
+    final int     minMessages;
+    final int     maxMessages;
+    final int     minMembers;
+    final int     maxMembers;
+    /** Whether every message is a photo or a video, rather than mostly text. */
+    final boolean media;
+
+    Threads(Kind kind, int count, int minMessages, int maxMessages, int minMembers, int maxMembers) {
+      this(kind, count, minMessages, maxMessages, minMembers, maxMembers, false);
+    }
+
+    Threads(Kind kind, int count, int minMessages, int maxMessages, int minMembers, int maxMembers, boolean media) {
+      this.kind        = kind;
+      this.count       = count;
+      this.minMessages = minMessages;
+      this.maxMessages = maxMessages;
+      this.minMembers  = minMembers;
+      this.maxMembers  = maxMembers;
+      this.media       = media;
+    }
+  }
+
+  /**
+   * The thread counts and sizes {@code MockDataGenerator} uses in the app.
+   */
+  static final DatasetSpec INBOX = new DatasetSpec("inbox",
+                                                   new Threads(Kind.DIRECT, 1000, 0, 500, 1, 1),
+                                                   new Threads(Kind.GROUP, 50, 0, 500, 1, 10),
+                                                   new Threads(Kind.COMMUNITY, 20, 0, 500, 1, 250));
+
+  static final DatasetSpec CONVERSATION = new DatasetSpec("conversation",
+                                                          new Threads(Kind.DIRECT, 1, 100_000, 100_000, 1, 1),
+                                                          new Threads(Kind.DIRECT, 200, 0, 500, 1, 1));
+
+  static final DatasetSpec GROUP = new DatasetSpec("group",
+                                                   new Threads(Kind.GROUP, 1, 20_000, 20_000, 1000, 1000),
+                                                   new Threads(Kind.DIRECT, 200, 0, 500, 1, 1),
+                                                   new Threads(Kind.GROUP, 20, 0, 500, 1, 10));
+
+  static final DatasetSpec COMMUNITY = new DatasetSpec("community",
+                                                       new Threads(Kind.COMMUNITY, 5, 50_000, 50_000, 2000, 2000),
+                                                       new Threads(Kind.DIRECT, 200, 0, 500, 1, 1));
+
+  /**
+   * Many contacts and groups with few messages, for searching recipients.
+   */
+  static final DatasetSpec CONTACTS = new DatasetSpec("contacts",
+                                                      new Threads(Kind.DIRECT, 5000, 0, 20, 1, 1),
+                                                      new Threads(Kind.GROUP, 500, 0, 20, 1, 10));
+
+  /**
+   * A conversation with 20k photos and videos spread over three years, for the media gallery.
+   */
+  static final DatasetSpec GALLERY = new DatasetSpec("gallery",
+                                                     new Threads(Kind.DIRECT, 1, 20_000, 20_000, 1, 1, true),
+                                                     new Threads(Kind.DIRECT, 200, 0, 500, 1, 1));
+
+  static final List<DatasetSpec> ALL = Collections.unmodifiableList(Arrays.asList(INBOX, CONVERSATION, GROUP, COMMUNITY, CONTACTS, GALLERY));
+
+  final String        name;
+  final List<Threads> threads;
+
+  DatasetSpec(String name, Threads... threads) {
+    this.name    = name;
+    this.threads = Collections.unmodifiableList(Arrays.asList(threads));
+  }
+
+  static DatasetSpec forName(String name) {
+    for (DatasetSpec spec : ALL) {
+      if (spec.name.equals(name)) return spec;
+    }
+    throw new IllegalArgumentException("Unknown dataset: " + name);
+  }
+}
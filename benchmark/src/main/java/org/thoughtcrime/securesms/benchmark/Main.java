@@ -0,0 +1,227 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Builds each dataset in a fresh database file, runs the benchmarks against it, then runs the
+ * {@link ComponentBenchmarks} and writes the results as JSON.
+ *
+ * <pre>
+ * ./gradlew :benchmark:run --args="--datasets=conversation,group --iterations=20"
+ * </pre>
+ *
+ * Options are {@code --datasets} (a comma separated list of inbox, conversation, group,
+ * community, contacts and gallery, all of them by default, or none if it's empty),
+ * {@code --components} (false to skip the component benchmarks), {@code --seed}, {@code --warmup},
+ * {@code --iterations}, {@code --filter} (only run benchmarks whose name starts with it),
+ * {@code --dir} (where the databases go) and {@code --out} (the results file).
+ */
+public final class Main {
+
+  private static final long DEFAULT_SEED       = 1111;
+  private static final int  DEFAULT_WARMUP     = 3;
+  private static final int  DEFAULT_ITERATIONS = 15;
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+
+    List<DatasetSpec> specs      = new ArrayList<>();
+    long              seed       = Long.parseLong(option(options, "seed", String.valueOf(DEFAULT_SEED)));
+    int               warmup     = Integer.parseInt(option(options, "warmup", String.valueOf(DEFAULT_WARMUP)));
+    int               iterations = Integer.parseInt(option(options, "iterations", String.valueOf(DEFAULT_ITERATIONS)));
+    String            filter     = option(options, "filter", "");
+    boolean           components = Boolean.parseBoolean(option(options, "components", "true"));
+    File              directory  = new File(option(options, "dir", "build/benchmark"));
+    String            commit     = getCommit();
+    File              out        = new File(option(options, "out", new File(directory, "results-" + commit + ".json").getPath()));
+
+    if (options.containsKey("datasets")) {
+      for (String name : options.get("datasets").split(",")) {
+        if (!name.trim().isEmpty()) specs.add(DatasetSpec.forName(name.trim()));
+      }
+    } else {
+      specs.addAll(DatasetSpec.ALL);
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Couldn't create " + directory);
+    }
+
+    BenchmarkRunner                   runner        = new BenchmarkRunner(warmup, iterations);
+    List<ResultWriter.DatasetResults> datasets      = new ArrayList<>();
+    String                            sqliteVersion = null;
+
+    for (DatasetSpec spec : specs) {
+      File database = new File(directory, spec.name + "-" + seed + ".db");
+      deleteDatabase(database);
+
+      try (Connection connection = open(database)) {
+        sqliteVersion = queryString(connection, "SELECT sqlite_version()");
+
+        log("Generating the " + spec.name + " dataset");
+        long                     start   = System.nanoTime();
+        SyntheticDataset.Summary summary = SyntheticDataset.generate(connection, spec, seed);
+        long                     millis  = (System.nanoTime() - start) / 1_000_000;
+
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+        log("Generated " + (summary.smsMessages + summary.mmsMessages) + " messages in " + summary.threads + " threads in " + millis + " ms");
+
+        List<BenchmarkResult> results = new ArrayList<>();
+        try (MessageStore messageStore = new MessageStore(connection)) {
+          for (Benchmark benchmark : new Benchmarks(connection, messageStore, summary, seed).create()) {
+            if (!benchmark.getName().startsWith(filter)) continue;
+
+            BenchmarkResult result = runner.run(benchmark);
+            results.add(result);
+            log(spec.name, result);
+          }
+        }
+
+        datasets.add(new ResultWriter.DatasetResults(spec, summary, millis, database.length(), results));
+      }
+    }
+
+    List<BenchmarkResult> componentResults = new ArrayList<>();
+    if (components) {
+      try (ComponentBenchmarks componentBenchmarks = new ComponentBenchmarks(directory, seed)) {
+        log("Running the component benchmarks");
+
+        for (Benchmark benchmark : componentBenchmarks.create()) {
+          if (!benchmark.getName().startsWith(filter)) continue;
+
+          BenchmarkResult result = runner.run(benchmark);
+          componentResults.add(result);
+          log("components", result);
+        }
+      }
+    }
+
+    if (sqliteVersion == null) {
+      try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+        sqliteVersion = queryString(connection, "SELECT sqlite_version()");
+      }
+    }
+
+    Map<String, String> environment = new LinkedHashMap<>();
+    environment.put("commit", commit);
+    environment.put("date", formatDate(new Date()));
+    environment.put("javaVersion", System.getProperty("java.version"));
+    environment.put("javaVm", System.getProperty("java.vm.name"));
+    environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+    environment.put("processors", String.valueOf(Runtime.getRuntime().availableProcessors()));
+    environment.put("sqliteVersion", sqliteVersion);
+
+    try (Writer writer = new OutputStreamWriter(Files.newOutputStream(out.toPath()), StandardCharsets.UTF_8)) {
+      new ResultWriter(writer).write(environment, seed, warmup, iterations, datasets, componentResults);
+    }
+
+    log("Wrote " + out);
+  }
+
+  /**
+   * Opens the database with the settings {@code SQLCipherOpenHelper} uses, minus the encryption.
+   */
+  private static Connection open(File database) throws SQLException {
+    Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA page_size = 4096");
+      statement.execute("PRAGMA cache_size = 10000");
+      statement.execute("PRAGMA journal_mode = WAL");
+      statement.execute("PRAGMA synchronous = NORMAL");
+    }
+
+    return connection;
+  }
+
+  private static void deleteDatabase(File database) throws IOException {
+    for (String suffix : new String[] { "", "-wal", "-shm", "-journal" }) {
+      Files.deleteIfExists(new File(database.getPath() + suffix).toPath());
+    }
+  }
+
+  private static String queryString(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(sql))
+    {
+      return resultSet.next() ? resultSet.getString(1) : null;
+    }
+  }
+
+  private static String getCommit() {
+    try {
+      Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line = reader.readLine();
+        if (process.waitFor() == 0 && line != null && !line.isEmpty()) return line.trim();
+      }
+    } catch (IOException e) {
+      // Not in a git checkout
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return "unknown";
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      int separator = arg.indexOf('=');
+      options.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    return options;
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    String value = options.get(name);
+    return value != null ? value : defaultValue;
+  }
+
+  private static String formatDate(Date date) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(date);
+  }
+
+  private static void log(String group, BenchmarkResult result) {
+    StringBuilder line = new StringBuilder(String.format(Locale.US, "%s/%-36s median %10.3f ms, p90 %10.3f ms, %,d B/op",
+                                                         group, result.name, result.medianNanos / 1e6, result.p90Nanos / 1e6, result.allocatedBytes));
+
+    for (Map.Entry<String, Long> metric : result.metrics.entrySet()) {
+      line.append(String.format(Locale.US, ", %s %,d", metric.getKey(), metric.getValue()));
+    }
+
+    log(line.toString());
+  }
+
+  private static void log(String message) {
+    System.out.println(message);
+  }
+
+  private Main() {}
+}
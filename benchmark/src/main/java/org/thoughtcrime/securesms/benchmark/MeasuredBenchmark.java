@@ -0,0 +1,29 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A benchmark that puts what an iteration amounted to in {@link #metrics}, where the last
+ * iteration leaves it for {@link BenchmarkRunner} to report.
+ */
+public abstract class MeasuredBenchmark implements Benchmark {
+
+  private final String name;
+
+  protected final Map<String, Long> metrics = new LinkedHashMap<>();
+
+  protected MeasuredBenchmark(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Map<String, Long> getMetrics() {
+    return metrics;
+  }
+}
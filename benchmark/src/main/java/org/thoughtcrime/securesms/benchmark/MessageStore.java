@@ -0,0 +1,319 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import org.thoughtcrime.securesms.database.DatabaseQueries;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The statements the app runs to store a message and to keep its thread up to date, as issued by
+ * {@code SmsDatabase}, {@code MmsDatabase}, {@code LokiMessageDatabase} and {@code ThreadDatabase}.
+ * Those the app writes out itself come from {@code DatabaseQueries}; the inserts and updates it makes
+ * through {@code ContentValues} are written out here.
+ * Both the dataset generator and the benchmarks write through this, so the data being benchmarked
+ * went in the way the app would have put it there.
+ */
+final class MessageStore implements AutoCloseable {
+
+  // MmsSmsColumns.Types
+  static final long BASE_TYPE_MASK     = 0x1F;
+  static final long BASE_INBOX_TYPE    = 20;
+  static final long BASE_SENT_TYPE     = 23;
+  static final long SECURE_MESSAGE_BIT = 0x800000;
+  static final long PUSH_MESSAGE_BIT   = 0x200000;
+
+  static final long INCOMING_TYPE = BASE_INBOX_TYPE | SECURE_MESSAGE_BIT | PUSH_MESSAGE_BIT;
+  static final long OUTGOING_TYPE = BASE_SENT_TYPE | SECURE_MESSAGE_BIT | PUSH_MESSAGE_BIT;
+
+  private static final int SMS_TYPE = 0;
+  private static final int MMS_TYPE = 1;
+
+  private final Connection connection;
+
+  private final PreparedStatement insertSms;
+  private final PreparedStatement insertMms;
+  private final PreparedStatement insertAttachment;
+  private final PreparedStatement insertSmsHash;
+  private final PreparedStatement insertMmsHash;
+  private final PreparedStatement insertServerId;
+  private final PreparedStatement insertThreadMapping;
+  private final PreparedStatement insertReaction;
+  private final PreparedStatement deleteReactions;
+  private final PreparedStatement hasSmsReactions;
+  private final PreparedStatement hasMmsReactions;
+  private final PreparedStatement querySms;
+  private final PreparedStatement queryMms;
+  private final PreparedStatement updateSmsReactionsUnread;
+  private final PreparedStatement updateMmsReactionsUnread;
+  private final PreparedStatement conversationCount;
+  private final PreparedStatement conversationSnippet;
+  private final PreparedStatement unreadCount;
+  private final PreparedStatement updateThread;
+
+  MessageStore(Connection connection) throws SQLException {
+    this.connection = connection;
+
+    insertSms = connection.prepareStatement("INSERT INTO sms (thread_id, address, address_device_id, date, date_sent, read, type, body, has_mention) " +
+                                            "VALUES (?, ?, 1, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+    insertMms = connection.prepareStatement("INSERT INTO mms (thread_id, address, address_device_id, date, date_received, read, msg_box, body, part_count, m_type, quote_id, quote_author, quote_body, has_mention) " +
+                                            "VALUES (?, ?, 1, ?, ?, ?, ?, ?, 1, 132, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+
+    insertAttachment = connection.prepareStatement("INSERT INTO part (mid, ct, pending_push, _data, data_size, unique_id, fast_preflight_id, width, height, quote) " +
+                                                   "VALUES (?, ?, 0, ?, ?, ?, ?, ?, ?, 0)");
+
+    insertSmsHash       = connection.prepareStatement("INSERT OR REPLACE INTO loki_sms_hash_database (message_id, server_hash) VALUES (?, ?)");
+    insertMmsHash       = connection.prepareStatement("INSERT OR REPLACE INTO loki_mms_hash_database (message_id, server_hash) VALUES (?, ?)");
+    insertServerId      = connection.prepareStatement(DatabaseQueries.INSERT_SERVER_ID);
+    insertThreadMapping = connection.prepareStatement(DatabaseQueries.INSERT_THREAD_MAPPING);
+    insertReaction      = connection.prepareStatement(DatabaseQueries.INSERT_REACTION);
+
+    deleteReactions          = connection.prepareStatement(DatabaseQueries.DELETE_MESSAGE_REACTIONS);
+    hasSmsReactions          = connection.prepareStatement("SELECT message_id FROM reaction WHERE message_id = ? AND is_mms = 0");
+    hasMmsReactions          = connection.prepareStatement("SELECT message_id FROM reaction WHERE message_id = ? AND is_mms = 1");
+    querySms                 = connection.prepareStatement("SELECT * FROM sms WHERE _id = ?");
+    queryMms                 = connection.prepareStatement("SELECT * FROM mms WHERE _id = ?");
+    updateSmsReactionsUnread = connection.prepareStatement("UPDATE sms SET reactions_unread = 0, notified = CASE WHEN ? THEN 0 ELSE notified END WHERE _id = ?");
+    updateMmsReactionsUnread = connection.prepareStatement("UPDATE mms SET reactions_unread = 0, notified = CASE WHEN ? THEN 0 ELSE notified END WHERE _id = ?");
+
+    conversationCount   = connection.prepareStatement(Queries.CONVERSATION_COUNT);
+    conversationSnippet = connection.prepareStatement(Queries.CONVERSATION_SNIPPET);
+    unreadCount         = connection.prepareStatement(Queries.UNREAD_COUNT);
+    updateThread        = connection.prepareStatement("UPDATE thread SET message_count = ?, snippet = ?, date = ?, snippet_type = ?, read = ?, unread_count = ?, unread_mention_count = ? WHERE _id = ?");
+  }
+
+  long insertSms(long threadId, String address, long type, long dateSent, long dateReceived, String body, boolean read, boolean mention) throws SQLException {
+    insertSms.setLong(1, threadId);
+    insertSms.setString(2, address);
+    insertSms.setLong(3, dateReceived);
+    insertSms.setLong(4, dateSent);
+    insertSms.setInt(5, read ? 1 : 0);
+    insertSms.setLong(6, type);
+    insertSms.setString(7, body);
+    insertSms.setInt(8, mention ? 1 : 0);
+    insertSms.executeUpdate();
+    return generatedKey(insertSms);
+  }
+
+  long insertMms(long threadId, String address, long type, long dateSent, long dateReceived, String body, boolean read, boolean mention,
+                 long quoteId, String quoteAuthor, String quoteBody) throws SQLException
+  {
+    insertMms.setLong(1, threadId);
+    insertMms.setString(2, address);
+    insertMms.setLong(3, dateSent);
+    insertMms.setLong(4, dateReceived);
+    insertMms.setInt(5, read ? 1 : 0);
+    insertMms.setLong(6, type);
+    insertMms.setString(7, body);
+    insertMms.setLong(8, quoteId);
+    insertMms.setString(9, quoteAuthor);
+    insertMms.setString(10, quoteBody);
+    insertMms.setInt(11, mention ? 1 : 0);
+    insertMms.executeUpdate();
+    return generatedKey(insertMms);
+  }
+
+  /**
+   * {@code AttachmentDatabase.insertAttachment}, for an attachment that has been downloaded to
+   * {@code file}.
+   */
+  void insertAttachment(long mmsId, String contentType, String file, long size, long uniqueId, int width, int height) throws SQLException {
+    insertAttachment.setLong(1, mmsId);
+    insertAttachment.setString(2, contentType);
+    insertAttachment.setString(3, "/data/parts/" + file + ".mms");
+    insertAttachment.setLong(4, size);
+    insertAttachment.setLong(5, uniqueId);
+    insertAttachment.setString(6, String.valueOf(uniqueId));
+    insertAttachment.setInt(7, width);
+    insertAttachment.setInt(8, height);
+    insertAttachment.executeUpdate();
+  }
+
+  /**
+   * {@code LokiMessageDatabase.setMessageServerHash}, for messages received from a swarm.
+   */
+  void setServerHash(long messageId, boolean mms, String serverHash) throws SQLException {
+    PreparedStatement statement = mms ? insertMmsHash : insertSmsHash;
+    statement.setLong(1, messageId);
+    statement.setString(2, serverHash);
+    statement.executeUpdate();
+  }
+
+  /**
+   * {@code LokiMessageDatabase.setServerID} and {@code setOriginalThreadID}, for messages received
+   * from a community.
+   */
+  void setServerId(long messageId, boolean mms, long serverId, long threadId) throws SQLException {
+    insertServerId.setLong(1, messageId);
+    insertServerId.setLong(2, serverId);
+    insertServerId.setInt(3, mms ? MMS_TYPE : SMS_TYPE);
+    insertServerId.executeUpdate();
+
+    insertThreadMapping.setLong(1, messageId);
+    insertThreadMapping.setLong(2, serverId);
+    insertThreadMapping.setLong(3, threadId);
+    insertThreadMapping.executeUpdate();
+  }
+
+  void addReaction(long messageId, boolean mms, long authorId, String emoji, long serverId, long sortId, long date) throws SQLException {
+    insertReaction.setLong(1, messageId);
+    insertReaction.setInt(2, mms ? 1 : 0);
+    insertReaction.setString(3, emoji);
+    insertReaction.setLong(4, authorId);
+    insertReaction.setString(5, String.valueOf(serverId));
+    insertReaction.setInt(6, 1);
+    insertReaction.setLong(7, sortId);
+    insertReaction.setLong(8, date);
+    insertReaction.setLong(9, date);
+    insertReaction.executeUpdate();
+  }
+
+  /**
+   * {@code ReactionDatabase.deleteMessageReactions}.
+   */
+  void deleteReactions(long messageId, boolean mms) throws SQLException {
+    deleteReactions.setLong(1, messageId);
+    deleteReactions.setInt(2, mms ? 1 : 0);
+    deleteReactions.executeUpdate();
+  }
+
+  /**
+   * {@code ReactionDatabase.hasReactions}.
+   */
+  boolean hasReactions(long messageId, boolean mms) throws SQLException {
+    PreparedStatement statement = mms ? hasMmsReactions : hasSmsReactions;
+    statement.setLong(1, messageId);
+    try (ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next();
+    }
+  }
+
+  /**
+   * {@code MessagingDatabase.updateReactionsUnread}, for reactions that don't notify, as those from a
+   * community poll: reads the message, clears its unread reactions and, if it is outgoing and has
+   * reactions, its notified flag.
+   */
+  void updateReactionsUnread(long messageId, boolean mms, boolean hasReactions) throws SQLException {
+    PreparedStatement query  = mms ? queryMms : querySms;
+    PreparedStatement update = mms ? updateMmsReactionsUnread : updateSmsReactionsUnread;
+    boolean           outgoing;
+
+    query.setLong(1, messageId);
+    try (ResultSet resultSet = query.executeQuery()) {
+      if (!resultSet.next()) return;
+      outgoing = (resultSet.getLong(mms ? "msg_box" : "type") & BASE_TYPE_MASK) == BASE_SENT_TYPE;
+    }
+
+    update.setBoolean(1, outgoing && hasReactions);
+    update.setLong(2, messageId);
+    update.executeUpdate();
+  }
+
+  /**
+   * {@code ThreadDatabase.update}: counts the messages of the thread and copies the newest one into
+   * its snippet.
+   */
+  void updateThread(long threadId) throws SQLException {
+    long count = queryLong(conversationCount, threadId, threadId);
+
+    String snippet = null;
+    long   date    = 0;
+    long   type    = 0;
+
+    conversationSnippet.setLong(1, threadId);
+    conversationSnippet.setLong(2, threadId);
+    try (ResultSet resultSet = conversationSnippet.executeQuery()) {
+      if (resultSet.next()) {
+        snippet = resultSet.getString("body");
+        date    = resultSet.getLong("date_sent");
+        type    = resultSet.getLong("type");
+      }
+    }
+
+    long unread        = 0;
+    long unreadMention = 0;
+
+    unreadCount.setLong(1, threadId);
+    unreadCount.setLong(2, threadId);
+    try (ResultSet resultSet = unreadCount.executeQuery()) {
+      if (resultSet.next()) {
+        unread        = resultSet.getLong(1);
+        unreadMention = resultSet.getLong(2);
+      }
+    }
+
+    updateThread.setLong(1, count);
+    updateThread.setString(2, snippet);
+    updateThread.setLong(3, date);
+    updateThread.setLong(4, type);
+    updateThread.setInt(5, unread == 0 ? 1 : 0);
+    updateThread.setLong(6, unread);
+    updateThread.setLong(7, unreadMention);
+    updateThread.setLong(8, threadId);
+    updateThread.executeUpdate();
+  }
+
+  /**
+   * {@code ThreadDatabase.trimThread}: deletes all but the newest {@code length} messages.
+   *
+   * @return the number of deleted messages.
+   */
+  int trimThread(long threadId, int length) throws SQLException {
+    long cutoff = -1;
+    try (PreparedStatement trimCutoffDate = connection.prepareStatement(DatabaseQueries.getTrimCutoffDate(length))) {
+      trimCutoffDate.setLong(1, threadId);
+      trimCutoffDate.setLong(2, threadId);
+
+      try (ResultSet resultSet = trimCutoffDate.executeQuery()) {
+        // A second row means the thread has more than `length` messages
+        if (resultSet.next()) {
+          long date = resultSet.getLong(1);
+          if (resultSet.next()) cutoff = date;
+        }
+      }
+    }
+
+    if (cutoff == -1) return 0;
+
+    int deleted = delete("sms", DatabaseQueries.getSmsTrimSelection(cutoff), threadId) +
+                  delete("mms", DatabaseQueries.getMmsTrimSelection(cutoff), threadId);
+
+    if (deleted > 0) updateThread(threadId);
+    return deleted;
+  }
+
+  private int delete(String table, String selection, long threadId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE " + selection)) {
+      statement.setLong(1, threadId);
+      return statement.executeUpdate();
+    }
+  }
+
+  private static long generatedKey(PreparedStatement statement) throws SQLException {
+    try (ResultSet keys = statement.getGeneratedKeys()) {
+      if (!keys.next()) throw new SQLException("No row id");
+      return keys.getLong(1);
+    }
+  }
+
+  private static long queryLong(PreparedStatement statement, long... args) throws SQLException {
+    for (int i = 0; i < args.length; i++) {
+      statement.setLong(i + 1, args[i]);
+    }
+    try (ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() ? resultSet.getLong(1) : 0;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    PreparedStatement[] statements = { insertSms, insertMms, insertAttachment, insertSmsHash, insertMmsHash, insertServerId, insertThreadMapping, insertReaction,
+                                       deleteReactions, hasSmsReactions, hasMmsReactions, querySms, queryMms,
+                                       updateSmsReactionsUnread, updateMmsReactionsUnread, conversationCount, conversationSnippet, unreadCount, updateThread };
+    for (PreparedStatement statement : statements) {
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package org.thoughtcrime.securesms.benchmark;
+
+/**
+ * The statements the benchmarks time that the app's database classes build through
+ * {@code SQLiteDatabase.query} and friends, written out the way those put them together, and
+ * copies of the queries that later changes replaced, to time them next to what replaced them. The
+ * ones the app writes out itself are used as they are from {@code DatabaseQueries}.
+ */
+final class Queries {
+
+  /** {@code MmsSmsDatabase.getConversationCount}. */
+  static final String CONVERSATION_COUNT =
+      "SELECT (SELECT COUNT(*) FROM sms WHERE thread_id = ?) + (SELECT COUNT(*) FROM mms WHERE thread_id = ?)";
+
+  /** The first row of {@code MmsSmsDatabase.getConversationSnippet}. */
+  static final String CONVERSATION_SNIPPET =
+      "SELECT body, date_sent, type FROM (" +
+      "SELECT body, date_sent, type FROM sms WHERE thread_id = ? " +
+      "UNION ALL " +
+      "SELECT body, date AS date_sent, msg_box AS type FROM mms WHERE thread_id = ?" +
+      ") ORDER BY date_sent DESC LIMIT 1";
+
+  /** The unread and unread mention counts {@code ThreadDatabase} keeps on the thread. */
+  static final String UNREAD_COUNT =
+      "SELECT SUM(unread), SUM(mention) FROM (" +
+      "SELECT COUNT(*) AS unread, SUM(has_mention) AS mention FROM sms WHERE thread_id = ? AND read = 0 " +
+      "UNION ALL " +
+      "SELECT COUNT(*) AS unread, SUM(has_mention) AS mention FROM mms WHERE thread_id = ? AND read = 0)";
+
+  /** {@code ThreadDatabase.getConversationList}. */
+  static final String THREAD_LIST =
+      "SELECT thread.*, recipient_preferences.*, groups.* FROM thread " +
+      "LEFT OUTER JOIN recipient_preferences ON thread.recipient_ids = recipient_preferences.recipient_ids " +
+      "LEFT OUTER JOIN groups ON thread.recipient_ids = groups.group_id " +
+      "WHERE (message_count != 0 OR groups.group_id LIKE '__loki_public_chat_group__!%') AND archived = 0 " +
+      "ORDER BY thread.is_pinned DESC, thread.date DESC";
+
+  /**
+   * A page of {@code MmsSmsDatabase.getConversation}, newest first, as the conversation screen reads
+   * it. Bind the thread twice, then the limit and the offset.
+   */
+  static final String CONVERSATION_PAGE =
+      "SELECT * FROM (" +
+      "SELECT _id, 'SMS' AS transport_type, thread_id, address, date_sent, date AS date_received, type, body, read, " +
+      "NULL AS quote_id, NULL AS quote_author, NULL AS quote_body, has_mention, reactions_unread FROM sms WHERE thread_id = ? " +
+      "UNION ALL " +
+      "SELECT _id, 'MMS' AS transport_type, thread_id, address, date AS date_sent, date_received, msg_box AS type, body, read, " +
+      "quote_id, quote_author, quote_body, has_mention, reactions_unread FROM mms WHERE thread_id = ?" +
+      ") ORDER BY date_sent DESC LIMIT ? OFFSET ?";
+
+  /**
+   * The message id, type and server id of the newest messages of a community. Bind the thread, then
+   * the limit.
+   */
+  static final String NEWEST_SERVER_IDS =
+      "SELECT loki_message_thread_mapping_database.message_id, loki_message_friend_request_database.message_type, loki_message_thread_mapping_database.server_id " +
+      "FROM loki_message_thread_mapping_database " +
+      "JOIN loki_message_friend_request_database ON loki_message_friend_request_database.message_id = loki_message_thread_mapping_database.message_id " +
+      "WHERE loki_message_thread_mapping_database.thread_id = ? " +
+      "ORDER BY loki_message_thread_mapping_database.server_id DESC LIMIT ?";
+
+  /**
+   * What {@code MmsSmsDatabase.getUnread} returned for every unread message before notifications
+   * were built from {@code DatabaseQueries.getUnreadKeys}: the conversation projection, oldest first.
+   */
+  static final String UNREAD_RECORDS =
+      "SELECT * FROM (" +
+      "SELECT _id, 'SMS' AS transport_type, thread_id, address, date_sent, date AS date_received, type, body, read, " +
+      "NULL AS quote_id, NULL AS quote_author, NULL AS quote_body, has_mention, reactions_unread FROM sms WHERE (read = 0 OR reactions_unread = 1) AND notified = 0 " +
+      "UNION ALL " +
+      "SELECT _id, 'MMS' AS transport_type, thread_id, address, date AS date_sent, date_received, msg_box AS type, body, read, " +
+      "quote_id, quote_author, quote_body, has_mention, reactions_unread FROM mms WHERE (read = 0 OR reactions_unread = 1) AND notified = 0" +
+      ") ORDER BY date_sent ASC";
+
+  /**
+   * {@code SmsDatabase.incrementReceiptCount} and {@code MmsDatabase.incrementReceiptCount}: the
+   * messages a receipt is for. Bind the timestamp.
+   */
+  static final String RECEIPT_SMS_MESSAGES        = "SELECT _id, thread_id, address, type FROM sms WHERE date_sent = ?";
+  static final String RECEIPT_MMS_MESSAGES        = "SELECT _id, thread_id, msg_box AS type, address FROM mms WHERE date = ?";
+  static final String INCREMENT_SMS_READ_RECEIPTS = "UPDATE sms SET read_receipt_count = read_receipt_count + 1 WHERE _id = ?";
+  static final String INCREMENT_MMS_READ_RECEIPTS = "UPDATE mms SET read_receipt_count = read_receipt_count + 1 WHERE _id = ?";
+
+  /** The sent times of the newest outgoing messages of a thread. Bind the thread, the type twice, then the limit. */
+  static final String NEWEST_OUTGOING_DATE_SENT =
+      "SELECT date_sent FROM sms WHERE thread_id = ? AND type = ? " +
+      "UNION ALL " +
+      "SELECT date FROM mms WHERE thread_id = ? AND msg_box = ? " +
+      "ORDER BY date_sent DESC LIMIT ?";
+
+  /** {@code RecipientDatabase.getRecipientSettings} for a single address. */
+  static final String RECIPIENT_SETTINGS = "SELECT * FROM recipient_preferences WHERE recipient_ids = ?";
+
+  /**
+   * The searches {@code SearchRepository} ran for every query before contacts and groups shared an
+   * FTS index: {@code SessionContactDatabase.queryContactsByName}, bound to the query within % twice,
+   * {@code ThreadDatabase.searchConversationAddresses}, bound to the query followed by %, and
+   * {@code GroupDatabase.getGroupsFilteredByTitle}, bound to the query within %.
+   */
+  static final String CONTACTS_BY_NAME = "SELECT * FROM session_contact_database WHERE name LIKE ? OR nickname LIKE ?";
+  static final String THREADS_BY_ADDRESS =
+      "SELECT thread.*, recipient_preferences.*, groups.* FROM thread " +
+      "LEFT OUTER JOIN recipient_preferences ON thread.recipient_ids = recipient_preferences.recipient_ids " +
+      "LEFT OUTER JOIN groups ON thread.recipient_ids = groups.group_id " +
+      "WHERE thread.recipient_ids LIKE ? AND thread.message_count != 0 " +
+      "ORDER BY thread.is_pinned DESC, thread.date DESC";
+  static final String GROUPS_BY_TITLE = "SELECT * FROM groups WHERE title LIKE ?";
+
+  /**
+   * {@code SearchDatabase.queryMessages} before it returned pages: every match joined to its message
+   * and thread, with a snippet, then sorted, up to the limit. Bind the query twice, then the limit.
+   */
+  static final String UNPAGED_MESSAGES =
+      "SELECT thread.recipient_ids AS conversation_address, address AS message_address, snippet(sms_fts, -1, '', '', '...', 7) AS snippet, " +
+      "sms.date_sent AS date_sent, sms_fts.thread_id " +
+      "FROM sms INNER JOIN sms_fts ON sms_fts.rowid = sms._id INNER JOIN thread ON sms_fts.thread_id = thread._id " +
+      "WHERE sms_fts MATCH ? " +
+      "UNION ALL " +
+      "SELECT thread.recipient_ids AS conversation_address, address AS message_address, snippet(mms_fts, -1, '', '', '...', 7) AS snippet, " +
+      "mms.date AS date_sent, mms_fts.thread_id " +
+      "FROM mms INNER JOIN mms_fts ON mms_fts.rowid = mms._id INNER JOIN thread ON mms_fts.thread_id = thread._id " +
+      "WHERE mms_fts MATCH ? " +
+      "ORDER BY date_sent DESC " +
+      "LIMIT ?";
+
+  /**
+   * {@code SearchDatabase.queryMessages} for a thread before it returned pages. Bind the query and
+   * the thread, twice.
+   */
+  static final String UNPAGED_THREAD_MESSAGES =
+      "SELECT thread.recipient_ids AS conversation_address, address AS message_address, snippet(sms_fts, -1, '', '', '...', 7) AS snippet, " +
+      "sms.date_sent AS date_sent, sms_fts.thread_id " +
+      "FROM sms INNER JOIN sms_fts ON sms_fts.rowid = sms._id INNER JOIN thread ON sms_fts.thread_id = thread._id " +
+      "WHERE sms_fts MATCH ? AND sms.thread_id = ? " +
+      "UNION ALL " +
+      "SELECT thread.recipient_ids AS conversation_address, address AS message_address, snippet(mms_fts, -1, '', '', '...', 7) AS snippet, " +
+      "mms.date AS date_sent, mms_fts.thread_id " +
+      "FROM mms INNER JOIN mms_fts ON mms_fts.rowid = mms._id INNER JOIN thread ON mms_fts.thread_id = thread._id " +
+      "WHERE mms_fts MATCH ? AND mms.thread_id = ? " +
+      "ORDER BY date_sent DESC " +
+      "LIMIT 500";
+
+  /**
+   * {@code ConfigDatabase.storeConfig}, through {@code insertOrUpdate}: the insert is ignored if the
+   * config is already stored, and then it's updated. Bind the variant, public key, data and timestamp
+   * to both, and the variant and public key again to the update.
+   */
+  static final String INSERT_CONFIG = "INSERT OR IGNORE INTO configs_table (variant, publicKey, data, timestamp) VALUES (?, ?, ?, ?)";
+  static final String UPDATE_CONFIG = "UPDATE configs_table SET variant = ?, publicKey = ?, data = ?, timestamp = ? WHERE variant = ? AND publicKey = ?";
+
+  /** {@code ConfigDatabase.retrieveConfigLastUpdateTimestamp}. */
+  static final String CONFIG_TIMESTAMP = "SELECT timestamp FROM configs_table WHERE variant = ? AND publicKey = ?";
+
+  /** {@code BlindedIdMappingDatabase.getBlindedIdMapping}. */
+  static final String BLINDED_ID_MAPPING = "SELECT * FROM blinded_id_mapping WHERE blinded_pk = ?";
+
+  /** {@code BlindedIdMappingDatabase.getBlindedIdMappingsExceptFor}. */
+  static final String OTHER_BLINDED_ID_MAPPINGS = "SELECT * FROM blinded_id_mapping WHERE session_pk IS NOT NULL AND server_url <> ?";
+
+  /** {@code BlindedIdMappingDatabase.addBlindedIdMappings}, for each mapping. */
+  static final String INSERT_BLINDED_ID_MAPPING = "INSERT INTO blinded_id_mapping (blinded_pk, session_pk, server_url, server_pk) VALUES (?, ?, ?, ?)";
+
+  /** {@code SessionContactDatabase.getAllContacts}. */
+  static final String ALL_CONTACTS = "SELECT * FROM session_contact_database";
+
+  private Queries() {}
+}
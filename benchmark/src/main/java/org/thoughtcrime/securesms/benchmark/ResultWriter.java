@@ -0,0 +1,139 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the results of a run as JSON, one object per dataset and then the component benchmarks
+ * that don't use one, so that runs on different commits can be compared with a script. Field names and units are part of that contract; add fields
+ * rather than renaming them.
+ */
+final class ResultWriter {
+
+  static final int FORMAT_VERSION = 1;
+
+  static final class DatasetResults {
+    final DatasetSpec              spec;
+    final SyntheticDataset.Summary summary;
+    final long                     generationMillis;
+    final long                     databaseBytes;
+    final List<BenchmarkResult>    results;
+
+    DatasetResults(DatasetSpec spec, SyntheticDataset.Summary summary, long generationMillis, long databaseBytes, List<BenchmarkResult> results) {
+      this.spec             = spec;
+      this.summary          = summary;
+      this.generationMillis = generationMillis;
+      this.databaseBytes    = databaseBytes;
+      this.results          = results;
+    }
+  }
+
+  private final Writer writer;
+
+  ResultWriter(Writer writer) {
+    this.writer = writer;
+  }
+
+  void write(Map<String, String> environment, long seed, int warmupIterations, int iterations, List<DatasetResults> datasets, List<BenchmarkResult> components)
+      throws IOException
+  {
+    writer.write("{\n");
+    writer.write("  \"format\": " + FORMAT_VERSION + ",\n");
+
+    for (Map.Entry<String, String> entry : environment.entrySet()) {
+      writer.write("  " + string(entry.getKey()) + ": " + string(entry.getValue()) + ",\n");
+    }
+
+    writer.write("  \"seed\": " + seed + ",\n");
+    writer.write("  \"warmupIterations\": " + warmupIterations + ",\n");
+    writer.write("  \"iterations\": " + iterations + ",\n");
+    writer.write("  \"datasets\": [");
+
+    for (int i = 0; i < datasets.size(); i++) {
+      DatasetResults dataset = datasets.get(i);
+      SyntheticDataset.Summary summary = dataset.summary;
+
+      writer.write(i == 0 ? "\n" : ",\n");
+      writer.write("    {\n");
+      writer.write("      \"name\": " + string(dataset.spec.name) + ",\n");
+      writer.write("      \"threads\": " + summary.threads + ",\n");
+      writer.write("      \"recipients\": " + summary.recipients + ",\n");
+      writer.write("      \"smsMessages\": " + summary.smsMessages + ",\n");
+      writer.write("      \"mmsMessages\": " + summary.mmsMessages + ",\n");
+      writer.write("      \"reactions\": " + summary.reactions + ",\n");
+      writer.write("      \"targetThreadMessages\": " + summary.targetMessages + ",\n");
+      writer.write("      \"generationMillis\": " + dataset.generationMillis + ",\n");
+      writer.write("      \"databaseBytes\": " + dataset.databaseBytes + ",\n");
+      writer.write("      \"benchmarks\": [");
+
+      writeResults(dataset.results, "        ");
+      writer.write("\n      ]\n");
+      writer.write("    }");
+    }
+
+    writer.write("\n  ],\n");
+    writer.write("  \"components\": [");
+    writeResults(components, "    ");
+    writer.write("\n  ]\n");
+    writer.write("}\n");
+    writer.flush();
+  }
+
+  /**
+   * One line per result. Metrics are only written for the benchmarks that have any.
+   */
+  private void writeResults(List<BenchmarkResult> results, String indent) throws IOException {
+    for (int i = 0; i < results.size(); i++) {
+      BenchmarkResult result = results.get(i);
+
+      writer.write(i == 0 ? "\n" : ",\n");
+      writer.write(indent + "{" +
+                   "\"name\": " + string(result.name) + ", " +
+                   "\"iterations\": " + result.iterations + ", " +
+                   "\"minNanos\": " + result.minNanos + ", " +
+                   "\"medianNanos\": " + result.medianNanos + ", " +
+                   "\"p90Nanos\": " + result.p90Nanos + ", " +
+                   "\"maxNanos\": " + result.maxNanos + ", " +
+                   "\"meanNanos\": " + result.meanNanos + ", " +
+                   "\"allocatedBytes\": " + result.allocatedBytes + ", " +
+                   "\"gcCount\": " + result.gcCount + ", " +
+                   "\"gcMillis\": " + result.gcMillis);
+
+      if (!result.metrics.isEmpty()) {
+        writer.write(", \"metrics\": {");
+
+        String separator = "";
+        for (Map.Entry<String, Long> metric : result.metrics.entrySet()) {
+          writer.write(separator + string(metric.getKey()) + ": " + metric.getValue());
+          separator = ", ";
+        }
+
+        writer.write("}");
+      }
+
+      writer.write("}");
+    }
+  }
+
+  static String string(String value) {
+    if (value == null) return "null";
+
+    StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':  builder.append("\\\""); break;
+        case '\\': builder.append("\\\\"); break;
+        case '\n': builder.append("\\n");  break;
+        case '\r': builder.append("\\r");  break;
+        case '\t': builder.append("\\t");  break;
+        default:
+          if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+          else          builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
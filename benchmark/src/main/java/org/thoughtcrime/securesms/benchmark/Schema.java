@@ -0,0 +1,67 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import org.thoughtcrime.securesms.database.DatabaseSchema.Attachments;
+import org.thoughtcrime.securesms.database.DatabaseSchema.BlindedIdMappings;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Configs;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Groups;
+import org.thoughtcrime.securesms.database.DatabaseSchema.LokiMessages;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Mms;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Reactions;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Recipients;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Search;
+import org.thoughtcrime.securesms.database.DatabaseSchema.SessionContacts;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Sms;
+import org.thoughtcrime.securesms.database.DatabaseSchema.Threads;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The tables, indexes and triggers of the app's database that the benchmarks touch, created from
+ * the app's own statements in the order {@code SQLCipherOpenHelper.onCreate} runs them.
+ */
+final class Schema {
+
+  private static final String[][] CREATE = {
+      { Sms.CREATE_TABLE, Mms.CREATE_TABLE, Attachments.CREATE_TABLE, Threads.CREATE_TABLE, Groups.CREATE_TABLE, Recipients.CREATE_TABLE },
+      Search.CREATE_TABLE,
+      { LokiMessages.CREATE_MESSAGE_ID_TABLE_COMMAND, LokiMessages.CREATE_MESSAGE_TO_THREAD_MAPPING_TABLE_COMMAND,
+        LokiMessages.CREATE_ERROR_MESSAGE_TABLE_COMMAND, LokiMessages.CREATE_MESSAGE_HASH_TABLE_COMMAND,
+        LokiMessages.CREATE_SMS_HASH_TABLE_COMMAND, LokiMessages.CREATE_MMS_HASH_TABLE_COMMAND,
+        LokiMessages.UPDATE_MESSAGE_ID_TABLE_FOR_TYPE, LokiMessages.UPDATE_MESSAGE_MAPPING_TABLE,
+        LokiMessages.CREATE_THREAD_SERVER_ID_INDEX_COMMAND },
+      { SessionContacts.CREATE_TABLE },
+      { Recipients.CREATE_NOTIFICATION_TYPE_COMMAND, Threads.CREATE_PINNED_COMMAND, Groups.CREATE_UPDATED_TIMESTAMP_COMMAND,
+        Recipients.CREATE_APPROVED_COMMAND, Recipients.CREATE_APPROVED_ME_COMMAND, Recipients.CREATE_DISAPPEARING_STATE_COMMAND,
+        Mms.CREATE_MESSAGE_REQUEST_RESPONSE_COMMAND, Mms.CREATE_REACTIONS_UNREAD_COMMAND, Sms.CREATE_REACTIONS_UNREAD_COMMAND,
+        Mms.CREATE_REACTIONS_LAST_SEEN_COMMAND, BlindedIdMappings.CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND,
+        Reactions.CREATE_REACTION_TABLE_COMMAND, Threads.CREATE_UNREAD_MENTION_COUNT_COMMAND,
+        Sms.CREATE_HAS_MENTION_COMMAND, Mms.CREATE_HAS_MENTION_COMMAND, Configs.CREATE_CONFIG_TABLE_COMMAND },
+      Sms.CREATE_INDEXS,
+      Mms.CREATE_INDEXS,
+      Attachments.CREATE_INDEXS,
+      Threads.CREATE_INDEXES,
+      Groups.CREATE_INDEXS,
+      Reactions.CREATE_INDEXS,
+      Reactions.CREATE_REACTION_TRIGGERS,
+      { Recipients.ADD_WRAPPER_HASH, Recipients.ADD_BLOCKS_COMMUNITY_MESSAGE_REQUESTS },
+      Search.CREATE_RECIPIENT_TABLE
+  };
+
+  private Schema() {}
+
+  /**
+   * Like {@code SQLiteDatabase.execSQL}, {@link Statement#execute} only runs the first statement of
+   * a string, which the Loki migrations rely on.
+   */
+  static void create(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      for (String[] statements : CREATE) {
+        for (String sql : statements) {
+          statement.execute(sql);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills a database with threads, contacts, groups and communities along the lines of
+ * {@code MockDataGenerator}: lorem ipsum messages of 1 to 19 words sent five seconds apart, about
+ * half of them incoming. The same spec and seed always produce the same rows, so results can be
+ * compared between commits. Unlike the app's generator, everything is written in large
+ * transactions, which makes the 100k message datasets take seconds rather than hours.
+ */
+final class SyntheticDataset {
+
+  /** A fixed "now", so that the generated dates don't depend on when the dataset was built. */
+  static final long NOW = 1_700_000_000_000L;
+
+  static final String[] REACTION_EMOJI = { "\uD83D\uDC4D", "\u2764\uFE0F", "\uD83D\uDE02", "\uD83D\uDE2E", "\uD83D\uDE22", "\uD83D\uDE21" };
+
+  private static final long   MESSAGE_INTERVAL = 5000;
+  // Photos are sent less often than texts, which spreads 20k of them over about three years
+  private static final long   MEDIA_INTERVAL   = 80 * 60 * 1000;
+  private static final int    CHUNK_SIZE       = 1000;
+  private static final String USER_SESSION_ID  = "05" + repeat("0", 64);
+
+  static final String[] WORDS = { "alias", "consequatur", "aut", "perferendis", "sit", "voluptatem", "accusantium", "doloremque", "aperiam", "eaque", "ipsa", "quae", "ab", "illo", "inventore", "veritatis", "et", "quasi", "architecto", "beatae", "vitae", "dicta", "sunt", "explicabo", "aspernatur", "aut", "odit", "aut", "fugit", "sed", "quia", "consequuntur", "magni", "dolores", "eos", "qui", "ratione", "voluptatem", "sequi", "nesciunt", "neque", "dolorem", "ipsum", "quia", "dolor", "sit", "amet", "consectetur", "adipisci", "velit", "sed", "quia", "non", "numquam", "eius", "modi", "tempora", "incidunt", "ut", "labore", "et", "dolore", "magnam", "aliquam", "quaerat", "voluptatem", "ut", "enim", "ad", "minima", "veniam", "quis", "nostrum", "exercitationem", "ullam", "corporis", "nemo", "enim", "ipsam", "voluptatem", "quia", "voluptas", "sit", "suscipit", "laboriosam", "nisi", "ut", "aliquid", "ex", "ea", "commodi", "consequatur", "quis", "autem", "vel", "eum", "iure", "reprehenderit", "qui", "in", "ea", "voluptate", "velit", "esse", "quam", "nihil", "molestiae", "et", "iusto", "odio", "dignissimos", "ducimus", "qui", "blanditiis", "praesentium", "laudantium", "totam", "rem", "voluptatum", "deleniti", "atque", "corrupti", "quos", "dolores", "et", "quas", "molestias", "excepturi", "sint", "occaecati", "cupiditate", "non", "provident", "sed", "ut", "perspiciatis", "unde", "omnis", "iste", "natus", "error", "similique", "sunt", "in", "culpa", "qui", "officia", "deserunt", "mollitia", "animi", "id", "est", "laborum", "et", "dolorum", "fuga", "et", "harum", "quidem", "rerum", "facilis", "est", "et", "expedita", "distinctio", "nam", "libero", "tempore", "cum", "soluta", "nobis", "est", "eligendi", "optio", "cumque", "nihil", "impedit", "quo", "porro", "quisquam", "est", "qui", "minus", "id", "quod", "maxime", "placeat", "facere", "possimus", "omnis", "voluptas", "assumenda", "est", "omnis", "dolor", "repellendus", "temporibus", "autem", "quibusdam", "et", "aut", "consequatur", "vel", "illum", "qui", "dolorem", "eum", "fugiat", "quo", "voluptas", "nulla", "pariatur", "at", "vero", "eos", "et", "accusamus", "officiis", "debitis", "aut", "rerum", "necessitatibus", "saepe", "eveniet", "ut", "et", "voluptates", "repudiandae", "sint", "et", "molestiae", "non", "recusandae", "itaque", "earum", "rerum", "hic", "tenetur", "a", "sapiente", "delectus", "ut", "aut", "reiciendis", "voluptatibus", "maiores", "doloribus", "asperiores", "repellat" };
+
+  private static final String NAME_CHARACTERS = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 ";
+
+  /**
+   * What was generated, and the threads the benchmarks should target. The largest community, if
+   * there is one, has the server ids {@code communityFirstServerId} to
+   * {@code communityFirstServerId + communityMessages - 1}. The gallery thread is the one with the
+   * most media, if any thread has media.
+   */
+  static final class Summary {
+    int  threads;
+    long targetThreadId = -1;
+    int  targetMessages;
+    long communityThreadId = -1;
+    int  communityMessages;
+    long communityFirstServerId;
+    long galleryThreadId = -1;
+    int  galleryMedia;
+    int  recipients;
+    int  smsMessages;
+    int  mmsMessages;
+    int  reactions;
+    int  attachments;
+  }
+
+  private final Connection   connection;
+  private final MessageStore messageStore;
+  private final Random       random;
+  private final Summary      summary = new Summary();
+
+  private final PreparedStatement insertThread;
+  private final PreparedStatement insertRecipient;
+  private final PreparedStatement insertContact;
+  private final PreparedStatement insertGroup;
+  private final PreparedStatement queryRecipientId;
+
+  private long nextServerId = 1;
+  private long nextSortId   = 1;
+  private int  pendingRows;
+
+  private SyntheticDataset(Connection connection, MessageStore messageStore, long seed) throws SQLException {
+    this.connection   = connection;
+    this.messageStore = messageStore;
+    this.random       = new Random(seed);
+
+    insertThread    = connection.prepareStatement("INSERT INTO thread (date, recipient_ids, type, has_sent) VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+    insertRecipient = connection.prepareStatement("INSERT OR IGNORE INTO recipient_preferences (recipient_ids, approved, approved_me, signal_profile_name) VALUES (?, ?, ?, ?)");
+    insertContact   = connection.prepareStatement("INSERT OR REPLACE INTO session_contact_database (session_id, name, thread_id, is_trusted) VALUES (?, ?, ?, 1)");
+    insertGroup     = connection.prepareStatement("INSERT INTO groups (group_id, title, members, admins, timestamp, active) VALUES (?, ?, ?, ?, ?, 1)");
+
+    queryRecipientId = connection.prepareStatement("SELECT _id FROM recipient_preferences WHERE recipient_ids = ?");
+  }
+
+  /**
+   * Creates the schema on an empty database and fills it.
+   */
+  static Summary generate(Connection connection, DatasetSpec spec, long seed) throws SQLException {
+    Schema.create(connection);
+
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+
+    try (MessageStore messageStore = new MessageStore(connection)) {
+      SyntheticDataset dataset = new SyntheticDataset(connection, messageStore, seed);
+      try {
+        for (DatasetSpec.Threads threads : spec.threads) {
+          for (int i = 0; i < threads.count; i++) {
+            dataset.generateThread(threads);
+          }
+        }
+        connection.commit();
+      } finally {
+        dataset.close();
+      }
+      return dataset.summary;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  private void generateThread(DatasetSpec.Threads threads) throws SQLException {
+    int messageCount = between(threads.minMessages, threads.maxMessages);
+    int memberCount  = between(threads.minMembers, threads.maxMembers);
+
+    List<String> members = new ArrayList<>(memberCount + 1);
+    List<Long>   authors = new ArrayList<>(memberCount);
+    members.add(USER_SESSION_ID);
+
+    String  address;
+    boolean approved = true;
+    int     distributionType;
+
+    switch (threads.kind) {
+      case DIRECT:
+        address          = randomSessionId();
+        approved         = random.nextInt(4) != 0;
+        distributionType = 0;
+        members.add(address);
+        break;
+      case GROUP:
+        address          = "__textsecure_group__!" + hex(("__textsecure_group__!" + randomSessionId().substring(2)).getBytes(StandardCharsets.UTF_8));
+        distributionType = 1;
+        break;
+      default:
+        address          = "__loki_public_chat_group__!" + hex((randomString(5, 15) + "." + randomString(5, 15)).getBytes(StandardCharsets.UTF_8));
+        distributionType = 2;
+        break;
+    }
+
+    long threadId = insertThread(address, distributionType, approved);
+
+    if (threads.kind == DatasetSpec.Kind.DIRECT) {
+      authors.add(insertRecipient(address, approved));
+      insertContact(address, threadId);
+    } else {
+      for (int i = 0; i < memberCount; i++) {
+        String member = randomSessionId();
+        members.add(member);
+        authors.add(insertRecipient(member, true));
+        insertContact(member, -1);
+      }
+      insertGroup(address, members);
+    }
+
+    long lastDate      = 0;
+    long firstServerId = nextServerId;
+    long interval      = threads.media ? MEDIA_INTERVAL : MESSAGE_INTERVAL;
+    for (int i = messageCount - 1; i >= 0; i--) {
+      // Offset by the thread so that no two messages are sent at the same time, as receipts find
+      // their message by the time it was sent
+      long    date     = NOW - i * interval - threadId;
+      boolean incoming = random.nextBoolean() && approved;
+      String  sender   = incoming ? members.get(1 + random.nextInt(members.size() - 1)) : USER_SESSION_ID;
+      String  body     = randomWords(random, 1 + random.nextInt(19));
+      boolean read     = !incoming || i > 20;
+      boolean mention  = incoming && threads.kind != DatasetSpec.Kind.DIRECT && random.nextInt(50) == 0;
+      boolean mms      = threads.media || random.nextInt(10) == 0;
+      long    type     = incoming ? MessageStore.INCOMING_TYPE : MessageStore.OUTGOING_TYPE;
+      long    messageId;
+
+      if (mms) {
+        boolean quote = lastDate != 0 && random.nextBoolean();
+        messageId = messageStore.insertMms(threadId, sender, type, date, date, body, read, mention,
+                                           quote ? lastDate : 0, quote ? USER_SESSION_ID : null, quote ? randomWords(random, 5) : null);
+        summary.mmsMessages++;
+
+        if (threads.media) {
+          boolean video = random.nextInt(10) == 0;
+          messageStore.insertAttachment(messageId, video ? "video/mp4" : "image/jpeg", randomHex(16), 50_000 + random.nextInt(2_000_000),
+                                        date, video ? 1280 : 1536, video ? 720 : 2048);
+          summary.attachments++;
+        }
+      } else {
+        messageId = messageStore.insertSms(threadId, sender, type, date, date, body, read, mention);
+        summary.smsMessages++;
+      }
+
+      if (threads.kind == DatasetSpec.Kind.COMMUNITY) {
+        messageStore.setServerId(messageId, mms, nextServerId++, threadId);
+      } else {
+        messageStore.setServerHash(messageId, mms, randomHex(32));
+      }
+
+      if (threads.kind != DatasetSpec.Kind.DIRECT && random.nextInt(20) == 0) {
+        int reactions = 1 + random.nextInt(5);
+        for (int r = 0; r < reactions; r++) {
+          messageStore.addReaction(messageId, mms, authors.get(random.nextInt(authors.size())), REACTION_EMOJI[random.nextInt(REACTION_EMOJI.length)],
+                                   nextServerId, nextSortId++, date + r);
+        }
+        summary.reactions += reactions;
+      }
+
+      lastDate = date;
+      rowWritten();
+    }
+
+    messageStore.updateThread(threadId);
+
+    summary.threads++;
+    if (summary.targetThreadId == -1 || messageCount > summary.targetMessages) {
+      summary.targetThreadId = threadId;
+      summary.targetMessages = messageCount;
+    }
+    if (threads.media && messageCount > summary.galleryMedia) {
+      summary.galleryThreadId = threadId;
+      summary.galleryMedia    = messageCount;
+    }
+    if (threads.kind == DatasetSpec.Kind.COMMUNITY && (summary.communityThreadId == -1 || messageCount > summary.communityMessages)) {
+      summary.communityThreadId      = threadId;
+      summary.communityMessages      = messageCount;
+      summary.communityFirstServerId = firstServerId;
+    }
+  }
+
+  private long insertThread(String address, int distributionType, boolean hasSent) throws SQLException {
+    insertThread.setLong(1, NOW);
+    insertThread.setString(2, address);
+    insertThread.setInt(3, distributionType);
+    insertThread.setInt(4, hasSent ? 1 : 0);
+    insertThread.executeUpdate();
+
+    try (ResultSet keys = insertThread.getGeneratedKeys()) {
+      keys.next();
+      return keys.getLong(1);
+    }
+  }
+
+  private long insertRecipient(String address, boolean approved) throws SQLException {
+    insertRecipient.setString(1, address);
+    insertRecipient.setInt(2, approved ? 1 : 0);
+    insertRecipient.setInt(3, approved && random.nextInt(10) < 8 ? 1 : 0);
+    insertRecipient.setString(4, randomString(0, 20));
+    insertRecipient.executeUpdate();
+    summary.recipients++;
+
+    queryRecipientId.setString(1, address);
+    try (ResultSet resultSet = queryRecipientId.executeQuery()) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+
+  private void insertContact(String sessionId, long threadId) throws SQLException {
+    insertContact.setString(1, sessionId);
+    insertContact.setString(2, randomString(0, 20));
+    insertContact.setLong(3, threadId);
+    insertContact.executeUpdate();
+  }
+
+  private void insertGroup(String groupId, List<String> members) throws SQLException {
+    insertGroup.setString(1, groupId);
+    insertGroup.setString(2, randomString(5, 20));
+    insertGroup.setString(3, String.join(",", members));
+    insertGroup.setString(4, members.get(random.nextInt(members.size())));
+    insertGroup.setLong(5, NOW);
+    insertGroup.executeUpdate();
+  }
+
+  /**
+   * Commits every {@link #CHUNK_SIZE} messages, as the app would write them in separate
+   * transactions anyway and a single huge one only grows the journal.
+   */
+  private void rowWritten() throws SQLException {
+    if (++pendingRows >= CHUNK_SIZE) {
+      connection.commit();
+      pendingRows = 0;
+    }
+  }
+
+  private int between(int min, int max) {
+    return min + random.nextInt(max - min + 1);
+  }
+
+  private String randomSessionId() {
+    return "05" + randomHex(32);
+  }
+
+  private String randomHex(int bytes) {
+    byte[] data = new byte[bytes];
+    random.nextBytes(data);
+    return hex(data);
+  }
+
+  private String randomString(int minLength, int maxLength) {
+    int           length  = between(minLength, maxLength);
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append(NAME_CHARACTERS.charAt(random.nextInt(NAME_CHARACTERS.length())));
+    }
+    return builder.toString();
+  }
+
+  static String randomWords(Random random, int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) builder.append(' ');
+      builder.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return builder.toString();
+  }
+
+  private void close() throws SQLException {
+    insertThread.close();
+    insertRecipient.close();
+    insertContact.close();
+    insertGroup.close();
+    queryRecipientId.close();
+  }
+
+  private static String hex(byte[] data) {
+    StringBuilder builder = new StringBuilder(data.length * 2);
+    for (byte b : data) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
+  private static String repeat(String s, int count) {
+    return String.join("", Collections.nCopies(count, s));
+  }
+}
@@ -0,0 +1,214 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import org.thoughtcrime.securesms.benchmark.Benchmark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Caching and then showing a screen of thumbnails through the encrypted Glide cache. Each one is
+ * written once, then opened once to check that it can be decoded and once more to decode it, which
+ * is what {@link EncryptedBitmapCacheDecoder} does. {@link EncryptedCoder} is timed next to a copy
+ * of the coder it replaced, which set up a new {@link Mac} and {@link Cipher} for every file and
+ * went through the {@code javax.crypto} streams.
+ *
+ * Lives in the coder's package as the coder is package-private.
+ */
+public final class EncryptedCoderBenchmarks {
+
+  private static final int THUMBNAILS       = 200;
+  private static final int THUMBNAIL_BYTES  = 32 * 1024;
+  private static final int WRITE_SIZE       = 4 * 1024;
+  private static final int HEADER_READ_SIZE = 16;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private interface Coder {
+    OutputStream createEncryptedOutputStream(byte[] masterKey, File file) throws IOException;
+    InputStream createEncryptedInputStream(byte[] masterKey, File file) throws IOException;
+  }
+
+  public static List<Benchmark> create(File directory, long seed) throws IOException {
+    File cacheDirectory = new File(directory, "glide-cache");
+    if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+      throw new IOException("Couldn't create " + cacheDirectory);
+    }
+
+    Random random    = new Random(seed);
+    byte[] masterKey = new byte[32];
+    byte[] thumbnail = new byte[THUMBNAIL_BYTES];
+
+    random.nextBytes(masterKey);
+    random.nextBytes(thumbnail);
+
+    EncryptedCoder encryptedCoder = new EncryptedCoder();
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+    benchmarks.add(thumbnails("glide_cache.cipher_streams", cacheDirectory, masterKey, thumbnail, new CipherStreamCoder()));
+    benchmarks.add(thumbnails("glide_cache.reused_cipher", cacheDirectory, masterKey, thumbnail, new Coder() {
+      @Override
+      public OutputStream createEncryptedOutputStream(byte[] masterKey, File file) throws IOException {
+        return encryptedCoder.createEncryptedOutputStream(masterKey, file);
+      }
+
+      @Override
+      public InputStream createEncryptedInputStream(byte[] masterKey, File file) throws IOException {
+        return encryptedCoder.createEncryptedInputStream(masterKey, file);
+      }
+    }));
+    return benchmarks;
+  }
+
+  private static Benchmark thumbnails(String name, File directory, byte[] masterKey, byte[] thumbnail, Coder coder) {
+    byte[] header = new byte[HEADER_READ_SIZE];
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+    return new Benchmark() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public void run() throws IOException {
+        for (int i = 0; i < THUMBNAILS; i++) {
+          File file = new File(directory, i + ".0");
+
+          try (OutputStream outputStream = coder.createEncryptedOutputStream(masterKey, file)) {
+            for (int offset = 0; offset < thumbnail.length; offset += WRITE_SIZE) {
+              outputStream.write(thumbnail, offset, Math.min(WRITE_SIZE, thumbnail.length - offset));
+            }
+          }
+
+          try (InputStream inputStream = coder.createEncryptedInputStream(masterKey, file)) {
+            readFully(inputStream, header);
+          }
+
+          int total = 0;
+          try (InputStream inputStream = coder.createEncryptedInputStream(masterKey, file)) {
+            int read;
+            while ((read = inputStream.read(buffer, 0, buffer.length)) != -1) {
+              total += read;
+            }
+          }
+
+          if (total != thumbnail.length) {
+            throw new IOException("Read " + total + " of " + thumbnail.length + " bytes");
+          }
+        }
+      }
+
+      @Override
+      public void tearDown() throws IOException {
+        for (int i = 0; i < THUMBNAILS; i++) {
+          File file = new File(directory, i + ".0");
+          if (file.exists() && !file.delete()) throw new IOException("Couldn't delete " + file);
+        }
+      }
+    };
+  }
+
+  private static void readFully(InputStream in, byte[] buffer) throws IOException {
+    int offset = 0;
+    while (offset < buffer.length) {
+      int read = in.read(buffer, offset, buffer.length - offset);
+      if (read == -1) throw new EOFException("Stream ended early");
+      offset += read;
+    }
+  }
+
+  /**
+   * A copy of the coder as it was before it kept its crypto objects per thread.
+   */
+  private static final class CipherStreamCoder implements Coder {
+
+    private static final byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
+                                               (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
+                                               (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
+                                               (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+
+    @Override
+    public OutputStream createEncryptedOutputStream(byte[] masterKey, File file) throws IOException {
+      try {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        byte[]           iv               = new byte[16];
+        byte[]           key              = mac.doFinal(random);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+
+        fileOutputStream.write(MAGIC_BYTES);
+        fileOutputStream.write(random);
+
+        CipherOutputStream outputStream = new CipherOutputStream(fileOutputStream, cipher);
+        outputStream.write(MAGIC_BYTES);
+
+        return outputStream;
+      } catch (GeneralSecurityException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @Override
+    public InputStream createEncryptedInputStream(byte[] masterKey, File file) throws IOException {
+      try {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+
+        FileInputStream fileInputStream     = new FileInputStream(file);
+        byte[]          theirMagic          = new byte[MAGIC_BYTES.length];
+        byte[]          theirRandom         = new byte[32];
+        byte[]          theirEncryptedMagic = new byte[MAGIC_BYTES.length];
+
+        readFully(fileInputStream, theirMagic);
+        readFully(fileInputStream, theirRandom);
+
+        if (!MessageDigest.isEqual(theirMagic, MAGIC_BYTES)) {
+          throw new IOException("Not an encrypted cache file!");
+        }
+
+        byte[] iv  = new byte[16];
+        byte[] key = mac.doFinal(theirRandom);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+
+        CipherInputStream inputStream = new CipherInputStream(fileInputStream, cipher);
+        readFully(inputStream, theirEncryptedMagic);
+
+        if (!MessageDigest.isEqual(theirEncryptedMagic, MAGIC_BYTES)) {
+          throw new IOException("Key change on encrypted cache file!");
+        }
+
+        return inputStream;
+      } catch (GeneralSecurityException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private EncryptedCoderBenchmarks() {}
+}
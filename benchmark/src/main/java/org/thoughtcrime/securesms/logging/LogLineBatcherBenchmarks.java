@@ -0,0 +1,166 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.thoughtcrime.securesms.benchmark.Benchmark;
+import org.thoughtcrime.securesms.benchmark.MeasuredBenchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A burst of log lines from 1 and 4 threads, timed until the logger thread has handed every line
+ * on. {@link LogLineBatcher}, which {@code PersistentLogger} queues its lines with, is timed next to
+ * a copy of what {@code PersistentLogger} did before: an executor task for each line, which
+ * formatted its timestamp and wrote it as an entry of its own.
+ *
+ * Both hand their entries to a writer that only encodes them, as {@code LogFile} needs libsession's
+ * {@code Util}, which only builds for Android, so the cost of encrypting and flushing each entry is
+ * left out. It grows with the number of entries, which only favours the batcher further.
+ *
+ * Lives in the batcher's package as the batcher is package-private.
+ */
+public final class LogLineBatcherBenchmarks {
+
+  private static final int    LOG_LINES         = 20_000;
+  private static final int    MAX_PENDING_LINES = 16 * 1024;
+  private static final int    MAX_BLOCK_SIZE    = 8 * 1024;
+  private static final int[]  THREADS           = { 1, 4 };
+  private static final String LOG_DATE_FORMAT   = "yyyy-MM-dd HH:mm:ss.SSS zzz";
+
+  private interface Logger {
+    void write(String level, String tag, String message);
+  }
+
+  public static List<Benchmark> create(long seed) {
+    Random   random   = new Random(seed);
+    String[] messages = new String[LOG_LINES];
+
+    for (int i = 0; i < messages.length; i++) {
+      StringBuilder message = new StringBuilder();
+      for (int word = 4 + random.nextInt(16); word > 0; word--) {
+        if (message.length() > 0) message.append(' ');
+        message.append(Integer.toString(random.nextInt(1 << 20), 36));
+      }
+      messages[i] = message.toString();
+    }
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    for (int threads : THREADS) {
+      String suffix = threads + (threads == 1 ? "_thread" : "_threads");
+
+      benchmarks.add(new LoggerBenchmark("logger.task_per_line_" + suffix, threads, messages) {
+        @Override
+        Logger createLogger(ExecutorService loggerThread, EntryWriter entryWriter) {
+          SimpleDateFormat dateFormat = new SimpleDateFormat(LOG_DATE_FORMAT);
+
+          return (level, tag, message) -> loggerThread.execute(() -> {
+            entryWriter.writeEntry(dateFormat.format(new Date()) + ' ' + level + ' ' + tag + ": " + message);
+          });
+        }
+      });
+
+      benchmarks.add(new LoggerBenchmark("logger.ring_buffer_" + suffix, threads, messages) {
+        @Override
+        Logger createLogger(ExecutorService loggerThread, EntryWriter entryWriter) {
+          LogLineBatcher batcher = new LogLineBatcher(MAX_PENDING_LINES, MAX_BLOCK_SIZE, "PersistentLogger", entryWriter::writeEntry);
+
+          return (level, tag, message) -> {
+            if (batcher.add(System.currentTimeMillis(), level, tag, message, null)) {
+              loggerThread.execute(batcher::drain);
+            }
+          };
+        }
+      });
+    }
+
+    return benchmarks;
+  }
+
+  /**
+   * Counts the lines and bytes of the entries it's handed, on the logger thread.
+   */
+  private static final class EntryWriter {
+    long entries;
+    long lines;
+    long bytes;
+
+    void writeEntry(String entry) {
+      entries++;
+      bytes += entry.getBytes(StandardCharsets.UTF_8).length;
+      for (int i = 0; i < entry.length(); i++) {
+        if (entry.charAt(i) == '\n') lines++;
+      }
+      lines++;
+    }
+  }
+
+  private abstract static class LoggerBenchmark extends MeasuredBenchmark {
+    private final int      threads;
+    private final String[] messages;
+
+    LoggerBenchmark(String name, int threads, String[] messages) {
+      super(name);
+      this.threads  = threads;
+      this.messages = messages;
+    }
+
+    abstract Logger createLogger(ExecutorService loggerThread, EntryWriter entryWriter);
+
+    @Override
+    public void run() throws Exception {
+      ExecutorService loggerThread = Executors.newSingleThreadExecutor();
+      EntryWriter     entryWriter  = new EntryWriter();
+      Logger          logger       = createLogger(loggerThread, entryWriter);
+      long[]          callerNanos  = new long[messages.length];
+      CountDownLatch  start        = new CountDownLatch(1);
+      Thread[]        callers      = new Thread[threads];
+
+      for (int thread = 0; thread < threads; thread++) {
+        int from = thread * messages.length / threads;
+        int to   = (thread + 1) * messages.length / threads;
+
+        callers[thread] = new Thread(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+
+          for (int i = from; i < to; i++) {
+            long callStart = System.nanoTime();
+            logger.write("I", "Benchmark", messages[i]);
+            callerNanos[i] = System.nanoTime() - callStart;
+          }
+        });
+        callers[thread].start();
+      }
+
+      long startTime = System.nanoTime();
+      start.countDown();
+      for (Thread caller : callers) {
+        caller.join();
+      }
+
+      // Queued behind every task the callers scheduled
+      loggerThread.submit(() -> {}).get();
+      long elapsedNanos = System.nanoTime() - startTime;
+      loggerThread.shutdown();
+
+      Arrays.sort(callerNanos);
+      metrics.put("linesWritten", entryWriter.lines);
+      metrics.put("entriesWritten", entryWriter.entries);
+      metrics.put("bytesWritten", entryWriter.bytes);
+      metrics.put("linesPerSecond", entryWriter.lines * 1_000_000_000L / Math.max(elapsedNanos, 1));
+      metrics.put("callerP50Nanos", callerNanos[callerNanos.length / 2]);
+      metrics.put("callerP99Nanos", callerNanos[callerNanos.length * 99 / 100]);
+    }
+  }
+}
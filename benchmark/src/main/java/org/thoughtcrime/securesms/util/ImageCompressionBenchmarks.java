@@ -0,0 +1,232 @@
+package org.thoughtcrime.securesms.util;
+
+import org.thoughtcrime.securesms.benchmark.Benchmark;
+import org.thoughtcrime.securesms.benchmark.MeasuredBenchmark;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Fitting a corpus of photos into a size limit, with the {@link ImageCompressionPlanner} the way
+ * {@code BitmapUtil} uses it now, and with a copy of the loop it replaced, which started every
+ * size at the highest quality and decoded the image again for every halving of the dimensions.
+ *
+ * {@code Bitmap.compress} and Glide only run on Android, so the JDK's JPEG encoder and decoder
+ * stand in for them; the number of encodes doesn't depend on which encoder it is. Lives in the
+ * planner's package as the planner is package-private.
+ */
+public final class ImageCompressionBenchmarks {
+
+  private static final int[][] CORPUS         = { { 2048, 1536 }, { 1536, 2048 }, { 1600, 1200 }, { 1280, 960 }, { 1024, 768 }, { 960, 1280 } };
+  private static final int     MAX_DIMENSION  = 4096;
+  // Tighter than the push limit so that these photos, which are smaller than a camera's, need more
+  // than one attempt the way camera photos do against the real limit
+  private static final int     MAX_IMAGE_SIZE = 100 * 1024;
+
+  private static final int MAX_COMPRESSION_ATTEMPTS = 5;
+  private static final int MAX_IMAGE_HALF_SCALES    = 3;
+  private static final int PROBE_SIZE               = 256;
+
+  public static List<Benchmark> create(long seed) throws IOException {
+    Random       random = new Random(seed);
+    List<byte[]> corpus = new ArrayList<>();
+
+    for (int[] size : CORPUS) {
+      corpus.add(encode(createPhoto(random, size[0], size[1]), ImageCompressionPlanner.MAX_QUALITY, null));
+    }
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new MeasuredBenchmark("image_compression.quality_steps") {
+      @Override
+      public void run() throws IOException {
+        long[] counts = new long[2];
+        for (byte[] source : corpus) {
+          scaleByQualitySteps(source, MAX_DIMENSION, MAX_DIMENSION, 1, counts);
+        }
+        metrics.put("encodes", counts[0]);
+        metrics.put("decodes", counts[1]);
+      }
+    });
+
+    benchmarks.add(new MeasuredBenchmark("image_compression.planned") {
+      @Override
+      public void run() throws IOException {
+        long[] counts = new long[2];
+        for (byte[] source : corpus) {
+          scalePlanned(source, counts);
+        }
+        metrics.put("encodes", counts[0]);
+        metrics.put("decodes", counts[1]);
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * A copy of the old {@code BitmapUtil.createScaledBytes}.
+   */
+  private static byte[] scaleByQualitySteps(byte[] source, int maxImageWidth, int maxImageHeight, int sizeAttempt, long[] counts) throws IOException {
+    BufferedImage scaledBitmap = decode(source, maxImageWidth, maxImageHeight, counts);
+    int           quality      = ImageCompressionPlanner.MAX_QUALITY;
+    int           attempts     = 0;
+    byte[]        bytes;
+
+    do {
+      bytes = encode(scaledBitmap, quality, counts);
+
+      if (quality == ImageCompressionPlanner.MIN_QUALITY) break;
+
+      int nextQuality = (int) Math.floor(quality * Math.sqrt((double) MAX_IMAGE_SIZE / bytes.length));
+      if (quality - nextQuality < ImageCompressionPlanner.MIN_QUALITY_DECREASE) {
+        nextQuality = quality - ImageCompressionPlanner.MIN_QUALITY_DECREASE;
+      }
+      quality = Math.max(nextQuality, ImageCompressionPlanner.MIN_QUALITY);
+    }
+    while (bytes.length > MAX_IMAGE_SIZE && attempts++ < MAX_COMPRESSION_ATTEMPTS);
+
+    if (bytes.length > MAX_IMAGE_SIZE) {
+      if (sizeAttempt <= MAX_IMAGE_HALF_SCALES) {
+        return scaleByQualitySteps(source, maxImageWidth / 2, maxImageHeight / 2, sizeAttempt + 1, counts);
+      }
+      throw new IOException("Unable to scale image below " + bytes.length + " bytes.");
+    }
+
+    return bytes;
+  }
+
+  /**
+   * What {@code BitmapUtil.createScaledBytes} does now.
+   */
+  private static byte[] scalePlanned(byte[] source, long[] counts) throws IOException {
+    BufferedImage           decodedBitmap = decode(source, MAX_DIMENSION, MAX_DIMENSION, counts);
+    ImageCompressionPlanner planner       = probe(decodedBitmap, counts);
+    int                     halvings      = planner.getHalvings(MAX_IMAGE_HALF_SCALES);
+    byte[]                  bytes         = null;
+
+    for (; halvings <= MAX_IMAGE_HALF_SCALES; halvings++) {
+      BufferedImage scaledBitmap = halve(decodedBitmap, halvings);
+      int           quality      = planner.getQuality(halvings);
+      int           attempts     = 0;
+
+      while (true) {
+        bytes = encode(scaledBitmap, quality, counts);
+
+        if (bytes.length <= MAX_IMAGE_SIZE || quality == ImageCompressionPlanner.MIN_QUALITY || attempts++ >= MAX_COMPRESSION_ATTEMPTS) break;
+
+        quality = planner.getNextQuality(quality, bytes.length);
+      }
+
+      if (bytes.length <= MAX_IMAGE_SIZE) return bytes;
+    }
+
+    throw new IOException("Unable to scale image below " + (bytes != null ? bytes.length : 0) + " bytes.");
+  }
+
+  private static ImageCompressionPlanner probe(BufferedImage bitmap, long[] counts) throws IOException {
+    int width  = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    int scale  = Math.max(width, height) / PROBE_SIZE;
+
+    if (scale < 2) {
+      return ImageCompressionPlanner.withoutEstimate(MAX_IMAGE_SIZE);
+    }
+
+    BufferedImage probe = resize(bitmap, Math.max(1, width / scale), Math.max(1, height / scale));
+    byte[]        bytes = encode(probe, ImageCompressionPlanner.MAX_QUALITY, counts);
+
+    return ImageCompressionPlanner.fromProbe(bytes.length, (long) probe.getWidth() * probe.getHeight(), (long) width * height, MAX_IMAGE_SIZE);
+  }
+
+  private static BufferedImage halve(BufferedImage bitmap, int times) {
+    if (times == 0) return bitmap;
+
+    return resize(bitmap, Math.max(1, bitmap.getWidth() >> times), Math.max(1, bitmap.getHeight() >> times));
+  }
+
+  /**
+   * Decodes the image and scales it down to fit, like Glide's {@code centerInside} does.
+   */
+  private static BufferedImage decode(byte[] source, int maxWidth, int maxHeight, long[] counts) throws IOException {
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+    if (counts != null) counts[1]++;
+
+    double scale = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+    if (scale >= 1.0) return image;
+
+    return resize(image, Math.max(1, (int) (image.getWidth() * scale)), Math.max(1, (int) (image.getHeight() * scale)));
+  }
+
+  private static BufferedImage resize(BufferedImage image, int width, int height) {
+    BufferedImage resized  = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D    graphics = resized.createGraphics();
+
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+
+    return resized;
+  }
+
+  private static byte[] encode(BufferedImage image, int quality, long[] counts) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageWriter           writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+
+    try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality / 100f);
+
+      writer.setOutput(imageOutput);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+
+    if (counts != null) counts[0]++;
+    return output.toByteArray();
+  }
+
+  /**
+   * Smooth gradients with noise over them, which compress about as well as a photo does.
+   */
+  private static BufferedImage createPhoto(Random random, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int           noise = 8 + random.nextInt(24);
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int red   = clamp(255 * x / width + random.nextInt(noise) - noise / 2);
+        int green = clamp(255 * y / height + random.nextInt(noise) - noise / 2);
+        int blue  = clamp(128 + (int) (64 * Math.sin((x + y) / 40.0)) + random.nextInt(noise) - noise / 2);
+
+        image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+      }
+    }
+
+    return image;
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+
+  private ImageCompressionBenchmarks() {}
+}
@@ -0,0 +1,154 @@
+package org.thoughtcrime.securesms.benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.DatabaseQueries;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SyntheticDatasetTest {
+
+  private static final DatasetSpec SMALL = new DatasetSpec("small",
+                                                           new DatasetSpec.Threads(DatasetSpec.Kind.DIRECT, 1, 300, 300, 1, 1),
+                                                           new DatasetSpec.Threads(DatasetSpec.Kind.GROUP, 3, 0, 50, 1, 10),
+                                                           new DatasetSpec.Threads(DatasetSpec.Kind.COMMUNITY, 2, 0, 50, 1, 50));
+
+  private static final DatasetSpec MEDIA = new DatasetSpec("media",
+                                                           new DatasetSpec.Threads(DatasetSpec.Kind.DIRECT, 1, 500, 500, 1, 1, true),
+                                                           new DatasetSpec.Threads(DatasetSpec.Kind.DIRECT, 2, 0, 50, 1, 1));
+
+  private Connection first;
+  private Connection second;
+
+  @Before
+  public void setUp() throws SQLException {
+    first  = DriverManager.getConnection("jdbc:sqlite::memory:");
+    second = DriverManager.getConnection("jdbc:sqlite::memory:");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void generate_sameSeed_sameRows() throws SQLException {
+    SyntheticDataset.generate(first, SMALL, 1);
+    SyntheticDataset.generate(second, SMALL, 1);
+
+    assertEquals(digest(first), digest(second));
+  }
+
+  @Test
+  public void generate_otherSeed_otherRows() throws SQLException {
+    SyntheticDataset.generate(first, SMALL, 1);
+    SyntheticDataset.generate(second, SMALL, 2);
+
+    assertNotEquals(digest(first), digest(second));
+  }
+
+  @Test
+  public void generate_threadsMatchTheirMessages() throws SQLException {
+    SyntheticDataset.Summary summary = SyntheticDataset.generate(first, SMALL, 1);
+
+    assertEquals(6, summary.threads);
+    assertEquals(300, summary.targetMessages);
+    assertEquals(summary.smsMessages + summary.mmsMessages, queryLong(first, "SELECT SUM(message_count) FROM thread"));
+    assertEquals(summary.smsMessages, queryLong(first, "SELECT COUNT(*) FROM sms_fts"));
+    assertEquals(300, queryLong(first, "SELECT message_count FROM thread WHERE _id = " + summary.targetThreadId));
+  }
+
+  @Test
+  public void trimThread_keepsNewestMessages() throws SQLException {
+    SyntheticDataset.Summary summary = SyntheticDataset.generate(first, SMALL, 1);
+
+    try (MessageStore messageStore = new MessageStore(first)) {
+      assertEquals(200, messageStore.trimThread(summary.targetThreadId, 100));
+    }
+
+    assertEquals(100, queryLong(first, "SELECT message_count FROM thread WHERE _id = " + summary.targetThreadId));
+    assertEquals(SyntheticDataset.NOW - summary.targetThreadId, queryLong(first, "SELECT date FROM thread WHERE _id = " + summary.targetThreadId));
+  }
+
+  @Test
+  public void messageIdsForServerIds_resolvesTheLargestCommunity() throws SQLException {
+    SyntheticDataset.Summary summary = SyntheticDataset.generate(first, SMALL, 1);
+    int                      count   = summary.communityMessages;
+
+    try (PreparedStatement statement = first.prepareStatement(DatabaseQueries.getMessageIdsForServerIds(count + 1))) {
+      statement.setLong(1, summary.communityThreadId);
+      for (int i = 0; i <= count; i++) {
+        statement.setLong(i + 2, summary.communityFirstServerId + i);
+      }
+
+      int resolved = 0;
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) resolved++;
+      }
+
+      assertEquals(count, resolved);
+    }
+  }
+
+  @Test
+  public void generate_indexesRecipientsForSearch() throws SQLException {
+    SyntheticDataset.generate(first, SMALL, 1);
+
+    long recipients = queryLong(first, "SELECT COUNT(*) FROM recipient_search WHERE session_id IS NOT NULL");
+
+    assertNotEquals(0, recipients);
+    assertEquals(recipients, queryLong(first, "SELECT COUNT(*) FROM recipient_fts WHERE recipient_fts MATCH 'session_id:05*'"));
+  }
+
+  @Test
+  public void galleryMediaPages_countEveryAttachment() throws SQLException {
+    SyntheticDataset.Summary summary = SyntheticDataset.generate(first, MEDIA, 1);
+
+    assertEquals(500, summary.galleryMedia);
+    assertEquals(summary.galleryMedia, summary.attachments);
+
+    try (PreparedStatement statement = first.prepareStatement("SELECT SUM(" + DatabaseQueries.GALLERY_COUNT + ") FROM (" +
+                                                              "SELECT DISTINCT " + DatabaseQueries.GALLERY_BUCKET + ", " + DatabaseQueries.GALLERY_COUNT + " " +
+                                                              "FROM (" + DatabaseQueries.getGalleryMediaPages(SyntheticDataset.NOW, 60) + "))"))
+    {
+      statement.setLong(1, summary.galleryThreadId);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        assertEquals(summary.attachments, resultSet.getLong(1));
+      }
+    }
+  }
+
+  @Test
+  public void toFtsQuery_prefixesEveryToken() {
+    assertEquals("sed* quia*", DatabaseQueries.toFtsQuery(" sed  quia"));
+  }
+
+  private static String digest(Connection connection) throws SQLException {
+    return queryLong(connection, "SELECT COUNT(*) FROM sms") + "/" +
+           queryLong(connection, "SELECT COUNT(*) FROM mms") + "/" +
+           queryLong(connection, "SELECT COUNT(*) FROM reaction") + "/" +
+           queryLong(connection, "SELECT SUM(length(body) * _id) FROM sms") + "/" +
+           queryLong(connection, "SELECT SUM(length(recipient_ids) * _id) FROM thread");
+  }
+
+  private static long queryLong(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(sql))
+    {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+}
@@ -182,10 +182,12 @@ interface StorageProtocol {
 
     // Contacts
     fun getContactWithSessionID(sessionID: String): Contact?
+    fun getContactsWithSessionIDs(sessionIDs: Collection<String>): Map<String, Contact>
     fun getAllContacts(): Set<Contact>
     fun setContact(contact: Contact)
     fun getRecipientForThread(threadId: Long): Recipient?
     fun getRecipientSettings(address: Address): RecipientSettings?
+    fun getRecipientSettings(addresses: Collection<Address>): Map<Address, RecipientSettings>
     fun addLibSessionContacts(contacts: List<LibSessionContact>, timestamp: Long)
     fun addContacts(contacts: List<ConfigurationMessage.Contact>)
 
@@ -219,11 +221,14 @@ interface StorageProtocol {
     fun setLastOutboxMessageId(server: String, messageId: Long)
     fun removeLastOutboxMessageId(server: String)
     fun getOrCreateBlindedIdMapping(blindedId: String, server: String, serverPublicKey: String, fromOutbox: Boolean = false): BlindedIdMapping
+    fun getOrCreateBlindedIdMappings(blindedIds: Collection<String>, server: String, serverPublicKey: String, fromOutbox: Boolean = false): Map<String, BlindedIdMapping>
 
     fun addReaction(reaction: Reaction, messageSender: String, notifyUnread: Boolean)
     fun removeReaction(emoji: String, messageTimestamp: Long, author: String, notifyUnread: Boolean)
     fun updateReactionIfNeeded(message: Message, sender: String, openGroupSentTimestamp: Long)
     fun deleteReactions(messageId: Long, mms: Boolean)
+    /** Replaces the reactions of each message, keyed by its id and whether it is an mms. */
+    fun setReactions(reactions: Map<Pair<Long, Boolean>, List<Reaction>>, notifyUnread: Boolean)
     fun setBlocked(recipients: Iterable<Recipient>, isBlocked: Boolean, fromConfigUpdate: Boolean = false)
     fun setRecipientHash(recipient: Recipient, recipientHash: String?)
     fun blockedContacts(): List<Recipient>
@@ -137,10 +137,13 @@ class AttachmentDownloadJob(val attachmentID: Long, val databaseMessageID: Long)
             if (attachment.contentType.startsWith("audio/")) {
                 // process the duration
                     try {
-                        InputStreamMediaDataSource(getInputStream(tempFile, attachment)).use { mediaDataSource ->
-                            val durationMs = (DecodedAudio.create(mediaDataSource).totalDuration / 1000.0).toLong()
-                            messageDataProvider.updateAudioAttachmentDuration(
+                        val dataSize = if (attachment.digest?.size ?: 0 == 0 || attachment.key.isNullOrEmpty()) tempFile.length() else attachment.size
+                        InputStreamMediaDataSource(dataSize) { getInputStream(tempFile, attachment) }.use { mediaDataSource ->
+                            val decodedAudio = DecodedAudio.create(mediaDataSource)
+                            val durationMs = (decodedAudio.totalDuration / 1000.0).toLong()
+                            messageDataProvider.updateAudioAttachmentExtras(
                                 attachment.attachmentId,
+                                decodedAudio.calculateRms(DecodedAudio.VISUAL_RMS_FRAMES),
                                 durationMs,
                                 threadID
                             )
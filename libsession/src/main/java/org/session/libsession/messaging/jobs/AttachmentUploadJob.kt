@@ -116,11 +116,18 @@ class AttachmentUploadJob(val attachmentID: Long, val threadID: String, val mess
         if (attachment.contentType.startsWith("audio/")) {
             // process the duration
             try {
-                val inputStream = messageDataProvider.getAttachmentStream(attachmentID)!!.inputStream!!
-                InputStreamMediaDataSource(inputStream).use { mediaDataSource ->
-                    val durationMs = (DecodedAudio.create(mediaDataSource).totalDuration / 1000.0).toLong()
+                InputStreamMediaDataSource(attachment.length) {
+                    messageDataProvider.getAttachmentStream(attachmentID)!!.inputStream!!
+                }.use { mediaDataSource ->
+                    val decodedAudio = DecodedAudio.create(mediaDataSource)
+                    val durationMs = (decodedAudio.totalDuration / 1000.0).toLong()
                     messageDataProvider.getDatabaseAttachment(attachmentID)?.attachmentId?.let { attachmentId ->
-                        messageDataProvider.updateAudioAttachmentDuration(attachmentId, durationMs, threadID.toLong())
+                        messageDataProvider.updateAudioAttachmentExtras(
+                            attachmentId,
+                            decodedAudio.calculateRms(DecodedAudio.VISUAL_RMS_FRAMES),
+                            durationMs,
+                            threadID.toLong()
+                        )
                     }
                 }
             } catch (e: Exception) {
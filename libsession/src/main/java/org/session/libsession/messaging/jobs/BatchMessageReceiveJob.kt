@@ -40,12 +40,20 @@ data class MessageReceiveParameters(
     val data: ByteArray,
     val serverHash: String? = null,
     val openGroupMessageServerID: Long? = null,
-    val reactions: Map<String, OpenGroupApi.Reaction>? = null
+    val reactions: Map<String, OpenGroupApi.Reaction>? = null,
+    // The other party of a blinded direct message, i.e. its sender or its recipient if it's from our outbox
+    val otherBlindedPublicKey: String? = null
 )
 
+/**
+ * @param directMessageServer the community server that the messages are blinded direct messages from, if they are.
+ * @param fromOutbox whether the blinded direct messages are the ones we sent, e.g. from another device.
+ */
 class BatchMessageReceiveJob(
     val messages: List<MessageReceiveParameters>,
-    val openGroupID: String? = null
+    val openGroupID: String? = null,
+    val directMessageServer: String? = null,
+    val fromOutbox: Boolean = false
 ) : Job {
 
     override var delegate: JobDelegate? = null
@@ -70,6 +78,9 @@ class BatchMessageReceiveJob(
         private val SERVER_HASH_KEY = "serverHash"
         private val OPEN_GROUP_MESSAGE_SERVER_ID_KEY = "openGroupMessageServerID"
         private val OPEN_GROUP_ID_KEY = "open_group_id"
+        private val DIRECT_MESSAGE_SERVER_KEY = "direct_message_server"
+        private val FROM_OUTBOX_KEY = "from_outbox"
+        private val OTHER_BLINDED_PUBLIC_KEY_KEY = "other_blinded_public_key"
     }
 
     private fun shouldCreateThread(parsedMessage: ParsedMessage): Boolean {
@@ -102,15 +113,37 @@ class BatchMessageReceiveJob(
             val storage = MessagingModuleConfiguration.shared.storage
             val context = MessagingModuleConfiguration.shared.context
             val localUserPublicKey = storage.getUserPublicKey()
-            val serverPublicKey = openGroupID?.let { storage.getOpenGroupPublicKey(it.split(".").dropLast(1).joinToString(".")) }
+            val server = openGroupID?.split(".")?.dropLast(1)?.joinToString(".") ?: directMessageServer
+            val serverPublicKey = server?.let { storage.getOpenGroupPublicKey(it) }
             val currentClosedGroups = storage.getAllActiveClosedGroupPublicKeys()
+            // The messages we sent are synced to the conversation with their recipient, which is resolved once per recipient
+            val syncTargets = if (fromOutbox && server != null && serverPublicKey != null) {
+                val recipients = messages.mapNotNullTo(mutableSetOf()) { it.otherBlindedPublicKey }
+                storage.getOrCreateBlindedIdMappings(recipients, server, serverPublicKey, true)
+                    .mapValues { (blindedId, mapping) -> mapping.sessionId ?: blindedId }
+            } else {
+                emptyMap()
+            }
 
             // parse and collect IDs
             messages.forEach { messageParameters ->
                 val (data, serverHash, openGroupMessageServerID) = messageParameters
                 try {
-                    val (message, proto) = MessageReceiver.parse(data, openGroupMessageServerID, openGroupPublicKey = serverPublicKey, currentClosedGroups = currentClosedGroups)
+                    val (message, proto) = MessageReceiver.parse(
+                        data,
+                        openGroupMessageServerID,
+                        isOutgoing = fromOutbox,
+                        otherBlindedPublicKey = messageParameters.otherBlindedPublicKey,
+                        openGroupPublicKey = serverPublicKey,
+                        currentClosedGroups = currentClosedGroups
+                    )
                     message.serverHash = serverHash
+                    syncTargets[messageParameters.otherBlindedPublicKey]?.let { syncTarget ->
+                        when (message) {
+                            is VisibleMessage -> message.syncTarget = syncTarget
+                            is ExpirationTimerUpdate -> message.syncTarget = syncTarget
+                        }
+                    }
                     val parsedParams = ParsedMessage(messageParameters, message, proto)
                     val threadID = Message.getThreadId(message, openGroupID, storage, shouldCreateThread(parsedParams)) ?: NO_THREAD_MAPPING
                     if (!threadMap.containsKey(threadID)) {
@@ -148,6 +181,8 @@ class BatchMessageReceiveJob(
                     val messageIds = linkedMapOf<Long, Pair<Boolean, Boolean>>()
                     val myLastSeen = storage.getLastSeen(threadId)
                     var newLastSeen = myLastSeen.takeUnless { it == -1L } ?: 0
+                    // Reactions are stored once the messages they belong to have been, in one go
+                    val openGroupReactions = mutableMapOf<Long, MessageReceiveParameters>()
                     messages.forEach { (parameters, message, proto) ->
                         try {
                             when (message) {
@@ -179,11 +214,9 @@ class BatchMessageReceiveJob(
                                         )
                                     }
                                     parameters.openGroupMessageServerID?.let {
-                                        MessageReceiver.handleOpenGroupReactions(
-                                            threadId,
-                                            it,
-                                            parameters.reactions
-                                        )
+                                        if (!parameters.reactions.isNullOrEmpty()) {
+                                            openGroupReactions[it] = parameters
+                                        }
                                     }
                                 }
 
@@ -209,6 +242,12 @@ class BatchMessageReceiveJob(
                             }
                         }
                     }
+                    try {
+                        MessageReceiver.handleOpenGroupReactions(threadId, openGroupReactions.mapValues { it.value.reactions!! })
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Couldn't store reactions (id: $id)", e)
+                        failures += openGroupReactions.values
+                    }
                     // increment unreads, notify, and update thread
                     // last seen will be the current last seen if not changed (re-computes the read counts for thread record)
                     // might have been updated from a different thread at this point
@@ -257,12 +296,16 @@ class BatchMessageReceiveJob(
             .build()
         val serverHashes = messages.map { it.serverHash.orEmpty() }
         val openGroupServerIds = messages.map { it.openGroupMessageServerID ?: -1L }
+        val otherBlindedPublicKeys = messages.map { it.otherBlindedPublicKey.orEmpty() }
         return Data.Builder()
             .putInt(NUM_MESSAGES_KEY, arraySize)
             .putByteArray(DATA_KEY, dataArrays.toByteArray())
             .putString(OPEN_GROUP_ID_KEY, openGroupID)
             .putLongArray(OPEN_GROUP_MESSAGE_SERVER_ID_KEY, openGroupServerIds.toLongArray())
             .putStringArray(SERVER_HASH_KEY, serverHashes.toTypedArray())
+            .putString(DIRECT_MESSAGE_SERVER_KEY, directMessageServer)
+            .putBoolean(FROM_OUTBOX_KEY, fromOutbox)
+            .putStringArray(OTHER_BLINDED_PUBLIC_KEY_KEY, otherBlindedPublicKeys.toTypedArray())
             .build()
     }
 
@@ -278,14 +321,19 @@ class BatchMessageReceiveJob(
                 if (data.hasStringArray(SERVER_HASH_KEY)) data.getStringArray(SERVER_HASH_KEY) else arrayOf()
             val openGroupMessageServerIDs = data.getLongArray(OPEN_GROUP_MESSAGE_SERVER_ID_KEY)
             val openGroupID = data.getStringOrDefault(OPEN_GROUP_ID_KEY, null)
+            val directMessageServer = data.getStringOrDefault(DIRECT_MESSAGE_SERVER_KEY, null)
+            val fromOutbox = data.getBooleanOrDefault(FROM_OUTBOX_KEY, false)
+            val otherBlindedPublicKeys =
+                if (data.hasStringArray(OTHER_BLINDED_PUBLIC_KEY_KEY)) data.getStringArray(OTHER_BLINDED_PUBLIC_KEY_KEY) else null
 
             val parameters = (0 until numMessages).map { index ->
                 val serverHash = serverHashes[index].let { if (it.isEmpty()) null else it }
                 val serverId = openGroupMessageServerIDs[index].let { if (it == -1L) null else it }
-                MessageReceiveParameters(contents[index], serverHash, serverId)
+                val otherBlindedPublicKey = otherBlindedPublicKeys?.get(index)?.takeIf { it.isNotEmpty() }
+                MessageReceiveParameters(contents[index], serverHash, serverId, otherBlindedPublicKey = otherBlindedPublicKey)
             }
 
-            return BatchMessageReceiveJob(parameters, openGroupID)
+            return BatchMessageReceiveJob(parameters, openGroupID, directMessageServer, fromOutbox)
         }
     }
 
@@ -255,7 +255,7 @@ class JobQueue : JobDelegate {
         if (job is BatchMessageReceiveJob && job.failureCount <= 0) {
             val replacementParameters = job.failures.toList()
             if (replacementParameters.isNotEmpty()) {
-                val newJob = BatchMessageReceiveJob(replacementParameters, job.openGroupID)
+                val newJob = BatchMessageReceiveJob(replacementParameters, job.openGroupID, job.directMessageServer, job.fromOutbox)
                 newJob.failureCount = job.failureCount + 1
                 add(newJob)
             }
@@ -26,7 +26,6 @@ import org.session.libsession.snode.OnionRequestAPI
 import org.session.libsession.snode.OnionResponse
 import org.session.libsession.snode.SnodeAPI
 import org.session.libsession.utilities.TextSecurePreferences
-import org.session.libsignal.utilities.Base64.decode
 import org.session.libsignal.utilities.Base64.encodeBytes
 import org.session.libsignal.utilities.HTTP
 import org.session.libsignal.utilities.HTTP.Verb.DELETE
@@ -37,7 +36,6 @@ import org.session.libsignal.utilities.Hex
 import org.session.libsignal.utilities.IdPrefix
 import org.session.libsignal.utilities.JsonUtil
 import org.session.libsignal.utilities.Log
-import org.session.libsignal.utilities.removingIdPrefixIfNeeded
 import org.whispersystems.curve25519.Curve25519
 import java.util.concurrent.TimeUnit
 import kotlin.collections.component1
@@ -46,6 +44,9 @@ import kotlin.collections.set
 
 object OpenGroupApi {
     private val curve = Curve25519.getInstance(Curve25519.BEST)
+    private val signatureVerifier = OpenGroupSignatureVerifier { publicKey, data, signature ->
+        curve.verifySignature(publicKey, data, signature)
+    }
     val defaultRooms = MutableSharedFlow<List<DefaultGroup>>(replay = 1)
     private val hasPerformedInitialPoll = mutableMapOf<String, Boolean>()
     private var hasUpdatedLastOpenDate = false
@@ -524,21 +525,12 @@ object OpenGroupApi {
             try {
                 val message = OpenGroupMessage.fromJSON(json) ?: return@mapNotNull null
                 if (message.serverID == null || message.sender.isNullOrEmpty()) return@mapNotNull null
-                val sender = message.sender
-                val data = decode(message.base64EncodedData)
-                val signature = decode(message.base64EncodedSignature)
-                val publicKey = Hex.fromStringCondensed(sender.removingIdPrefixIfNeeded())
-                val isValid = curve.verifySignature(publicKey, data, signature)
-                if (!isValid) {
-                    Log.d("Loki", "Ignoring message with invalid signature.")
-                    return@mapNotNull null
-                }
                 message
             } catch (e: Exception) {
                 null
             }
         }
-        return messages
+        return signatureVerifier.verify(room, server, messages)
     }
 
     fun getReactors(room: String, server: String, messageId: Long, emoji: String): Promise<Map<*, *>, Exception> {
@@ -0,0 +1,99 @@
+package org.session.libsession.messaging.open_groups
+
+import org.session.libsignal.utilities.Base64.decode
+import org.session.libsignal.utilities.Hex
+import org.session.libsignal.utilities.Log
+import org.session.libsignal.utilities.removingIdPrefixIfNeeded
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Verifies the signatures of batches of open group messages.
+ *
+ * Large batches are split into one chunk per worker so that catching up on a busy room doesn't
+ * verify hundreds of signatures one by one on the poller thread. The decoded public keys of
+ * senders are kept per room, as most messages in a room come from a small number of senders.
+ * The returned messages are always in the same order as the given ones.
+ */
+internal class OpenGroupSignatureVerifier(
+    private val executor: ExecutorService = defaultExecutor,
+    private val parallelism: Int = defaultParallelism,
+    private val verifySignature: (publicKey: ByteArray, data: ByteArray, signature: ByteArray) -> Boolean
+) {
+
+    companion object {
+        /** Batches smaller than this are verified on the calling thread. */
+        private const val minParallelBatchSize = 16
+        private const val maxCachedSendersPerRoom = 512
+
+        private val defaultParallelism = Runtime.getRuntime().availableProcessors().coerceIn(1, 8)
+
+        private val defaultExecutor: ExecutorService by lazy {
+            val counter = AtomicInteger()
+            ThreadPoolExecutor(defaultParallelism, defaultParallelism, 30, TimeUnit.SECONDS, LinkedBlockingQueue()) { runnable ->
+                Thread(runnable, "open-group-verifier-${counter.getAndIncrement()}")
+            }.apply { allowCoreThreadTimeOut(true) }
+        }
+    }
+
+    private class SenderKeyCache : LinkedHashMap<String, ByteArray>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ByteArray>?): Boolean = size > maxCachedSendersPerRoom
+    }
+
+    private val senderKeys = ConcurrentHashMap<String, SenderKeyCache>()
+
+    /**
+     * Returns the messages of `room` on `server` that have a valid signature.
+     */
+    fun verify(room: String, server: String, messages: List<OpenGroupMessage>): List<OpenGroupMessage> {
+        if (messages.isEmpty()) return messages
+        val publicKeys = senderPublicKeys(room, server, messages)
+        val isValid = BooleanArray(messages.size)
+        val chunkCount = if (messages.size < minParallelBatchSize) 1 else minOf(parallelism, messages.size / minParallelBatchSize)
+        if (chunkCount == 1) {
+            verifyRange(messages, publicKeys, isValid, 0, messages.size)
+        } else {
+            val chunkSize = (messages.size + chunkCount - 1) / chunkCount
+            val tasks = (0 until messages.size step chunkSize).map { start ->
+                Callable { verifyRange(messages, publicKeys, isValid, start, minOf(start + chunkSize, messages.size)) }
+            }
+            // Each task writes to its own range of `isValid`, and invokeAll waits for all of them
+            executor.invokeAll(tasks).forEach { it.get() }
+        }
+        return messages.filterIndexed { index, _ -> isValid[index] }
+    }
+
+    private fun senderPublicKeys(room: String, server: String, messages: List<OpenGroupMessage>): Array<ByteArray?> {
+        val cache = senderKeys.getOrPut("$server.$room") { SenderKeyCache() }
+        return synchronized(cache) {
+            Array(messages.size) { index ->
+                val sender = messages[index].sender ?: return@Array null
+                cache[sender] ?: try {
+                    Hex.fromStringCondensed(sender.removingIdPrefixIfNeeded()).also { cache[sender] = it }
+                } catch (e: Exception) {
+                    null
+                }
+            }
+        }
+    }
+
+    private fun verifyRange(messages: List<OpenGroupMessage>, publicKeys: Array<ByteArray?>, isValid: BooleanArray, start: Int, end: Int) {
+        for (index in start until end) {
+            val message = messages[index]
+            val publicKey = publicKeys[index] ?: continue
+            isValid[index] = try {
+                val data = decode(message.base64EncodedData)
+                val signature = decode(message.base64EncodedSignature)
+                verifySignature(publicKey, data, signature)
+            } catch (e: Exception) {
+                false
+            }
+            if (!isValid[index]) Log.d("Loki", "Ignoring message with invalid signature.")
+        }
+    }
+}
@@ -1,14 +1,14 @@
 package org.session.libsession.messaging.sending_receiving
 
-import com.goterl.lazysodium.LazySodiumAndroid
-import com.goterl.lazysodium.SodiumAndroid
+import com.goterl.lazysodium.interfaces.AEAD
 import com.goterl.lazysodium.interfaces.Box
 import com.goterl.lazysodium.interfaces.Sign
+import com.goterl.lazysodium.utils.KeyPair
 import org.session.libsession.messaging.MessagingModuleConfiguration
 import org.session.libsession.messaging.sending_receiving.MessageReceiver.Error
-import org.session.libsession.messaging.utilities.SessionId
 import org.session.libsession.messaging.utilities.SodiumUtilities
 import org.session.libsession.messaging.utilities.SodiumUtilities.sodium
+import org.session.libsignal.crypto.ecc.DjbECPublicKey
 import org.session.libsignal.crypto.ecc.ECKeyPair
 import org.session.libsignal.utilities.Hex
 import org.session.libsignal.utilities.IdPrefix
@@ -18,6 +18,41 @@ import org.session.libsignal.utilities.removingIdPrefixIfNeeded
 
 object MessageDecrypter {
 
+    private const val X25519_PUBLIC_KEY_SIZE = Sign.CURVE25519_PUBLICKEYBYTES
+    private const val INITIAL_BUFFER_SIZE = 1024
+    // The bindings copy whole arrays, so a buffer grown for one big message isn't kept for the small ones after it
+    private const val MAX_RETAINED_BUFFER_SIZE = 64 * 1024
+
+    private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+    /**
+     * Buffers reused by the decryptions on a thread. The sodium bindings only take whole arrays, but
+     * they also take the length to read, so a message is taken apart in a buffer that may be bigger
+     * than it by passing the length of the part that is wanted. Only the plaintext that is returned
+     * and the sender's id are allocated per message.
+     */
+    private class Scratch {
+        private var first = ByteArray(INITIAL_BUFFER_SIZE)
+        private var second = ByteArray(INITIAL_BUFFER_SIZE)
+
+        val signature = ByteArray(Sign.BYTES)
+        val senderED25519PublicKey = ByteArray(Sign.PUBLICKEYBYTES)
+        val senderX25519PublicKey = ByteArray(X25519_PUBLIC_KEY_SIZE)
+        val nonce = ByteArray(Box.NONCEBYTES)
+        val plaintextLength = LongArray(1)
+        val sessionId = CharArray(IdPrefix.STANDARD.value.length + 2 * X25519_PUBLIC_KEY_SIZE)
+
+        fun first(size: Int): ByteArray = if (size <= first.size) first else grow(size).also { if (it.size <= MAX_RETAINED_BUFFER_SIZE) first = it }
+
+        fun second(size: Int): ByteArray = if (size <= second.size) second else grow(size).also { if (it.size <= MAX_RETAINED_BUFFER_SIZE) second = it }
+
+        private fun grow(size: Int) = ByteArray(Integer.highestOneBit(size - 1) shl 1)
+    }
+
+    private val scratchBuffers = object : ThreadLocal<Scratch>() {
+        override fun initialValue() = Scratch()
+    }
+
     /**
      * Decrypts `ciphertext` using the Session protocol and `x25519KeyPair`.
      *
@@ -27,39 +62,53 @@ object MessageDecrypter {
      * @return the padded plaintext.
      */
     public fun decrypt(ciphertext: ByteArray, x25519KeyPair: ECKeyPair): Pair<ByteArray, String> {
+        val scratch = scratchBuffers.get()!!
         val recipientX25519PrivateKey = x25519KeyPair.privateKey.serialize()
-        val recipientX25519PublicKey = Hex.fromStringCondensed(x25519KeyPair.hexEncodedPublicKey.removingIdPrefixIfNeeded())
+        val recipientX25519PublicKey = (x25519KeyPair.publicKey as? DjbECPublicKey)?.publicKey?.takeIf { it.size == X25519_PUBLIC_KEY_SIZE }
+            ?: Hex.fromStringCondensed(x25519KeyPair.hexEncodedPublicKey.removingIdPrefixIfNeeded())
         val signatureSize = Sign.BYTES
         val ed25519PublicKeySize = Sign.PUBLICKEYBYTES
 
         // 1. ) Decrypt the message
-        val plaintextWithMetadata = ByteArray(ciphertext.size - Box.SEALBYTES)
-        try {
-            sodium.cryptoBoxSealOpen(plaintextWithMetadata, ciphertext, ciphertext.size.toLong(), recipientX25519PublicKey, recipientX25519PrivateKey)
-        } catch (exception: Exception) {
-            Log.d("Loki", "Couldn't decrypt message due to error: $exception.")
-            throw Error.DecryptionFailed
-        }
-        if (plaintextWithMetadata.size <= (signatureSize + ed25519PublicKeySize)) { throw Error.DecryptionFailed }
-        // 2. ) Get the message parts
-        val signature = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - signatureSize until plaintextWithMetadata.size)
-        val senderED25519PublicKey = plaintextWithMetadata.sliceArray(plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize) until plaintextWithMetadata.size - signatureSize)
-        val plaintext = plaintextWithMetadata.sliceArray(0 until plaintextWithMetadata.size - (signatureSize + ed25519PublicKeySize))
-        // 3. ) Verify the signature
-        val verificationData = (plaintext + senderED25519PublicKey + recipientX25519PublicKey)
+        val plaintextWithMetadataSize = ciphertext.size - Box.SEALBYTES
+        if (plaintextWithMetadataSize <= (signatureSize + ed25519PublicKeySize)) { throw Error.DecryptionFailed }
+        val plaintextWithMetadata = scratch.first(plaintextWithMetadataSize)
         try {
-            val isValid = sodium.cryptoSignVerifyDetached(signature, verificationData, verificationData.size, senderED25519PublicKey)
-            if (!isValid) { throw Error.InvalidSignature }
-        } catch (exception: Exception) {
-            Log.d("Loki", "Couldn't verify message signature due to error: $exception.")
-            throw Error.InvalidSignature
-        }
-        // 4. ) Get the sender's X25519 public key
-        val senderX25519PublicKey = ByteArray(Sign.CURVE25519_PUBLICKEYBYTES)
-        sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderED25519PublicKey)
+            val isOpened = try {
+                sodium.cryptoBoxSealOpen(plaintextWithMetadata, ciphertext, ciphertext.size.toLong(), recipientX25519PublicKey, recipientX25519PrivateKey)
+            } catch (exception: Exception) {
+                Log.d("Loki", "Couldn't decrypt message due to error: $exception.")
+                throw Error.DecryptionFailed
+            }
+            // A message that can't be opened has always been reported as having an invalid signature, as that's
+            // what verifying the signature of the zeroed buffer it leaves behind ends in
+            if (!isOpened) { throw Error.InvalidSignature }
+            // 2. ) Get the message parts: plaintext | sender ed25519 public key | signature
+            val plaintextSize = plaintextWithMetadataSize - (signatureSize + ed25519PublicKeySize)
+            val signature = scratch.signature
+            val senderED25519PublicKey = scratch.senderED25519PublicKey
+            System.arraycopy(plaintextWithMetadata, plaintextSize + ed25519PublicKeySize, signature, 0, signatureSize)
+            System.arraycopy(plaintextWithMetadata, plaintextSize, senderED25519PublicKey, 0, ed25519PublicKeySize)
+            // 3. ) Verify the signature of plaintext | sender ed25519 public key | recipient x25519 public key, which
+            // is what the buffer holds once the recipient's key is written over the signature
+            System.arraycopy(recipientX25519PublicKey, 0, plaintextWithMetadata, plaintextSize + ed25519PublicKeySize, recipientX25519PublicKey.size)
+            val verificationDataSize = plaintextSize + ed25519PublicKeySize + recipientX25519PublicKey.size
+            try {
+                val isValid = sodium.cryptoSignVerifyDetached(signature, plaintextWithMetadata, verificationDataSize, senderED25519PublicKey)
+                if (!isValid) { throw Error.InvalidSignature }
+            } catch (exception: Exception) {
+                Log.d("Loki", "Couldn't verify message signature due to error: $exception.")
+                throw Error.InvalidSignature
+            }
+            // 4. ) Get the sender's X25519 public key
+            val senderX25519PublicKey = scratch.senderX25519PublicKey
+            sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderED25519PublicKey)
 
-        val id = SessionId(IdPrefix.STANDARD, senderX25519PublicKey)
-        return Pair(plaintext, id.hexString)
+            return Pair(plaintextWithMetadata.copyOf(plaintextSize), sessionId(scratch, senderX25519PublicKey))
+        } finally {
+            // The buffer is kept for the next message, so the plaintext isn't left in it
+            plaintextWithMetadata.fill(0, 0, plaintextWithMetadataSize)
+        }
     }
 
     fun decryptBlinded(
@@ -70,6 +119,21 @@ object MessageDecrypter {
     ): Pair<ByteArray, String> {
         if (message.size < Box.NONCEBYTES + 2) throw Error.DecryptionFailed
         val userEdKeyPair = MessagingModuleConfiguration.shared.getUserED25519KeyPair() ?: throw Error.NoUserED25519KeyPair
+        return decryptBlinded(message, isOutgoing, otherBlindedPublicKey, serverPublicKey, userEdKeyPair)
+    }
+
+    /**
+     * [decryptBlinded] as the user whose ed25519 key pair is `userEdKeyPair`.
+     */
+    fun decryptBlinded(
+        message: ByteArray,
+        isOutgoing: Boolean,
+        otherBlindedPublicKey: String,
+        serverPublicKey: String,
+        userEdKeyPair: KeyPair
+    ): Pair<ByteArray, String> {
+        if (message.size < Box.NONCEBYTES + 2) throw Error.DecryptionFailed
+        val scratch = scratchBuffers.get()!!
         val blindedKeyPair = SodiumUtilities.blindedKeyPair(serverPublicKey, userEdKeyPair) ?: throw Error.DecryptionFailed
         // Calculate the shared encryption key, receiving from A to B
         val otherKeyBytes = Hex.fromStringCondensed(otherBlindedPublicKey.removingIdPrefixIfNeeded())
@@ -84,27 +148,56 @@ object MessageDecrypter {
         // v, ct, nc = data[0], data[1:-24], data[-24:size]
         val version = message.first().toInt()
         if (version != 0) throw Error.DecryptionFailed
-        val ciphertext = message.drop(1).dropLast(Box.NONCEBYTES).toByteArray()
-        val nonce = message.takeLast(Box.NONCEBYTES).toByteArray()
+        val ciphertextSize = message.size - 1 - Box.NONCEBYTES
+        if (ciphertextSize < AEAD.XCHACHA20POLY1305_IETF_ABYTES) throw Error.DecryptionFailed
+        val ciphertext = scratch.first(ciphertextSize)
+        val nonce = scratch.nonce
+        System.arraycopy(message, 1, ciphertext, 0, ciphertextSize)
+        System.arraycopy(message, message.size - Box.NONCEBYTES, nonce, 0, Box.NONCEBYTES)
 
         // Decrypt the message
-        val innerBytes = SodiumUtilities.decrypt(ciphertext, decryptionKey, nonce) ?: throw Error.DecryptionFailed
-        if (innerBytes.size < Sign.PUBLICKEYBYTES) throw Error.DecryptionFailed
+        val innerSize = ciphertextSize - AEAD.XCHACHA20POLY1305_IETF_ABYTES
+        val innerBytes = scratch.second(innerSize)
+        try {
+            scratch.plaintextLength[0] = innerSize.toLong()
+            if (!sodium.cryptoAeadXChaCha20Poly1305IetfDecrypt(innerBytes, scratch.plaintextLength, null, ciphertext, ciphertextSize.toLong(), null, 0L, nonce, decryptionKey)) {
+                throw Error.DecryptionFailed
+            }
+            if (innerSize < Sign.PUBLICKEYBYTES) throw Error.DecryptionFailed
 
-        // Split up: the last 32 bytes are the sender's *unblinded* ed25519 key
-        val plaintextEndIndex = innerBytes.size - Sign.PUBLICKEYBYTES
-        val plaintext = innerBytes.slice(0 until plaintextEndIndex).toByteArray()
-        val senderEdPublicKey = innerBytes.slice((plaintextEndIndex until innerBytes.size)).toByteArray()
+            // Split up: the last 32 bytes are the sender's *unblinded* ed25519 key
+            val plaintextEndIndex = innerSize - Sign.PUBLICKEYBYTES
+            val senderEdPublicKey = scratch.senderED25519PublicKey
+            System.arraycopy(innerBytes, plaintextEndIndex, senderEdPublicKey, 0, Sign.PUBLICKEYBYTES)
 
-        // Verify that the inner senderEdPublicKey (A) yields the same outer kA we got with the message
-        val blindingFactor = SodiumUtilities.generateBlindingFactor(serverPublicKey) ?: throw Error.DecryptionFailed
-        val sharedSecret = SodiumUtilities.combineKeys(blindingFactor, senderEdPublicKey) ?: throw Error.DecryptionFailed
-        if (!kA.contentEquals(sharedSecret)) throw Error.InvalidSignature
+            // Verify that the inner senderEdPublicKey (A) yields the same outer kA we got with the message
+            val blindingFactor = SodiumUtilities.generateBlindingFactor(serverPublicKey) ?: throw Error.DecryptionFailed
+            val sharedSecret = SodiumUtilities.combineKeys(blindingFactor, senderEdPublicKey) ?: throw Error.DecryptionFailed
+            if (!kA.contentEquals(sharedSecret)) throw Error.InvalidSignature
 
-        // Get the sender's X25519 public key
-        val senderX25519PublicKey = SodiumUtilities.toX25519(senderEdPublicKey) ?: throw Error.InvalidSignature
+            // Get the sender's X25519 public key
+            val senderX25519PublicKey = scratch.senderX25519PublicKey
+            if (!sodium.convertPublicKeyEd25519ToCurve25519(senderX25519PublicKey, senderEdPublicKey)) throw Error.InvalidSignature
+
+            return Pair(innerBytes.copyOf(plaintextEndIndex), sessionId(scratch, senderX25519PublicKey))
+        } finally {
+            // The buffer is kept for the next message, so the plaintext isn't left in it
+            innerBytes.fill(0, 0, innerSize)
+        }
+    }
 
-        val id = SessionId(IdPrefix.STANDARD, senderX25519PublicKey)
-        return Pair(plaintext, id.hexString)
+    /**
+     * The same as `SessionId(IdPrefix.STANDARD, publicKey).hexString`, without formatting each byte
+     * into a string of its own.
+     */
+    private fun sessionId(scratch: Scratch, publicKey: ByteArray): String {
+        val chars = scratch.sessionId
+        val prefix = IdPrefix.STANDARD.value
+        prefix.toCharArray(chars)
+        publicKey.forEachIndexed { index, byte ->
+            chars[prefix.length + 2 * index] = HEX_DIGITS[(byte.toInt() shr 4) and 0xf]
+            chars[prefix.length + 2 * index + 1] = HEX_DIGITS[byte.toInt() and 0xf]
+        }
+        return String(chars)
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,7 @@ import org.session.libsession.messaging.utilities.SodiumUtilities
 import org.session.libsession.snode.SnodeAPI
 import org.session.libsignal.crypto.PushTransportDetails
 import org.session.libsignal.protos.SignalServiceProtos
+import org.session.libsignal.protos.SignalServiceProtos.DataMessage.Flags.EXPIRATION_TIMER_UPDATE_VALUE
 import org.session.libsignal.utilities.IdPrefix
 import org.session.libsignal.utilities.Log
 
@@ -49,6 +50,35 @@ object MessageReceiver {
         }
     }
 
+    private class ContentDecoder(
+        val isPresent: (SignalServiceProtos.Content) -> Boolean,
+        val decode: (SignalServiceProtos.Content) -> Message?
+    )
+
+    /**
+     * The decoders for each kind of message, keyed by the field of the content that carries it. A
+     * content is decoded by the first one whose field is present, so where kinds share a field the
+     * more specific ones come first.
+     */
+    private val contentDecoders = listOf(
+        ContentDecoder(SignalServiceProtos.Content::hasReceiptMessage, ReadReceipt::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasTypingMessage, TypingIndicator::fromProto),
+        ContentDecoder({ it.hasDataMessage() && it.dataMessage.hasClosedGroupControlMessage() }, ClosedGroupControlMessage::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasDataExtractionNotification, DataExtractionNotification::fromProto),
+        ContentDecoder({ it.hasDataMessage() && it.dataMessage.flags and EXPIRATION_TIMER_UPDATE_VALUE != 0 }, ExpirationTimerUpdate::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasConfigurationMessage, ConfigurationMessage::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasUnsendRequest, UnsendRequest::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasMessageRequestResponse, MessageRequestResponse::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasCallMessage, CallMessage::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasSharedConfigMessage, SharedConfigurationMessage::fromProto),
+        ContentDecoder(SignalServiceProtos.Content::hasDataMessage, VisibleMessage::fromProto)
+    )
+
+    internal fun decode(proto: SignalServiceProtos.Content): Message {
+        val decoder = contentDecoders.firstOrNull { it.isPresent(proto) } ?: throw Error.UnknownMessage
+        return decoder.decode(proto) ?: throw Error.UnknownMessage
+    }
+
     internal fun parse(
         data: ByteArray,
         openGroupServerID: Long?,
@@ -135,17 +165,7 @@ object MessageReceiver {
         // Parse the proto
         val proto = SignalServiceProtos.Content.parseFrom(PushTransportDetails.getStrippedPaddingMessageBody(plaintext))
         // Parse the message
-        val message: Message = ReadReceipt.fromProto(proto) ?:
-            TypingIndicator.fromProto(proto) ?:
-            ClosedGroupControlMessage.fromProto(proto) ?:
-            DataExtractionNotification.fromProto(proto) ?:
-            ExpirationTimerUpdate.fromProto(proto) ?:
-            ConfigurationMessage.fromProto(proto) ?:
-            UnsendRequest.fromProto(proto) ?:
-            MessageRequestResponse.fromProto(proto) ?:
-            CallMessage.fromProto(proto) ?:
-            SharedConfigurationMessage.fromProto(proto) ?:
-            VisibleMessage.fromProto(proto) ?: throw Error.UnknownMessage
+        val message = decode(proto)
 
         val isUserBlindedSender = sender == openGroupPublicKey?.let { SodiumUtilities.blindedKeyPair(it, MessagingModuleConfiguration.shared.getUserED25519KeyPair()!!) }?.let { SessionId(IdPrefix.BLINDED, it.publicKey.asBytes).hexString }
         val isUserSender = sender == userPublicKey
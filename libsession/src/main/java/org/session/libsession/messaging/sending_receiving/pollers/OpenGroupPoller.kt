@@ -3,7 +3,6 @@ package org.session.libsession.messaging.sending_receiving.pollers
 import com.google.protobuf.ByteString
 import nl.komponents.kovenant.Promise
 import nl.komponents.kovenant.functional.map
-import org.session.libsession.messaging.BlindedIdMapping
 import org.session.libsession.messaging.MessagingModuleConfiguration
 import org.session.libsession.messaging.jobs.BatchMessageReceiveJob
 import org.session.libsession.messaging.jobs.GroupAvatarDownloadJob
@@ -12,9 +11,6 @@ import org.session.libsession.messaging.jobs.MessageReceiveJob
 import org.session.libsession.messaging.jobs.MessageReceiveParameters
 import org.session.libsession.messaging.jobs.OpenGroupDeleteJob
 import org.session.libsession.messaging.jobs.TrimThreadJob
-import org.session.libsession.messaging.messages.Message
-import org.session.libsession.messaging.messages.control.ExpirationTimerUpdate
-import org.session.libsession.messaging.messages.visible.VisibleMessage
 import org.session.libsession.messaging.open_groups.Endpoint
 import org.session.libsession.messaging.open_groups.GroupMember
 import org.session.libsession.messaging.open_groups.GroupMemberRole
@@ -22,14 +18,12 @@ import org.session.libsession.messaging.open_groups.OpenGroup
 import org.session.libsession.messaging.open_groups.OpenGroupApi
 import org.session.libsession.messaging.open_groups.OpenGroupMessage
 import org.session.libsession.messaging.sending_receiving.MessageReceiver
-import org.session.libsession.messaging.sending_receiving.handle
 import org.session.libsession.messaging.sending_receiving.handleOpenGroupReactions
 import org.session.libsession.snode.OnionRequestAPI
 import org.session.libsession.utilities.Address
 import org.session.libsession.utilities.GroupUtil
 import org.session.libsignal.protos.SignalServiceProtos
 import org.session.libsignal.utilities.Base64
-import org.session.libsignal.utilities.Log
 import org.session.libsignal.utilities.successBackground
 import java.util.UUID
 import java.util.concurrent.ScheduledExecutorService
@@ -239,16 +233,14 @@ class OpenGroupPoller(private val server: String, private val executorService: S
     ) {
         if (messages.isEmpty()) return
         val storage = MessagingModuleConfiguration.shared.storage
-        val serverPublicKey = storage.getOpenGroupPublicKey(server)!!
         val sortedMessages = messages.sortedBy { it.id }
         val lastMessageId = sortedMessages.last().id
-        val mappingCache = mutableMapOf<String, BlindedIdMapping>()
         if (fromOutbox) {
             storage.setLastOutboxMessageId(server, lastMessageId)
         } else {
             storage.setLastInboxMessageId(server, lastMessageId)
         }
-        sortedMessages.forEach {
+        val parameters = sortedMessages.map {
             val encodedMessage = Base64.decode(it.message)
             val envelope = SignalServiceProtos.Envelope.newBuilder()
                 .setTimestamp(TimeUnit.SECONDS.toMillis(it.postedAt))
@@ -256,35 +248,10 @@ class OpenGroupPoller(private val server: String, private val executorService: S
                 .setContent(ByteString.copyFrom(encodedMessage))
                 .setSource(it.sender)
                 .build()
-            try {
-                val (message, proto) = MessageReceiver.parse(
-                    envelope.toByteArray(),
-                    null,
-                    fromOutbox,
-                    if (fromOutbox) it.recipient else it.sender,
-                    serverPublicKey,
-                    emptySet() // this shouldn't be necessary as we are polling open groups here
-                )
-                if (fromOutbox) {
-                    val mapping = mappingCache[it.recipient] ?: storage.getOrCreateBlindedIdMapping(
-                        it.recipient,
-                        server,
-                        serverPublicKey,
-                        true
-                    )
-                    val syncTarget = mapping.sessionId ?: it.recipient
-                    if (message is VisibleMessage) {
-                        message.syncTarget = syncTarget
-                    } else if (message is ExpirationTimerUpdate) {
-                        message.syncTarget = syncTarget
-                    }
-                    mappingCache[it.recipient] = mapping
-                }
-                val threadId = Message.getThreadId(message, null, MessagingModuleConfiguration.shared.storage, false)
-                MessageReceiver.handle(message, proto, threadId ?: -1, null)
-            } catch (e: Exception) {
-                Log.e("Loki", "Couldn't handle direct message", e)
-            }
+            MessageReceiveParameters(envelope.toByteArray(), otherBlindedPublicKey = if (fromOutbox) it.recipient else it.sender)
+        }
+        parameters.chunked(BatchMessageReceiveJob.BATCH_DEFAULT_NUMBER).forEach { list ->
+            JobQueue.shared.add(BatchMessageReceiveJob(list, directMessageServer = server, fromOutbox = fromOutbox))
         }
     }
 
@@ -297,6 +264,7 @@ class OpenGroupPoller(private val server: String, private val executorService: S
         val threadExists = threadId >= 0
         if (!hasStarted || !threadExists) { return }
         val envelopes =  mutableListOf<Triple<Long?, SignalServiceProtos.Envelope, Map<String, OpenGroupApi.Reaction>?>>()
+        val reactionUpdates = mutableMapOf<Long, Map<String, OpenGroupApi.Reaction>>()
         messages.sortedBy { it.serverID!! }.forEach { message ->
             if (!message.base64EncodedData.isNullOrEmpty()) {
                 val envelope = SignalServiceProtos.Envelope.newBuilder()
@@ -309,10 +277,11 @@ class OpenGroupPoller(private val server: String, private val executorService: S
                 envelopes.add(Triple( message.serverID, envelope, message.reactions))
             } else if (!message.reactions.isNullOrEmpty()) {
                 message.serverID?.let {
-                    MessageReceiver.handleOpenGroupReactions(threadId, it, message.reactions)
+                    reactionUpdates[it] = message.reactions
                 }
             }
         }
+        MessageReceiver.handleOpenGroupReactions(threadId, reactionUpdates)
 
         envelopes.chunked(BatchMessageReceiveJob.BATCH_DEFAULT_NUMBER).forEach { list ->
             val parameters = list.map { (serverId, message, reactions) ->
@@ -26,6 +26,7 @@ import org.session.libsignal.utilities.ThreadUtils
 import org.session.libsignal.utilities.recover
 import org.session.libsignal.utilities.toHexString
 import java.util.Date
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicReference
 import kotlin.collections.set
 
@@ -40,8 +41,21 @@ object OnionRequestAPI {
         get() = SnodeModule.shared.storage
     private val broadcaster: Broadcaster
         get() = SnodeModule.shared.broadcaster
-    private val pathFailureCount = mutableMapOf<Path, Int>()
-    private val snodeFailureCount = mutableMapOf<Snode, Int>()
+    private val pathFailureCount = ConcurrentHashMap<Path, Int>()
+    private val snodeFailureCount = ConcurrentHashMap<Snode, Int>()
+    private val pathHealth = PathHealthTracker<Path>()
+    /**
+     * Guard snodes outlive the paths they're part of (a repaired path keeps its guard snode), so
+     * they're scored separately. This allows a bad guard snode to be dropped along with only the
+     * path it's in, and keeps it from being picked again while its score recovers.
+     */
+    private val guardSnodeHealth = PathHealthTracker<Snode>()
+    private val pathLatencyProbeTimestamps = ConcurrentHashMap<Path, Long>()
+    /**
+     * Guards `buildPathsPromise` and changes to `paths`, so that a path can't be repaired while
+     * new paths are being built and two builds can't be started at the same time.
+     */
+    private val pathBuildingLock = Any()
 
     var guardSnodes = setOf<Snode>()
     var _paths: AtomicReference<List<Path>?> = AtomicReference(null)
@@ -90,6 +104,10 @@ object OnionRequestAPI {
      * The number of paths to maintain.
      */
     const val targetPathCount = 2 // A main path and a backup path for the case where the target snode is in the main path
+    /**
+     * The minimum time between two latency probes of the same path.
+     */
+    private const val pathLatencyProbeInterval = 60 * 1000L
     // endregion
 
     class HTTPRequestFailedBlindingRequiredException(statusCode: Int, json: Map<*, *>, destination: String): HTTPRequestFailedAtDestinationException(statusCode, json, destination)
@@ -98,6 +116,7 @@ object OnionRequestAPI {
     class InsufficientSnodesException : Exception("Couldn't find enough snodes to build a path.")
 
     private data class OnionBuildingResult(
+        val path: Path,
         val guardSnode: Snode,
         val finalEncryptionResult: EncryptionResult,
         val destinationSymmetricKey: ByteArray
@@ -146,6 +165,7 @@ object OnionRequestAPI {
             Log.d("Loki", "Populating guard snode cache.")
             return SnodeAPI.getRandomSnode().bind { // Just used to populate the snode pool
                 var unusedSnodes = SnodeAPI.snodePool.minus(reusableGuardSnodes)
+                    .filter { !guardSnodeHealth.isDegraded(it, reusableGuardSnodes) }.toSet()
                 val reusableGuardSnodeCount = reusableGuardSnodes.count()
                 if (unusedSnodes.count() < (targetGuardSnodeCount - reusableGuardSnodeCount)) { throw InsufficientSnodesException() }
                 fun getGuardSnode(): Promise<Snode, Exception> {
@@ -177,37 +197,45 @@ object OnionRequestAPI {
      * enough (reliable) snodes are available.
      */
     private fun buildPaths(reusablePaths: List<Path>): Promise<List<Path>, Exception> {
-        val existingBuildPathsPromise = buildPathsPromise
-        if (existingBuildPathsPromise != null) { return existingBuildPathsPromise }
-        Log.d("Loki", "Building onion request paths.")
-        broadcaster.broadcast("buildingPaths")
-        val promise = SnodeAPI.getRandomSnode().bind { // Just used to populate the snode pool
-            val reusableGuardSnodes = reusablePaths.map { it[0] }
-            getGuardSnodes(reusableGuardSnodes).map { guardSnodes ->
-                var unusedSnodes = SnodeAPI.snodePool.minus(guardSnodes).minus(reusablePaths.flatten())
-                val reusableGuardSnodeCount = reusableGuardSnodes.count()
-                val pathSnodeCount = (targetGuardSnodeCount - reusableGuardSnodeCount) * pathSize - (targetGuardSnodeCount - reusableGuardSnodeCount)
-                if (unusedSnodes.count() < pathSnodeCount) { throw InsufficientSnodesException() }
-                // Don't test path snodes as this would reveal the user's IP to them
-                guardSnodes.minus(reusableGuardSnodes).map { guardSnode ->
-                    val result = listOf( guardSnode ) + (0 until (pathSize - 1)).map {
-                        val pathSnode = unusedSnodes.getRandomElement()
-                        unusedSnodes = unusedSnodes.minus(pathSnode)
-                        pathSnode
+        synchronized(pathBuildingLock) {
+            val existingBuildPathsPromise = buildPathsPromise
+            if (existingBuildPathsPromise != null) { return existingBuildPathsPromise }
+            Log.d("Loki", "Building onion request paths.")
+            broadcaster.broadcast("buildingPaths")
+            val promise = SnodeAPI.getRandomSnode().bind { // Just used to populate the snode pool
+                val reusableGuardSnodes = reusablePaths.map { it[0] }
+                getGuardSnodes(reusableGuardSnodes).map { guardSnodes ->
+                    var unusedSnodes = SnodeAPI.snodePool.minus(guardSnodes).minus(reusablePaths.flatten())
+                    val reusableGuardSnodeCount = reusableGuardSnodes.count()
+                    val pathSnodeCount = (targetGuardSnodeCount - reusableGuardSnodeCount) * pathSize - (targetGuardSnodeCount - reusableGuardSnodeCount)
+                    if (unusedSnodes.count() < pathSnodeCount) { throw InsufficientSnodesException() }
+                    // Don't test path snodes as this would reveal the user's IP to them
+                    guardSnodes.minus(reusableGuardSnodes).map { guardSnode ->
+                        val result = listOf( guardSnode ) + (0 until (pathSize - 1)).map {
+                            val pathSnode = unusedSnodes.getRandomElement()
+                            unusedSnodes = unusedSnodes.minus(pathSnode)
+                            pathSnode
+                        }
+                        Log.d("Loki", "Built new onion request path: $result.")
+                        result
+                    }
+                }.map { paths ->
+                    synchronized(pathBuildingLock) {
+                        OnionRequestAPI.paths = paths + reusablePaths
                     }
-                    Log.d("Loki", "Built new onion request path: $result.")
-                    result
+                    broadcaster.broadcast("pathsBuilt")
+                    paths
                 }
-            }.map { paths ->
-                OnionRequestAPI.paths = paths + reusablePaths
-                broadcaster.broadcast("pathsBuilt")
-                paths
             }
+            // Set before adding the callbacks, in case the promise has already completed
+            buildPathsPromise = promise
+            fun clearBuildPathsPromise() = synchronized(pathBuildingLock) {
+                if (buildPathsPromise === promise) { buildPathsPromise = null }
+            }
+            promise.success { clearBuildPathsPromise() }
+            promise.fail { clearBuildPathsPromise() }
+            return promise
         }
-        promise.success { buildPathsPromise = null }
-        promise.fail { buildPathsPromise = null }
-        buildPathsPromise = promise
-        return promise
     }
 
     /**
@@ -226,9 +254,9 @@ object OnionRequestAPI {
         OnionRequestAPI.guardSnodes = guardSnodes
         fun getPath(paths: List<Path>): Path {
             return if (snodeToExclude != null) {
-                paths.filter { !it.contains(snodeToExclude) }.getRandomElement()
+                pathHealth.select(paths.filter { !it.contains(snodeToExclude) })
             } else {
-                paths.getRandomElement()
+                pathHealth.select(paths)
             }
         }
         when {
@@ -258,33 +286,46 @@ object OnionRequestAPI {
     }
 
     private fun dropSnode(snode: Snode) {
-        // We repair the path here because we can do it sync. In the case where we drop a whole
-        // path we leave the re-building up to getPath() because re-building the path in that case
-        // is async.
-        snodeFailureCount[snode] = 0
-        val oldPaths = paths.toMutableList()
-        val pathIndex = oldPaths.indexOfFirst { it.contains(snode) }
-        if (pathIndex == -1) { return }
-        val path = oldPaths[pathIndex].toMutableList()
-        val snodeIndex = path.indexOf(snode)
-        if (snodeIndex == -1) { return }
-        path.removeAt(snodeIndex)
-        val unusedSnodes = SnodeAPI.snodePool.minus(oldPaths.flatten())
-        if (unusedSnodes.isEmpty()) { throw InsufficientSnodesException() }
-        path.add(unusedSnodes.getRandomElement())
-        // Don't test the new snode as this would reveal the user's IP
-        oldPaths.removeAt(pathIndex)
-        val newPaths = oldPaths + listOf( path )
-        paths = newPaths
+        synchronized(pathBuildingLock) {
+            // We repair the path here because we can do it sync. In the case where we drop a whole
+            // path we leave the re-building up to getPath() because re-building the path in that case
+            // is async.
+            snodeFailureCount.remove(snode)
+            val oldPaths = paths.toMutableList()
+            val pathIndex = oldPaths.indexOfFirst { it.contains(snode) }
+            if (pathIndex == -1) { return }
+            val path = oldPaths[pathIndex].toMutableList()
+            val snodeIndex = path.indexOf(snode)
+            if (snodeIndex == -1) { return }
+            path.removeAt(snodeIndex)
+            val unusedSnodes = SnodeAPI.snodePool.minus(oldPaths.flatten())
+            if (unusedSnodes.isEmpty()) { throw InsufficientSnodesException() }
+            path.add(unusedSnodes.getRandomElement())
+            // Don't test the new snode as this would reveal the user's IP
+            forgetHealth(oldPaths.removeAt(pathIndex))
+            val newPaths = oldPaths + listOf( path )
+            paths = newPaths
+        }
+    }
+
+    // ConcurrentHashMap.merge requires API 24
+    private fun <K> ConcurrentHashMap<K, Int>.increment(key: K): Int {
+        while (true) {
+            val current = putIfAbsent(key, 1) ?: return 1
+            if (replace(key, current, current + 1)) return current + 1
+        }
     }
 
     private fun dropPath(path: Path) {
-        pathFailureCount[path] = 0
-        val paths = OnionRequestAPI.paths.toMutableList()
-        val pathIndex = paths.indexOf(path)
-        if (pathIndex == -1) { return }
-        paths.removeAt(pathIndex)
-        OnionRequestAPI.paths = paths
+        synchronized(pathBuildingLock) {
+            pathFailureCount.remove(path)
+            forgetHealth(path)
+            val paths = OnionRequestAPI.paths.toMutableList()
+            val pathIndex = paths.indexOf(path)
+            if (pathIndex == -1) { return }
+            paths.removeAt(pathIndex)
+            OnionRequestAPI.paths = paths
+        }
     }
 
     /**
@@ -293,8 +334,10 @@ object OnionRequestAPI {
     private fun buildOnionForDestination(
         payload: ByteArray,
         destination: Destination,
-        version: Version
+        version: Version,
+        fixedPath: Path? = null
     ): Promise<OnionBuildingResult, Exception> {
+        lateinit var selectedPath: Path
         lateinit var guardSnode: Snode
         lateinit var destinationSymmetricKey: ByteArray // Needed by LokiAPI to decrypt the response sent back by the destination
         lateinit var encryptionResult: EncryptionResult
@@ -302,7 +345,9 @@ object OnionRequestAPI {
             is Destination.Snode -> destination.snode
             is Destination.Server -> null
         }
-        return getPath(snodeToExclude).bind { path ->
+        val pathPromise = if (fixedPath != null) Promise.of(fixedPath) else getPath(snodeToExclude)
+        return pathPromise.bind { path ->
+            selectedPath = path
             guardSnode = path.first()
             // Encrypt in reverse order, i.e. the destination first
             OnionRequestEncryption.encryptPayloadForDestination(payload, destination, version).bind { r ->
@@ -326,7 +371,74 @@ object OnionRequestAPI {
                 }
                 addLayer()
             }
-        }.map { OnionBuildingResult(guardSnode, encryptionResult, destinationSymmetricKey) }
+        }.map { OnionBuildingResult(selectedPath, guardSnode, encryptionResult, destinationSymmetricKey) }
+    }
+
+    private fun forgetHealth(path: Path) {
+        pathHealth.forget(path)
+        pathLatencyProbeTimestamps.remove(path)
+    }
+
+    /**
+     * Replaces `path` if it's performing much worse than the other paths, so requests stop being
+     * routed through it before it actually starts failing. If its guard snode has been performing
+     * badly across the paths it was part of, the path is dropped and re-built with a new guard snode
+     * in the background, keeping the other paths. Otherwise only the snodes after the guard snode
+     * are replaced, as the slowness of a single path says little about which hop is to blame.
+     */
+    private fun rebuildPathIfDegraded(path: Path) {
+        synchronized(pathBuildingLock) {
+            val paths = this.paths
+            if (paths.count() < targetPathCount || buildPathsPromise != null) { return }
+            val pathIndex = paths.indexOf(path)
+            if (pathIndex == -1) { return }
+            val guardSnode = path.first()
+            if (guardSnodeHealth.isDegraded(guardSnode, paths.map { it.first() })) {
+                Log.d("Loki", "Dropping degraded guard snode: $guardSnode.")
+                dropGuardSnode(guardSnode)
+                dropPath(path)
+                buildPaths(this.paths)
+                return
+            }
+            if (!pathHealth.isDegraded(path, paths)) { return }
+            val unusedSnodes = SnodeAPI.snodePool.minus(paths.flatten()).toMutableSet()
+            if (unusedSnodes.count() < path.count() - 1) { return }
+            // Don't test the new snodes as this would reveal the user's IP
+            val newPath = listOf( path.first() ) + (1 until path.count()).map {
+                val pathSnode = unusedSnodes.getRandomElement()
+                unusedSnodes.remove(pathSnode)
+                pathSnode
+            }
+            Log.d("Loki", "Re-building degraded onion request path: $path as $newPath.")
+            // The failures so far may still be the guard snode's
+            pathFailureCount.remove(path)?.let { pathFailureCount[newPath] = it }
+            forgetHealth(path)
+            this.paths = paths.toMutableList().also { it[pathIndex] = newPath }
+        }
+    }
+
+    /**
+     * Times a round trip through `path` with an `info` request, which the destination answers
+     * without doing any real work. The time requests take at their destination (e.g. a file
+     * upload) varies far more than the time spent on the path, so paths are only compared by
+     * these probes rather than by the requests they happen to carry.
+     */
+    private fun probePathLatencyIfNeeded(path: Path) {
+        val now = System.currentTimeMillis()
+        val lastProbe = pathLatencyProbeTimestamps[path]
+        if (lastProbe != null && now - lastProbe < pathLatencyProbeInterval) { return }
+        val isProbeClaimed = if (lastProbe == null) {
+            pathLatencyProbeTimestamps.putIfAbsent(path, now) == null
+        } else {
+            pathLatencyProbeTimestamps.replace(path, lastProbe, now)
+        }
+        if (!isProbeClaimed) { return } // Another request is already probing this path
+        val destination = SnodeAPI.snodePool.minus(path).getRandomElementOrNull() ?: return
+        val payload = JsonUtil.toJson(mapOf(
+            "method" to Snode.Method.Info.rawValue,
+            "params" to mapOf<String, Any>()
+        )).toByteArray()
+        sendOnionRequest(Destination.Snode(destination), payload, Version.V3, path)
     }
 
     /**
@@ -335,12 +447,16 @@ object OnionRequestAPI {
     private fun sendOnionRequest(
         destination: Destination,
         payload: ByteArray,
-        version: Version
+        version: Version,
+        latencyProbePath: Path? = null
     ): Promise<OnionResponse, Exception> {
         val deferred = deferred<OnionResponse, Exception>()
         var guardSnode: Snode? = null
-        buildOnionForDestination(payload, destination, version).success { result ->
+        var selectedPath: Path? = null
+        var roundTripTime: Long? = null
+        buildOnionForDestination(payload, destination, version, latencyProbePath).success { result ->
             guardSnode = result.guardSnode
+            selectedPath = result.path
             val nonNullGuardSnode = result.guardSnode
             val url = "${nonNullGuardSnode.address}:${nonNullGuardSnode.port}/onion_req/v2"
             val finalEncryptionResult = result.finalEncryptionResult
@@ -360,16 +476,32 @@ object OnionRequestAPI {
             val destinationSymmetricKey = result.destinationSymmetricKey
             ThreadUtils.queue {
                 try {
+                    val startTime = System.currentTimeMillis()
                     val response = HTTP.execute(HTTP.Verb.POST, url, body)
+                    roundTripTime = System.currentTimeMillis() - startTime
                     handleResponse(response, destinationSymmetricKey, destination, version, deferred)
                 } catch (exception: Exception) {
-                    deferred.reject(exception)
+                    if (!deferred.promise.isDone()) { deferred.reject(exception) }
                 }
             }
         }.fail { exception ->
             deferred.reject(exception)
         }
         val promise = deferred.promise
+        // handleResponse(...) rejects the promise rather than throwing, so only count a request as
+        // successful once its response has actually been accepted
+        promise.success {
+            val path = selectedPath ?: return@success
+            if (latencyProbePath != null) {
+                pathHealth.recordSuccess(path, roundTripTime)
+                guardSnodeHealth.recordSuccess(path.first(), roundTripTime)
+                rebuildPathIfDegraded(path)
+            } else {
+                pathHealth.recordSuccess(path)
+                guardSnodeHealth.recordSuccess(path.first())
+                probePathLatencyIfNeeded(path)
+            }
+        }
         promise.fail { exception ->
             if (exception is HTTP.HTTPRequestFailedException && SnodeModule.isInitialized) {
                 val checkedGuardSnode = guardSnode
@@ -379,8 +511,9 @@ object OnionRequestAPI {
 
                 fun handleUnspecificError() {
                     if (path == null) { return }
-                    var pathFailureCount = OnionRequestAPI.pathFailureCount[path] ?: 0
-                    pathFailureCount += 1
+                    pathHealth.recordFailure(path)
+                    guardSnodeHealth.recordFailure(path.first())
+                    val pathFailureCount = OnionRequestAPI.pathFailureCount.increment(path)
                     if (pathFailureCount >= pathFailureThreshold) {
                         guardSnode?.let { dropGuardSnode(it) }
                         path.forEach { snode ->
@@ -389,7 +522,7 @@ object OnionRequestAPI {
                         }
                         dropPath(path)
                     } else {
-                        OnionRequestAPI.pathFailureCount[path] = pathFailureCount
+                        rebuildPathIfDegraded(path)
                     }
                 }
                 val json = exception.json
@@ -399,8 +532,7 @@ object OnionRequestAPI {
                     val ed25519PublicKey = message.substringAfter(prefix)
                     val snode = path?.firstOrNull { it.publicKeySet!!.ed25519Key == ed25519PublicKey }
                     if (snode != null) {
-                        var snodeFailureCount = OnionRequestAPI.snodeFailureCount[snode] ?: 0
-                        snodeFailureCount += 1
+                        val snodeFailureCount = OnionRequestAPI.snodeFailureCount.increment(snode)
                         if (snodeFailureCount >= snodeFailureThreshold) {
                             @Suppress("ThrowableNotThrown")
                             SnodeAPI.handleSnodeError(exception.statusCode, json, snode, null) // Intentionally don't throw
@@ -409,8 +541,6 @@ object OnionRequestAPI {
                             } catch (exception: Exception) {
                                 handleUnspecificError()
                             }
-                        } else {
-                            OnionRequestAPI.snodeFailureCount[snode] = snodeFailureCount
                         }
                     } else {
                         handleUnspecificError()
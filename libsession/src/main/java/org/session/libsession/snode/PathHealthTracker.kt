@@ -0,0 +1,141 @@
+package org.session.libsession.snode
+
+import java.security.SecureRandom
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.max
+import kotlin.math.pow
+
+/**
+ * Keeps track of how well onion request paths are performing.
+ *
+ * Successes and failures are weighted with an exponential decay so that a path recovers from old
+ * failures over time, and the latencies of the most recent successful requests are kept to estimate
+ * percentiles. All methods are safe to call from any thread.
+ */
+internal class PathHealthTracker<K : Any>(
+    private val halfLifeMs: Long = 5 * 60 * 1000,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    companion object {
+        /** The number of recent latencies kept per key. */
+        private const val latencyWindow = 32
+        /** The (decayed) number of requests needed before a key can be considered degraded. */
+        private const val minimumSampleWeight = 5.0
+        /** Below this success rate a key is considered degraded. */
+        private const val degradedSuccessRate = 0.5
+        /** A key whose median latency is this many times slower than the fastest one is considered degraded. */
+        private const val degradedLatencyFactor = 4.0
+    }
+
+    class Health(val successRate: Double, val sampleWeight: Double, val medianLatencyMs: Long?, val p90LatencyMs: Long?)
+
+    private class Stats(var lastUpdate: Long) {
+        var successWeight = 0.0
+        var totalWeight = 0.0
+        val latencies = LongArray(latencyWindow)
+        var latencyCount = 0
+        var nextLatencyIndex = 0
+    }
+
+    private val stats = ConcurrentHashMap<K, Stats>()
+
+    /**
+     * Records a successful request through `key`, along with its latency if it was measured.
+     */
+    fun recordSuccess(key: K, latencyMs: Long? = null) = update(key) { stats ->
+        stats.successWeight += 1.0
+        stats.totalWeight += 1.0
+        if (latencyMs == null) return@update
+        stats.latencies[stats.nextLatencyIndex] = latencyMs
+        stats.nextLatencyIndex = (stats.nextLatencyIndex + 1) % latencyWindow
+        if (stats.latencyCount < latencyWindow) stats.latencyCount++
+    }
+
+    fun recordFailure(key: K) = update(key) { stats ->
+        stats.totalWeight += 1.0
+    }
+
+    fun forget(key: K) {
+        stats.remove(key)
+    }
+
+    fun health(key: K): Health? {
+        val stats = stats[key] ?: return null
+        return synchronized(stats) {
+            decay(stats, clock())
+            val latencies = stats.latencies.copyOf(stats.latencyCount).apply { sort() }
+            Health(
+                successRate = successRate(stats),
+                sampleWeight = stats.totalWeight,
+                medianLatencyMs = percentile(latencies, 0.5),
+                p90LatencyMs = percentile(latencies, 0.9)
+            )
+        }
+    }
+
+    /**
+     * Returns whether `key` failed too often, or is much slower than the fastest of `candidates`.
+     */
+    fun isDegraded(key: K, candidates: Collection<K>): Boolean {
+        val health = health(key) ?: return false
+        if (health.sampleWeight < minimumSampleWeight) return false
+        if (health.successRate < degradedSuccessRate) return true
+        val medianLatency = health.medianLatencyMs ?: return false
+        val fastestLatency = candidates.filter { it != key }.mapNotNull { health(it)?.medianLatencyMs }.minOrNull() ?: return false
+        return medianLatency > fastestLatency * degradedLatencyFactor
+    }
+
+    /**
+     * Picks one of `candidates` at random, weighting each by its success rate divided by its median
+     * latency. Keys without any latency sample are assumed to be as fast as the fastest known key,
+     * so new paths get a chance to prove themselves.
+     */
+    fun select(candidates: List<K>, random: Random = SecureRandom()): K {
+        require(candidates.isNotEmpty()) { "Can't select from an empty list." }
+        if (candidates.size == 1) return candidates[0]
+        val healths = candidates.map { health(it) }
+        val fastestLatency = healths.mapNotNull { it?.medianLatencyMs }.minOrNull() ?: 1L
+        val weights = healths.map { health ->
+            val successRate = health?.successRate ?: 1.0
+            val latency = max(health?.medianLatencyMs ?: fastestLatency, 1L)
+            successRate / latency
+        }
+        val total = weights.sum()
+        if (total <= 0.0) return candidates[random.nextInt(candidates.size)]
+        var target = random.nextDouble() * total
+        weights.forEachIndexed { index, weight ->
+            target -= weight
+            if (target < 0.0) return candidates[index]
+        }
+        return candidates.last()
+    }
+
+    private inline fun update(key: K, body: (Stats) -> Unit) {
+        val now = clock()
+        val stats = stats.getOrPut(key) { Stats(now) }
+        synchronized(stats) {
+            decay(stats, now)
+            body(stats)
+        }
+    }
+
+    private fun decay(stats: Stats, now: Long) {
+        val elapsed = now - stats.lastUpdate
+        if (elapsed <= 0) return
+        val factor = 0.5.pow(elapsed.toDouble() / halfLifeMs)
+        stats.successWeight *= factor
+        stats.totalWeight *= factor
+        stats.lastUpdate = now
+    }
+
+    // A single implicit success keeps new keys from looking unhealthy before they've been used
+    private fun successRate(stats: Stats): Double = (stats.successWeight + 1.0) / (stats.totalWeight + 1.0)
+
+    private fun percentile(sortedLatencies: LongArray, percentile: Double): Long? {
+        if (sortedLatencies.isEmpty()) return null
+        val index = ((sortedLatencies.size - 1) * percentile).toInt()
+        return sortedLatencies[index]
+    }
+}
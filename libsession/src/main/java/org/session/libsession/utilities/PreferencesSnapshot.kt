@@ -0,0 +1,104 @@
+package org.session.libsession.utilities
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.preference.PreferenceManager.getDefaultSharedPreferences
+import org.session.libsession.utilities.TextSecurePreferences.Companion.HAS_FORCED_NEW_CONFIG
+import org.session.libsession.utilities.TextSecurePreferences.Companion.HAS_HIDDEN_MESSAGE_REQUESTS
+import org.session.libsession.utilities.TextSecurePreferences.Companion.LOCAL_NUMBER_PREF
+import org.session.libsession.utilities.TextSecurePreferences.Companion.SEEN_WELCOME_SCREEN_PREF
+import org.session.libsession.utilities.TextSecurePreferences.Companion.THREAD_TRIM_ENABLED
+
+/**
+ * An immutable copy of the preferences that are read on hot paths, e.g. once per received message
+ * or once per unread message when building notifications.
+ *
+ * Reading a preference from the shared preferences looks them up by name and then takes their lock,
+ * while [PreferencesSnapshot.get] is a single volatile read. The snapshot is replaced whenever one of
+ * its preferences is written through [TextSecurePreferences] or changed by anything else.
+ */
+data class PreferencesSnapshot(
+    val localNumber: String?,
+    val hasSeenWelcomeScreen: Boolean,
+    val isThreadLengthTrimmingEnabled: Boolean,
+    val hasForcedNewConfig: Boolean,
+    val hasHiddenMessageRequests: Boolean
+) {
+
+    companion object {
+        internal val KEYS = setOf(
+            LOCAL_NUMBER_PREF,
+            SEEN_WELCOME_SCREEN_PREF,
+            THREAD_TRIM_ENABLED,
+            HAS_FORCED_NEW_CONFIG,
+            HAS_HIDDEN_MESSAGE_REQUESTS
+        )
+
+        private val lock = Any()
+
+        @Volatile
+        private var holder: Holder? = null
+
+        @JvmStatic
+        fun get(context: Context): PreferencesSnapshot = holderFor(context).snapshot
+
+        /**
+         * Must be called after writing a preference. Listeners are only notified once the write has been
+         * posted to the main thread, and the snapshot shouldn't be stale in the meantime.
+         *
+         * @param key the written preference, or null if they were all cleared.
+         */
+        internal fun onPreferenceWritten(context: Context, key: String?) {
+            if (key != null && key !in KEYS) return
+            val holder = holder ?: synchronized(lock) { holder } ?: return
+            if (holder.context === context.applicationContext) holder.refresh()
+        }
+
+        internal fun read(preferences: SharedPreferences) = PreferencesSnapshot(
+            localNumber = preferences.getString(LOCAL_NUMBER_PREF, null),
+            hasSeenWelcomeScreen = preferences.getBoolean(SEEN_WELCOME_SCREEN_PREF, false),
+            isThreadLengthTrimmingEnabled = preferences.getBoolean(THREAD_TRIM_ENABLED, true),
+            hasForcedNewConfig = preferences.getBoolean(HAS_FORCED_NEW_CONFIG, false),
+            hasHiddenMessageRequests = preferences.getBoolean(HAS_HIDDEN_MESSAGE_REQUESTS, false)
+        )
+
+        private fun holderFor(context: Context): Holder {
+            val applicationContext = context.applicationContext ?: context
+            holder?.let { if (it.context === applicationContext) return it }
+
+            synchronized(lock) {
+                holder?.let { if (it.context === applicationContext) return it }
+                holder?.close()
+                return Holder(applicationContext, getDefaultSharedPreferences(applicationContext)).also { holder = it }
+            }
+        }
+    }
+
+    internal class Holder(val context: Context, private val preferences: SharedPreferences) {
+
+        // Shared preferences only keep a weak reference to their listeners
+        private val listener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+            if (key == null || key in KEYS) refresh()
+        }
+
+        @Volatile
+        var snapshot: PreferencesSnapshot
+            private set
+
+        init {
+            // Registered before reading so that no change can be missed in between
+            preferences.registerOnSharedPreferenceChangeListener(listener)
+            synchronized(this) { snapshot = read(preferences) }
+        }
+
+        fun refresh() {
+            // Each refresh reads the preferences after the write that triggered it, so making them take
+            // turns ensures that the last snapshot to be published is the most recent one.
+            synchronized(this) { snapshot = read(preferences) }
+        }
+
+        fun close() {
+            preferences.unregisterOnSharedPreferenceChangeListener(listener)
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.session.libsession.utilities
+
+import java.nio.ShortBuffer
+import kotlin.math.min
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * Accumulates the squared samples of the first channel into a fixed number of buckets.
+ *
+ * Each bucket covers [samplesPerBucket] consecutive samples. When the samples no longer fit,
+ * neighbouring buckets are merged pairwise and the bucket width doubles, so the memory used stays
+ * constant whatever the length of the audio. If the expected number of samples is known upfront,
+ * the initial bucket width is picked so that no merging is needed.
+ */
+internal class RmsAccumulator(expectedNumSamples: Int = 0, private val resolution: Int = 4096) {
+
+    private val squaredSums = DoubleArray(resolution)
+
+    var samplesPerBucket: Long = 1L
+        private set
+
+    /** Number of samples per channel accumulated so far. */
+    var numSamples: Long = 0L
+        private set
+
+    init {
+        while (samplesPerBucket * resolution < expectedNumSamples) {
+            samplesPerBucket *= 2
+        }
+    }
+
+    /** Adds interleaved samples, of which only the first channel is accounted for. */
+    fun add(samples: ShortBuffer, channels: Int) {
+        var index = samples.position()
+        val limit = samples.limit()
+        while (index < limit) {
+            var bucket = numSamples / samplesPerBucket
+            if (bucket >= resolution) {
+                mergeBuckets()
+                bucket = numSamples / samplesPerBucket
+            }
+            val sample = samples.get(index).toDouble()
+            squaredSums[bucket.toInt()] += sample * sample
+            numSamples++
+            index += channels
+        }
+    }
+
+    private fun mergeBuckets() {
+        val half = resolution / 2
+        for (i in 0 until half) {
+            squaredSums[i] = squaredSums[2 * i] + squaredSums[2 * i + 1]
+        }
+        squaredSums.fill(0.0, half, resolution)
+        samplesPerBucket *= 2
+    }
+
+    /**
+     * Computes audio RMS values for the first channel only.
+     *
+     * @param maxFrames Defines amount of output RMS frames.
+     * If the number of filled buckets is less than "maxFrames",
+     * the result array will match the number of buckets instead.
+     *
+     * @return normalized RMS values as a signed byte array.
+     */
+    fun calculateRms(maxFrames: Int): ByteArray {
+        if (numSamples == 0L) return ByteArray(0)
+
+        val usedBuckets = ((numSamples + samplesPerBucket - 1) / samplesPerBucket).toInt()
+        val numFrames = min(usedBuckets, maxFrames)
+
+        val frameSums = DoubleArray(numFrames)
+        val frameCounts = LongArray(numFrames)
+        for (bucket in 0 until usedBuckets) {
+            val frame = (bucket.toLong() * numFrames / usedBuckets).toInt()
+            val bucketStart = bucket * samplesPerBucket
+            frameSums[frame] += squaredSums[bucket]
+            frameCounts[frame] += min(samplesPerBucket, numSamples - bucketStart)
+        }
+
+        val rmsValues = FloatArray(numFrames) { frame ->
+            sqrt(frameSums[frame] / frameCounts[frame]).toFloat()
+        }
+
+        normalizeArray(rmsValues)
+
+        // Convert normalized result to a signed byte array.
+        return rmsValues.map { value -> normalizedFloatToByte(value) }.toByteArray()
+    }
+}
+
+/**
+ * Normalizes the array's values to [0..1] range.
+ */
+private fun normalizeArray(values: FloatArray) {
+    var maxValue = -Float.MAX_VALUE
+    var minValue = +Float.MAX_VALUE
+    values.forEach { value ->
+        if (value > maxValue) maxValue = value
+        if (value < minValue) minValue = value
+    }
+    val span = maxValue - minValue
+
+    if (span == 0f) {
+        values.indices.forEach { i -> values[i] = 0f }
+        return
+    }
+
+    values.indices.forEach { i -> values[i] = (values[i] - minValue) / span }
+}
+
+private fun smoothArray(values: FloatArray, neighborWeight: Float = 1f): FloatArray {
+    if (values.size < 3) return values
+
+    val result = FloatArray(values.size)
+    result[0] = values[0]
+    result[values.size - 1] == values[values.size - 1]
+    for (i in 1 until values.size - 1) {
+        result[i] = (values[i] + values[i - 1] * neighborWeight +
+                values[i + 1] * neighborWeight) / (1f + neighborWeight * 2f)
+    }
+    return result
+}
+
+/** Turns a signed byte into a [0..1] float. */
+inline fun byteToNormalizedFloat(value: Byte): Float {
+    return (value + 128f) / 255f
+}
+
+/** Turns a [0..1] float into a signed byte. */
+inline fun normalizedFloatToByte(value: Float): Byte {
+    return (255f * value - 128f).roundToInt().toByte()
+}
@@ -633,7 +633,7 @@ interface TextSecurePreferences {
 
         @JvmStatic
         fun getLocalNumber(context: Context): String? {
-            return getStringPreference(context, LOCAL_NUMBER_PREF, null)
+            return PreferencesSnapshot.get(context).localNumber
         }
 
         @JvmStatic
@@ -702,7 +702,7 @@ interface TextSecurePreferences {
 
         @JvmStatic
         fun hasSeenWelcomeScreen(context: Context): Boolean {
-            return getBooleanPreference(context, SEEN_WELCOME_SCREEN_PREF, false)
+            return PreferencesSnapshot.get(context).hasSeenWelcomeScreen
         }
 
         fun setHasSeenWelcomeScreen(context: Context, value: Boolean) {
@@ -750,7 +750,7 @@ interface TextSecurePreferences {
 
         @JvmStatic
         fun isThreadLengthTrimmingEnabled(context: Context): Boolean {
-            return getBooleanPreference(context, THREAD_TRIM_ENABLED, true)
+            return PreferencesSnapshot.get(context).isThreadLengthTrimmingEnabled
         }
 
         @JvmStatic
@@ -819,7 +819,7 @@ interface TextSecurePreferences {
 
         @JvmStatic
         fun hasForcedNewConfig(context: Context): Boolean {
-            return getBooleanPreference(context, HAS_FORCED_NEW_CONFIG, false)
+            return PreferencesSnapshot.get(context).hasForcedNewConfig
         }
 
         @JvmStatic
@@ -830,6 +830,7 @@ interface TextSecurePreferences {
         @JvmStatic
         fun setBooleanPreference(context: Context, key: String?, value: Boolean) {
             getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply()
+            PreferencesSnapshot.onPreferenceWritten(context, key)
         }
 
         @JvmStatic
@@ -840,6 +841,7 @@ interface TextSecurePreferences {
         @JvmStatic
         fun setStringPreference(context: Context, key: String?, value: String?) {
             getDefaultSharedPreferences(context).edit().putString(key, value).apply()
+            PreferencesSnapshot.onPreferenceWritten(context, key)
         }
 
         fun getIntegerPreference(context: Context, key: String, defaultValue: Int): Int {
@@ -864,6 +866,7 @@ interface TextSecurePreferences {
 
         private fun removePreference(context: Context, key: String) {
             getDefaultSharedPreferences(context).edit().remove(key).apply()
+            PreferencesSnapshot.onPreferenceWritten(context, key)
         }
 
         private fun getStringSetPreference(context: Context, key: String, defaultValues: Set<String>): Set<String>? {
@@ -937,7 +940,7 @@ interface TextSecurePreferences {
 
         @JvmStatic
         fun hasHiddenMessageRequests(context: Context): Boolean {
-            return getBooleanPreference(context, HAS_HIDDEN_MESSAGE_REQUESTS, false)
+            return PreferencesSnapshot.get(context).hasHiddenMessageRequests
         }
 
         @JvmStatic
@@ -1012,6 +1015,7 @@ interface TextSecurePreferences {
         @JvmStatic
         fun clearAll(context: Context) {
             getDefaultSharedPreferences(context).edit().clear().commit()
+            PreferencesSnapshot.onPreferenceWritten(context, null)
         }
     }
 }
@@ -1302,7 +1306,7 @@ class AppTextSecurePreferences @Inject constructor(
     }
 
     override fun getLocalNumber(): String? {
-        return getStringPreference(TextSecurePreferences.LOCAL_NUMBER_PREF, null)
+        return PreferencesSnapshot.get(context).localNumber
     }
 
     override fun getHasLegacyConfig(): Boolean {
@@ -1362,7 +1366,7 @@ class AppTextSecurePreferences @Inject constructor(
     }
 
     override fun hasSeenWelcomeScreen(): Boolean {
-        return getBooleanPreference(TextSecurePreferences.SEEN_WELCOME_SCREEN_PREF, false)
+        return PreferencesSnapshot.get(context).hasSeenWelcomeScreen
     }
 
     override fun setHasSeenWelcomeScreen(value: Boolean) {
@@ -1402,7 +1406,7 @@ class AppTextSecurePreferences @Inject constructor(
     }
 
     override fun isThreadLengthTrimmingEnabled(): Boolean {
-        return getBooleanPreference(TextSecurePreferences.THREAD_TRIM_ENABLED, true)
+        return PreferencesSnapshot.get(context).isThreadLengthTrimmingEnabled
     }
 
     override fun isSystemEmojiPreferred(): Boolean {
@@ -1458,7 +1462,7 @@ class AppTextSecurePreferences @Inject constructor(
     }
 
     override fun hasForcedNewConfig(): Boolean =
-        getBooleanPreference(TextSecurePreferences.HAS_FORCED_NEW_CONFIG, false)
+        PreferencesSnapshot.get(context).hasForcedNewConfig
 
     override fun getBooleanPreference(key: String?, defaultValue: Boolean): Boolean {
         return getDefaultSharedPreferences(context).getBoolean(key, defaultValue)
@@ -1466,6 +1470,7 @@ class AppTextSecurePreferences @Inject constructor(
 
     override fun setBooleanPreference(key: String?, value: Boolean) {
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply()
+        PreferencesSnapshot.onPreferenceWritten(context, key)
     }
 
     override fun getStringPreference(key: String, defaultValue: String?): String? {
@@ -1474,6 +1479,7 @@ class AppTextSecurePreferences @Inject constructor(
 
     override fun setStringPreference(key: String?, value: String?) {
         getDefaultSharedPreferences(context).edit().putString(key, value).apply()
+        PreferencesSnapshot.onPreferenceWritten(context, key)
     }
 
     override fun getIntegerPreference(key: String, defaultValue: Int): Int {
@@ -1502,6 +1508,7 @@ class AppTextSecurePreferences @Inject constructor(
 
     override fun removePreference(key: String) {
         getDefaultSharedPreferences(context).edit().remove(key).apply()
+        PreferencesSnapshot.onPreferenceWritten(context, key)
     }
 
     override fun getStringSetPreference(key: String, defaultValues: Set<String>): Set<String>? {
@@ -1605,7 +1612,7 @@ class AppTextSecurePreferences @Inject constructor(
     }
 
     override fun hasHiddenMessageRequests(): Boolean {
-        return getBooleanPreference(TextSecurePreferences.HAS_HIDDEN_MESSAGE_REQUESTS, false)
+        return PreferencesSnapshot.get(context).hasHiddenMessageRequests
     }
 
     override fun setHasHiddenMessageRequests() {
@@ -1709,6 +1716,7 @@ class AppTextSecurePreferences @Inject constructor(
 
     override fun clearAll() {
         getDefaultSharedPreferences(context).edit().clear().commit()
+        PreferencesSnapshot.onPreferenceWritten(context, null)
     }
 
 }
\ No newline at end of file
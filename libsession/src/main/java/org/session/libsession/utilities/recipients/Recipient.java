@@ -55,6 +55,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.WeakHashMap;
@@ -105,6 +106,9 @@ public class Recipient implements RecipientModifiedListener {
 
   private @NonNull  UnidentifiedAccessMode unidentifiedAccessMode = UnidentifiedAccessMode.ENABLED;
 
+  private @Nullable Contact contact;
+  private           boolean contactLoaded;
+
   @SuppressWarnings("ConstantConditions")
   public static @NonNull Recipient from(@NonNull Context context, @NonNull Address address, boolean asynchronous) {
     if (address == null) throw new AssertionError(address);
@@ -117,6 +121,18 @@ public class Recipient implements RecipientModifiedListener {
     return provider.getRecipient(context, address, settings, groupRecord, asynchronous);
   }
 
+  public static @NonNull List<Recipient> from(@NonNull Context context, @NonNull List<Address> addresses, boolean asynchronous) {
+    return provider.getRecipients(context, addresses, asynchronous);
+  }
+
+  public static @NonNull List<Recipient> from(@NonNull Context context, @NonNull List<Address> addresses,
+                                              @NonNull Map<Address, RecipientSettings> settings,
+                                              @NonNull Map<Address, GroupRecord> groupRecords,
+                                              boolean asynchronous)
+  {
+    return provider.getRecipients(context, addresses, settings, groupRecords, asynchronous);
+  }
+
   public static void applyCached(@NonNull Address address, Consumer<Recipient> consumer) {
     Optional<Recipient> recipient = provider.getCached(address);
     if (recipient.isPresent()) consumer.accept(recipient.get());
@@ -126,6 +142,10 @@ public class Recipient implements RecipientModifiedListener {
     return provider.removeCached(address);
   }
 
+  public static void clearCache() {
+    provider.clearCache();
+  }
+
   Recipient(@NonNull  Context context,
             @NonNull  Address address,
             @Nullable Recipient stale,
@@ -334,12 +354,32 @@ public class Recipient implements RecipientModifiedListener {
       if (contact == null) { return sessionID; }
       return contact.displayName(Contact.ContactContext.REGULAR);
     } else {
-      Contact contact = storage.getContactWithSessionID(sessionID);
+      Contact contact = contactLoaded ? this.contact : storage.getContactWithSessionID(sessionID);
       if (contact == null) { return null; }
       return contact.displayName(Contact.ContactContext.REGULAR);
     }
   }
 
+  /**
+   * Sets the contact {@link #getName()} reads the name from, for recipients whose contact was
+   * loaded along with others rather than looked up on every call.
+   */
+  synchronized void setContact(@Nullable Contact contact) {
+    this.contact       = contact;
+    this.contactLoaded = true;
+  }
+
+  /**
+   * Updates the contact of a recipient that was loaded with it, after the contact was saved.
+   */
+  public static void contactUpdated(@NonNull Contact contact) {
+    applyCached(Address.fromSerialized(contact.getSessionID()), recipient -> {
+      synchronized (recipient) {
+        if (recipient.contactLoaded) recipient.contact = contact;
+      }
+    });
+  }
+
   public void setName(@Nullable String name) {
     boolean notify = false;
 
@@ -24,7 +24,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.session.libsession.R;
+import org.session.libsession.database.StorageProtocol;
 import org.session.libsession.messaging.MessagingModuleConfiguration;
+import org.session.libsession.messaging.contacts.Contact;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.ListenableFutureTask;
@@ -38,11 +40,19 @@ import org.session.libsession.utilities.recipients.Recipient.UnidentifiedAccessM
 import org.session.libsession.utilities.recipients.Recipient.VibrateState;
 import org.session.libsignal.utilities.guava.Optional;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 class RecipientProvider {
@@ -72,6 +82,77 @@ class RecipientProvider {
     return cachedRecipient;
   }
 
+  @NonNull List<Recipient> getRecipients(@NonNull Context context, @NonNull List<Address> addresses, boolean asynchronous) {
+    return getRecipients(context, addresses, Collections.emptyMap(), Collections.emptyMap(), asynchronous);
+  }
+
+  /**
+   * Resolves `addresses` with the settings and group records that were read along with them, such
+   * as those joined to the thread list, so that only the settings that are missing are looked up.
+   */
+  @NonNull List<Recipient> getRecipients(@NonNull Context context, @NonNull List<Address> addresses,
+                                         @NonNull Map<Address, RecipientSettings> prefetchedSettings,
+                                         @NonNull Map<Address, GroupRecord> prefetchedGroupRecords,
+                                         boolean asynchronous)
+  {
+    Map<Address, Recipient> resolved   = new HashMap<>(addresses.size());
+    Set<Address>            unresolved = new LinkedHashSet<>();
+
+    for (Address address : addresses) {
+      if (resolved.containsKey(address) || unresolved.contains(address)) continue;
+
+      Recipient cachedRecipient = recipientCache.get(address);
+
+      if (cachedRecipient != null && (asynchronous || !cachedRecipient.isResolving())) {
+        resolved.put(address, cachedRecipient);
+      } else if (address.isGroup()) {
+        Optional<RecipientSettings> settings    = Optional.fromNullable(prefetchedSettings.get(address));
+        Optional<GroupRecord>       groupRecord = Optional.fromNullable(prefetchedGroupRecords.get(address));
+
+        resolved.put(address, getRecipient(context, address, settings, groupRecord, asynchronous));
+      } else {
+        unresolved.add(address);
+      }
+    }
+
+    if (!unresolved.isEmpty()) {
+      StorageProtocol                 storage    = MessagingModuleConfiguration.getShared().getStorage();
+      Map<Address, RecipientSettings> settings   = new HashMap<>(unresolved.size());
+      Set<Address>                    missing    = new LinkedHashSet<>();
+      List<String>                    sessionIds = new ArrayList<>(unresolved.size());
+
+      for (Address address : unresolved) {
+        RecipientSettings prefetched = prefetchedSettings.get(address);
+
+        if (prefetched != null) settings.put(address, prefetched);
+        else                    missing.add(address);
+
+        sessionIds.add(address.serialize());
+      }
+
+      if (!missing.isEmpty()) {
+        settings.putAll(storage.getRecipientSettings(missing));
+      }
+
+      Map<String, Contact> contacts = storage.getContactsWithSessionIDs(sessionIds);
+
+      for (Address address : unresolved) {
+        Recipient recipient = new Recipient(context, address, createIndividualRecipientDetails(context, address, settings.get(address)));
+        recipient.setContact(contacts.get(address.serialize()));
+
+        recipientCache.set(address, recipient);
+        resolved.put(address, recipient);
+      }
+    }
+
+    List<Recipient> results = new ArrayList<>(addresses.size());
+    for (Address address : addresses) {
+      results.add(resolved.get(address));
+    }
+
+    return results;
+  }
+
   @NonNull Optional<Recipient> getCached(@NonNull Address address) {
     return Optional.fromNullable(recipientCache.get(address));
   }
@@ -80,6 +161,10 @@ class RecipientProvider {
     return recipientCache.remove(address);
   }
 
+  void clearCache() {
+    recipientCache.clear();
+  }
+
   private @NonNull Optional<RecipientDetails> createPrefetchedRecipientDetails(@NonNull Context context, @NonNull Address address,
                                                                                @NonNull Optional<RecipientSettings> settings,
                                                                                @NonNull Optional<GroupRecord> groupRecord)
@@ -113,9 +198,13 @@ class RecipientProvider {
       settings = Optional.fromNullable(MessagingModuleConfiguration.getShared().getStorage().getRecipientSettings(address));
     }
 
-    boolean systemContact = settings.isPresent() && !TextUtils.isEmpty(settings.get().getSystemDisplayName());
+    return createIndividualRecipientDetails(context, address, settings.orNull());
+  }
+
+  private @NonNull RecipientDetails createIndividualRecipientDetails(Context context, @NonNull Address address, @Nullable RecipientSettings settings) {
+    boolean systemContact = settings != null && !TextUtils.isEmpty(settings.getSystemDisplayName());
     boolean isLocalNumber = address.serialize().equals(TextSecurePreferences.getLocalNumber(context));
-    return new RecipientDetails(null, null, systemContact, isLocalNumber, settings.orNull(), null);
+    return new RecipientDetails(null, null, systemContact, isLocalNumber, settings, null);
   }
 
   private @NonNull RecipientDetails getGroupRecipientDetails(Context context, Address groupId, Optional<GroupRecord> groupRecord, Optional<RecipientSettings> settings, boolean asynchronous) {
@@ -132,13 +221,9 @@ class RecipientProvider {
     if (groupRecord.isPresent()) {
       String          title           = groupRecord.get().getTitle();
       List<Address>   memberAddresses = groupRecord.get().getMembers();
-      List<Recipient> members         = new LinkedList<>();
+      List<Recipient> members         = new LinkedList<>(getRecipients(context, memberAddresses, asynchronous));
       Long            avatarId        = null;
 
-      for (Address memberAddress : memberAddresses) {
-        members.add(getRecipient(context, memberAddress, Optional.absent(), Optional.absent(), asynchronous));
-      }
-
       if (groupRecord.get().getAvatar() != null && groupRecord.get().getAvatar().length > 0) {
         avatarId = groupRecord.get().getAvatarId();
       }
@@ -222,22 +307,77 @@ class RecipientProvider {
     }
   }
 
+  /**
+   * An LRU of the most recently used recipients. Recipients it evicts are still handed out for as
+   * long as something else holds them, so that a recipient the UI is showing keeps being the one
+   * that receives updates.
+   */
   private static class RecipientCache {
 
-    private final Map<Address,Recipient> cache = new ConcurrentHashMap<>(1000);
+    private static final int MAX_SIZE = 1000;
+
+    private final Map<Address,RecipientReference> evicted = new HashMap<>();
+    private final ReferenceQueue<Recipient>       queue   = new ReferenceQueue<>();
+
+    private final Map<Address,Recipient> cache = new LinkedHashMap<Address,Recipient>(MAX_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Address,Recipient> eldest) {
+        if (size() <= MAX_SIZE) return false;
+
+        evicted.put(eldest.getKey(), new RecipientReference(eldest.getKey(), eldest.getValue(), queue));
+        return true;
+      }
+    };
+
+    public synchronized Recipient get(Address address) {
+      Recipient recipient = cache.get(address);
+      if (recipient != null) return recipient;
+
+      purge();
 
-    public Recipient get(Address address) {
-      return cache.get(address);
+      RecipientReference reference = evicted.remove(address);
+      recipient = reference != null ? reference.get() : null;
+      if (recipient != null) cache.put(address, recipient);
+
+      return recipient;
     }
 
-    public void set(Address address, Recipient recipient) {
+    public synchronized void set(Address address, Recipient recipient) {
+      purge();
+      evicted.remove(address);
       cache.put(address, recipient);
     }
 
-    public boolean remove(Address address) {
-      return cache.remove(address) != null;
+    public synchronized boolean remove(Address address) {
+      RecipientReference reference = evicted.remove(address);
+      boolean            removed   = cache.remove(address) != null;
+
+      return removed || (reference != null && reference.get() != null);
+    }
+
+    public synchronized void clear() {
+      cache.clear();
+      evicted.clear();
+    }
+
+    private void purge() {
+      Reference<? extends Recipient> reference;
+
+      while ((reference = queue.poll()) != null) {
+        Address address = ((RecipientReference) reference).address;
+        if (evicted.get(address) == reference) evicted.remove(address);
+      }
     }
+  }
 
+  private static class RecipientReference extends WeakReference<Recipient> {
+
+    private final Address address;
+
+    RecipientReference(Address address, Recipient recipient, ReferenceQueue<Recipient> queue) {
+      super(recipient, queue);
+      this.address = address;
+    }
   }
 
 }
\ No newline at end of file
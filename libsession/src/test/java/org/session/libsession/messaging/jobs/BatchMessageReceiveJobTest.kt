@@ -0,0 +1,51 @@
+package org.session.libsession.messaging.jobs
+
+import com.google.protobuf.ByteString
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.session.libsession.messaging.utilities.Data
+import org.session.libsignal.protos.UtilProtos
+
+class BatchMessageReceiveJobTest {
+
+    @Test
+    fun `it should keep direct message details when persisted`() {
+        val messages = listOf(
+            MessageReceiveParameters(byteArrayOf(1, 2), otherBlindedPublicKey = "15aa"),
+            MessageReceiveParameters(byteArrayOf(3), otherBlindedPublicKey = "15bb")
+        )
+        val job = BatchMessageReceiveJob(messages, directMessageServer = "https://example.org", fromOutbox = true)
+
+        val restored = BatchMessageReceiveJob.Factory().create(job.serialize())
+
+        assertNull(restored.openGroupID)
+        assertEquals("https://example.org", restored.directMessageServer)
+        assertTrue(restored.fromOutbox)
+        assertEquals(listOf("15aa", "15bb"), restored.messages.map { it.otherBlindedPublicKey })
+        assertArrayEquals(byteArrayOf(1, 2), restored.messages[0].data)
+        assertArrayEquals(byteArrayOf(3), restored.messages[1].data)
+    }
+
+    @Test
+    fun `it should restore jobs persisted before direct messages were batched`() {
+        val data = Data.Builder()
+            .putInt("numMessages", 1)
+            .putByteArray("data", UtilProtos.ByteArrayList.newBuilder().addContent(ByteString.copyFrom(byteArrayOf(7))).build().toByteArray())
+            .putString("open_group_id", "https://example.org.room")
+            .putLongArray("openGroupMessageServerID", longArrayOf(42))
+            .putStringArray("serverHash", arrayOf(""))
+            .build()
+
+        val restored = BatchMessageReceiveJob.Factory().create(data)
+
+        assertEquals("https://example.org.room", restored.openGroupID)
+        assertNull(restored.directMessageServer)
+        assertFalse(restored.fromOutbox)
+        assertEquals(42L, restored.messages.single().openGroupMessageServerID)
+        assertNull(restored.messages.single().otherBlindedPublicKey)
+    }
+}
@@ -0,0 +1,84 @@
+package org.session.libsession.messaging.open_groups
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.BeforeClass
+import org.junit.Test
+import org.session.libsignal.utilities.Base64
+import org.session.libsignal.utilities.Hex
+import org.session.libsignal.utilities.Log
+import java.util.concurrent.Executors
+
+class OpenGroupSignatureVerifierTest {
+
+    companion object {
+        @BeforeClass
+        @JvmStatic
+        fun setUpLogger() {
+            // Invalid signatures are logged, which would otherwise go to android.util.Log
+            Log.initialize(object : Log.Logger() {
+                override fun v(tag: String?, message: String?, t: Throwable?) {}
+                override fun d(tag: String?, message: String?, t: Throwable?) {}
+                override fun i(tag: String?, message: String?, t: Throwable?) {}
+                override fun w(tag: String?, message: String?, t: Throwable?) {}
+                override fun e(tag: String?, message: String?, t: Throwable?) {}
+                override fun wtf(tag: String?, message: String?, t: Throwable?) {}
+                override fun blockUntilAllWritesFinished() {}
+            })
+        }
+    }
+
+    private val executor = Executors.newFixedThreadPool(4)
+    private val verifier = OpenGroupSignatureVerifier(executor, parallelism = 4) { publicKey, data, signature ->
+        signature.contentEquals(fakeSignature(publicKey, data))
+    }
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun `it should keep valid messages in their original order`() {
+        val messages = (0 until 500).map { index -> message(index, isValid = index % 7 != 0) }
+
+        val verified = verifier.verify("room", "server", messages)
+
+        assertEquals(messages.filterIndexed { index, _ -> index % 7 != 0 }.map { it.serverID }, verified.map { it.serverID })
+    }
+
+    @Test
+    fun `it should give the same result for small batches verified inline`() {
+        val messages = (0 until 10).map { index -> message(index, isValid = index != 3) }
+
+        val verified = verifier.verify("room", "server", messages)
+
+        assertEquals(listOf(0L, 1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L), verified.map { it.serverID })
+    }
+
+    @Test
+    fun `it should drop messages with a malformed sender or payload`() {
+        val messages = (0 until 40).map { index -> message(index, isValid = true) }.toMutableList()
+        messages[5] = messages[5].copy(sender = "15not-hex")
+        messages[6] = messages[6].copy(base64EncodedSignature = null)
+
+        val verified = verifier.verify("room", "server", messages)
+
+        assertEquals((0L until 40L).filter { it != 5L && it != 6L }, verified.map { it.serverID })
+    }
+
+    private fun message(index: Int, isValid: Boolean): OpenGroupMessage {
+        val publicKey = ByteArray(32) { (index % 5).toByte() }
+        val data = "message $index".toByteArray()
+        val signature = if (isValid) fakeSignature(publicKey, data) else ByteArray(8)
+        return OpenGroupMessage(
+            serverID = index.toLong(),
+            sender = "15" + Hex.toStringCondensed(publicKey),
+            sentTimestamp = index.toLong(),
+            base64EncodedData = Base64.encodeBytes(data),
+            base64EncodedSignature = Base64.encodeBytes(signature)
+        )
+    }
+
+    private fun fakeSignature(publicKey: ByteArray, data: ByteArray): ByteArray = publicKey.copyOf(4) + data
+}
@@ -0,0 +1,123 @@
+package org.session.libsession.messaging.sending_receiving
+
+import com.google.protobuf.ByteString
+import org.junit.Assert.assertEquals
+import org.junit.Ignore
+import org.junit.Test
+import org.session.libsession.messaging.messages.Message
+import org.session.libsession.messaging.messages.control.CallMessage
+import org.session.libsession.messaging.messages.control.ClosedGroupControlMessage
+import org.session.libsession.messaging.messages.control.ConfigurationMessage
+import org.session.libsession.messaging.messages.control.DataExtractionNotification
+import org.session.libsession.messaging.messages.control.ExpirationTimerUpdate
+import org.session.libsession.messaging.messages.control.MessageRequestResponse
+import org.session.libsession.messaging.messages.control.ReadReceipt
+import org.session.libsession.messaging.messages.control.SharedConfigurationMessage
+import org.session.libsession.messaging.messages.control.TypingIndicator
+import org.session.libsession.messaging.messages.control.UnsendRequest
+import org.session.libsession.messaging.messages.visible.VisibleMessage
+import org.session.libsignal.protos.SignalServiceProtos.CallMessage as CallMessageProto
+import org.session.libsignal.protos.SignalServiceProtos.Content
+import org.session.libsignal.protos.SignalServiceProtos.DataExtractionNotification as DataExtractionNotificationProto
+import org.session.libsignal.protos.SignalServiceProtos.DataMessage
+import org.session.libsignal.protos.SignalServiceProtos.MessageRequestResponse as MessageRequestResponseProto
+import org.session.libsignal.protos.SignalServiceProtos.ReceiptMessage
+import org.session.libsignal.protos.SignalServiceProtos.SharedConfigMessage
+import org.session.libsignal.protos.SignalServiceProtos.TypingMessage
+import org.session.libsignal.protos.SignalServiceProtos.UnsendRequest as UnsendRequestProto
+import java.lang.management.ManagementFactory
+import java.util.UUID
+import kotlin.random.Random
+
+/**
+ * Times decoding a mixed corpus of contents, weighted roughly like a busy account's polls, with
+ * [MessageReceiver.decode] against the chain of `fromProto` calls it replaced, which tried every
+ * kind of message in turn. Contents are parsed from bytes each time, as in [MessageReceiver.parse].
+ *
+ * Only the check that both decode the corpus to the same messages runs with the unit tests. The
+ * timing is ignored, as its results depend on the machine; remove its @Ignore to run it locally.
+ */
+class MessageDecodeBenchmark {
+
+    companion object {
+        private const val MESSAGES = 20_000
+        private const val WARMUP_ROUNDS = 3
+        private const val ROUNDS = 5
+
+        private val kinds: List<Pair<Int, (Random) -> Content.Builder>> = listOf(
+            60 to { random: Random -> Content.newBuilder().setDataMessage(DataMessage.newBuilder().setBody("Message ${random.nextLong()}").setTimestamp(random.nextLong())
+                .setProfile(DataMessage.LokiProfile.newBuilder().setDisplayName("Name"))) },
+            10 to { random: Random -> Content.newBuilder().setReceiptMessage(ReceiptMessage.newBuilder().setType(ReceiptMessage.Type.READ).addTimestamp(random.nextLong())) },
+            10 to { random: Random -> Content.newBuilder().setTypingMessage(TypingMessage.newBuilder().setTimestamp(random.nextLong()).setAction(TypingMessage.Action.STARTED)) },
+            5 to { random: Random -> Content.newBuilder().setSharedConfigMessage(SharedConfigMessage.newBuilder().setKind(SharedConfigMessage.Kind.CONTACTS)
+                .setSeqno(random.nextLong(0, Long.MAX_VALUE)).setData(ByteString.copyFrom(random.nextBytes(256)))) },
+            3 to { _: Random -> Content.newBuilder().setDataMessage(DataMessage.newBuilder().setFlags(DataMessage.Flags.EXPIRATION_TIMER_UPDATE_VALUE).setExpireTimer(3600)) },
+            3 to { random: Random -> Content.newBuilder().setUnsendRequest(UnsendRequestProto.newBuilder().setTimestamp(random.nextLong()).setAuthor("05aa")) },
+            2 to { _: Random -> Content.newBuilder().setDataMessage(DataMessage.newBuilder().setClosedGroupControlMessage(
+                DataMessage.ClosedGroupControlMessage.newBuilder().setType(DataMessage.ClosedGroupControlMessage.Type.NAME_CHANGE).setName("Group"))) },
+            2 to { _: Random -> Content.newBuilder().setDataExtractionNotification(DataExtractionNotificationProto.newBuilder().setType(DataExtractionNotificationProto.Type.SCREENSHOT)) },
+            2 to { _: Random -> Content.newBuilder().setMessageRequestResponse(MessageRequestResponseProto.newBuilder().setIsApproved(true)) },
+            2 to { _: Random -> Content.newBuilder().setCallMessage(CallMessageProto.newBuilder().setType(CallMessageProto.Type.ICE_CANDIDATES).setUuid(UUID.randomUUID().toString())) }
+        )
+
+        private fun corpus(): List<ByteArray> {
+            val random = Random(MESSAGES)
+            val totalWeight = kinds.sumOf { it.first }
+            return List(MESSAGES) {
+                var choice = random.nextInt(totalWeight)
+                val (_, build) = kinds.first { (weight, _) -> (choice < weight).also { choice -= weight } }
+                build(random).build().toByteArray()
+            }
+        }
+    }
+
+    private class Result(val nanosPerMessage: Double, val bytesPerMessage: Double)
+
+    @Test
+    fun `decode should dispatch a mixed corpus to the same messages as the fromProto chain`() {
+        corpus().forEach {
+            val content = Content.parseFrom(it)
+            assertEquals(legacyDecode(content)::class, MessageReceiver.decode(content)::class)
+        }
+    }
+
+    @Ignore("Benchmark, only meant to be run locally")
+    @Test
+    fun `decode should be faster than the fromProto chain`() {
+        val corpus = corpus()
+        val legacy = measure("legacy", corpus) { legacyDecode(Content.parseFrom(it)) }
+        val table = measure("table", corpus) { MessageReceiver.decode(Content.parseFrom(it)) }
+
+        println(String.format("Decoding sped up %.2fx", legacy.nanosPerMessage / table.nanosPerMessage))
+    }
+
+    private fun measure(name: String, corpus: List<ByteArray>, decode: (ByteArray) -> Message): Result {
+        repeat(WARMUP_ROUNDS) { corpus.forEach { decode(it) } }
+
+        val allocatedBefore = allocatedBytes()
+        val start = System.nanoTime()
+        repeat(ROUNDS) { corpus.forEach { decode(it) } }
+        val nanos = System.nanoTime() - start
+        val allocated = allocatedBytes() - allocatedBefore
+
+        val result = Result(nanos.toDouble() / (ROUNDS * MESSAGES), allocated.toDouble() / (ROUNDS * MESSAGES))
+        println(String.format("%s: %.0f ns, %.0f B per message", name, result.nanosPerMessage, result.bytesPerMessage))
+        return result
+    }
+
+    private fun allocatedBytes(): Long =
+        (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)?.getThreadAllocatedBytes(Thread.currentThread().id) ?: 0
+
+    /** [MessageReceiver.decode] as it was before the decoders were looked up by field. */
+    private fun legacyDecode(proto: Content): Message = ReadReceipt.fromProto(proto) ?:
+        TypingIndicator.fromProto(proto) ?:
+        ClosedGroupControlMessage.fromProto(proto) ?:
+        DataExtractionNotification.fromProto(proto) ?:
+        ExpirationTimerUpdate.fromProto(proto) ?:
+        ConfigurationMessage.fromProto(proto) ?:
+        UnsendRequest.fromProto(proto) ?:
+        MessageRequestResponse.fromProto(proto) ?:
+        CallMessage.fromProto(proto) ?:
+        SharedConfigurationMessage.fromProto(proto) ?:
+        VisibleMessage.fromProto(proto) ?: throw MessageReceiver.Error.UnknownMessage
+}
@@ -0,0 +1,74 @@
+package org.session.libsession.messaging.sending_receiving
+
+import com.google.protobuf.ByteString
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.session.libsession.messaging.messages.control.CallMessage
+import org.session.libsession.messaging.messages.control.ClosedGroupControlMessage
+import org.session.libsession.messaging.messages.control.ConfigurationMessage
+import org.session.libsession.messaging.messages.control.DataExtractionNotification
+import org.session.libsession.messaging.messages.control.ExpirationTimerUpdate
+import org.session.libsession.messaging.messages.control.MessageRequestResponse
+import org.session.libsession.messaging.messages.control.ReadReceipt
+import org.session.libsession.messaging.messages.control.SharedConfigurationMessage
+import org.session.libsession.messaging.messages.control.TypingIndicator
+import org.session.libsession.messaging.messages.control.UnsendRequest
+import org.session.libsession.messaging.messages.visible.VisibleMessage
+import org.session.libsignal.protos.SignalServiceProtos.CallMessage as CallMessageProto
+import org.session.libsignal.protos.SignalServiceProtos.ConfigurationMessage as ConfigurationMessageProto
+import org.session.libsignal.protos.SignalServiceProtos.Content
+import org.session.libsignal.protos.SignalServiceProtos.DataExtractionNotification as DataExtractionNotificationProto
+import org.session.libsignal.protos.SignalServiceProtos.DataMessage
+import org.session.libsignal.protos.SignalServiceProtos.MessageRequestResponse as MessageRequestResponseProto
+import org.session.libsignal.protos.SignalServiceProtos.ReceiptMessage
+import org.session.libsignal.protos.SignalServiceProtos.SharedConfigMessage
+import org.session.libsignal.protos.SignalServiceProtos.TypingMessage
+import org.session.libsignal.protos.SignalServiceProtos.UnsendRequest as UnsendRequestProto
+import java.util.UUID
+
+class MessageReceiverTest {
+
+    @Test
+    fun `it should decode each kind of content to its message`() {
+        val contents = mapOf(
+            Content.newBuilder().setReceiptMessage(ReceiptMessage.newBuilder().setType(ReceiptMessage.Type.READ).addTimestamp(1)) to ReadReceipt::class,
+            Content.newBuilder().setTypingMessage(TypingMessage.newBuilder().setTimestamp(1).setAction(TypingMessage.Action.STARTED)) to TypingIndicator::class,
+            Content.newBuilder().setDataMessage(DataMessage.newBuilder().setClosedGroupControlMessage(
+                DataMessage.ClosedGroupControlMessage.newBuilder().setType(DataMessage.ClosedGroupControlMessage.Type.NAME_CHANGE).setName("Group")
+            )) to ClosedGroupControlMessage::class,
+            Content.newBuilder().setDataExtractionNotification(DataExtractionNotificationProto.newBuilder().setType(DataExtractionNotificationProto.Type.SCREENSHOT)) to DataExtractionNotification::class,
+            Content.newBuilder().setDataMessage(DataMessage.newBuilder().setFlags(DataMessage.Flags.EXPIRATION_TIMER_UPDATE_VALUE)) to ExpirationTimerUpdate::class,
+            Content.newBuilder().setConfigurationMessage(ConfigurationMessageProto.newBuilder().setDisplayName("Name")) to ConfigurationMessage::class,
+            Content.newBuilder().setUnsendRequest(UnsendRequestProto.newBuilder().setTimestamp(1).setAuthor("05aa")) to UnsendRequest::class,
+            Content.newBuilder().setMessageRequestResponse(MessageRequestResponseProto.newBuilder().setIsApproved(true)) to MessageRequestResponse::class,
+            Content.newBuilder().setCallMessage(CallMessageProto.newBuilder().setType(CallMessageProto.Type.PRE_OFFER).setUuid(UUID.randomUUID().toString())) to CallMessage::class,
+            Content.newBuilder().setSharedConfigMessage(SharedConfigMessage.newBuilder().setKind(SharedConfigMessage.Kind.CONTACTS).setSeqno(1).setData(ByteString.copyFrom(byteArrayOf(1)))) to SharedConfigurationMessage::class,
+            Content.newBuilder().setDataMessage(DataMessage.newBuilder().setBody("Hello")) to VisibleMessage::class
+        )
+
+        contents.forEach { (content, kind) ->
+            assertEquals(kind, MessageReceiver.decode(content.build())::class)
+        }
+    }
+
+    @Test
+    fun `it should decode content with a data message and another message as the other message`() {
+        val content = Content.newBuilder()
+            .setDataMessage(DataMessage.newBuilder().setBody("Hello"))
+            .setUnsendRequest(UnsendRequestProto.newBuilder().setTimestamp(1).setAuthor("05aa"))
+            .build()
+
+        assertTrue(MessageReceiver.decode(content) is UnsendRequest)
+    }
+
+    @Test(expected = MessageReceiver.Error.UnknownMessage::class)
+    fun `it should not decode content without a known message`() {
+        MessageReceiver.decode(Content.newBuilder().setExpirationTimer(60).build())
+    }
+
+    @Test(expected = MessageReceiver.Error.UnknownMessage::class)
+    fun `it should not decode a receipt that isn't a read receipt`() {
+        MessageReceiver.decode(Content.newBuilder().setReceiptMessage(ReceiptMessage.newBuilder().setType(ReceiptMessage.Type.DELIVERY).addTimestamp(1)).build())
+    }
+}
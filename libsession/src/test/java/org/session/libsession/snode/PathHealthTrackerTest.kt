@@ -0,0 +1,87 @@
+package org.session.libsession.snode
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PathHealthTrackerTest {
+
+    private var now = 0L
+    private val tracker = PathHealthTracker<String>(halfLifeMs = 60_000, clock = { now })
+
+    @Test
+    fun `it should not lose updates recorded from many threads`() {
+        val threadCount = 16
+        val updatesPerThread = 10_000
+        val executor = Executors.newFixedThreadPool(threadCount)
+        val start = CountDownLatch(1)
+        repeat(threadCount) { thread ->
+            executor.execute {
+                start.await()
+                repeat(updatesPerThread) { i ->
+                    val key = "path-${i % 4}"
+                    if ((thread + i) % 10 == 0) tracker.recordFailure(key) else tracker.recordSuccess(key, 100)
+                    tracker.select(listOf("path-0", "path-1", "path-2", "path-3"))
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+
+        val totalWeight = (0 until 4).sumOf { tracker.health("path-$it")!!.sampleWeight }
+        assertEquals((threadCount * updatesPerThread).toDouble(), totalWeight, 0.0)
+        (0 until 4).forEach { assertEquals(0.9, tracker.health("path-$it")!!.successRate, 0.01) }
+    }
+
+    @Test
+    fun `it should prefer a fast path over a slow but alive one`() {
+        repeat(20) {
+            tracker.recordSuccess("fast", 50)
+            tracker.recordSuccess("slow", 1_000)
+        }
+        val random = Random(42)
+        val selections = (0 until 10_000).map { tracker.select(listOf("fast", "slow"), random) }
+        val fastCount = selections.count { it == "fast" }
+
+        assertTrue(fastCount > 9_000)
+        assertTrue(fastCount < 10_000) // The slow path still gets some traffic to measure recovery
+        assertTrue(tracker.isDegraded("slow", listOf("fast", "slow")))
+        assertFalse(tracker.isDegraded("fast", listOf("fast", "slow")))
+    }
+
+    @Test
+    fun `it should consider a failing path degraded and let it recover over time`() {
+        repeat(10) { tracker.recordFailure("flaky") }
+        assertTrue(tracker.isDegraded("flaky", listOf("flaky")))
+
+        now += 10 * 60_000
+        repeat(5) { tracker.recordSuccess("flaky", 100) }
+        assertFalse(tracker.isDegraded("flaky", listOf("flaky")))
+    }
+
+    @Test
+    fun `it should give unmeasured paths a chance`() {
+        repeat(20) { tracker.recordSuccess("known", 100) }
+        val random = Random(7)
+        val selections = (0 until 1_000).map { tracker.select(listOf("known", "new"), random) }
+
+        assertTrue(selections.count { it == "new" } > 300)
+    }
+
+    @Test
+    fun `it should count unmeasured successes without changing the latency`() {
+        repeat(10) { tracker.recordSuccess("path", 100) }
+        repeat(10) { tracker.recordSuccess("path") }
+        val health = tracker.health("path")!!
+
+        assertEquals(100L, health.medianLatencyMs)
+        assertEquals(20.0, health.sampleWeight, 0.001)
+        assertTrue(health.successRate > 0.99)
+    }
+}
@@ -0,0 +1,106 @@
+package org.session.libsession.utilities
+
+import android.content.Context
+import android.content.SharedPreferences
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.mock
+import org.session.libsession.utilities.TextSecurePreferences.Companion.HAS_HIDDEN_MESSAGE_REQUESTS
+import org.session.libsession.utilities.TextSecurePreferences.Companion.LANGUAGE_PREF
+import org.session.libsession.utilities.TextSecurePreferences.Companion.LOCAL_NUMBER_PREF
+import org.session.libsession.utilities.TextSecurePreferences.Companion.THREAD_TRIM_ENABLED
+
+class PreferencesSnapshotTest {
+
+    private val preferences = FakeSharedPreferences()
+
+    @Test
+    fun `it should use the same defaults as the preference getters`() {
+        val snapshot = holder().snapshot
+
+        assertNull(snapshot.localNumber)
+        assertFalse(snapshot.hasSeenWelcomeScreen)
+        assertTrue(snapshot.isThreadLengthTrimmingEnabled)
+        assertFalse(snapshot.hasForcedNewConfig)
+        assertFalse(snapshot.hasHiddenMessageRequests)
+    }
+
+    @Test
+    fun `it should be replaced when one of its preferences changes`() {
+        preferences.values[LOCAL_NUMBER_PREF] = "05abc"
+        val holder = holder()
+        assertEquals("05abc", holder.snapshot.localNumber)
+
+        preferences.put(THREAD_TRIM_ENABLED, false)
+        preferences.put(HAS_HIDDEN_MESSAGE_REQUESTS, true)
+
+        assertEquals("05abc", holder.snapshot.localNumber)
+        assertFalse(holder.snapshot.isThreadLengthTrimmingEnabled)
+        assertTrue(holder.snapshot.hasHiddenMessageRequests)
+    }
+
+    @Test
+    fun `it should be kept when an unrelated preference changes`() {
+        val holder = holder()
+        val snapshot = holder.snapshot
+
+        preferences.put(LANGUAGE_PREF, "fr")
+
+        assertSame(snapshot, holder.snapshot)
+    }
+
+    @Test
+    fun `it should be re-read when the preferences are cleared`() {
+        preferences.values[LOCAL_NUMBER_PREF] = "05abc"
+        val holder = holder()
+
+        preferences.values.clear()
+        preferences.listeners.forEach { it.onSharedPreferenceChanged(preferences, null) }
+
+        assertNull(holder.snapshot.localNumber)
+    }
+
+    @Test
+    fun `it should stop listening once closed`() {
+        val holder = holder()
+        assertEquals(1, preferences.listeners.size)
+
+        holder.close()
+
+        assertTrue(preferences.listeners.isEmpty())
+    }
+
+    private fun holder() = PreferencesSnapshot.Holder(mock<Context>(), preferences)
+
+    private class FakeSharedPreferences : SharedPreferences {
+        val values = mutableMapOf<String, Any?>()
+        val listeners = mutableListOf<SharedPreferences.OnSharedPreferenceChangeListener>()
+
+        fun put(key: String, value: Any?) {
+            values[key] = value
+            listeners.forEach { it.onSharedPreferenceChanged(this, key) }
+        }
+
+        override fun getAll(): Map<String, *> = values
+        override fun getString(key: String?, defValue: String?): String? = values[key] as String? ?: defValue
+        override fun getStringSet(key: String?, defValues: Set<String>?): Set<String>? = defValues
+        override fun getInt(key: String?, defValue: Int): Int = values[key] as Int? ?: defValue
+        override fun getLong(key: String?, defValue: Long): Long = values[key] as Long? ?: defValue
+        override fun getFloat(key: String?, defValue: Float): Float = values[key] as Float? ?: defValue
+        override fun getBoolean(key: String?, defValue: Boolean): Boolean = values[key] as Boolean? ?: defValue
+        override fun contains(key: String?): Boolean = values.containsKey(key)
+        override fun edit(): SharedPreferences.Editor = throw UnsupportedOperationException()
+
+        override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+            listeners += listener
+        }
+
+        override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+            listeners -= listener
+        }
+    }
+}
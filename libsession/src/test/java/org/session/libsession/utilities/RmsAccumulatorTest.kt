@@ -0,0 +1,146 @@
+package org.session.libsession.utilities
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ShortBuffer
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+class RmsAccumulatorTest {
+
+    private val sampleRate = 8000
+    private val thirtyMinutes = 30 * 60 * sampleRate
+
+    @Test
+    fun `it should keep a fixed number of buckets for a 30 minute track`() {
+        val accumulator = RmsAccumulator()
+        feed(accumulator, thirtyMinutes, channels = 1) { index -> if (index < thirtyMinutes / 2) 0 else 1000 }
+
+        assertEquals(thirtyMinutes.toLong(), accumulator.numSamples)
+        assertTrue(accumulator.samplesPerBucket * 4096 >= thirtyMinutes)
+        assertTrue(accumulator.samplesPerBucket * 4096 < thirtyMinutes * 2L)
+
+        val rms = accumulator.calculateRms(100)
+        assertEquals(100, rms.size)
+        // Frame 49 straddles the step from silence to signal.
+        (0 until 49).forEach { assertEquals(normalizedFloatToByte(0f), rms[it]) }
+        (50 until 100).forEach { assertEquals(normalizedFloatToByte(1f), rms[it]) }
+    }
+
+    @Test
+    fun `it should produce the same waveform whether or not the length is known upfront`() {
+        val signal: (Int) -> Short = { index -> ((index / 997) % 200 * 100).toShort() }
+
+        val streamed = RmsAccumulator()
+        feed(streamed, thirtyMinutes, channels = 1, sample = signal)
+
+        val presized = RmsAccumulator(expectedNumSamples = thirtyMinutes)
+        feed(presized, thirtyMinutes, channels = 1, sample = signal)
+
+        assertEquals(presized.samplesPerBucket, streamed.samplesPerBucket)
+        assertArrayEquals(presized.calculateRms(100), streamed.calculateRms(100))
+    }
+
+    @Test
+    fun `it should only account for the first channel`() {
+        val accumulator = RmsAccumulator()
+        val samples = ShortArray(8) { index -> if (index % 2 == 0) (index * 100).toShort() else Short.MAX_VALUE }
+        accumulator.add(ShortBuffer.wrap(samples), 2)
+
+        assertEquals(4L, accumulator.numSamples)
+        assertArrayEquals(
+            byteArrayOf(normalizedFloatToByte(0f), normalizedFloatToByte(1f / 3f), normalizedFloatToByte(2f / 3f), normalizedFloatToByte(1f)),
+            accumulator.calculateRms(100)
+        )
+    }
+
+    @Test
+    fun `it should return an empty waveform when no samples were added`() {
+        assertEquals(0, RmsAccumulator().calculateRms(100).size)
+    }
+
+    @Test
+    fun `it should match the waveform of the whole-track calculation`() {
+        // A square wave under a slowly varying envelope, so that the RMS of a frame is its envelope
+        val envelope: (Int) -> Short = { index ->
+            val amplitude = (1000 + 900 * sin(2 * PI * index / 40_000)).toInt()
+            (if (index % 2 == 0) amplitude else -amplitude).toShort()
+        }
+
+        for (numSamples in listOf(240_000, 250_001)) {
+            val samples = ShortArray(numSamples) { envelope(it) }
+            val expected = legacyCalculateRms(ShortBuffer.wrap(samples), numSamples, 100)
+
+            val streamed = RmsAccumulator()
+            feed(streamed, numSamples, channels = 1, sample = envelope)
+            val presized = RmsAccumulator(expectedNumSamples = numSamples)
+            feed(presized, numSamples, channels = 1, sample = envelope)
+
+            // The frames are built from whole buckets, so their edges can move by up to a bucket
+            assertWithin(2, expected, streamed.calculateRms(100))
+            assertWithin(2, expected, presized.calculateRms(100))
+        }
+    }
+
+    @Test
+    fun `it should match the whole-track calculation exactly when there are fewer samples than frames`() {
+        val samples = ShortArray(60) { index -> ((index * 7919) % 2000 - 1000).toShort() }
+
+        val accumulator = RmsAccumulator()
+        accumulator.add(ShortBuffer.wrap(samples), 1)
+
+        assertArrayEquals(legacyCalculateRms(ShortBuffer.wrap(samples), samples.size, 100), accumulator.calculateRms(100))
+    }
+
+    private fun assertWithin(tolerance: Int, expected: ByteArray, actual: ByteArray) {
+        assertEquals(expected.size, actual.size)
+        expected.indices.forEach { frame ->
+            assertTrue("frame $frame: ${expected[frame]} != ${actual[frame]}", abs(expected[frame] - actual[frame]) <= tolerance)
+        }
+    }
+
+    /** The mono case of `calculateRms` as it was when the whole track was decoded into memory. */
+    private fun legacyCalculateRms(samples: ShortBuffer, numSamples: Int, maxFrames: Int): ByteArray {
+        val frameStep = if (numSamples <= maxFrames) 1f else numSamples / maxFrames.toFloat()
+        val numFrames = if (numSamples <= maxFrames) numSamples else maxFrames
+        val rmsValues = FloatArray(numFrames)
+
+        var squaredFrameSum = 0.0
+        var currentFrameIdx = 0
+        for (sampleIdx in 0 until numSamples) {
+            val frameIdx = (sampleIdx / frameStep).toInt()
+            if (currentFrameIdx != frameIdx) {
+                rmsValues[currentFrameIdx] = sqrt(squaredFrameSum.toFloat())
+                squaredFrameSum = 0.0
+                currentFrameIdx = frameIdx
+            }
+            val samplesInCurrentFrame = ceil((currentFrameIdx + 1) * frameStep) - ceil(currentFrameIdx * frameStep)
+            squaredFrameSum += (samples[sampleIdx] * samples[sampleIdx]) / samplesInCurrentFrame
+        }
+        rmsValues[currentFrameIdx] = sqrt(squaredFrameSum.toFloat())
+
+        val max = rmsValues.maxOrNull()!!
+        val min = rmsValues.minOrNull()!!
+        return rmsValues.map { value -> normalizedFloatToByte(if (max == min) 0f else (value - min) / (max - min)) }.toByteArray()
+    }
+
+    private fun feed(accumulator: RmsAccumulator, numSamples: Int, channels: Int, sample: (Int) -> Short) {
+        val chunk = ShortArray(4096 * channels)
+        var index = 0
+        while (index < numSamples) {
+            val count = minOf(4096, numSamples - index)
+            for (i in 0 until count) {
+                for (channel in 0 until channels) {
+                    chunk[i * channels + channel] = sample(index + i)
+                }
+            }
+            accumulator.add(ShortBuffer.wrap(chunk, 0, count * channels), channels)
+            index += count
+        }
+    }
+}